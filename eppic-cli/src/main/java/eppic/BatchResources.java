@@ -0,0 +1,120 @@
+package eppic;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import eppic.commons.sequence.SiftsConnection;
+import eppic.commons.sequence.UniprotLocalConnection;
+
+/**
+ * The resources that are expensive to initialise and that can be shared by all entries run
+ * in the same JVM by {@link BatchRunner}: the BioJava chemical component provider and AtomCache,
+ * the parsed SIFTS data, the evolutionary cache and the local UniProt database connections 
+ * (one per worker thread, since connections can't be used concurrently).
+ *
+ */
+public class BatchResources {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(BatchResources.class);
+
+	private SiftsConnection siftsConn;
+	private String siftsLocation;
+
+	private EvolCache evolCache;
+	private boolean evolCacheInitialised;
+
+	private final String localUniprotDbName;
+	private final ThreadLocal<UniprotLocalConnection> uniprotLocalConns;
+	private final List<UniprotLocalConnection> allUniprotLocalConns;
+
+	/**
+	 * Initialises the BioJava resources (chem comp provider and AtomCache) globally with the
+	 * settings of the given params. SIFTS data and UniProt connections are initialised lazily on first use.
+	 * @param params the params with the config file settings common to all entries
+	 */
+	public BatchResources(EppicParams params) {
+
+		Main.setUpChemCompProvider(params);
+		Main.setUpAtomCache(params);
+
+		this.localUniprotDbName = params.getLocalUniprotDbName();
+		this.uniprotLocalConns = new ThreadLocal<UniprotLocalConnection>();
+		this.allUniprotLocalConns = new ArrayList<UniprotLocalConnection>();
+	}
+
+	/**
+	 * Returns the SiftsConnection for the given location, parsing the SIFTS data only the first time.
+	 * @param siftsLocation
+	 * @return
+	 * @throws IOException
+	 */
+	public synchronized SiftsConnection getSiftsConnection(String siftsLocation) throws IOException {
+		if (siftsConn==null || !siftsLocation.equals(this.siftsLocation)) {
+			long start = System.currentTimeMillis();
+			siftsConn = new SiftsConnection(siftsLocation);
+			this.siftsLocation = siftsLocation;
+			LOGGER.info("Parsed SIFTS data from {} in {} s", siftsLocation, (System.currentTimeMillis()-start)/1000);
+		}
+		return siftsConn;
+	}
+
+	/**
+	 * Returns the evolutionary cache shared by all entries, creating it on first call
+	 * @param params
+	 * @return the cache or null if no cache dir is configured or it can't be created
+	 */
+	public synchronized EvolCache getEvolCache(EppicParams params) {
+		if (!evolCacheInitialised) {
+			evolCacheInitialised = true;
+			if (params.getEvolCacheDir()!=null) {
+				try {
+					evolCache = new EvolCache(new File(params.getEvolCacheDir()), params.getEvolCacheMaxSize()*1024L*1024L);
+				} catch (IOException e) {
+					LOGGER.warn("Evolutionary cache won't be used. Error: "+e.getMessage());
+				}
+			}
+		}
+		return evolCache;
+	}
+
+	/**
+	 * Returns the local UniProt connection of the calling thread, opening it if needed.
+	 * @return the connection or null if no local UniProt database is configured
+	 * @throws SQLException
+	 */
+	public UniprotLocalConnection getUniProtLocalConnection() throws SQLException {
+		if (localUniprotDbName==null) return null;
+
+		UniprotLocalConnection conn = uniprotLocalConns.get();
+		if (conn==null) {
+			conn = new UniprotLocalConnection(localUniprotDbName);
+			LOGGER.info("Opened local UniProt connection to {} for thread {}", localUniprotDbName, Thread.currentThread().getName());
+			uniprotLocalConns.set(conn);
+			synchronized (allUniprotLocalConns) {
+				allUniprotLocalConns.add(conn);
+			}
+		}
+		return conn;
+	}
+
+	/**
+	 * Closes all open connections
+	 */
+	public void close() {
+		if (evolCache!=null) {
+			LOGGER.info("Evolutionary cache {}", evolCache);
+		}
+		synchronized (allUniprotLocalConns) {
+			for (UniprotLocalConnection conn : allUniprotLocalConns) {
+				conn.close();
+			}
+			allUniprotLocalConns.clear();
+		}
+	}
+}
@@ -0,0 +1,354 @@
+package eppic;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.ThreadContext;
+import org.apache.logging.log4j.core.LoggerContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import gnu.getopt.Getopt;
+
+/**
+ * An executable class to run eppic for a list of entries within a single JVM.
+ * <p>
+ * The expensive initialisations (BioJava chemical component provider and AtomCache, SIFTS parsing,
+ * local UniProt database connections) are done only once and shared by all entries, see {@link BatchResources}.
+ * Entries are run concurrently by a number of workers, each entry writing to its own output
+ * directory and log file. A failure in one entry is logged and recorded but does not stop the
+ * others. At the end, a summary of the per-entry status and runtime is written to the
+ * base output directory.
+ *
+ */
+public class BatchRunner {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(BatchRunner.class);
+
+	private static final String PROGRAM_NAME = BatchRunner.class.getName();
+
+	public static final String BATCH_LOG_FILE_NAME = "batch.log";
+	public static final String TIMINGS_FILE_NAME = "batch_timings.tsv";
+	public static final String PROGRESS_LOG_FILE_SUFFIX = ".progress.log";
+
+	private static final int DEF_NUM_WORKERS = 1;
+
+	/**
+	 * The key in the log4j2 thread context for the log file of the entry being run by a thread,
+	 * see log4j2.xml
+	 */
+	private static final String LOG_FILENAME_CTX_KEY = "logFilename";
+
+	/**
+	 * The outcome of one entry
+	 */
+	private static class EntryResult {
+		String entry;
+		boolean success;
+		long runtime; // in ms
+		String message;
+	}
+
+	private File listFile;
+	private File baseOutDir;
+	private int numWorkers;
+	private File configFile;
+	private String[] eppicArgs;
+
+	private BatchResources resources;
+
+	public BatchRunner() {
+		this.numWorkers = DEF_NUM_WORKERS;
+		this.eppicArgs = new String[0];
+	}
+
+	public static void main(String[] args) {
+
+		BatchRunner runner = new BatchRunner();
+		runner.parseCommandLine(args);
+
+		// the log of the batch itself goes to the default route of the routing appender
+		System.setProperty(LOG_FILENAME_CTX_KEY, new File(runner.baseOutDir, BATCH_LOG_FILE_NAME).toString());
+		LoggerContext ctx = (LoggerContext) LogManager.getContext(false);
+		ctx.reconfigure();
+		// TODO for some reason (bug?) log4j2 2.1 produces a file named with the log4j2.xml $pointer, the only fix I know for now is to remove it manually
+		new File("${sys:logFilename}").deleteOnExit();
+		new File("error.log").deleteOnExit();
+
+		try {
+			List<String> entries = readEntries(runner.listFile);
+			int numFailed = runner.run(entries);
+			if (numFailed>0) System.exit(1);
+		} catch (EppicException e) {
+			LOGGER.error(e.getMessage());
+			e.exitIfFatal(1);
+		}
+	}
+
+	/**
+	 * Runs eppic for all given entries.
+	 * @param entries PDB codes or paths to PDB/mmCIF files
+	 * @return the number of entries that failed
+	 * @throws EppicException if the config file can't be read or the timings file can't be written
+	 */
+	public int run(List<String> entries) throws EppicException {
+
+		LOGGER.info(EppicParams.PROGRAM_NAME+" version "+EppicParams.PROGRAM_VERSION);
+		LOGGER.info("Build git SHA: {}", EppicParams.BUILD_GIT_SHA);
+		LOGGER.info("Running {} entries with {} workers. Extra eppic arguments: {}", entries.size(), numWorkers, Arrays.toString(eppicArgs));
+
+		long start = System.currentTimeMillis();
+
+		// the config file settings are the same for all entries, we use them to set up the shared resources
+		EppicParams commonParams = new EppicParams();
+		readConfigFile(commonParams);
+		resources = new BatchResources(commonParams);
+
+		ExecutorService executor = Executors.newFixedThreadPool(numWorkers);
+		List<Future<EntryResult>> futures = new ArrayList<>();
+		for (final String entry : entries) {
+			futures.add(executor.submit(() -> runEntry(entry)));
+		}
+
+		List<EntryResult> results = new ArrayList<>();
+		try {
+			for (Future<EntryResult> future : futures) {
+				results.add(future.get());
+			}
+		} catch (InterruptedException|ExecutionException e) {
+			// runEntry catches everything, this shouldn't happen
+			throw new EppicException(e, "Unexpected error while waiting for batch entries: "+e.getMessage(), true);
+		} finally {
+			executor.shutdown();
+			resources.close();
+		}
+
+		writeTimings(results);
+
+		int numFailed = 0;
+		for (EntryResult result : results) {
+			if (!result.success) numFailed++;
+		}
+		LOGGER.info("Finished {} entries ({} failed) in {} s", results.size(), numFailed, (System.currentTimeMillis()-start)/1000);
+
+		return numFailed;
+	}
+
+	private EntryResult runEntry(String entry) {
+
+		EntryResult result = new EntryResult();
+		result.entry = entry;
+
+		long start = System.currentTimeMillis();
+
+		EppicParams params = null;
+		try {
+			params = createEntryParams(entry);
+
+			File logFile = new File(params.getOutDir(), params.getBaseName()+".log");
+			// per-entry files are appended to by the routing appender, we don't want logs of previous runs
+			logFile.delete();
+			ThreadContext.put(LOG_FILENAME_CTX_KEY, logFile.toString());
+
+			new Main().runBatchEntry(params, resources);
+
+			result.success = true;
+
+		} catch (EppicException e) {
+			LOGGER.error("Entry {} failed: {}", entry, e.getMessage());
+			result.message = e.getMessage();
+		} catch (Exception e) {
+			StringBuilder stack = new StringBuilder();
+			for (StackTraceElement el:e.getStackTrace()) {
+				stack.append("\tat ").append(el.toString()).append("\n");
+			}
+			LOGGER.error("Unexpected error for entry "+entry+". Stack trace:\n"+e+"\n"+stack.toString());
+			result.message = e.toString();
+		} finally {
+			ThreadContext.remove(LOG_FILENAME_CTX_KEY);
+			if (params!=null && params.getProgressLog()!=System.out) {
+				params.getProgressLog().close();
+			}
+		}
+
+		result.runtime = System.currentTimeMillis() - start;
+
+		LOGGER.info("Entry {} {} in {} s", entry, result.success?"finished successfully":"failed", result.runtime/1000);
+
+		return result;
+	}
+
+	/**
+	 * Creates the params for the given entry from the extra eppic arguments and the config file.
+	 * The output goes to a subdirectory of the base output directory named as the base name of the entry.
+	 * @param entry
+	 * @return
+	 * @throws EppicException
+	 */
+	private EppicParams createEntryParams(String entry) throws EppicException {
+
+		List<String> args = new ArrayList<>();
+		args.add("-i");
+		args.add(entry);
+		args.addAll(Arrays.asList(eppicArgs));
+
+		EppicParams params = new EppicParams();
+		params.parseCommandLine(args.toArray(new String[args.size()]), EppicParams.PROGRAM_NAME, "");
+		params.checkCommandLineInput();
+
+		File outDir = new File(baseOutDir, params.getBaseName());
+		if (!outDir.isDirectory() && !outDir.mkdirs()) {
+			throw new EppicException(null, "Could not create output dir "+outDir, true);
+		}
+		params.setOutDir(outDir);
+
+		readConfigFile(params);
+
+		// progress output of concurrent entries would be interleaved in std output
+		try {
+			params.setProgressLog(new PrintStream(new File(outDir, params.getBaseName()+PROGRESS_LOG_FILE_SUFFIX)));
+		} catch (FileNotFoundException e) {
+			throw new EppicException(e, "Could not write progress log file: "+e.getMessage(), true);
+		}
+
+		return params;
+	}
+
+	private void readConfigFile(EppicParams params) throws EppicException {
+		try {
+			params.readConfigFile(configFile);
+			params.checkConfigFileInput();
+		} catch (IOException e) {
+			throw new EppicException(e, "Error while reading from config file: "+e.getMessage(), true);
+		}
+	}
+
+	private void writeTimings(List<EntryResult> results) throws EppicException {
+		File timingsFile = new File(baseOutDir, TIMINGS_FILE_NAME);
+		try (PrintWriter pw = new PrintWriter(timingsFile)) {
+			pw.println("# entry\tstatus\truntime_ms\tmessage");
+			for (EntryResult result : results) {
+				pw.println(result.entry+"\t"+(result.success?"OK":"FAILED")+"\t"+result.runtime+"\t"+
+						(result.message==null?"":result.message.replaceAll("\\s+", " ")));
+			}
+		} catch (FileNotFoundException e) {
+			throw new EppicException(e, "Could not write timings file "+timingsFile+": "+e.getMessage(), false);
+		}
+		LOGGER.info("Written per-entry timings to {}", timingsFile);
+	}
+
+	/**
+	 * Reads the entries from the given file: one PDB code or PDB/mmCIF file path per line.
+	 * Empty lines and lines starting with '#' are ignored.
+	 * @param file
+	 * @return
+	 * @throws EppicException
+	 */
+	private static List<String> readEntries(File file) throws EppicException {
+		List<String> entries = new ArrayList<>();
+		try (BufferedReader br = new BufferedReader(new FileReader(file))) {
+			String line;
+			while ((line = br.readLine())!=null) {
+				line = line.trim();
+				if (line.isEmpty() || line.startsWith("#")) continue;
+				entries.add(line);
+			}
+		} catch (IOException e) {
+			throw new EppicException(e, "Could not read list file "+file+": "+e.getMessage(), true);
+		}
+		return entries;
+	}
+
+	private void parseCommandLine(String[] args) {
+
+		String help = "Usage: "+PROGRAM_NAME+" [options] [-- eppic options]\n" +
+				"Runs eppic for a list of entries in a single JVM\n" +
+				"   -l <file>   :  file with one PDB code or PDB/mmCIF file path per line\n" +
+				"   -o <dir>    :  base output dir, output of each entry goes to a subdir named as\n" +
+				"                  the entry's base name\n" +
+				"  [-j <int>]   :  number of entries run concurrently. Default: "+DEF_NUM_WORKERS+"\n" +
+				"  [-g <file>]  :  an "+EppicParams.PROGRAM_NAME+" config file. Default: "+EppicParams.CONFIG_FILE_NAME+" in\n" +
+				"                  the user's home directory\n" +
+				"All arguments after -- are passed to each eppic run (e.g. -s -a 2 -w), except for\n" +
+				"-i, -o, -b, -L and -g which are set by the batch runner\n\n";
+
+		Getopt g = new Getopt(PROGRAM_NAME, args, "l:o:j:g:h?");
+		int c;
+		while ((c = g.getopt()) != -1) {
+			switch (c) {
+			case 'l':
+				listFile = new File(g.getOptarg());
+				break;
+			case 'o':
+				baseOutDir = new File(g.getOptarg());
+				break;
+			case 'j':
+				numWorkers = Integer.parseInt(g.getOptarg());
+				break;
+			case 'g':
+				configFile = new File(g.getOptarg());
+				break;
+			case 'h':
+				System.out.println(help);
+				System.exit(0);
+				break;
+			case '?':
+				System.err.println(help);
+				System.exit(1);
+				break; // getopt() already printed an error
+			}
+		}
+
+		eppicArgs = Arrays.copyOfRange(args, g.getOptind(), args.length);
+
+		if (listFile==null || baseOutDir==null) {
+			System.err.println("Missing arguments -l and -o");
+			System.err.println(help);
+			System.exit(1);
+		}
+		if (!listFile.exists()) {
+			System.err.println("List file "+listFile+" doesn't exist");
+			System.exit(1);
+		}
+		if (!baseOutDir.isDirectory() && !baseOutDir.mkdirs()) {
+			System.err.println("Could not create output dir "+baseOutDir);
+			System.exit(1);
+		}
+		if (numWorkers<1) {
+			System.err.println("Number of workers (-j) must be at least 1");
+			System.exit(1);
+		}
+
+		if (configFile==null) {
+			configFile = new File(System.getProperty("user.home"), EppicParams.CONFIG_FILE_NAME);
+		}
+		if (!configFile.exists()) {
+			System.err.println("No config file could be read at "+configFile+
+					". Please set one in order to be able to read blast directories and blast/t_coffee/clustalo binaries.");
+			System.exit(1);
+		}
+
+		// validating the extra eppic arguments once: unknown options exit here rather than in every entry
+		EppicParams argsCheck = new EppicParams();
+		argsCheck.parseCommandLine(eppicArgs, EppicParams.PROGRAM_NAME, help);
+		if (argsCheck.getBaseName()!=null || argsCheck.getProgressLogFile()!=null || argsCheck.getConfigFile()!=null ||
+				argsCheck.getInFile()!=null || argsCheck.getPdbCode()!=null ||
+				!argsCheck.getOutDir().equals(new EppicParams().getOutDir())) {
+			System.err.println("Options -i, -o, -b, -L and -g can't be passed to eppic runs in batch mode");
+			System.exit(1);
+		}
+	}
+}
@@ -99,6 +99,8 @@ public class ChainEvolContext implements Serializable {
 		
 	private boolean searchWithFullUniprot;  // mode of searching, true=we search with full uniprot seq, false=we search with PDB matching part only
 	
+	private boolean fromEvolCache;			// whether the homologs (and their alignment and entropies) were read from the EvolCache
+	
 	private List<String> queryWarnings;
 	
 	private ChainEvolContextList parent;
@@ -167,13 +169,25 @@ public class ChainEvolContext implements Serializable {
 	 * @throws InterruptedException
 	 */
 	public void retrieveQueryData(EppicParams params) throws IOException, BlastException, InterruptedException {
+		retrieveQueryData(params, params.getNumThreads());
+	}
+	
+	/**
+	 * Retrieves the UniProt mapping corresponding to the query PDB sequence, using the 
+	 * given number of threads for blast
+	 * @param params
+	 * @param blastNumThreads
+	 * @throws IOException
+	 * @throws BlastException
+	 * @throws InterruptedException
+	 */
+	public void retrieveQueryData(EppicParams params, int blastNumThreads) throws IOException, BlastException, InterruptedException {
 		
 		String siftsLocation = params.getSiftsFile();
 		boolean useSifts = params.isUseSifts();
 		File blastPlusBlastp = params.getBlastpBin();
 		String blastDbDir = params.getBlastDbDir();
 		String blastDb = params.getBlastDb();
-		int blastNumThreads = params.getNumThreads();
 		double pdb2uniprotIdThreshold = params.getPdb2uniprotIdThreshold();
 		double pdb2uniprotQcovThreshold = params.getPdb2uniprotQcovThreshold();
 		boolean useUniparc = params.isUseUniparc();
@@ -247,10 +261,13 @@ public class ChainEvolContext implements Serializable {
 
 			// once we have the identifier we get the data from uniprot
 			try {
-				if (parent.isUseLocalUniprot()) {
-					query = parent.getUniProtLocalConnection().getUnirefEntry(queryUniprotId);
-				} else {
-					query = parent.getUniProtJapiConnection().getUnirefEntry(queryUniprotId);
+				// the connections are shared by all chains and are not thread safe 
+				synchronized (parent) {
+					if (parent.isUseLocalUniprot()) {
+						query = parent.getUniProtLocalConnection().getUnirefEntry(queryUniprotId);
+					} else {
+						query = parent.getUniProtJapiConnection().getUnirefEntry(queryUniprotId);
+					}
 				}
 				
 				if (query.replaceNonStandardByX()) {
@@ -510,12 +527,16 @@ public class ChainEvolContext implements Serializable {
 	
 	public void blastForHomologs(EppicParams params) 
 			throws IOException, BlastException, InterruptedException {
+		blastForHomologs(params, params.getNumThreads());
+	}
+	
+	public void blastForHomologs(EppicParams params, int blastNumThreads) 
+			throws IOException, BlastException, InterruptedException {
 		
 		
 		File blastPlusBlastp = params.getBlastpBin();
 		String blastDbDir = params.getBlastDbDir();
 		String blastDb = params.getBlastDb();
-		int blastNumThreads = params.getNumThreads(); 
 		int maxNumSeqs = params.getMaxNumSeqs();
 		HomologsSearchMode searchMode = params.getHomologsSearchMode();
 		boolean useUniparc = params.isUseUniparc();			
@@ -600,6 +621,10 @@ public class ChainEvolContext implements Serializable {
 	}
 	
 	public void applyIdentityCutoff(EppicParams params) throws IOException, InterruptedException, BlastException {
+		applyIdentityCutoff(params, params.getNumThreads());
+	}
+	
+	public void applyIdentityCutoff(EppicParams params, int blastclustNumThreads) throws IOException, InterruptedException, BlastException {
 
 		double homSoftIdCutoff = params.getHomSoftIdCutoff();
 		double homHardIdCutoff = params.getHomHardIdCutoff();
@@ -622,7 +647,7 @@ public class ChainEvolContext implements Serializable {
 					String.format("%4.2f",queryCovCutoff)+" query coverage cutoff and before redundancy elimination"
 					+" (chain "+getRepresentativeChainCode()+")");
 			
-			homologs.reduceRedundancy(maxNumSeqs, params.getBlastclustBin(), params.getBlastDataDir(), params.getNumThreads());
+			homologs.reduceRedundancy(maxNumSeqs, params.getBlastclustBin(), params.getBlastDataDir(), blastclustNumThreads);
 
 			this.idCutoff = currentIdCutoff;
 			
@@ -638,8 +663,11 @@ public class ChainEvolContext implements Serializable {
 	}
 
 	public void align(EppicParams params) throws IOException, InterruptedException { 
+		align(params, params.getNumThreads());
+	}
+	
+	public void align(EppicParams params, int nThreads) throws IOException, InterruptedException { 
 		File clustaloBin = params.getClustaloBin();
-		int nThreads = params.getNumThreads();
 		
 		// 3) alignment of the protein sequences
 		File alnCacheFile = null;
@@ -667,6 +695,56 @@ public class ChainEvolContext implements Serializable {
 		return homologs.getAlignment();
 	}
 	
+	/**
+	 * Returns the key of this chain's UniProt reference interval in the {@link EvolCache}
+	 * @param params
+	 * @return
+	 */
+	public String getEvolCacheKey(EppicParams params) {
+		Interval interv = pdbToUniProtMapper.getHomologsSearchInterval(params.getHomologsSearchMode());
+		return EvolCache.getKey(params, parent.getUniprotVer(), query.getUniId(), interv);
+	}
+	
+	/**
+	 * Sets the homologs, alignment and entropies from the given cache if present, 
+	 * in which case the homologs search, alignment and entropy calculation are not needed.
+	 * @param evolCache
+	 * @param params
+	 * @return true if found in cache
+	 */
+	public boolean loadFromEvolCache(EvolCache evolCache, EppicParams params) {
+		String key = getEvolCacheKey(params);
+		EvolCache.Entry entry = evolCache.get(key);
+		if (entry==null) return false;
+		
+		this.homologs = entry.getHomologs();
+		this.idCutoff = entry.getIdCutoff();
+		this.queryCov = entry.getQueryCov();
+		this.searchWithFullUniprot = params.getHomologsSearchMode()==HomologsSearchMode.GLOBAL;
+		this.fromEvolCache = true;
+		LOGGER.info("Read {} homologs and alignment of {} (chain {}) from evolutionary cache", 
+				homologs.getSizeFilteredSubset(), query.getUniId(), getRepresentativeChainCode());
+		return true;
+	}
+	
+	/**
+	 * Stores the homologs, alignment and entropies in the given cache. 
+	 * To be called after {@link #computeEntropies(AAAlphabet)}
+	 * @param evolCache
+	 * @param params
+	 */
+	public void storeInEvolCache(EvolCache evolCache, EppicParams params) {
+		evolCache.put(getEvolCacheKey(params), new EvolCache.Entry(homologs, idCutoff, queryCov));
+	}
+	
+	/**
+	 * Returns true if the homologs, alignment and entropies were read from the {@link EvolCache}
+	 * @return
+	 */
+	public boolean isFromEvolCache() {
+		return fromEvolCache;
+	}
+	
 	/**
 	 * Returns a list of the conservation scores values (only entropy in current implementation)
 	 * The sequence to which the list refers is the reference UniProt one, 
@@ -698,16 +776,14 @@ public class ChainEvolContext implements Serializable {
 	 * if the input residue list is empty.
 	 */
 	public double calcScoreForResidueSet(List<Group> residues) {
+		double[] scores = getConservationScoresForResidues(residues);
 		double totalScore = 0.0;
 		double totalWeight = 0.0;
-		List<Double> conservScores = getConservationScores();
-		for (Group res:residues){
-
-			int queryPos = pdbToUniProtMapper.getUniProtIndexForPdbGroup(res, !isSearchWithFullUniprot()); 
+		for (double score:scores){
 			 
-			if (queryPos!=-1) {   
+			if (!Double.isNaN(score)) {   
 				double weight = 1.0;
-				totalScore += weight*(conservScores.get(queryPos-1));
+				totalScore += weight*score;
 				totalWeight += weight;
 			} else {
 				// ignore it
@@ -717,6 +793,29 @@ public class ChainEvolContext implements Serializable {
 		return totalScore/totalWeight;
 	}
 	
+	/**
+	 * Gets the conservation score of each of the given residues, resolving the 
+	 * residues to the reference UniProt all at once. Useful to build a lookup table 
+	 * for repeated scoring of subsets of a fixed list of residues, see {@link ResidueScoreSampler}.
+	 * @param residues
+	 * @return an array of the same size as residues with the conservation score of each 
+	 * residue, or NaN for residues without a mapping to the reference UniProt
+	 */
+	public double[] getConservationScoresForResidues(List<Group> residues) {
+		List<Double> conservScores = getConservationScores();
+		int[] queryPositions = pdbToUniProtMapper.getUniProtIndicesForPdbGroups(residues, !isSearchWithFullUniprot());
+		
+		double[] scores = new double[queryPositions.length];
+		for (int i=0;i<queryPositions.length;i++) {
+			if (queryPositions[i]!=-1) {
+				scores[i] = conservScores.get(queryPositions[i]-1);
+			} else {
+				scores[i] = Double.NaN;
+			}
+		}
+		return scores;
+	}
+	
 	/**
 	 * Set the b-factors of the given pdb chain to conservation score values.
 	 * @param chain
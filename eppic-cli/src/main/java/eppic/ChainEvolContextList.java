@@ -1,11 +1,17 @@
 package eppic;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.Serializable;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.biojava.nbio.structure.Compound;
 import org.biojava.nbio.structure.Structure;
@@ -28,6 +34,14 @@ public class ChainEvolContextList implements Serializable {
 
 	private static final Logger LOGGER = LoggerFactory.getLogger(ChainEvolContextList.class);
 	
+	/**
+	 * A step of the evolutionary analysis to be run for a single ChainEvolContext 
+	 * with the given number of threads for the external programs it calls
+	 */
+	private interface ChainEvolTask {
+		void run(ChainEvolContext chainEvCont, int numThreads) throws EppicException;
+	}
+	
 	private Structure pdb;
 	
 	/**
@@ -47,6 +61,17 @@ public class ChainEvolContextList implements Serializable {
 	private transient UniprotLocalConnection uniprotLocalConn;
 	
 	private transient SiftsConnection siftsConn;
+	
+	/**
+	 * Whether the local UniProt connection was given externally (e.g. in batch mode), 
+	 * in which case we don't open or close it
+	 */
+	private transient boolean externalUniprotLocalConn;
+	
+	/**
+	 * The persistent cache of homologs, alignments and entropies, null if not used
+	 */
+	private transient EvolCache evolCache;
 
 	
 	public ChainEvolContextList(Structure pdb, EppicParams params) throws SQLException {
@@ -181,7 +206,25 @@ public class ChainEvolContextList implements Serializable {
 		return uniprotJapiConn;
 	}
 	
-	public SiftsConnection getSiftsConn(String siftsLocation) throws IOException {
+	/**
+	 * Sets an already initialised SiftsConnection to be used instead of parsing the SIFTS file
+	 * @param siftsConn
+	 */
+	public synchronized void setSiftsConn(SiftsConnection siftsConn) {
+		this.siftsConn = siftsConn;
+	}
+	
+	/**
+	 * Sets an already open local UniProt connection to be used instead of opening one. 
+	 * The connection won't be closed by {@link #closeConnections()}.
+	 * @param uniprotLocalConn
+	 */
+	public void setUniProtLocalConnection(UniprotLocalConnection uniprotLocalConn) {
+		this.uniprotLocalConn = uniprotLocalConn;
+		this.externalUniprotLocalConn = true;
+	}
+	
+	public synchronized SiftsConnection getSiftsConn(String siftsLocation) throws IOException {
 		// we store the sifts connection here in order not to reparse the file for every chain
 		if (this.siftsConn==null) {
 			this.siftsConn = new SiftsConnection(siftsLocation);
@@ -195,10 +238,9 @@ public class ChainEvolContextList implements Serializable {
 		
 		openConnections(params);
 		
-		for (ChainEvolContext chainEvCont:cecs.values()) {
-			params.getProgressLog().print(chainEvCont.getRepresentativeChainCode()+" ");
+		runForAllChains(params, false, (chainEvCont, numThreads) -> {
 			try {
-				chainEvCont.retrieveQueryData(params);
+				chainEvCont.retrieveQueryData(params, numThreads);
 
 			} catch (BlastException e) {
 				throw new EppicException(e,"Couldn't run blast to retrieve query's UniProt mapping: "+e.getMessage(),true);
@@ -217,7 +259,7 @@ public class ChainEvolContextList implements Serializable {
 				}
 				throw new EppicException(e, msg, true);
 			}
-		}
+		});
 		
 		closeConnections();
 		
@@ -226,6 +268,9 @@ public class ChainEvolContextList implements Serializable {
 	
 	public void retrieveHomologs(EppicParams params) throws EppicException {
 		
+		// 0) chains whose UniProt reference was already analysed with the same parameters are read from cache 
+		loadFromEvolCache(params);
+		
 		// 1) we find homologs by blasting
 		blastForHomologs(params);
 
@@ -247,15 +292,9 @@ public class ChainEvolContextList implements Serializable {
 	private void blastForHomologs(EppicParams params) throws EppicException {
 		params.getProgressLog().println("Blasting for homologs");
 		params.getProgressLog().print("chains: ");
-		for (ChainEvolContext chainEvCont:cecs.values()) {
-			if (!chainEvCont.hasQueryMatch()) {
-				// no query uniprot match, we do nothing with this sequence
-				continue;
-			}
-			params.getProgressLog().print(chainEvCont.getRepresentativeChainCode()+" ");
-						
+		runForAllChains(params, true, (chainEvCont, numThreads) -> {
 			try {
-				chainEvCont.blastForHomologs(params);
+				chainEvCont.blastForHomologs(params, numThreads);
 
 			} catch (BlastException e) {
 				throw new EppicException(e,"Couldn't run blast to retrieve homologs: "+e.getMessage() ,true);
@@ -264,8 +303,7 @@ public class ChainEvolContextList implements Serializable {
 			} catch (InterruptedException e) {
 				throw new EppicException(e,"Thread interrupted while blasting for sequence homologs: "+e.getMessage(),true);
 			}
-
-		}
+		});
 		params.getProgressLog().println();
 	}
 	
@@ -276,8 +314,7 @@ public class ChainEvolContextList implements Serializable {
 		openConnections(params);	
 		
 		for (ChainEvolContext chainEvCont:cecs.values()) {
-			if (!chainEvCont.hasQueryMatch()) {
-				// no query uniprot match, we do nothing with this sequence
+			if (!needsHomologsSearch(chainEvCont)) {
 				continue;
 			}
 			
@@ -319,16 +356,11 @@ public class ChainEvolContextList implements Serializable {
 		this.homSoftIdCutoff = params.getHomSoftIdCutoff();
 		this.homHardIdCutoff = params.getHomHardIdCutoff();
 		
-		for (ChainEvolContext chainEvCont:cecs.values()) {
-			if (!chainEvCont.hasQueryMatch()) {
-				// no query uniprot match, we do nothing with this sequence
-				continue;
-			}
-
+		runForAllChains(params, true, (chainEvCont, numThreads) -> {
 			try {
 				
 				// applies the identity cutoffs iteratively and performs the redundancy reduction procedure 
-				chainEvCont.applyIdentityCutoff(params);
+				chainEvCont.applyIdentityCutoff(params, numThreads);
 
 
 			} catch (IOException e) {
@@ -338,15 +370,12 @@ public class ChainEvolContextList implements Serializable {
 			} catch (BlastException e) {
 				throw new EppicException(e, "Problems while running blastclust for redundancy reduction of homologs: "+e.getMessage(), true);
 			}
-
-			
-		}
+		});
 	}
 	
 	private void filterToSameDomainOfLife() {
 		for (ChainEvolContext chainEvCont:cecs.values()) {
-			if (!chainEvCont.hasQueryMatch()) {
-				// no query uniprot match, we do nothing with this sequence
+			if (!needsHomologsSearch(chainEvCont)) {
 				continue;
 			}
 
@@ -356,8 +385,7 @@ public class ChainEvolContextList implements Serializable {
 	
 	private void filterIdenticalsToQuery(EppicParams params) {
 		for (ChainEvolContext chainEvCont:cecs.values()) {
-			if (!chainEvCont.hasQueryMatch()) {
-				// no query uniprot match, we do nothing with this sequence
+			if (!needsHomologsSearch(chainEvCont)) {
 				continue;
 			}
 			
@@ -371,33 +399,138 @@ public class ChainEvolContextList implements Serializable {
 		String alignProgram = "clustalo"; 
 		params.getProgressLog().println("Aligning protein sequences with "+ alignProgram);
 		params.getProgressLog().print("chains: ");
-		for (ChainEvolContext chainEvCont:cecs.values()) {
-			if (!chainEvCont.hasQueryMatch()) {
-				// no query uniprot match, we do nothing with this sequence
-				continue;
-			}
-			
-			params.getProgressLog().print(chainEvCont.getRepresentativeChainCode()+" ");
+		runForAllChains(params, true, (chainEvCont, numThreads) -> {
 			try {
-				chainEvCont.align(params);
+				chainEvCont.align(params, numThreads);
 			} catch (IOException e) {
 				throw new EppicException(e, "Problems while running "+alignProgram+" to align protein sequences: "+e.getMessage(),true);
 			} catch (InterruptedException e) {
 				throw new EppicException(e, "Thread interrupted while running "+alignProgram+" to align protein sequences: "+e.getMessage(),true);
 			} 
-
-		}
+		});
 		params.getProgressLog().println();
 	}
 	
-	public void computeEntropies(EppicParams params) {
+	public void computeEntropies(EppicParams params) throws EppicException {
+		runForAllChains(params, true, (chainEvCont, numThreads) -> chainEvCont.computeEntropies(params.getAlphabet()));
+		
+		storeInEvolCache(params);
+	}
+	
+	/**
+	 * Sets an already initialised EvolCache to be used instead of the one configured in params 
+	 * (e.g. in batch mode, so that its size accounting is shared).
+	 * @param evolCache
+	 */
+	public void setEvolCache(EvolCache evolCache) {
+		this.evolCache = evolCache;
+	}
+	
+	/**
+	 * Returns true if the homologs of the given chain have to be searched for, i.e. it has a UniProt 
+	 * query match and its homologs were not read from the {@link EvolCache}
+	 * @param chainEvCont
+	 * @return
+	 */
+	private static boolean needsHomologsSearch(ChainEvolContext chainEvCont) {
+		return chainEvCont.hasQueryMatch() && !chainEvCont.isFromEvolCache();
+	}
+	
+	private void loadFromEvolCache(EppicParams params) {
+		if (evolCache==null && params.getEvolCacheDir()!=null) {
+			try {
+				evolCache = new EvolCache(new File(params.getEvolCacheDir()), params.getEvolCacheMaxSize()*1024L*1024L);
+			} catch (IOException e) {
+				LOGGER.warn("Evolutionary cache won't be used. Error: "+e.getMessage());
+			}
+		}
+		if (evolCache==null) return;
+		
+		if (uniprotVer==null || uniprotVer.equals(HomologList.UNKNOWN_UNIPROT_VER)) {
+			// the cache could return results of another UniProt version
+			LOGGER.warn("Unknown UniProt version, evolutionary cache won't be used");
+			evolCache = null;
+			return;
+		}
+		
 		for (ChainEvolContext chainEvCont:cecs.values()) {
-			if (!chainEvCont.hasQueryMatch()) {
-				// no query uniprot match, we do nothing with this sequence
+			if (!chainEvCont.hasQueryMatch()) continue;
+			chainEvCont.loadFromEvolCache(evolCache, params);
+		}
+	}
+	
+	private void storeInEvolCache(EppicParams params) {
+		if (evolCache==null) return;
+		
+		for (ChainEvolContext chainEvCont:cecs.values()) {
+			if (!needsHomologsSearch(chainEvCont)) continue;
+			chainEvCont.storeInEvolCache(evolCache, params);
+		}
+		LOGGER.info("Evolutionary cache {}", evolCache);
+	}
+	
+	/**
+	 * Runs the given task for all ChainEvolContexts of this list. If {@link EppicParams#getMaxConcurrentChains()}
+	 * is larger than 1 the chains are processed concurrently and the total number of threads 
+	 * ({@link EppicParams#getNumThreads()}) is split evenly among the concurrently running chains, 
+	 * otherwise chains are processed serially each of them using all threads. 
+	 * The representative chain codes are printed to the progress log in order of submission.
+	 * @param params
+	 * @param onlyNeedingHomologsSearch if true chains without a query UniProt match or 
+	 * whose homologs were read from the {@link EvolCache} are skipped
+	 * @param task
+	 * @throws EppicException the first exception thrown by any of the tasks (in chain order)
+	 */
+	private void runForAllChains(EppicParams params, boolean onlyNeedingHomologsSearch, ChainEvolTask task) throws EppicException {
+		
+		List<ChainEvolContext> toRun = new ArrayList<ChainEvolContext>();
+		for (ChainEvolContext chainEvCont:cecs.values()) {
+			if (onlyNeedingHomologsSearch && !needsHomologsSearch(chainEvCont)) {
+				// no query uniprot match or already read from cache, we do nothing with this sequence
 				continue;
 			}
-			
-			chainEvCont.computeEntropies(params.getAlphabet());
+			toRun.add(chainEvCont);
+		}
+		
+		int numThreads = params.getNumThreads();
+		int numConcurrent = Math.min(toRun.size(), Math.min(params.getMaxConcurrentChains(), numThreads));
+		
+		if (numConcurrent<=1) {
+			for (ChainEvolContext chainEvCont:toRun) {
+				params.getProgressLog().print(chainEvCont.getRepresentativeChainCode()+" ");
+				task.run(chainEvCont, numThreads);
+			}
+			return;
+		}
+		
+		int numThreadsPerChain = Math.max(1, numThreads/numConcurrent);
+		LOGGER.info("Running {} chains concurrently with {} threads each", numConcurrent, numThreadsPerChain);
+		
+		ExecutorService threadPool = Executors.newFixedThreadPool(numConcurrent);
+		List<Future<Void>> futures = new ArrayList<Future<Void>>();
+		
+		for (ChainEvolContext chainEvCont:toRun) {
+			params.getProgressLog().print(chainEvCont.getRepresentativeChainCode()+" ");
+			futures.add(threadPool.submit(() -> {
+				task.run(chainEvCont, numThreadsPerChain);
+				return null;
+			}));
+		}
+		
+		try {
+			for (Future<Void> future:futures) {
+				future.get();
+			}
+		} catch (InterruptedException e) {
+			throw new EppicException(e, "Thread interrupted while running evolutionary analysis of chains: "+e.getMessage(), true);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof EppicException) throw (EppicException) cause;
+			if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+			if (cause instanceof Error) throw (Error) cause;
+			throw new EppicException((Exception) cause, "Unexpected problem while running evolutionary analysis of chains: "+cause.getMessage(), true);
+		} finally {
+			threadPool.shutdownNow();
 		}
 	}
 	
@@ -435,6 +568,10 @@ public class ChainEvolContextList implements Serializable {
 	
 	public void openConnections(EppicParams params) throws EppicException {
 		if (useLocalUniprot) {
+			if (externalUniprotLocalConn) {
+				LOGGER.info("Using already open local UniProt connection to retrieve UniProtKB data");
+				return;
+			}
 			try {
 				this.uniprotLocalConn = new UniprotLocalConnection(params.getLocalUniprotDbName());
 				LOGGER.info("Opening local UniProt connection to retrieve UniProtKB data. Local database: "+params.getLocalUniprotDbName());
@@ -449,6 +586,7 @@ public class ChainEvolContextList implements Serializable {
 	
 	public void closeConnections() {
 		if (useLocalUniprot) {			
+			if (externalUniprotLocalConn) return;
 			this.uniprotLocalConn.close();
 			LOGGER.info("Connection to local UniProt database closed");
 		} else {
@@ -47,7 +47,6 @@ import eppic.assembly.AssemblyDescription;
 import eppic.assembly.CrystalAssemblies;
 import eppic.assembly.GraphUtils;
 import eppic.commons.sequence.Homolog;
-import eppic.commons.util.Goodies;
 import eppic.model.AssemblyContentDB;
 import eppic.model.AssemblyDB;
 import eppic.model.AssemblyScoreDB;
@@ -1126,9 +1125,14 @@ public class DataModelAdaptor {
 		}
 	}
 	
+	/**
+	 * Writes the model to file in the binary result format, see {@link ResultFileWriter}
+	 * @param file
+	 * @throws EppicException
+	 */
 	public void writeSerializedModelFile(File file) throws EppicException {
 		try {
-			Goodies.serialize(file,pdbInfo);
+			ResultFileWriter.write(pdbInfo, file);
 		} catch (IOException e) {
 			throw new EppicException(e, e.getMessage(), true);
 		}
@@ -206,6 +206,8 @@ public class EppicParams {
 	// default cache dirs
 	private static final String   DEF_BLAST_CACHE_DIR = null;
 	private static final String   DEF_ALN_CACHE_DIR = null;
+	private static final String   DEF_EVOL_CACHE_DIR = null;
+	private static final long     DEF_EVOL_CACHE_MAX_SIZE = 10240; // in MB
 	
 	// default use uniparc
 	private static final boolean  DEF_USE_UNIPARC = true;
@@ -213,6 +215,12 @@ public class EppicParams {
 	// default use pdb res serials for output
 	public static final boolean   DEF_USE_PDB_RES_SER = true;
 	
+	// default maximum number of chains whose evolutionary context is calculated concurrently (1 is serial)
+	private static final int      DEF_MAX_CONCURRENT_CHAINS = 1;
+	
+	// default maximum number of valid assemblies in full enumeration, above it enumeration is done on the heteromeric-contracted graph
+	private static final int      DEF_MAX_NUM_ASSEMBLIES_FULL_ENUMERATION = 1000;
+	
 	// Logistic regression model for interface classification
 	/** Intersection of the logistic regression classifier */
 	public static final double LOGIT_INTERSECT = -3.9;
@@ -343,11 +351,17 @@ public class EppicParams {
 			
 	private String   blastCacheDir;
 	private String   alnCacheDir;
+	private String   evolCacheDir;
+	private long     evolCacheMaxSize;
 	
 	private boolean  useUniparc;
 	
 	private boolean  usePdbResSer;
 	
+	private int      maxConcurrentChains;
+	
+	private int      maxNumAssembliesFullEnumeration;
+	
 	
 	// and finally the ones with no defaults
 	private String   blastDbDir; // no default
@@ -392,6 +406,9 @@ public class EppicParams {
 		this.homologsSearchMode = DEF_HOMOLOGS_SEARCH_MODE;
 		this.filterByDomain = false;
 		this.forceContractedAssemblyEnumeration = false; // should only be set to true for testing
+		this.maxConcurrentChains = DEF_MAX_CONCURRENT_CHAINS;
+		this.maxNumAssembliesFullEnumeration = DEF_MAX_NUM_ASSEMBLIES_FULL_ENUMERATION;
+		this.evolCacheMaxSize = DEF_EVOL_CACHE_MAX_SIZE;
 		
 	}
 	
@@ -919,6 +936,10 @@ public class EppicParams {
 		return progressLog;
 	}
 	
+	public void setProgressLog(PrintStream progressLog) {
+		this.progressLog = progressLog;
+	}
+	
 	public File getProgressLogFile() {
 		return progressLogFile;
 	}
@@ -1008,11 +1029,17 @@ public class EppicParams {
 			
 			blastCacheDir    = p.getProperty("BLAST_CACHE_DIR", DEF_BLAST_CACHE_DIR);
 			alnCacheDir		 = p.getProperty("ALN_CACHE_DIR", DEF_ALN_CACHE_DIR);
+			evolCacheDir	 = p.getProperty("EVOL_CACHE_DIR", DEF_EVOL_CACHE_DIR);
+			evolCacheMaxSize = Long.parseLong(p.getProperty("EVOL_CACHE_MAX_SIZE", Long.valueOf(DEF_EVOL_CACHE_MAX_SIZE).toString()));
 			
 			useUniparc       = Boolean.parseBoolean(p.getProperty("USE_UNIPARC", Boolean.valueOf(DEF_USE_UNIPARC).toString()));
 			
 			usePdbResSer	 = Boolean.parseBoolean(p.getProperty("USE_PDB_RES_SER", Boolean.valueOf(DEF_USE_PDB_RES_SER).toString()));
 			
+			maxConcurrentChains = Integer.parseInt(p.getProperty("MAX_CONCURRENT_CHAINS", Integer.valueOf(DEF_MAX_CONCURRENT_CHAINS).toString()));
+			
+			maxNumAssembliesFullEnumeration = Integer.parseInt(p.getProperty("MAX_NUM_ASSEMBLIES_FULL_ENUMERATION", Integer.valueOf(DEF_MAX_NUM_ASSEMBLIES_FULL_ENUMERATION).toString()));
+			
 			alphabet = new AAAlphabet(p.getProperty("CUSTOM_ALPHABET", DEF_ENTROPY_ALPHABET.toString()));
 			
 			
@@ -1102,6 +1129,31 @@ public class EppicParams {
 	public String getAlnCacheDir() {
 		return alnCacheDir;
 	}
+	
+	/**
+	 * Returns the directory of the persistent cache of homologs, alignments and entropies 
+	 * (see {@link EvolCache}), or null if not to be used
+	 * @return
+	 */
+	public String getEvolCacheDir() {
+		return evolCacheDir;
+	}
+	
+	public void setEvolCacheDir(String evolCacheDir) {
+		this.evolCacheDir = evolCacheDir;
+	}
+	
+	/**
+	 * Returns the maximum size in MB of the evolutionary cache dir
+	 * @return
+	 */
+	public long getEvolCacheMaxSize() {
+		return evolCacheMaxSize;
+	}
+	
+	public void setEvolCacheMaxSize(long evolCacheMaxSize) {
+		this.evolCacheMaxSize = evolCacheMaxSize;
+	}
 
 	public String getBlastDbDir() {
 		return blastDbDir;
@@ -1123,6 +1175,34 @@ public class EppicParams {
 		return usePdbResSer;
 	}
 	
+	/**
+	 * Returns the maximum number of chains whose evolutionary context (blast, redundancy 
+	 * reduction, alignment, entropies) will be calculated concurrently. The total number of 
+	 * threads (see {@link #getNumThreads()}) is split among the concurrent chains. 
+	 * A value of 1 means chains are processed serially. 
+	 * @return
+	 */
+	public int getMaxConcurrentChains() {
+		return maxConcurrentChains;
+	}
+	
+	public void setMaxConcurrentChains(int maxConcurrentChains) {
+		this.maxConcurrentChains = maxConcurrentChains;
+	}
+	
+	/**
+	 * Returns the maximum number of valid assemblies allowed in the full (exhaustive) assembly 
+	 * enumeration. If exceeded, assemblies are enumerated from the heteromeric-contracted graph.
+	 * @return
+	 */
+	public int getMaxNumAssembliesFullEnumeration() {
+		return maxNumAssembliesFullEnumeration;
+	}
+	
+	public void setMaxNumAssembliesFullEnumeration(int maxNumAssembliesFullEnumeration) {
+		this.maxNumAssembliesFullEnumeration = maxNumAssembliesFullEnumeration;
+	}
+	
 	public AAAlphabet getAlphabet() {
 		return alphabet;
 	}
@@ -0,0 +1,316 @@
+package eppic;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import eppic.commons.sequence.HomologList;
+import eppic.commons.util.Goodies;
+import eppic.commons.util.Interval;
+
+/**
+ * A persistent cache of the evolutionary context of UniProt reference sequences: the blast
+ * hits, the filtered and redundancy-reduced homologs, their alignment and the entropies, i.e.
+ * everything that is needed for scoring. The same UniProt reference interval appears in many
+ * PDB entries, for those the whole homologs search and alignment is skipped.
+ * <p>
+ * Entries are content-addressed: the key (see {@link #getKey(EppicParams, String, String, Interval)})
+ * contains the UniProt version, the reference id and interval and all parameters that influence
+ * the result, its MD5 sum being the file name. Each file contains the full key (to detect collisions)
+ * followed by the gzipped serialized {@link Entry}.
+ * <p>
+ * Files are written to a temporary file and atomically moved in place, so readers (in this or
+ * other JVMs sharing the directory) never see partial files. Once the total size goes over the
+ * maximum, the least recently used files (by modification time, updated on every hit)
+ * are removed until the size is below {@value #EVICTION_TARGET_FRACTION} of the maximum.
+ * <p>
+ * This class is thread safe.
+ *
+ */
+public class EvolCache {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(EvolCache.class);
+
+	/**
+	 * To be increased whenever the content of the entries or the meaning of the key changes
+	 */
+	private static final int FORMAT_VERSION = 1;
+
+	private static final int MAGIC = 0x45564331; // "EVC1"
+
+	private static final String FILE_SUFFIX = ".evol.gz";
+	private static final String TMP_FILE_SUFFIX = ".tmp";
+
+	private static final double EVICTION_TARGET_FRACTION = 0.9;
+
+	private static final long STALE_TMP_FILE_AGE = 24L*3600L*1000L; // in ms
+
+	/**
+	 * The cached evolutionary context of a UniProt reference
+	 */
+	public static class Entry implements Serializable {
+
+		private static final long serialVersionUID = 1L;
+
+		private final HomologList homologs;
+		private final double idCutoff;
+		private final double queryCov;
+
+		public Entry(HomologList homologs, double idCutoff, double queryCov) {
+			this.homologs = homologs;
+			this.idCutoff = idCutoff;
+			this.queryCov = queryCov;
+		}
+
+		public HomologList getHomologs() {
+			return homologs;
+		}
+
+		public double getIdCutoff() {
+			return idCutoff;
+		}
+
+		public double getQueryCov() {
+			return queryCov;
+		}
+	}
+
+	private final File dir;
+	private final long maxSize;
+
+	private final AtomicLong totalSize;
+	private volatile boolean sizeKnown;
+
+	private final AtomicLong hits;
+	private final AtomicLong misses;
+	private final AtomicLong writes;
+
+	/**
+	 * Constructs a cache in the given directory (created if needed)
+	 * @param dir
+	 * @param maxSize the maximum total size in bytes of the cache files
+	 * @throws IOException if the directory can't be created
+	 */
+	public EvolCache(File dir, long maxSize) throws IOException {
+		if (!dir.isDirectory() && !dir.mkdirs()) {
+			throw new IOException("Could not create evolutionary cache dir "+dir);
+		}
+		this.dir = dir;
+		this.maxSize = maxSize;
+		this.totalSize = new AtomicLong(0);
+		this.sizeKnown = false;
+		this.hits = new AtomicLong(0);
+		this.misses = new AtomicLong(0);
+		this.writes = new AtomicLong(0);
+	}
+
+	/**
+	 * Returns the cache key for the given UniProt reference interval and parameters.
+	 * @param params
+	 * @param uniprotVer
+	 * @param uniId
+	 * @param interv
+	 * @return
+	 */
+	public static String getKey(EppicParams params, String uniprotVer, String uniId, Interval interv) {
+		return "v"+FORMAT_VERSION+
+				"|uniprot="+uniprotVer+
+				"|ref="+uniId+
+				"|interval="+interv.beg+"-"+interv.end+
+				"|blastDb="+params.getBlastDb()+
+				"|uniparc="+params.isUseUniparc()+
+				"|filterByDomain="+params.isFilterByDomain()+
+				"|identicalsQcov="+params.getMinQueryCovForIdenticalsRemoval()+
+				"|softId="+params.getHomSoftIdCutoff()+
+				"|hardId="+params.getHomHardIdCutoff()+
+				"|idStep="+params.getHomIdStep()+
+				"|qcov="+params.getQueryCoverageCutoff()+
+				"|minSeqs="+params.getMinNumSeqs()+
+				"|maxSeqs="+params.getMaxNumSeqs()+
+				"|alphabet="+params.getAlphabet();
+	}
+
+	/**
+	 * Returns the cached entry for the given key or null if not in cache.
+	 * Unreadable or corrupted files are treated as misses and removed.
+	 * @param key
+	 * @return
+	 */
+	public Entry get(String key) {
+		File file = getFile(key);
+		if (!file.exists()) {
+			misses.incrementAndGet();
+			return null;
+		}
+
+		try (ObjectInputStream in = new ObjectInputStream(new GZIPInputStream(new BufferedInputStream(new FileInputStream(file))))) {
+			if (in.readInt()!=MAGIC) {
+				throw new IOException("Wrong magic number");
+			}
+			String keyInFile = in.readUTF();
+			if (!keyInFile.equals(key)) {
+				// an MD5 collision, extremely unlikely: we don't touch the other entry
+				LOGGER.warn("Evolutionary cache file {} has key {}, different from requested {}", file, keyInFile, key);
+				misses.incrementAndGet();
+				return null;
+			}
+			Entry entry = (Entry) in.readObject();
+
+			// the modification time is the last access time for eviction
+			file.setLastModified(System.currentTimeMillis());
+			hits.incrementAndGet();
+			return entry;
+
+		} catch (IOException|ClassNotFoundException|ClassCastException e) {
+			// the file could have been evicted by another process while we were reading it
+			LOGGER.warn("Could not read evolutionary cache file {}, will remove it. Error: {}", file, e.getMessage());
+			long length = file.length();
+			if (file.delete()) {
+				totalSize.addAndGet(-length);
+			}
+			misses.incrementAndGet();
+			return null;
+		}
+	}
+
+	/**
+	 * Stores the given entry. Failures to write are logged and otherwise ignored.
+	 * @param key
+	 * @param entry
+	 */
+	public void put(String key, Entry entry) {
+		File file = getFile(key);
+		File subDir = file.getParentFile();
+
+		File tmpFile = null;
+		try {
+			if (!subDir.isDirectory() && !subDir.mkdirs()) {
+				throw new IOException("Could not create dir "+subDir);
+			}
+			tmpFile = File.createTempFile(file.getName(), TMP_FILE_SUFFIX, subDir);
+
+			try (ObjectOutputStream out = new ObjectOutputStream(new GZIPOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile))))) {
+				out.writeInt(MAGIC);
+				out.writeUTF(key);
+				out.writeObject(entry);
+			}
+
+			long size = tmpFile.length();
+			try {
+				Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+			writes.incrementAndGet();
+			LOGGER.info("Written evolutionary cache file {} ({} KB)", file, size/1024);
+
+			if (totalSize.addAndGet(size)>maxSize || !sizeKnown) {
+				evictIfNeeded();
+			}
+
+		} catch (IOException e) {
+			LOGGER.warn("Could not write evolutionary cache file {}. Error: {}", file, e.getMessage());
+			if (tmpFile!=null) tmpFile.delete();
+		}
+	}
+
+	/**
+	 * Measures the actual size of the cache dir and removes the least recently used files
+	 * if it is over the maximum size.
+	 */
+	private synchronized void evictIfNeeded() {
+
+		List<File> files = new ArrayList<>();
+		long size = 0;
+		File[] subDirs = dir.listFiles(File::isDirectory);
+		if (subDirs==null) return;
+		for (File subDir : subDirs) {
+			File[] subDirFiles = subDir.listFiles();
+			if (subDirFiles==null) continue;
+			for (File f : subDirFiles) {
+				if (f.getName().endsWith(FILE_SUFFIX)) {
+					files.add(f);
+					size += f.length();
+				} else if (f.getName().endsWith(TMP_FILE_SUFFIX) && 
+						System.currentTimeMillis()-f.lastModified()>STALE_TMP_FILE_AGE) {
+					// left behind by a writer that died
+					f.delete();
+				}
+			}
+		}
+		sizeKnown = true;
+
+		if (size<=maxSize) {
+			totalSize.set(size);
+			return;
+		}
+
+		// sort keys taken once: the modification times can change while sorting
+		long[] lastModified = new long[files.size()];
+		Integer[] order = new Integer[files.size()];
+		for (int i=0;i<files.size();i++) {
+			lastModified[i] = files.get(i).lastModified();
+			order[i] = i;
+		}
+		Arrays.sort(order, (i, j) -> Long.compare(lastModified[i], lastModified[j]));
+
+		long target = (long) (maxSize*EVICTION_TARGET_FRACTION);
+		int numEvicted = 0;
+		for (int i=0;i<order.length && size>target;i++) {
+			File f = files.get(order[i]);
+			long length = f.length();
+			// open readers (also in other processes) keep reading fine from a deleted file
+			if (f.delete()) {
+				size -= length;
+				numEvicted++;
+			}
+		}
+		totalSize.set(size);
+		LOGGER.info("Evicted {} files from evolutionary cache {}, size is now {} MB", numEvicted, dir, size/1024/1024);
+	}
+
+	private File getFile(String key) {
+		String hash = Goodies.computeMD5Sum(key).toLowerCase();
+		// a first level of subdirs to avoid too many files in one dir
+		return new File(new File(dir, hash.substring(0, 2)), hash+FILE_SUFFIX);
+	}
+
+	public File getDir() {
+		return dir;
+	}
+
+	public long getHits() {
+		return hits.get();
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+	public long getWrites() {
+		return writes.get();
+	}
+
+	@Override
+	public String toString() {
+		return dir+": "+getHits()+" hits, "+getMisses()+" misses, "+getWrites()+" writes";
+	}
+}
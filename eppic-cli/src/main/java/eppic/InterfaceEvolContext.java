@@ -4,7 +4,6 @@ import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.List;
 
-import org.apache.commons.math.random.RandomDataImpl;
 import org.biojava.nbio.structure.Atom;
 import org.biojava.nbio.structure.Chain;
 import org.biojava.nbio.structure.Group;
@@ -33,6 +32,10 @@ public class InterfaceEvolContext implements Serializable {
 	private EvolCoreRimPredictor evolCoreRimPredictor;
 	private EvolCoreSurfacePredictor evolCoreSurfacePredictor;
 	
+	// the conservation scores of the surface residues of each side, see getSurfaceResidueScores
+	private double[][] surfaceResidueScores;
+	private double surfaceResidueScoresMinAsa;
+	
 	public InterfaceEvolContext(StructureInterface interf, InterfaceEvolContextList parent) {
 		this.interf = interf;
 		this.parent = parent;
@@ -184,24 +187,37 @@ public class InterfaceEvolContext implements Serializable {
 	public double[] getSurfaceScoreDist(int molecId, int numSamples, int sampleSize, double minAsaForSurface) {
 		if (sampleSize==0) return new double[0];
 
-		double[] dist = new double[numSamples];
+		ChainEvolContext cec = this.parent.getChainEvolContext(getChainId(molecId));
 		
-		List<Group> surfResidues = null;
-		if (molecId==FIRST) surfResidues = interf.getSurfaceResidues(minAsaForSurface).getFirst();
-		if (molecId==SECOND) surfResidues = interf.getSurfaceResidues(minAsaForSurface).getSecond();
+		// the distributions are cached in the parent list, they are shared by all interfaces with equal surfaces 
+		return parent.getSurfaceScoreDist(cec, getSurfaceResidueScores(molecId, minAsaForSurface), numSamples, sampleSize, minAsaForSurface);
+	}
+	
+	/**
+	 * Returns the conservation scores of the residues in the surface for given molecId. 
+	 * The scores are looked up only once per side and then kept for subsequent calls 
+	 * with the same minAsaForSurface. 
+	 * @param molecId the molecule id: either {@link #FIRST} or {@link #SECOND}
+	 * @param minAsaForSurface the minimum ASA for a residue to be considered surface
+	 * @return an array with the conservation score of each surface residue, NaN for residues 
+	 * without a mapping to the reference UniProt
+	 * @see ChainEvolContext#getConservationScoresForResidues(List)
+	 */
+	public synchronized double[] getSurfaceResidueScores(int molecId, double minAsaForSurface) {
+		if (surfaceResidueScores==null || surfaceResidueScoresMinAsa!=minAsaForSurface) {
+			surfaceResidueScores = new double[2][];
+			surfaceResidueScoresMinAsa = minAsaForSurface;
+		}
 		
-		RandomDataImpl rd = new RandomDataImpl();
-		for (int i=0;i<numSamples;i++) {
-			Object[] sample = rd.nextSample(surfResidues, sampleSize);
-			List<Group> residues = new ArrayList<Group>(sample.length);
-			for (int j=0;j<sample.length;j++){
-				residues.add((Group)sample[j]);
-			}
-			ChainEvolContext cec = this.parent.getChainEvolContext(getChainId(molecId));
-			dist[i] = cec.calcScoreForResidueSet(residues);
-		}		
+		if (surfaceResidueScores[molecId]==null) {
+			List<Group> surfResidues = null;
+			if (molecId==FIRST) surfResidues = interf.getSurfaceResidues(minAsaForSurface).getFirst();
+			if (molecId==SECOND) surfResidues = interf.getSurfaceResidues(minAsaForSurface).getSecond();
 
-		return dist;
+			ChainEvolContext cec = this.parent.getChainEvolContext(getChainId(molecId));
+			surfaceResidueScores[molecId] = cec.getConservationScoresForResidues(surfResidues);
+		}
+		return surfaceResidueScores[molecId];
 	}
 	
 	/**
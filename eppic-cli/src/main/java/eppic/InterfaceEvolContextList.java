@@ -2,11 +2,19 @@ package eppic;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import org.apache.commons.math.random.JDKRandomGenerator;
+import org.apache.commons.math.random.RandomGenerator;
 import org.biojava.nbio.structure.contact.StructureInterface;
 import org.biojava.nbio.structure.contact.StructureInterfaceCluster;
 import org.biojava.nbio.structure.contact.StructureInterfaceList;
@@ -25,6 +33,59 @@ public class InterfaceEvolContextList implements Iterable<InterfaceEvolContext>,
 
 	private static final Logger LOGGER = LoggerFactory.getLogger(InterfaceEvolContextList.class);
 	
+	/**
+	 * The base seed for the random generators used to sample surface score distributions. 
+	 * Each distribution gets its own generator seeded from this and the distribution's cache key, 
+	 * so that results are reproducible independently of the order in which interfaces are scored.
+	 */
+	private static final long SURFACE_SAMPLING_SEED = 1511;
+	
+	/**
+	 * The key identifying a surface score distribution: two interface sides with the same key
+	 * would sample from exactly the same distribution.
+	 */
+	private static class SurfaceScoreDistKey {
+		
+		private final String sequenceId;
+		private final List<Double> conservationScores; // compared by identity
+		private final double minAsaForSurface;
+		private final int numSamples;
+		private final int sampleSize;
+		private final double[] surfaceResidueScores;
+		
+		public SurfaceScoreDistKey(ChainEvolContext cec, double[] surfaceResidueScores, int numSamples, int sampleSize, double minAsaForSurface) {
+			this.sequenceId = cec.getSequenceId();
+			this.conservationScores = cec.getConservationScores();
+			this.minAsaForSurface = minAsaForSurface;
+			this.numSamples = numSamples;
+			this.sampleSize = sampleSize;
+			this.surfaceResidueScores = surfaceResidueScores;
+		}
+		
+		@Override
+		public int hashCode() {
+			int result = sequenceId.hashCode();
+			result = 31 * result + Double.hashCode(minAsaForSurface);
+			result = 31 * result + numSamples;
+			result = 31 * result + sampleSize;
+			result = 31 * result + Arrays.hashCode(surfaceResidueScores);
+			return result;
+		}
+		
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) return true;
+			if (!(obj instanceof SurfaceScoreDistKey)) return false;
+			SurfaceScoreDistKey other = (SurfaceScoreDistKey) obj;
+			return sequenceId.equals(other.sequenceId) && 
+					conservationScores == other.conservationScores &&
+					minAsaForSurface == other.minAsaForSurface &&
+					numSamples == other.numSamples &&
+					sampleSize == other.sampleSize &&
+					Arrays.equals(surfaceResidueScores, other.surfaceResidueScores);
+		}
+	}
+	
 	private List<InterfaceEvolContext> list;
 	
 	//private StructureInterfaceList chainInterfList; 
@@ -38,6 +99,12 @@ public class InterfaceEvolContextList implements Iterable<InterfaceEvolContext>,
 	private Map<Integer,EvolCoreSurfaceClusterPredictor> ecscPredictors;
 	private Map<Integer,CombinedClusterPredictor> ccPredictors;
 	
+	private double coreSurfaceMinAsaForSurface;
+	
+	private transient ConcurrentMap<SurfaceScoreDistKey, double[]> surfaceScoreDists;
+	private transient AtomicInteger surfaceScoreDistsHits;
+	private transient AtomicInteger surfaceScoreDistsMisses;
+	
 	/**
 	 * Constructs a InterfaceEvolContextList given a ChainInterfaceList with all 
 	 * interfaces of a given PDB and a ChainEvolContextList with all evolutionary 
@@ -109,14 +176,105 @@ public class InterfaceEvolContextList implements Iterable<InterfaceEvolContext>,
 	}
 	
 	public void scoreCoreSurface() {
-		for (int i=0;i<list.size();i++) {
-			list.get(i).getEvolCoreSurfacePredictor().computeScores();
+		scoreCoreSurface(1);
+	}
+	
+	/**
+	 * Computes the core-surface scores of all interfaces and interface clusters. 
+	 * If numThreads is larger than 1 the interfaces are scored in parallel in a fork-join pool.
+	 * The surface score distributions are cached and shared by all interface sides 
+	 * with identical surfaces, see {@link #getSurfaceScoreDist(ChainEvolContext, double[], int, int, double)}.
+	 * @param numThreads
+	 */
+	public void scoreCoreSurface(int numThreads) {
+		initSurfaceScoreDistsCache();
+		
+		if (numThreads<=1 || list.size()<=1) {
+			for (int i=0;i<list.size();i++) {
+				list.get(i).getEvolCoreSurfacePredictor().computeScores();
+			}
+		} else {
+			// The PDB-to-UniProt mappings (biojava alignments and compounds) initialise some of their 
+			// lookup tables lazily, which is not thread safe. We first go through all interface sides 
+			// serially so that everything needed for scoring is initialised before going parallel.
+			for (InterfaceEvolContext iec:list) {
+				for (int molecId:new int[]{InterfaceEvolContext.FIRST, InterfaceEvolContext.SECOND}) {
+					ChainEvolContext cec = iec.getChainEvolContext(molecId);
+					if (cec==null || !cec.hasQueryMatch() || !InterfaceEvolContext.isProtein(iec.getInterface(), molecId)) continue;
+					iec.getSurfaceResidueScores(molecId, coreSurfaceMinAsaForSurface);
+					iec.getUnreliableSurfaceRes(molecId, coreSurfaceMinAsaForSurface);
+				}
+			}
+			
+			LOGGER.info("Scoring core-surface of {} interfaces with {} threads", list.size(), numThreads);
+			ForkJoinPool pool = new ForkJoinPool(numThreads);
+			try {
+				List<ForkJoinTask<?>> tasks = new ArrayList<ForkJoinTask<?>>();
+				for (InterfaceEvolContext iec:list) {
+					tasks.add(pool.submit(() -> iec.getEvolCoreSurfacePredictor().computeScores()));
+				}
+				for (ForkJoinTask<?> task:tasks) {
+					task.join();
+				}
+			} finally {
+				pool.shutdown();
+			}
 		}
+		
+		LOGGER.info("Surface score distributions: {} sampled, {} taken from cache", 
+				surfaceScoreDistsMisses.get(), surfaceScoreDistsHits.get());
+		
 		for (EvolCoreSurfaceClusterPredictor ecscp:this.ecscPredictors.values()) {
 			ecscp.computeScores(); 
 		}
 	}
 	
+	private synchronized void initSurfaceScoreDistsCache() {
+		if (surfaceScoreDists==null) {
+			surfaceScoreDists = new ConcurrentHashMap<SurfaceScoreDistKey, double[]>();
+			surfaceScoreDistsHits = new AtomicInteger(0);
+			surfaceScoreDistsMisses = new AtomicInteger(0);
+		}
+	}
+	
+	/**
+	 * Returns the distribution of average scores of numSamples random subsets of sampleSize residues 
+	 * from the given surface residue scores. Distributions are cached: any other interface side with 
+	 * the same chain, conservation scores, surface residues scores, sample size and min ASA for surface 
+	 * gets the same distribution. The random generator of each distribution is seeded from its key, 
+	 * so that distributions are reproducible.
+	 * @param cec the ChainEvolContext of the interface side
+	 * @param surfaceResidueScores the conservation scores of the surface residues of the interface side
+	 * @param numSamples
+	 * @param sampleSize
+	 * @param minAsaForSurface
+	 * @return the distribution, must not be modified
+	 */
+	public double[] getSurfaceScoreDist(ChainEvolContext cec, double[] surfaceResidueScores, int numSamples, int sampleSize, double minAsaForSurface) {
+		initSurfaceScoreDistsCache();
+		
+		SurfaceScoreDistKey key = new SurfaceScoreDistKey(cec, surfaceResidueScores, numSamples, sampleSize, minAsaForSurface);
+		
+		double[] dist = surfaceScoreDists.get(key);
+		if (dist!=null) {
+			surfaceScoreDistsHits.incrementAndGet();
+			return dist;
+		}
+		
+		RandomGenerator randomGenerator = new JDKRandomGenerator();
+		randomGenerator.setSeed(SURFACE_SAMPLING_SEED * 31 + key.hashCode());
+		dist = new ResidueScoreSampler(surfaceResidueScores, randomGenerator).getScoreDist(numSamples, sampleSize);
+		
+		// if another thread sampled the same key concurrently we keep the first one, both are identical anyway
+		double[] existing = surfaceScoreDists.putIfAbsent(key, dist);
+		if (existing!=null) {
+			surfaceScoreDistsHits.incrementAndGet();
+			return existing;
+		}
+		surfaceScoreDistsMisses.incrementAndGet();
+		return dist;
+	}
+	
 	public void setCoreRimScoreCutoff(double coreRimScoreCutoff) {
 		for (int i=0;i<list.size();i++) {
 			list.get(i).getEvolCoreRimPredictor().setCallCutoff(coreRimScoreCutoff);	
@@ -144,6 +302,8 @@ public class InterfaceEvolContextList implements Iterable<InterfaceEvolContext>,
 	
 	public void setCoreSurfacePredBsaToAsaCutoff(double bsaToAsaCutoff, double minAsaForSurface) {
 		
+		this.coreSurfaceMinAsaForSurface = minAsaForSurface;
+		
 		for (int i=0;i<list.size();i++) {
 			list.get(i).getEvolCoreSurfacePredictor().setBsaToAsaCutoff(bsaToAsaCutoff, minAsaForSurface);
 		}		
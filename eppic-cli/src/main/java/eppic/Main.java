@@ -23,6 +23,7 @@ import java.util.zip.GZIPOutputStream;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.core.LoggerContext;
 import org.biojava.nbio.core.sequence.io.util.IOUtils;
+import org.biojava.nbio.structure.Atom;
 import org.biojava.nbio.structure.Compound;
 import org.biojava.nbio.structure.Structure;
 import org.biojava.nbio.structure.StructureException;
@@ -51,6 +52,7 @@ import eppic.assembly.GraphUtils;
 import eppic.assembly.LatticeGraph3D;
 import eppic.assembly.gui.LatticeGUIMustache;
 import eppic.commons.util.FileTypeGuesser;
+import eppic.commons.util.MmcifAtomSiteWriter;
 import eppic.commons.util.StructureUtils;
 import eppic.predictors.CombinedClusterPredictor;
 import eppic.predictors.CombinedPredictor;
@@ -87,6 +89,11 @@ public class Main {
 	private int stepCount;
 	
 	private DataModelAdaptor modelAdaptor;
+	
+	/**
+	 * The resources shared with other entries when running in batch mode, null otherwise
+	 */
+	private BatchResources batchResources;
 		
 	public Main() {
 		this.params = new EppicParams();
@@ -153,19 +160,10 @@ public class Main {
 
 	public void doLoadPdb() throws EppicException {	
 		
-		// Before loading anything we make sure that BioJava is set to DownloadChemCompProvider.
-		// This is in case the default is ReducedChemCompProvider.
-		// That has a huge effect in the understanding of the chemical components, for instance 
-		// what residues are non-standard aminoacids
-		
-		// TODO if BioJava 4.2 changes the default or the behavior of DownloadChemCompProvider
-		//      we will need to revise this
-		
-		
-		if (params.getAtomCachePath()!=null)
-			ChemCompGroupFactory.setChemCompProvider(new DownloadChemCompProvider(params.getAtomCachePath()));
-		else 
-			ChemCompGroupFactory.setChemCompProvider(new DownloadChemCompProvider());
+		// in batch mode the chem comp provider and the AtomCache are set once for all entries
+		if (batchResources==null) {
+			setUpChemCompProvider(params);
+		}
 		
 		params.getProgressLog().println("Loading PDB data: "+(params.getInFile()==null?params.getPdbCode():params.getInFile().getName()));
 		writeStep("Calculating Interfaces");
@@ -173,29 +171,9 @@ public class Main {
 		try {
 			if (!params.isInputAFile()) {
 				
-				AtomCache cache = null;
-								
-				if (params.getAtomCachePath()!=null) {
-					LOGGER.info("Path given in ATOM_CACHE_PATH, setting AtomCache to {} and ignoring env variable PDB_DIR", params.getAtomCachePath());
-					cache = new AtomCache(params.getAtomCachePath());
-				} else {
-					cache = new AtomCache();
-				}
-				cache.setUseMmCif(true);
-				
-				// we set default fetch behavior to FETCH_IF_OUTDATED which is the closest to rsync
-				if (params.getFetchBehavior()!=null) {
-					cache.setFetchBehavior(params.getFetchBehavior());
-				} else {
-					cache.setFetchBehavior(EppicParams.DEF_FETCH_BEHAVIOR);
+				if (batchResources==null) {
+					setUpAtomCache(params);
 				}
-				FileParsingParameters fileParsingParams = new FileParsingParameters();
-				fileParsingParams.setAlignSeqRes(true);
-				fileParsingParams.setParseBioAssembly(true);
-				cache.setFileParsingParams(fileParsingParams);
-				
-				StructureIO.setAtomCache(cache); 
-				
 				
 				try {
 					pdb = StructureIO.getStructure(params.getPdbCode());
@@ -262,6 +240,55 @@ public class Main {
 		
 	}
 
+	/**
+	 * Sets BioJava's chem comp provider to DownloadChemCompProvider
+	 * @param params
+	 */
+	public static void setUpChemCompProvider(EppicParams params) {
+		// Before loading anything we make sure that BioJava is set to DownloadChemCompProvider.
+		// This is in case the default is ReducedChemCompProvider.
+		// That has a huge effect in the understanding of the chemical components, for instance 
+		// what residues are non-standard aminoacids
+		
+		// TODO if BioJava 4.2 changes the default or the behavior of DownloadChemCompProvider
+		//      we will need to revise this
+		
+		
+		if (params.getAtomCachePath()!=null)
+			ChemCompGroupFactory.setChemCompProvider(new DownloadChemCompProvider(params.getAtomCachePath()));
+		else 
+			ChemCompGroupFactory.setChemCompProvider(new DownloadChemCompProvider());
+	}
+	
+	/**
+	 * Sets up the AtomCache used by BioJava's StructureIO to load structures from PDB codes
+	 * @param params
+	 */
+	public static void setUpAtomCache(EppicParams params) {
+		AtomCache cache = null;
+		
+		if (params.getAtomCachePath()!=null) {
+			LOGGER.info("Path given in ATOM_CACHE_PATH, setting AtomCache to {} and ignoring env variable PDB_DIR", params.getAtomCachePath());
+			cache = new AtomCache(params.getAtomCachePath());
+		} else {
+			cache = new AtomCache();
+		}
+		cache.setUseMmCif(true);
+		
+		// we set default fetch behavior to FETCH_IF_OUTDATED which is the closest to rsync
+		if (params.getFetchBehavior()!=null) {
+			cache.setFetchBehavior(params.getFetchBehavior());
+		} else {
+			cache.setFetchBehavior(EppicParams.DEF_FETCH_BEHAVIOR);
+		}
+		FileParsingParameters fileParsingParams = new FileParsingParameters();
+		fileParsingParams.setAlignSeqRes(true);
+		fileParsingParams.setParseBioAssembly(true);
+		cache.setFileParsingParams(fileParsingParams);
+		
+		StructureIO.setAtomCache(cache); 
+	}
+
 	public void doFindInterfaces() throws EppicException {
 
 		params.getProgressLog().println("Calculating possible interfaces...");
@@ -372,7 +399,8 @@ public class Main {
 	public void doFindAssemblies() throws StructureException { 
 		
 		params.getProgressLog().println("Calculating possible assemblies...");
-		validAssemblies = new CrystalAssemblies(pdb, interfaces, params.isForceContractedAssemblyEnumeration()); 
+		validAssemblies = new CrystalAssemblies(pdb, interfaces, params.isForceContractedAssemblyEnumeration(), 
+				params.getMaxNumAssembliesFullEnumeration(), params.getNumThreads()); 
 
 		StringBuilder sb = new StringBuilder();
 		for (Assembly a: validAssemblies) {
@@ -522,12 +550,10 @@ public class Main {
 			// INTERFACE files
 			for (StructureInterface interf : interfaces) {
 				File outputFile = params.getOutputFile(EppicParams.INTERFACES_COORD_FILES_SUFFIX + "." + interf.getId() + EppicParams.MMCIF_FILE_EXTENSION);
-				PrintStream ps = new PrintStream(new GZIPOutputStream(new FileOutputStream(outputFile)));				
-				ps.print(interf.toMMCIF());
-				ps.close();
+				writeInterfaceToMmCifFile(interf, outputFile);
 				if (params.isGeneratePdbFiles()) { 
 					outputFile = params.getOutputFile(EppicParams.INTERFACES_COORD_FILES_SUFFIX + "." + interf.getId() + EppicParams.PDB_FILE_EXTENSION);
-					ps = new PrintStream(new GZIPOutputStream(new FileOutputStream(outputFile)));
+					PrintStream ps = new PrintStream(new GZIPOutputStream(new FileOutputStream(outputFile)));
 					ps.print(interf.toPDB());
 					ps.close();
 				}				
@@ -558,6 +584,39 @@ public class Main {
 		} 
 	}
 
+	/**
+	 * Writes the interface to mmCIF file (gzipped) with the same content as {@link StructureInterface#toMMCIF()},
+	 * streaming the atoms to the file instead of formatting the whole file in memory.
+	 * @param interf
+	 * @param file
+	 * @throws IOException
+	 */
+	private static void writeInterfaceToMmCifFile(StructureInterface interf, File file) throws IOException {
+		String molecId1 = interf.getMoleculeIds().getFirst();
+		String molecId2 = interf.getMoleculeIds().getSecond();
+		boolean symRelated = interf.isSymRelated();
+		if (symRelated) {
+			// if both chains are named equally we still want to name them differently in the output mmCIF file
+			// so that molecular viewers can handle properly the 2 chains as separate entities
+			molecId2 = molecId2 + "_" + interf.getTransforms().getSecond().getTransformId();
+		}
+
+		try (MmcifAtomSiteWriter writer = new MmcifAtomSiteWriter(file)) {
+			writer.writeHeader("BioJava_interface_" + interf.getId());
+
+			// atom ids are renumbered if sym related, otherwise they would be duplicated
+			int atomId = 1;
+			for (Atom atom : interf.getMolecules().getFirst()) {
+				writer.writeAtom(atom, molecId1, molecId1, symRelated ? atomId : atom.getPDBserial(), null);
+				atomId++;
+			}
+			for (Atom atom : interf.getMolecules().getSecond()) {
+				writer.writeAtom(atom, molecId2, molecId2, symRelated ? atomId : atom.getPDBserial(), null);
+				atomId++;
+			}
+		}
+	}
+
 	public void doWriteAssemblyDiagrams() throws EppicException {
 
 		// should not happen, there should always be 1 assembly (the trivial no-interfaces engaged one)
@@ -786,8 +845,21 @@ public class Main {
 		
 		try {
 			cecs = new ChainEvolContextList(pdb,params);
+			
+			if (batchResources!=null) {
+				// reusing the SIFTS data and UniProt connection already open in this JVM
+				if (params.getSiftsFile()!=null) {
+					cecs.setSiftsConn(batchResources.getSiftsConnection(params.getSiftsFile()));
+				}
+				if (cecs.isUseLocalUniprot()) {
+					cecs.setUniProtLocalConnection(batchResources.getUniProtLocalConnection());
+				}
+				cecs.setEvolCache(batchResources.getEvolCache(params));
+			}
 		} catch (SQLException e) {
 			throw new EppicException(e,"Could not connect to local UniProt database server: "+e.getMessage(),true);
+		} catch (IOException e) {
+			throw new EppicException(e,"Could not read SIFTS data: "+e.getMessage(),true);
 		}
 		
 		// a) getting the uniprot ids corresponding to the query (the pdb sequence)
@@ -827,7 +899,7 @@ public class Main {
 
 			// core-surface
 			iecList.setCoreSurfacePredBsaToAsaCutoff(params.getCAcutoffForZscore(), params.getMinAsaForSurface()); // calls calcRimAndCores as well
-			iecList.scoreCoreSurface();
+			iecList.scoreCoreSurface(params.getNumThreads());
 
 			// note this adds also the entropies to the residue details
 			modelAdaptor.setEvolScores(iecList);
@@ -940,60 +1012,7 @@ public class Main {
 			if (loadConfigFile)
 				loadConfigFile();
 			
-			try {
-				LOGGER.info("Running in host "+InetAddress.getLocalHost().getHostName());
-			} catch (UnknownHostException e) {
-				LOGGER.warn("Could not determine host where we are running.");
-			}
-			
-			// 0 load pdb
-			doLoadPdb();
-
-			// 1 finding interfaces
-			doFindInterfaces();
-			
-					
-			// 2 find the assemblies
-			doFindAssemblies();
-
-			
-			// TODO call doHBPlus when fixed
-			// try hbplus if executable is set, writes pdb files needed for it (which then are overwritten in doWritePdbFiles)
-			//doHBPlus();
-			
-			doGeomScoring();
-			
-			if (params.isDoEvolScoring()) {
-				// 3 finding evolutionary context		
-				doFindEvolContext();
-
-				// 4 scoring
-				doEvolScoring();
-				
-				// 5 combined scoring
-				doCombinedScoring();
-				
-			}
-			
-			// 6 score assemblies and predict most likely assembly
-			doAssemblyScoring();
-			
-			// 7 write TSV files (only if not in -w) 	
-			doWriteTextOutputFiles();
-			
-			// 8 write coordinate files (only if in -l)
-			doWriteCoordFiles();
-			
-			// 9 write assembly diagrams (only if in -P)
-			doWriteAssemblyDiagrams();
-			
-			// 10 writing pymol files (only if in -l)
-			doWritePymolFiles();
-			
-			// 11 writing out the model serialized file and "finish" file for web ui (only if in -w)
-			doWriteFinalFiles();
-
-			
+			runSteps();
 
 			long end = System.nanoTime();
 			LOGGER.info("Finished successfully (total runtime "+((end-start)/1000000000L)+"s)");
@@ -1017,6 +1036,92 @@ public class Main {
 		
 	}
 	
+	/**
+	 * Runs all the analysis steps, from loading the structure to writing the output files
+	 * @throws EppicException
+	 * @throws StructureException
+	 */
+	private void runSteps() throws EppicException, StructureException {
+		
+		try {
+			LOGGER.info("Running in host "+InetAddress.getLocalHost().getHostName());
+		} catch (UnknownHostException e) {
+			LOGGER.warn("Could not determine host where we are running.");
+		}
+		
+		// 0 load pdb
+		doLoadPdb();
+
+		// 1 finding interfaces
+		doFindInterfaces();
+		
+				
+		// 2 find the assemblies
+		doFindAssemblies();
+
+		
+		// TODO call doHBPlus when fixed
+		// try hbplus if executable is set, writes pdb files needed for it (which then are overwritten in doWritePdbFiles)
+		//doHBPlus();
+		
+		doGeomScoring();
+		
+		if (params.isDoEvolScoring()) {
+			// 3 finding evolutionary context		
+			doFindEvolContext();
+
+			// 4 scoring
+			doEvolScoring();
+			
+			// 5 combined scoring
+			doCombinedScoring();
+			
+		}
+		
+		// 6 score assemblies and predict most likely assembly
+		doAssemblyScoring();
+		
+		// 7 write TSV files (only if not in -w) 	
+		doWriteTextOutputFiles();
+		
+		// 8 write coordinate files (only if in -l)
+		doWriteCoordFiles();
+		
+		// 9 write assembly diagrams (only if in -P)
+		doWriteAssemblyDiagrams();
+		
+		// 10 writing pymol files (only if in -l)
+		doWritePymolFiles();
+		
+		// 11 writing out the model serialized file and "finish" file for web ui (only if in -w)
+		doWriteFinalFiles();
+	}
+	
+	/**
+	 * Runs the full eppic analysis for one entry in batch mode (see {@link BatchRunner}).
+	 * Logging and config file are not set up here, they are the responsibility of the caller.
+	 * Contrary to the other run methods, errors are not logged and the JVM is not exited: 
+	 * exceptions are passed on to the caller so that other entries can continue.
+	 * @param params the parameters for this entry
+	 * @param batchResources the resources shared by all entries in the batch
+	 * @throws EppicException
+	 * @throws StructureException
+	 */
+	public void runBatchEntry(EppicParams params, BatchResources batchResources) throws EppicException, StructureException {
+		this.params = params;
+		this.batchResources = batchResources;
+		
+		LOGGER.info(EppicParams.PROGRAM_NAME+" version "+EppicParams.PROGRAM_VERSION);
+		LOGGER.info("Build git SHA: {}", EppicParams.BUILD_GIT_SHA);
+		
+		long start = System.nanoTime();
+		
+		runSteps();
+		
+		long end = System.nanoTime();
+		LOGGER.info("Finished successfully (total runtime "+((end-start)/1000000000L)+"s)");
+	}
+	
 	public DataModelAdaptor getDataModelAdaptor() {
 		return modelAdaptor;
 	}
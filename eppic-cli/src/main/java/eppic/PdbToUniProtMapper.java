@@ -1,6 +1,7 @@
 package eppic;
 
 import java.io.Serializable;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
@@ -510,8 +511,66 @@ public class PdbToUniProtMapper implements Serializable {
 	 */
 	public int getUniProtIndexForPdbGroup(Group g, boolean positionWithinSubinterval) {
 
-		Chain c = g.getChain();
+		SequencePair<ProteinSequence,AminoAcidCompound>  alignment = getAlignment(g.getChain());
+
+		int resser = getSeqresSerial(g);
 
+		return getUniProtIndexForSeqresSerial(alignment, resser, g, positionWithinSubinterval);
+	}
+	
+	/**
+	 * Given a list of residues, returns their corresponding UniProt's sequence indices. 
+	 * The result is identical to calling {@link #getUniProtIndexForPdbGroup(Group, boolean)} 
+	 * for each residue, but the ATOM groups of each chain are indexed only once, 
+	 * instead of being scanned for every residue.
+	 * @param groups the groups
+	 * @param positionWithinSubinterval if true the returned positions will be with respect to the UniProt reference
+	 * subinterval that matches the PDB, if false the returned positions will be with respect to the full
+	 * UniProt reference sequence 
+	 * @return an array of the same size as groups with the mapped UniProt sequence positions or -1 
+	 * for those that map to a gap 
+	 */
+	public int[] getUniProtIndicesForPdbGroups(List<Group> groups, boolean positionWithinSubinterval) {
+		
+		int[] uniProtIndices = new int[groups.size()];
+		
+		// only needed if the sequence comes from ATOM: chain to group to 1-based index in ATOM sequence
+		Map<Chain, Map<Group,Integer>> atomSerials = new IdentityHashMap<Chain, Map<Group,Integer>>();
+		
+		for (int i=0;i<groups.size();i++) {
+			Group g = groups.get(i);
+			Chain c = g.getChain();
+			
+			int resser;
+			if (sequenceFromAtom) {
+				Map<Group,Integer> chainSerials = atomSerials.get(c);
+				if (chainSerials==null) {
+					// this has to behave exactly in the same way as getSeqresSerial(Group)
+					chainSerials = new IdentityHashMap<Group,Integer>();
+					List<Group> chainGroups = c.getAtomGroups(GroupType.AMINOACID);
+					for (int j=0;j<chainGroups.size();j++) {
+						chainSerials.put(chainGroups.get(j), j+1);
+					}
+					atomSerials.put(c, chainSerials);
+				}
+				Integer serial = chainSerials.get(g);
+				resser = serial==null ? -1 : serial;
+			} else {
+				resser = getSeqresSerial(g);
+			}
+			
+			uniProtIndices[i] = getUniProtIndexForSeqresSerial(getAlignment(c), resser, g, positionWithinSubinterval);
+		}
+		
+		return uniProtIndices;
+	}
+	
+	/**
+	 * Gets the PDB-to-UniProt alignment to be used for groups of the given chain 
+	 * @param c
+	 * @return
+	 */
+	private SequencePair<ProteinSequence,AminoAcidCompound> getAlignment(Chain c) {
 		SequencePair<ProteinSequence,AminoAcidCompound>  alignment = null;
 		if (sequenceFromAtom) {
 			// we get the corresponding alignment for the chain
@@ -523,8 +582,10 @@ public class PdbToUniProtMapper implements Serializable {
 				LOGGER.warn("More than 1 alignment for entity {} contained in pdb-to-uniprot mapper, expected only 1: something is wrong!",
 						compound.getMolId());
 		}
-
-		int resser = getSeqresSerial(g);
+		return alignment;
+	}
+	
+	private int getUniProtIndexForSeqresSerial(SequencePair<ProteinSequence,AminoAcidCompound> alignment, int resser, Group g, boolean positionWithinSubinterval) {
 
 		if (resser==-1) {
 			LOGGER.info("The group '{}' wasn't found in ATOM or SEQRES, so we can't map to UniProt reference.", 
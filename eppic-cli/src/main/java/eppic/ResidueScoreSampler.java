@@ -0,0 +1,102 @@
+package eppic;
+
+import org.apache.commons.math.random.JDKRandomGenerator;
+import org.apache.commons.math.random.RandomGenerator;
+
+/**
+ * Samples average scores of random subsets of a fixed set of residues.
+ * The residues are given as a lookup table of their scores (e.g. conservation
+ * scores as obtained from {@link ChainEvolContext#getConservationScoresForResidues(java.util.List)}),
+ * so that sampling works on int indices only: the subsets are drawn with a partial
+ * Fisher-Yates shuffle on a reusable index buffer and no objects are created per sample.
+ * <p>
+ * Residues with a NaN score (no mapping to the reference) are ignored when averaging,
+ * as in {@link ChainEvolContext#calcScoreForResidueSet(java.util.List)}.
+ * <p>
+ * Not thread safe: use one instance per thread.
+ */
+public class ResidueScoreSampler {
+
+	private final double[] scores;
+
+	private final int[] indices;
+
+	private final RandomGenerator randomGenerator;
+
+	/**
+	 * Constructs a new sampler with a non-seeded random generator
+	 * @param scores the score of each residue, NaN for residues to be ignored
+	 */
+	public ResidueScoreSampler(double[] scores) {
+		this(scores, new JDKRandomGenerator());
+	}
+
+	/**
+	 * Constructs a new sampler
+	 * @param scores the score of each residue, NaN for residues to be ignored
+	 * @param randomGenerator the random generator used for drawing the samples, pass
+	 * a seeded one for reproducible results
+	 */
+	public ResidueScoreSampler(double[] scores, RandomGenerator randomGenerator) {
+		this.scores = scores;
+		this.randomGenerator = randomGenerator;
+		this.indices = new int[scores.length];
+		for (int i=0;i<indices.length;i++) {
+			indices[i] = i;
+		}
+	}
+
+	/**
+	 * Returns the number of residues that are sampled from
+	 * @return
+	 */
+	public int getNumResidues() {
+		return scores.length;
+	}
+
+	/**
+	 * Draws a random subset of sampleSize residues (without replacement) and
+	 * returns its average score.
+	 * @param sampleSize
+	 * @return the average score of the sample or NaN if all residues in the sample have NaN scores
+	 * @throws IllegalArgumentException if sampleSize is larger than the number of residues
+	 */
+	public double nextSampleScore(int sampleSize) {
+		int n = indices.length;
+		if (sampleSize>n) {
+			throw new IllegalArgumentException("Sample size "+sampleSize+" is larger than number of residues "+n);
+		}
+
+		double totalScore = 0.0;
+		int count = 0;
+		for (int j=0;j<sampleSize;j++) {
+			// partial Fisher-Yates: the starting order of the buffer does not matter
+			int r = j + randomGenerator.nextInt(n-j);
+			int idx = indices[r];
+			indices[r] = indices[j];
+			indices[j] = idx;
+
+			double score = scores[idx];
+			if (!Double.isNaN(score)) {
+				totalScore += score;
+				count++;
+			}
+		}
+		return totalScore/count;
+	}
+
+	/**
+	 * Returns the distribution of average scores of numSamples random subsets of sampleSize residues
+	 * @param numSamples
+	 * @param sampleSize
+	 * @return
+	 * @see #nextSampleScore(int)
+	 */
+	public double[] getScoreDist(int numSamples, int sampleSize) {
+		double[] dist = new double[numSamples];
+		for (int i=0;i<numSamples;i++) {
+			dist[i] = nextSampleScore(sampleSize);
+		}
+		return dist;
+	}
+}
@@ -0,0 +1,203 @@
+package eppic;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import eppic.model.AssemblyContentDB;
+import eppic.model.AssemblyDB;
+import eppic.model.AssemblyScoreDB;
+import eppic.model.ChainClusterDB;
+import eppic.model.ContactDB;
+import eppic.model.HomologDB;
+import eppic.model.InterfaceClusterDB;
+import eppic.model.InterfaceClusterScoreDB;
+import eppic.model.InterfaceDB;
+import eppic.model.InterfaceScoreDB;
+import eppic.model.InterfaceWarningDB;
+import eppic.model.PdbInfoDB;
+import eppic.model.ResidueBurialDB;
+import eppic.model.ResidueInfoDB;
+import eppic.model.UniProtRefWarningDB;
+import eppic.modelio.Column;
+import eppic.modelio.ResultFileReader;
+import eppic.modelio.ResultSchema;
+import eppic.modelio.ResultSchema.AssemblyInterfaceCluster;
+import eppic.modelio.RowSet;
+import eppic.modelio.Table;
+
+/**
+ * Writes the PdbInfoDB tree to the binary result (webui.dat) file, see {@link ResultSchema}
+ * for the format and {@link ResultFileReader} to read it back.
+ *
+ */
+public class ResultFileWriter {
+
+	private static final int BUFFER_SIZE = 64*1024;
+
+	/**
+	 * Writes the given PdbInfoDB and all its children to file.
+	 * @param pdbInfo
+	 * @param file
+	 * @throws IOException
+	 */
+	public static void write(PdbInfoDB pdbInfo, File file) throws IOException {
+
+		RowSet rowSet = toRowSet(pdbInfo);
+
+		try (OutputStream os = new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE)) {
+			DataOutputStream header = new DataOutputStream(os);
+			header.write(ResultSchema.MAGIC);
+			header.writeInt(ResultSchema.FORMAT_VERSION);
+			header.flush();
+
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(os, BUFFER_SIZE), BUFFER_SIZE));
+
+			Column.writeVarLong(out, ResultSchema.TABLES.size());
+			for (Table<?> table : ResultSchema.TABLES) {
+				writeTable(table, rowSet, out);
+			}
+			// finishes the gzip stream
+			out.close();
+		}
+	}
+
+	private static <T> void writeTable(Table<T> table, RowSet rowSet, DataOutputStream out) throws IOException {
+		List<T> rows = rowSet.getRows(table);
+
+		Column.writeString(out, table.getName());
+		Column.writeVarLong(out, rows.size());
+		Column.writeVarLong(out, table.getColumns().size());
+		for (Column<T> column : table.getColumns()) {
+			Column.writeString(out, column.getName());
+			out.writeByte(column.getType().getCode());
+		}
+		for (Column<T> column : table.getColumns()) {
+			column.write(rows, rowSet, out);
+		}
+	}
+
+	/**
+	 * Collects the rows of every table walking the tree from the PdbInfoDB down, in the order
+	 * of the child lists (which is then the order after reading).
+	 * Missing references from children to their parents are set, the references being what is stored.
+	 * @param pdbInfo
+	 * @return
+	 */
+	static RowSet toRowSet(PdbInfoDB pdbInfo) {
+		List<ChainClusterDB> chainClusters = new ArrayList<>();
+		List<UniProtRefWarningDB> uniProtRefWarnings = new ArrayList<>();
+		List<HomologDB> homologs = new ArrayList<>();
+		List<ResidueInfoDB> residueInfos = new ArrayList<>();
+
+		for (ChainClusterDB cc : nonNull(pdbInfo.getChainClusters())) {
+			if (cc.getPdbInfo()==null) cc.setPdbInfo(pdbInfo);
+			chainClusters.add(cc);
+			for (UniProtRefWarningDB w : nonNull(cc.getUniProtRefWarnings())) {
+				if (w.getChainCluster()==null) w.setChainCluster(cc);
+				uniProtRefWarnings.add(w);
+			}
+			for (HomologDB h : nonNull(cc.getHomologs())) {
+				if (h.getChainCluster()==null) h.setChainCluster(cc);
+				homologs.add(h);
+			}
+			for (ResidueInfoDB r : nonNull(cc.getResidueInfos())) {
+				if (r.getChainCluster()==null) r.setChainCluster(cc);
+				residueInfos.add(r);
+			}
+		}
+
+		List<InterfaceClusterDB> interfaceClusters = new ArrayList<>();
+		List<InterfaceClusterScoreDB> interfaceClusterScores = new ArrayList<>();
+		List<InterfaceDB> interfaces = new ArrayList<>();
+		List<InterfaceScoreDB> interfaceScores = new ArrayList<>();
+		List<InterfaceWarningDB> interfaceWarnings = new ArrayList<>();
+		List<ContactDB> contacts = new ArrayList<>();
+		List<ResidueBurialDB> residueBurials = new ArrayList<>();
+
+		for (InterfaceClusterDB ic : nonNull(pdbInfo.getInterfaceClusters())) {
+			if (ic.getPdbInfo()==null) ic.setPdbInfo(pdbInfo);
+			interfaceClusters.add(ic);
+			for (InterfaceClusterScoreDB s : nonNull(ic.getInterfaceClusterScores())) {
+				if (s.getInterfaceCluster()==null) s.setInterfaceCluster(ic);
+				interfaceClusterScores.add(s);
+			}
+			for (InterfaceDB i : nonNull(ic.getInterfaces())) {
+				if (i.getInterfaceCluster()==null) i.setInterfaceCluster(ic);
+				interfaces.add(i);
+				for (InterfaceScoreDB s : nonNull(i.getInterfaceScores())) {
+					if (s.getInterfaceItem()==null) s.setInterfaceItem(i);
+					interfaceScores.add(s);
+				}
+				for (InterfaceWarningDB w : nonNull(i.getInterfaceWarnings())) {
+					if (w.getInterfaceItem()==null) w.setInterfaceItem(i);
+					interfaceWarnings.add(w);
+				}
+				for (ContactDB c : nonNull(i.getContacts())) {
+					if (c.getInterfaceItem()==null) c.setInterfaceItem(i);
+					contacts.add(c);
+				}
+				for (ResidueBurialDB r : nonNull(i.getResidueBurials())) {
+					if (r.getInterfaceItem()==null) r.setInterfaceItem(i);
+					residueBurials.add(r);
+				}
+			}
+		}
+
+		List<AssemblyDB> assemblies = new ArrayList<>();
+		List<AssemblyScoreDB> assemblyScores = new ArrayList<>();
+		List<AssemblyContentDB> assemblyContents = new ArrayList<>();
+		List<AssemblyInterfaceCluster> assemblyInterfaceClusters = new ArrayList<>();
+
+		for (AssemblyDB a : nonNull(pdbInfo.getAssemblies())) {
+			if (a.getPdbInfo()==null) a.setPdbInfo(pdbInfo);
+			assemblies.add(a);
+			for (AssemblyScoreDB s : nonNull(a.getAssemblyScores())) {
+				if (s.getAssembly()==null) s.setAssembly(a);
+				assemblyScores.add(s);
+			}
+			for (AssemblyContentDB c : nonNull(a.getAssemblyContents())) {
+				if (c.getAssembly()==null) c.setAssembly(a);
+				assemblyContents.add(c);
+			}
+			for (InterfaceClusterDB ic : nonNull(a.getInterfaceClusters())) {
+				assemblyInterfaceClusters.add(new AssemblyInterfaceCluster(a, ic));
+			}
+		}
+
+		RowSet rowSet = new RowSet();
+		rowSet.setRows(ResultSchema.PDB_INFO, Collections.singletonList(pdbInfo));
+		if (pdbInfo.getRunParameters()!=null) {
+			if (pdbInfo.getRunParameters().getPdbInfo()==null) pdbInfo.getRunParameters().setPdbInfo(pdbInfo);
+			rowSet.setRows(ResultSchema.RUN_PARAMETERS, Collections.singletonList(pdbInfo.getRunParameters()));
+		}
+		rowSet.setRows(ResultSchema.CHAIN_CLUSTER, chainClusters);
+		rowSet.setRows(ResultSchema.UNIPROT_REF_WARNING, uniProtRefWarnings);
+		rowSet.setRows(ResultSchema.HOMOLOG, homologs);
+		rowSet.setRows(ResultSchema.RESIDUE_INFO, residueInfos);
+		rowSet.setRows(ResultSchema.INTERFACE_CLUSTER, interfaceClusters);
+		rowSet.setRows(ResultSchema.INTERFACE_CLUSTER_SCORE, interfaceClusterScores);
+		rowSet.setRows(ResultSchema.INTERFACE, interfaces);
+		rowSet.setRows(ResultSchema.INTERFACE_SCORE, interfaceScores);
+		rowSet.setRows(ResultSchema.INTERFACE_WARNING, interfaceWarnings);
+		rowSet.setRows(ResultSchema.CONTACT, contacts);
+		rowSet.setRows(ResultSchema.RESIDUE_BURIAL, residueBurials);
+		rowSet.setRows(ResultSchema.ASSEMBLY, assemblies);
+		rowSet.setRows(ResultSchema.ASSEMBLY_SCORE, assemblyScores);
+		rowSet.setRows(ResultSchema.ASSEMBLY_CONTENT, assemblyContents);
+		rowSet.setRows(ResultSchema.ASSEMBLY_INTERFACE_CLUSTER, assemblyInterfaceClusters);
+		return rowSet;
+	}
+
+	private static <T> Iterable<T> nonNull(Iterable<T> list) {
+		if (list == null) return Collections.emptyList();
+		return list;
+	}
+}
@@ -28,8 +28,8 @@ import eppic.commons.pisa.PisaAsmSetList;
 import eppic.commons.pisa.PisaAssembliesXMLParser;
 import eppic.commons.pisa.PisaInterfaceList;
 import eppic.commons.pisa.PisaInterfaceXMLParser;
-import eppic.commons.util.Goodies;
 import eppic.model.PdbInfoDB;
+import eppic.modelio.ResultFileReader;
 import gnu.getopt.Getopt;
 
 
@@ -122,7 +122,7 @@ public class MatchPisaToEppic {
 		String midIndex = pdbCode.substring(1,3);
 		File subdir = new File(serializedFilesDir,"divided"+File.separator+midIndex+File.separator+pdbCode);
 		File webuidatFile = new File(subdir,pdbCode+".webui.dat");
-		return (PdbInfoDB)Goodies.readFromFile(webuidatFile);
+		return ResultFileReader.read(webuidatFile);
 	}
 
 	public void printData(PrintStream out, PrintStream err){
@@ -1,9 +1,9 @@
 package eppic.analysis.compare;
 
-import eppic.commons.util.Goodies;
 import eppic.commons.util.MySQLConnection;
 import eppic.model.InterfaceDB;
 import eppic.model.PdbInfoDB;
+import eppic.modelio.ResultFileReader;
 import gnu.getopt.Getopt;
 
 import java.io.File;
@@ -126,7 +126,7 @@ public class MatchProtcidToEppic {
 		String midIndex = pdbCode.substring(1,3);
 		File subdir = new File(serializedFilesDir,"divided"+File.separator+midIndex+File.separator+pdbCode);
 		File webuidatFile = new File(subdir,pdbCode+".webui.dat");
-		return (PdbInfoDB)Goodies.readFromFile(webuidatFile);
+		return ResultFileReader.read(webuidatFile);
 	}
 
 }
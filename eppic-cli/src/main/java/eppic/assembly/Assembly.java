@@ -3,6 +3,7 @@ package eppic.assembly;
 import java.awt.Dimension;
 import java.awt.geom.Dimension2D;
 import java.awt.geom.Rectangle2D;
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
@@ -10,7 +11,6 @@ import java.io.PrintStream;
 import java.util.AbstractMap.SimpleEntry;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
@@ -34,15 +34,10 @@ import javax.vecmath.Vector3d;
 import org.biojava.nbio.structure.Atom;
 import org.biojava.nbio.structure.Calc;
 import org.biojava.nbio.structure.Chain;
-import org.biojava.nbio.structure.Group;
 import org.biojava.nbio.structure.Structure;
 import org.biojava.nbio.structure.StructureException;
 import org.biojava.nbio.structure.StructureTools;
 import org.biojava.nbio.structure.contact.StructureInterfaceCluster;
-import org.biojava.nbio.structure.io.FileConvert;
-import org.biojava.nbio.structure.io.mmcif.MMCIFFileTools;
-import org.biojava.nbio.structure.io.mmcif.SimpleMMcifParser;
-import org.biojava.nbio.structure.io.mmcif.model.AtomSite;
 import org.biojava.nbio.structure.symmetry.core.AxisAligner;
 import org.biojava.nbio.structure.symmetry.core.QuatSymmetryDetector;
 import org.biojava.nbio.structure.symmetry.core.QuatSymmetryParameters;
@@ -61,8 +56,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import eppic.CallType;
-import eppic.InterfaceEvolContextList;
 import eppic.commons.util.GeomTools;
+import eppic.commons.util.MmcifAtomSiteWriter;
 import eppic.predictors.InterfaceTypePredictor;
 
 /**
@@ -84,14 +79,6 @@ public class Assembly {
 	
 	private static final Logger logger = LoggerFactory.getLogger(Assembly.class);
 	
-	/**
-	 * Maximum number of engaged interfaces to consider in the scoring calculation.
-	 * If more interfaces are engaged, then a warning is thrown and the smaller
-	 * (lowest probability of biological) interfaces are removed from the 
-	 * calculation, in order to loose as little probability density as possible.
-	 */
-	private static final int MAX_NUM_ENGAGED_IFACES_SCORING = 10;
-	
 	/**
 	 * A numerical identifier for the assembly, from 1 to n
 	 */
@@ -108,7 +95,8 @@ public class Assembly {
 	private CrystalAssemblies crystalAssemblies;
 	
 	/**
-	 * The AssemblyGraph object containing the subgraph and its connected components
+	 * The AssemblyGraph object containing the subgraph and its connected components, 
+	 * initialised lazily on first access
 	 */
 	private AssemblyGraph assemblyGraph;
 	
@@ -129,8 +117,6 @@ public class Assembly {
 	public Assembly(CrystalAssemblies crystalAssemblies, PowerSet engagedSet) {
 		this.crystalAssemblies = crystalAssemblies;
 		this.engagedSet = engagedSet;
-				
-		assemblyGraph = new AssemblyGraph(this);
 		
 	}
 	
@@ -138,7 +124,15 @@ public class Assembly {
 		return engagedSet;
 	}
 	
-	public AssemblyGraph getAssemblyGraph() {
+	/**
+	 * Returns the AssemblyGraph of this Assembly. The graph is built on first call, 
+	 * so that assemblies pruned in the enumeration never need one.
+	 * @return
+	 */
+	public synchronized AssemblyGraph getAssemblyGraph() {
+		if (assemblyGraph==null) {
+			assemblyGraph = new AssemblyGraph(this);
+		}
 		return assemblyGraph;
 	}
 	
@@ -248,23 +242,23 @@ public class Assembly {
 	public boolean isClosedSymmetry() {
 		
 		// first we check for infinites, like that we save to compute the graph cycles for infinite cases
-		if (assemblyGraph.containsInfinites()) {
+		if (getAssemblyGraph().containsInfinites()) {
 			logger.debug("Discarding assembly {} because it contains infinite interfaces", toString());
 			return false;
 		}
 		
 		// for heteromeric assemblies, uneven stoichiometries implies non-closed. We can discard uneven ones straight away
-		if (!assemblyGraph.isStoichiometryEven()) {
+		if (!getAssemblyGraph().isStoichiometryEven()) {
 			logger.debug("Uneven stoichiometry for assembly {}, can't be a closed symmetry. Discarding",toString());
 			return false;
 		}
 		
 		// graph automorphism is a necessary (but not sufficient) condition: all vertices of a certain entity must have the same kind and number of interfaces (interface cluster ids)
-		if (!assemblyGraph.isAutomorphic()) {
+		if (!getAssemblyGraph().isAutomorphic()) {
 			return false;
 		}
 	
-		return assemblyGraph.areAllCyclesClosed();
+		return getAssemblyGraph().areAllCyclesClosed();
 	}	
 	
 	/**
@@ -277,7 +271,7 @@ public class Assembly {
 		
 		// 1) Isomorphism of entities: they have to be all equals or if different then they must be orthogonal 
 		
-		if (!assemblyGraph.isEntityIsomorphic()) {
+		if (!getAssemblyGraph().isEntityIsomorphic()) {
 			logger.debug("Some stoichiometries of assembly {} are overlapping, assembly can't be isomorphic",this.toString());
 			return false;
 		}
@@ -314,7 +308,7 @@ public class Assembly {
 	 * @return
 	 */
 	public List<AssemblyDescription> getDescription() {
-		List<AssemblyDescription> list = assemblyGraph.getDescription();
+		List<AssemblyDescription> list = getAssemblyGraph().getDescription();
 		StringBuilder sb = new StringBuilder();
 		int i = -1;
 		for (AssemblyDescription ad:list) {
@@ -343,7 +337,7 @@ public class Assembly {
 		LatticeGraph<ChainVertex, InterfaceEdge> latticeGraph = crystalAssemblies.getLatticeGraph();
 		CrystalCell cell = LatticeGraph.getCrystalCell(crystalAssemblies.getStructure());
 
-		for(List<SubAssembly> subgroup : assemblyGraph.getSubAssembliesGroupedByStoichiometries()) {
+		for(List<SubAssembly> subgroup : getAssemblyGraph().getSubAssembliesGroupedByStoichiometries()) {
 			UndirectedGraph<ChainVertex, InterfaceEdge> cc = subgroup.get(0).getConnectedGraph();
 
 			Map<ChainVertex, Point3i> placements = positionVertices(cc);
@@ -367,9 +361,9 @@ public class Assembly {
 		LatticeGraph<ChainVertex, InterfaceEdge> latticeGraph = crystalAssemblies.getLatticeGraph();
 		CrystalCell cell = LatticeGraph.getCrystalCell(crystalAssemblies.getStructure());
 
-		List<List<ChainVertex>> components = new ArrayList<List<ChainVertex>>(assemblyGraph.getSubAssembliesGroupedByStoichiometries().size());
+		List<List<ChainVertex>> components = new ArrayList<List<ChainVertex>>(getAssemblyGraph().getSubAssembliesGroupedByStoichiometries().size());
 
-		for(List<SubAssembly> subgroup : assemblyGraph.getSubAssembliesGroupedByStoichiometries()) {
+		for(List<SubAssembly> subgroup : getAssemblyGraph().getSubAssembliesGroupedByStoichiometries()) {
 			UndirectedGraph<ChainVertex, InterfaceEdge> cc = subgroup.get(0).getConnectedGraph();
 
 			// Position connected component to avoid wrapping
@@ -393,55 +387,104 @@ public class Assembly {
 	 * @return A list of all vertices, with their Chain objects transformed to
 	 *  the correct 3D positions
 	 * @throws StructureException
+	 * @see #getStructurePackedTransformations()
 	 */
 	public List<ChainVertex> getStructurePacked() throws StructureException {
 
+		Structure structure = crystalAssemblies.getStructure();
+
+		List<ChainVertex> allchains = new ArrayList<ChainVertex>();
+		for (Entry<ChainVertex, Matrix4d> entry : getStructurePackedTransformations()) {
+			ChainVertex v = entry.getKey();
+			Chain chain = (Chain) structure.getChainByPDB(v.getChainId()).clone();
+			Calc.transform(chain, entry.getValue());
+			allchains.add(new ChainVertex(chain,v.getOpId()));
+		}
+		return allchains;
+	}
+
+	/**
+	 * Calculate the transformations giving the 2D-packed structure for this assembly,
+	 * as described in {@link #getStructurePacked()}, without transforming any chains.
+	 * Each transformation is to be applied to the chain of the original structure with 
+	 * the vertex's chain id, so that the coordinates of the packed assembly can
+	 * be written on the fly.
+	 * @return A list of all vertices of the lattice graph in the assembly, with the transformation 
+	 *  of their chains to the correct 3D positions
+	 * @throws StructureException
+	 */
+	public List<Entry<ChainVertex, Matrix4d>> getStructurePackedTransformations() throws StructureException {
 
+		Structure structure = crystalAssemblies.getStructure();
 		LatticeGraph<ChainVertex, InterfaceEdge> latticeGraph = crystalAssemblies.getLatticeGraph();
-		CrystalCell cell = LatticeGraph.getCrystalCell(crystalAssemblies.getStructure());
+		CrystalCell cell = LatticeGraph.getCrystalCell(structure);
+
+		// the dummy coordinates of each chain before transformation, see getDummyCoordinates
+		Map<String, Point3d[]> dummyCoords = new HashMap<String, Point3d[]>();
 
-		List<Entry<Dimension2D, List<ChainVertex>>> boxes = new ArrayList<Map.Entry<Dimension2D,List<ChainVertex>>>();
+		List<Entry<Dimension2D, List<Entry<ChainVertex, Matrix4d>>>> boxes = new ArrayList<Entry<Dimension2D, List<Entry<ChainVertex, Matrix4d>>>>();
 
-		for(List<SubAssembly> subgroup : assemblyGraph.getSubAssembliesGroupedByStoichiometries()) {
+		for(List<SubAssembly> subgroup : getAssemblyGraph().getSubAssembliesGroupedByStoichiometries()) {
 			UndirectedGraph<ChainVertex, InterfaceEdge> cc = subgroup.get(0).getConnectedGraph();
 
 			// Position connected component to avoid wrapping
 			Map<ChainVertex, Point3i> placements = positionVertices(cc);
-			List<ChainVertex> chains = transformChains(placements, crystalAssemblies.getStructure(),latticeGraph, cell, null);
+			List<Entry<ChainVertex, Matrix4d>> transformations = getPlacementTransformations(placements, latticeGraph, cell);
+
+			List<Point3d[]> coords = new ArrayList<Point3d[]>(transformations.size());
+			for (Entry<ChainVertex, Matrix4d> entry : transformations) {
+				String chainId = entry.getKey().getChainId();
+				Point3d[] chainCoords = dummyCoords.get(chainId);
+				if (chainCoords == null) {
+					chainCoords = getDummyCoordinates(structure.getChainByPDB(chainId));
+					dummyCoords.put(chainId, chainCoords);
+				}
+				Point3d[] transformed = new Point3d[chainCoords.length];
+				for (int i=0; i<chainCoords.length; i++) {
+					transformed[i] = new Point3d(chainCoords[i]);
+					entry.getValue().transform(transformed[i]);
+				}
+				coords.add(transformed);
+			}
 
 			// Center at origin
-			Vector3d dim = centerSymmetrically(cc, chains);
+			Vector3d dim = new Vector3d();
+			Matrix4d centering = getSymmetricCenteringTransformation(cc, coords, dim);
+			for (Entry<ChainVertex, Matrix4d> entry : transformations) {
+				entry.getValue().mul(centering, entry.getValue());
+			}
 
 			// pad space around the protein and make it an even multiple
 			final double padding = 10;
 			int x = (int)(Math.ceil( dim.x * 2./padding + 1 )*padding);
 			int y = (int)(Math.ceil( dim.y * 2./padding + 1 )*padding);
 			Dimension2D dim2 = new Dimension(x,y);
-			boxes.add(new SimpleEntry<Dimension2D,List<ChainVertex>>(dim2,chains));
+			boxes.add(new SimpleEntry<Dimension2D,List<Entry<ChainVertex, Matrix4d>>>(dim2,transformations));
 		}
 
 		// Pack complexes in XY plane
-		BinaryBinPacker<List<ChainVertex>> packer = new BinaryBinPacker<List<ChainVertex>>(boxes);
-		List<Entry<List<ChainVertex>, Rectangle2D>> placements = packer.getPlacements();
+		BinaryBinPacker<List<Entry<ChainVertex, Matrix4d>>> packer = new BinaryBinPacker<List<Entry<ChainVertex, Matrix4d>>>(boxes);
+		List<Entry<List<Entry<ChainVertex, Matrix4d>>, Rectangle2D>> placements = packer.getPlacements();
 		Rectangle2D container = packer.getBounds();
 
-		List<ChainVertex> allchains = new ArrayList<ChainVertex>();
-		for(Entry<List<ChainVertex>, Rectangle2D> entry : placements) {
-			List<ChainVertex> chains = entry.getKey();
+		List<Entry<ChainVertex, Matrix4d>> alltransformations = new ArrayList<Entry<ChainVertex, Matrix4d>>();
+		for(Entry<List<Entry<ChainVertex, Matrix4d>>, Rectangle2D> entry : placements) {
+			List<Entry<ChainVertex, Matrix4d>> transformations = entry.getKey();
 
 			// Center proteins in each box; center container at origin
 			Rectangle2D place = entry.getValue();
 			double x = place.getX() + place.getWidth()/2. - container.getWidth()/2.;
 			double y = place.getY() + place.getHeight()/2. - container.getHeight()/2.;
-			Vector3d center = new Vector3d(x,y,0);
+			Matrix4d translation = new Matrix4d();
+			translation.set(1., new Vector3d(x,y,0));
 
 			// Transform to XY location
-			for(ChainVertex chain : chains) {
-				Calc.translate(chain.getChain(), center);
+			for(Entry<ChainVertex, Matrix4d> transformation : transformations) {
+				transformation.getValue().mul(translation, transformation.getValue());
 			}
-			allchains.addAll(chains);
+			alltransformations.addAll(transformations);
 		}
-		return allchains;
+		return alltransformations;
 	}
 
 	/**
@@ -459,8 +502,40 @@ public class Assembly {
 	private Vector3d centerSymmetrically(
 			UndirectedGraph<ChainVertex, InterfaceEdge> cc,
 			List<ChainVertex> chains) {
+
+		List<Point3d[]> coords = new ArrayList<Point3d[]>(chains.size());
+		for (ChainVertex vert : chains) {
+			coords.add(getDummyCoordinates(vert.getChain()));
+		}
+
+		Vector3d dim = new Vector3d();
+		Matrix4d transformation = getSymmetricCenteringTransformation(cc, coords, dim);
+
+		// Transform chains to the origin
+		for(ChainVertex vert:chains) {
+			Calc.transform(vert.getChain(), transformation);
+		}
+		return dim;
+	}
+
+	/**
+	 * Takes a graph representing a single complex and the dummy coordinates of
+	 * its chains (see {@link #getDummyCoordinates(Chain)}), in an orientation where
+	 * no edges wrap around the unit cell.
+	 * 
+	 * Calculates the transformation centering the complex at the origin and 
+	 * aligning it to the major symmetry axis.
+	 * @param cc
+	 * @param coords
+	 * @param dim Output: the extent of the bounding box for the complex (i.e. half the
+	 *  dimensions of the bounding polyhedron).
+	 * @return
+	 */
+	private static Matrix4d getSymmetricCenteringTransformation(
+			UndirectedGraph<ChainVertex, InterfaceEdge> cc,
+			List<Point3d[]> coords, Vector3d dim) {
 		// Transform to be centered with the major axis vertically
-		QuatSymmetryResults symm = getQuatSymm(chains);
+		QuatSymmetryResults symm = getQuatSymm(coords);
 		RotationGroup pointgroup = symm.getRotationGroup();
 		AxisAligner aligner = AxisAligner.getInstance(symm);
 
@@ -538,22 +613,19 @@ public class Assembly {
 			transformation.invert();
 		}
 
-		// Transform chains to the origin
-		for(ChainVertex vert:chains) {
-			Calc.transform(vert.getChain(), transformation);
-		}
 		//TODO is this really half the bounding box?
-		return aligner.getDimension();
+		dim.set(aligner.getDimension());
+		return transformation;
 	}
 
 	/**
 	 * Calculate point group symmetry for a complex
-	 * @param vertices List of vertices. Constituent chains should be pre-transformed into an orientation with closed symmetry
+	 * @param caCoords Dummy coordinates of each subunit, see {@link #getDummyCoordinates(Chain)}. 
+	 * Subunits should be pre-transformed into an orientation with closed symmetry
 	 * @return
 	 */
-	private static QuatSymmetryResults getQuatSymm( Collection<ChainVertex> vertices) {
+	private static QuatSymmetryResults getQuatSymm( List<Point3d[]> caCoords) {
 		// hack subunits
-		List<Point3d[]> caCoords = new ArrayList<Point3d[]>();
 		List<Integer> folds = new ArrayList<Integer>();
 		List<Boolean> pseudo = new ArrayList<Boolean>();
 		List<String> chainIds = new ArrayList<String>();
@@ -564,14 +636,12 @@ public class Assembly {
 		int fold = 1;
 		Character chain = 'A';
 
-		for (ChainVertex vert : vertices ){
-			Point3d[] coords = getDummyCoordinates(vert.getChain());
+		for (Point3d[] coords : caCoords ){
 			if (coords.length==0) {
 				logger.warn("0-length coordinate array. Can't calculate quaternary symmetry!");
 			}
-			caCoords.add(coords);
 
-			if (vertices.size() % fold == 0){
+			if (caCoords.size() % fold == 0){
 				folds.add(fold); //the folds are the common denominators
 			}
 			fold++;
@@ -651,6 +721,31 @@ public class Assembly {
 		if( chains == null) {
 			chains = new ArrayList<ChainVertex>();
 		}
+		for(Entry<ChainVertex, Matrix4d> entry : getPlacementTransformations(placements, latticeGraph, cell)) {
+			ChainVertex v = entry.getKey();
+
+			Chain chain = (Chain) structure.getChainByPDB(v.getChainId()).clone();
+			Calc.transform(chain, entry.getValue());
+			chains.add(new ChainVertex(chain,v.getOpId()));
+		}
+		return chains;
+	}
+
+	/**
+	 * Takes a map of chain position from {@link #positionVertices(UndirectedGraph)}
+	 * and calculates the transformation of each vertex's chain (in the original structure)
+	 * to its position.
+	 * @param placements Placement of each chain relative to the 0,0,0 unit cell
+	 * @param latticeGraph Root graph, for calculation of the starting chain positions
+	 * @param cell Unit cell
+	 * @return the transformations, in the iteration order of placements
+	 * @throws StructureException
+	 */
+	private static List<Entry<ChainVertex, Matrix4d>> getPlacementTransformations(Map<ChainVertex, Point3i> placements,
+			LatticeGraph<ChainVertex, InterfaceEdge> latticeGraph, CrystalCell cell)
+			throws StructureException
+	{
+		List<Entry<ChainVertex, Matrix4d>> transformations = new ArrayList<Entry<ChainVertex, Matrix4d>>(placements.size());
 		for(Entry<ChainVertex, Point3i> entry : placements.entrySet()) {
 			ChainVertex v = entry.getKey();
 
@@ -665,11 +760,9 @@ public class Assembly {
 			transmat.set(1., trans);
 			transmat.mul(m);
 
-			Chain chain = (Chain) structure.getChainByPDB(v.getChainId()).clone();
-			Calc.transform(chain, transmat);
-			chains.add(new ChainVertex(chain,v.getOpId()));
+			transformations.add(new SimpleEntry<ChainVertex, Matrix4d>(v, transmat));
 		}
-		return chains;
+		return transformations;
 	}
 	
 	@SuppressWarnings("unused")
@@ -858,16 +951,21 @@ public class Assembly {
 	
 	/**
 	 * Writes this Assembly to PDB file (gzipped) with a model per chain.
+	 * The chains are transformed one at a time, so that only one copy of a chain is kept in memory.
 	 * @param file
 	 * @throws StructureException
 	 * @throws IOException
 	 */
 	public void writeToPdbFile(File file) throws StructureException, IOException {
-		PrintStream ps = new PrintStream(new GZIPOutputStream(new FileOutputStream(file)));
+		Structure structure = crystalAssemblies.getStructure();
+		List<Entry<ChainVertex, Matrix4d>> transformations = getStructurePackedTransformations();
+		PrintStream ps = new PrintStream(new BufferedOutputStream(new GZIPOutputStream(new FileOutputStream(file))));
 		int modelId = 1;
-		for (ChainVertex cv:getStructurePacked()) {
+		for (Entry<ChainVertex, Matrix4d> entry:transformations) {
+			Chain chain = (Chain) structure.getChainByPDB(entry.getKey().getChainId()).clone();
+			Calc.transform(chain, entry.getValue());
 			ps.println("MODEL"+String.format("%9d",modelId));
-			ps.print(cv.getChain().toPDB());
+			ps.print(chain.toPDB());
 			ps.println("TER");
 			ps.println("ENDMDL");
 			modelId++;
@@ -883,6 +981,7 @@ public class Assembly {
 	 * The atom ids will be renumbered if the Assembly contains symmetry-related molecules,
 	 * otherwise some molecular viewers (e.g. 3Dmol.js) won't be able to read the atoms
 	 * as distinct.
+	 * The atoms are written as they are transformed, without copying the chains of the assembly.
 	 * Note that PyMOL supports multi-letter chain ids only from 1.7.4
 	 * @param file
 	 * @throws IOException
@@ -896,54 +995,28 @@ public class Assembly {
 		// we only do renumbering in the case that there are sym-related chains in the assembly
 		// that way we stay as close to the original as possible
 		boolean symRelatedChainsExist = false;
-		List<ChainVertex> structure = getStructurePacked();
-		int numChains = structure.size();
+		Structure structure = crystalAssemblies.getStructure();
+		List<Entry<ChainVertex, Matrix4d>> transformations = getStructurePackedTransformations();
+		int numChains = transformations.size();
 		Set<String> uniqueChains = new HashSet<String>();
-		for (ChainVertex cv:structure) {
-			uniqueChains.add(cv.getChain().getChainID());
+		for (Entry<ChainVertex, Matrix4d> entry:transformations) {
+			uniqueChains.add(entry.getKey().getChainId());
 		}
 		if (numChains != uniqueChains.size()) symRelatedChainsExist = true;
 
+		try (MmcifAtomSiteWriter writer = new MmcifAtomSiteWriter(file)) {
 
-		PrintStream ps = new PrintStream(new GZIPOutputStream(new FileOutputStream(file)));
-
-		ps.println(SimpleMMcifParser.MMCIF_TOP_HEADER+"eppic_assembly_"+getId());
-
-		ps.print(FileConvert.getAtomSiteHeader());
-
-		List<AtomSite> atomSites = new ArrayList<>();
-
-		int atomId = 1;
-		for (ChainVertex cv:structure) {
-			String chainId = cv.getChain().getChainID()+"_"+cv.getOpId();
+			writer.writeHeader("eppic_assembly_"+getId());
 
-			for (Group g: cv.getChain().getAtomGroups()) {
-				for (Atom a: g.getAtoms()) {
-					if (symRelatedChainsExist) 
-						atomSites.add(MMCIFFileTools.convertAtomToAtomSite(a, 1, chainId, chainId, atomId));
-					else 
-						atomSites.add(MMCIFFileTools.convertAtomToAtomSite(a, 1, chainId, chainId));
+			int atomId = 1;
+			for (Entry<ChainVertex, Matrix4d> entry:transformations) {
+				ChainVertex cv = entry.getKey();
+				String chainId = cv.getChainId()+"_"+cv.getOpId();
 
-					atomId++;
-				}
-				for (Group altG:g.getAltLocs()) {
-					for (Atom a: altG.getAtoms()) {
-
-						if (symRelatedChainsExist)
-							atomSites.add(MMCIFFileTools.convertAtomToAtomSite(a, 1, chainId, chainId, atomId));
-						else
-							atomSites.add(MMCIFFileTools.convertAtomToAtomSite(a, 1, chainId, chainId));
-
-						atomId++;
-					}
-				}
+				atomId += writer.writeChain(structure.getChainByPDB(cv.getChainId()), chainId, chainId,
+						symRelatedChainsExist ? atomId : -1, entry.getValue());
 			}
 		}
-
-		ps.print(MMCIFFileTools.toMMCIF(atomSites, AtomSite.class));
-
-
-		ps.close();
 	}
 	
 	/**
@@ -1005,7 +1078,7 @@ public class Assembly {
 	public String toString() {
 		StringBuilder sb = new StringBuilder();
 		
-		SortedSet<Integer> interfClusterIds = GraphUtils.getDistinctInterfaceClusters(assemblyGraph.getSubgraph());
+		SortedSet<Integer> interfClusterIds = GraphUtils.getDistinctInterfaceClusters(getAssemblyGraph().getSubgraph());
 		int numClusters = interfClusterIds.size();
 		
 		sb.append("{");
@@ -1025,71 +1098,13 @@ public class Assembly {
 
 	/**
 	 * Compute a probabilistic score from the individual interface
-	 * probabilities.
+	 * probabilities: the sum of the probabilities of all subsets of the 
+	 * engaged interface clusters that are equivalent to this assembly, 
+	 * i.e. that have the same number of subassemblies.
+	 * See {@link AssemblyScorer}.
 	 */
 	public void calcScore() {
-		
-		// Calculate the probabilities for each possible set of interface clusters
-		probability = 0;
-		InterfaceEvolContextList iecl = getCrystalAssemblies().getInterfaceEvolContextList();
-		
-		// Construct a list of all the smaller powersets of this assembly that are equivalent
-		List<PowerSet> pss = new ArrayList<PowerSet>();
-		
-		PowerSet reducedSet = new PowerSet(engagedSet);
-		
-		// If the number of engaged interfaces is high, warn and disengage
-		if (reducedSet.sizeOn() > MAX_NUM_ENGAGED_IFACES_SCORING) {
-			logger.warn("There are {} engaged interface clusters in assembly {}. "
-					+ "They will be reduced to compute assembly scoring.", 
-					reducedSet.sizeOn(), id);
-			
-			while (reducedSet.sizeOn() > MAX_NUM_ENGAGED_IFACES_SCORING) {
-				
-				// Find the lowest probability cluster
-				int index = 0;
-				double probability = 1;
-				for (int i = 1; i < reducedSet.size() + 1; i++) {
-					if (reducedSet.isOff(i-1)) continue; // we want to loop only over the engaged interfaces
-					double p = iecl.getCombinedClusterPredictor(i).getScore();
-					if (p <= probability) {
-						index = i - 1;
-						probability = p;
-					}
-				}
-				logger.info("Disengaging interface cluster {} for assembly {} scoring",
-						index + 1, id);
-				if (probability > 0.1) {
-					logger.warn("Disengaging interface cluster {} of assembly {} "
-							+ "scoring, with probability {} of being biologically "
-							+ "relevant. Significant probability density might be "
-							+ "missing for the score of this assembly.", index + 1,
-							id, String.format("%.2f", probability));
-				}
-				
-				reducedSet.switchOff(index);
-			}
-		}
-		
-		for (PowerSet ps : reducedSet.getOnPowerSet(1)) {
-			// Equivalent means that they have the same number of subassemblies
-			Assembly pa = new Assembly(crystalAssemblies, ps);
-			if (pa.getAssemblyGraph().getSubAssemblies().size() == 
-					this.getAssemblyGraph().getSubAssemblies().size())
-				pss.add(ps);
-		}
-		pss.add(reducedSet);
-					
-		for (PowerSet ps : pss) {
-			double prob = 1;
-			for (int i = 1; i < ps.size()+1; i++) {
-				double p = iecl.getCombinedClusterPredictor(i).getScore();
-				if (ps.isOff(i-1))
-					p = (1-p);
-				prob *= p;
-			}
-			probability += prob;
-		}
+		probability = crystalAssemblies.getAssemblyScorer().calcProbability(engagedSet);
 	}
 	
 	/**
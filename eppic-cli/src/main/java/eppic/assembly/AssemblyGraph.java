@@ -39,6 +39,11 @@ public class AssemblyGraph {
 	
 	private List<List<SubAssembly>> subAssembliesGroupedByStoichiometries;
 	
+	/**
+	 * The validity checks of each of the subAssemblies, initialised lazily
+	 */
+	private List<SubAssemblyCheckCache.ComponentChecks> componentChecks;
+	
 	public AssemblyGraph (Assembly assembly) {
 		this.assembly = assembly;
 		
@@ -105,15 +110,12 @@ public class AssemblyGraph {
 		
 		for (Set<ChainVertex> vertexSubsubSet:connectedSets) {
 			Set<InterfaceEdge> edgeSubsubSet = new HashSet<InterfaceEdge>();
-			// fill the edges
-			int i = -1;
-			for (ChainVertex iVertex:vertexSubsubSet) {
-				i++;
-				int j = -1;
-				for (ChainVertex jVertex:vertexSubsubSet) {
-					j++;
-					if (j>i) {
-						edgeSubsubSet.addAll(subgraph.getAllEdges(iVertex, jVertex));
+			// fill the edges: all edges of the vertices of a connected component belong to it, 
+			// except for loops (e.g. infinite interfaces between a chain and its translation)
+			for (ChainVertex vertex:vertexSubsubSet) {
+				for (InterfaceEdge edge:subgraph.edgesOf(vertex)) {
+					if (!subgraph.getEdgeSource(edge).equals(subgraph.getEdgeTarget(edge))) {
+						edgeSubsubSet.add(edge);
 					}
 				}
 			}
@@ -155,6 +157,22 @@ public class AssemblyGraph {
 		return subAssembliesGroupedByStoichiometries;
 	}
 	
+	/**
+	 * Returns the validity checks of each of the subAssemblies, taken from the 
+	 * enumeration-wide cache of the parent CrystalAssemblies.
+	 * @return
+	 */
+	private synchronized List<SubAssemblyCheckCache.ComponentChecks> getComponentChecks() {
+		if (componentChecks==null) {
+			SubAssemblyCheckCache cache = assembly.getCrystalAssemblies().getSubAssemblyCheckCache();
+			componentChecks = new ArrayList<>(subAssemblies.size());
+			for (SubAssembly s : subAssemblies) {
+				componentChecks.add(cache.getChecks(s));
+			}
+		}
+		return componentChecks;
+	}
+	
 	
 	/**
 	 * Returns true if all stoichiometries of this AssemblyGraph are even
@@ -193,24 +211,12 @@ public class AssemblyGraph {
 		// if there is any kind of overlap between the stoichiometries then it can't be isomorphic, e.g. B2,B ; A2B,A
 		// otherwise they are all orthogonal to each other and the assembly is fine in terms of entity stoichiometry
 		
-		int i = -1;
-		for (List<SubAssembly> iGroup : subAssembliesGroupedByStoichiometries) {
-			Stoichiometry<Integer> iSto = iGroup.get(0).getStoichiometry();
-			i++;			
-			int j = -1;
-			for (List<SubAssembly> jGroup : subAssembliesGroupedByStoichiometries) {
-				Stoichiometry<Integer> jSto = jGroup.get(0).getStoichiometry();
-				j++;
-				if (j<=i) continue;
-				if (iSto.isOverlapping(jSto)) {
-					return false;
-				}
-
-			}
-
+		List<Stoichiometry<Integer>> uniqueStoichiometries = new ArrayList<>(subAssembliesGroupedByStoichiometries.size());
+		for (List<SubAssembly> group : subAssembliesGroupedByStoichiometries) {
+			uniqueStoichiometries.add(group.get(0).getStoichiometry());
 		}
 
-		return true;
+		return assembly.getCrystalAssemblies().getSubAssemblyCheckCache().isEntityIsomorphic(uniqueStoichiometries);
 	}
 	
 	/**
@@ -246,8 +252,8 @@ public class AssemblyGraph {
 	 * @return
 	 */
 	public boolean isAutomorphic() {
-		for (SubAssembly s : subAssemblies) {
-			if (!s.isAutomorphic()) {
+		for (SubAssemblyCheckCache.ComponentChecks c : getComponentChecks()) {
+			if (!c.automorphic) {
 				return false;
 			}
 		}
@@ -256,18 +262,23 @@ public class AssemblyGraph {
 
 	/**
 	 * Return true if all cycles in subgraph are closed, false otherwise.
+	 * The cycles of each connected component are checked separately (and cached, 
+	 * see {@link SubAssemblyCheckCache}): all cycles of the subgraph are closed iff 
+	 * the cycles in the cycle base of each of its connected components are closed.
+	 * The result is only meaningful for automorphic assemblies, see {@link #isAutomorphic()}
 	 * @return
 	 */
 	public boolean areAllCyclesClosed () {
+		
+		List<SubAssemblyCheckCache.ComponentChecks> checks = getComponentChecks();
 
 		// pre-check for assemblies with 1 engaged interface that is isologous: the cycle detection doesn't work for isologous
 		// we need to go over all connected components, e.g. for cases like 5t89 assembly {1,3}
 		boolean allCcHaveJust1Isologous = true;
 		boolean allCcOfSize1 = true;
-		for (SubAssembly s : subAssemblies) {
-			int numDistinctInterfaces = GraphUtils.getNumDistinctInterfaces(s.getConnectedGraph());
-			if (numDistinctInterfaces <= 1) { 
-				if (!GraphUtils.areAllIsologous(s.getConnectedGraph())) {
+		for (SubAssemblyCheckCache.ComponentChecks c : checks) {
+			if (c.numDistinctInterfaces <= 1) { 
+				if (!c.allIsologous) {
 					allCcHaveJust1Isologous = false;
 				}
 			} else {
@@ -281,23 +292,25 @@ public class AssemblyGraph {
 
 		// we check the cycles in the graph and whether they stay in same cell
 
-		// The PatonCycle detection does not work for multigraphs, e.g. in 1pfc engaging interfaces 1,5 it goes in an infinite loop
-		// Thus we need to pre-check multi-edges and discard whenever they have non-zero sum translations (which directly invalidates the whole subgraph)
-		// If the the subgraph is multi and this check still returns false, we'd have a multigraph to deal with below,
-		// but hopefully that doesn't happen (remember we've also removed all duplicate edges from the main graph in any case)
-		if (precheckMultiEdges(subgraph)) {
-			logger.info("Discarding assembly because some of its multi-edges have non-zero sum translations and thus can't be closed");
-			return false;
+		// multi-edges with non-zero sum translations directly invalidate the whole subgraph, see checkComponent()
+		for (SubAssemblyCheckCache.ComponentChecks c : checks) {
+			if (c.nonZeroMultiEdges) {
+				logger.info("Discarding assembly because some of its multi-edges have non-zero sum translations and thus can't be closed");
+				return false;
+			}
 		}
 
-		PatonCycleBase<ChainVertex, InterfaceEdge> paton = new PatonCycleBase<ChainVertex, InterfaceEdge>(subgraph);
-
-		List<List<ChainVertex>> cycles = paton.findCycleBase();
+		int numCycles = 0;
+		boolean heteromeric = false;
+		for (SubAssemblyCheckCache.ComponentChecks c : checks) {
+			numCycles += c.numCycles;
+			if (c.heteromeric) heteromeric = true;
+		}
 
-		if (cycles.size()==0) {
+		if (numCycles==0) {
 			// no cycles at all:
 			// heteromeric interfaces are ok
-			if (containsHeteromeric()) {
+			if (heteromeric) {
 				logger.info("Assembly {} contains heteromeric interfaces and no cycles, assuming it has closed-symmetry", assembly.toString());
 				return true;
 			}
@@ -307,32 +320,79 @@ public class AssemblyGraph {
 			return false;
 		}
 
-		logger.debug("{} cycles in total",cycles.size());
+		logger.debug("{} cycles in total",numCycles);
 
+		for (SubAssemblyCheckCache.ComponentChecks c : checks) {
+			if (!c.allCyclesClosed) {
+				// one cycle has non-zero translation: we abort straight away: return false
+				logger.debug("Non-closed cycle found. Discarding assembly {}", assembly.toString());
+				return false;
+			}
+		}
+
+		logger.debug("All cycles of assembly {} are closed: valid assembly",toString());
+		return true;
+	}
+	
+	/**
+	 * Performs the validity checks on a single connected component: automorphism, 
+	 * multi-edges, cycle base and closure of its cycles.
+	 * Cycles are only checked for automorphic components.
+	 * @param g a connected graph
+	 * @return
+	 */
+	static SubAssemblyCheckCache.ComponentChecks checkComponent(UndirectedGraph<ChainVertex, InterfaceEdge> g) {
+		
+		boolean automorphic = GraphUtils.isAutomorphic(g);
+		int numDistinctInterfaces = GraphUtils.getNumDistinctInterfaces(g);
+		boolean allIsologous = GraphUtils.areAllIsologous(g);
+		boolean heteromeric = containsHeteromeric(g);
+		
+		if (!automorphic) {
+			// non-automorphic components invalidate the assembly before cycles are checked (see Assembly.isClosedSymmetry()): 
+			// we save the cycle detection and consider them non-closed
+			return new SubAssemblyCheckCache.ComponentChecks(automorphic, numDistinctInterfaces, allIsologous, false, 0, false, heteromeric);
+		}
+
+		// The PatonCycle detection does not work for multigraphs, e.g. in 1pfc engaging interfaces 1,5 it goes in an infinite loop
+		// Thus we need to pre-check multi-edges and discard whenever they have non-zero sum translations (which directly invalidates the whole subgraph)
+		// If the the subgraph is multi and this check still returns false, we'd have a multigraph to deal with below,
+		// but hopefully that doesn't happen (remember we've also removed all duplicate edges from the main graph in any case)
+		if (precheckMultiEdges(g)) {
+			return new SubAssemblyCheckCache.ComponentChecks(automorphic, numDistinctInterfaces, allIsologous, true, 0, false, heteromeric);
+		}
+
+		PatonCycleBase<ChainVertex, InterfaceEdge> paton = new PatonCycleBase<ChainVertex, InterfaceEdge>(g);
+
+		List<List<ChainVertex>> cycles = paton.findCycleBase();
+
+		boolean allCyclesClosed = true;
+		
 		for (List<ChainVertex> cycle:cycles) {
 
-			StringBuilder sb = new StringBuilder();
-			for (ChainVertex c:cycle) {
-				sb.append(c.toString()+" -> ");
+			if (logger.isDebugEnabled()) {
+				StringBuilder sb = new StringBuilder();
+				for (ChainVertex c:cycle) {
+					sb.append(c.toString()+" -> ");
+				}
+				logger.debug("Cycle of size {}: {}", cycle.size(),sb.toString());
 			}
-			logger.debug("Cycle of size {}: {}", cycle.size(),sb.toString());
 
-			if (isZeroTranslation(subgraph, cycle)) {
+			if (isZeroTranslation(g, cycle)) {
 				logger.debug("Closed cycle {} (0 translation)", cycle.toString());
-				// we continue to next cycle, if all cycles are translation 0, then we'll return true below
+				// we continue to next cycle, if all cycles are translation 0, then the component is closed
 			} else {
-				// one cycle has non-zero translation: we abort straight away: return false
-				logger.debug("Non-closed cycle {} (non-0 translation). Discarding assembly {}", cycle.toString(), assembly.toString());
-				return false;
+				// one cycle has non-zero translation: no need to check the rest
+				logger.debug("Non-closed cycle {} (non-0 translation)", cycle.toString());
+				allCyclesClosed = false;
+				break;
 			}
 		}
 
-
-		logger.debug("All cycles of assembly {} are closed: valid assembly",toString());
-		return true;
+		return new SubAssemblyCheckCache.ComponentChecks(automorphic, numDistinctInterfaces, allIsologous, false, cycles.size(), allCyclesClosed, heteromeric);
 	}
 	
-	private boolean isZeroTranslation(UndirectedGraph<ChainVertex, InterfaceEdge> subgraph, List<ChainVertex> cycle) {
+	private static boolean isZeroTranslation(UndirectedGraph<ChainVertex, InterfaceEdge> subgraph, List<ChainVertex> cycle) {
 		
 		Point3i p = new Point3i(0,0,0);
 		for (int i=0;i<cycle.size();i++) {
@@ -390,7 +450,7 @@ public class AssemblyGraph {
 	 * @param subgraph
 	 * @return
 	 */
-	private boolean precheckMultiEdges(UndirectedGraph<ChainVertex,InterfaceEdge> subgraph) {
+	private static boolean precheckMultiEdges(UndirectedGraph<ChainVertex,InterfaceEdge> subgraph) {
 		
 		for (InterfaceEdge edge:subgraph.edgeSet()) {
 			Set<InterfaceEdge> edges = subgraph.getAllEdges(subgraph.getEdgeSource(edge), subgraph.getEdgeTarget(edge));
@@ -413,10 +473,11 @@ public class AssemblyGraph {
 	}
 
 	/**
-	 * Returns true if at least one edge of this AssemblyGraph is heteromeric, i.e. its 2 end-vertices are different entities
+	 * Returns true if at least one edge of the given graph is heteromeric, i.e. its 2 end-vertices are different entities
+	 * @param subgraph
 	 * @return
 	 */
-	private boolean containsHeteromeric() {
+	private static boolean containsHeteromeric(UndirectedGraph<ChainVertex,InterfaceEdge> subgraph) {
 		for (InterfaceEdge e:subgraph.edgeSet()) {
 			ChainVertex s = subgraph.getEdgeSource(e);
 			ChainVertex t = subgraph.getEdgeTarget(e);
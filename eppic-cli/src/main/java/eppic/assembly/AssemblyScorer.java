@@ -0,0 +1,246 @@
+package eppic.assembly;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jgrapht.UndirectedGraph;
+
+import eppic.InterfaceEvolContextList;
+
+/**
+ * Calculates the probabilistic scores of assemblies, see {@link Assembly#calcScore()}.
+ * <p>
+ * The probability of an assembly with engaged interface clusters E is the sum, over all
+ * subsets S of E with the same number of connected components (subassemblies) as E, of the
+ * probability of engaging exactly the clusters in S. Instead of building an AssemblyGraph for
+ * each of the 2^|E| subsets, the connected components are counted with a union-find over the
+ * edges of the lattice graph. The subsets are traversed depth-first, adding one cluster at a time
+ * and rolling back the union-find when backtracking. Because the number of components can only
+ * go down as clusters are added, a branch is cut as soon as either:
+ * <li>the count already equals the target: all completions qualify and their probabilities
+ * sum to the probability of the decided clusters</li>
+ * <li>engaging all undecided clusters can't bring the count down to the target</li>
+ * <p>
+ * One instance is shared by all assemblies of a {@link CrystalAssemblies}.
+ * Not thread safe.
+ *
+ */
+class AssemblyScorer {
+
+	private final int numVertices;
+
+	/**
+	 * For each interface cluster index, the vertex indices of its edges as consecutive pairs
+	 */
+	private final int[][] clusterEdges;
+
+	/**
+	 * For each interface cluster index, the probability of the interface cluster being biological
+	 */
+	private final double[] probs;
+
+	// the union-find with rollback: union by size without path compression
+	private final int[] parent;
+	private final int[] size;
+	private final int[] history;
+	private int historySize;
+	private int numComponents;
+
+	/**
+	 *
+	 * @param numVertices the number of vertices in the graph
+	 * @param clusterEdges for each interface cluster index, the vertex indices of its edges as consecutive pairs
+	 * @param probs for each interface cluster index, the probability of the interface cluster being biological
+	 */
+	public AssemblyScorer(int numVertices, int[][] clusterEdges, double[] probs) {
+		this.numVertices = numVertices;
+		this.clusterEdges = clusterEdges;
+		this.probs = probs;
+
+		this.parent = new int[numVertices];
+		this.size = new int[numVertices];
+		this.history = new int[numVertices];
+		reset();
+	}
+
+	/**
+	 * Constructs an AssemblyScorer for the given lattice graph, with interface cluster index i
+	 * corresponding to the i-th distinct interface cluster id of the graph (as in {@link AssemblyGraph})
+	 * and probabilities taken from the combined cluster predictor of cluster id i+1.
+	 * @param graph
+	 * @param iecl
+	 * @return
+	 */
+	public static AssemblyScorer fromLatticeGraph(UndirectedGraph<ChainVertex, InterfaceEdge> graph, InterfaceEvolContextList iecl) {
+
+		Map<ChainVertex, Integer> vertexIndices = new HashMap<>();
+		for (ChainVertex v : graph.vertexSet()) {
+			vertexIndices.put(v, vertexIndices.size());
+		}
+
+		List<Integer> distinctInterfClusterIds = new ArrayList<>(GraphUtils.getDistinctInterfaceClusters(graph));
+		int numClusters = distinctInterfClusterIds.size();
+
+		Map<Integer, Integer> clusterId2Idx = new HashMap<>();
+		for (int i=0;i<numClusters;i++) {
+			clusterId2Idx.put(distinctInterfClusterIds.get(i), i);
+		}
+
+		List<List<Integer>> edges = new ArrayList<>(numClusters);
+		for (int i=0;i<numClusters;i++) {
+			edges.add(new ArrayList<Integer>());
+		}
+		for (InterfaceEdge e : graph.edgeSet()) {
+			List<Integer> list = edges.get(clusterId2Idx.get(e.getClusterId()));
+			list.add(vertexIndices.get(graph.getEdgeSource(e)));
+			list.add(vertexIndices.get(graph.getEdgeTarget(e)));
+		}
+
+		int[][] clusterEdges = new int[numClusters][];
+		double[] probs = new double[numClusters];
+		for (int i=0;i<numClusters;i++) {
+			clusterEdges[i] = edges.get(i).stream().mapToInt(Integer::intValue).toArray();
+			probs[i] = iecl.getCombinedClusterPredictor(i+1).getScore();
+		}
+
+		return new AssemblyScorer(vertexIndices.size(), clusterEdges, probs);
+	}
+
+	/**
+	 * Returns the probability of the assembly with the given engaged interface clusters.
+	 * @param engagedSet
+	 * @return
+	 */
+	public double calcProbability(PowerSet engagedSet) {
+
+		reset();
+
+		List<Integer> engagedList = new ArrayList<>();
+		double outsideProb = 1;
+		for (int i=0;i<engagedSet.size();i++) {
+			if (engagedSet.isOn(i)) {
+				engagedList.add(i);
+			} else {
+				outsideProb *= 1 - probs[i];
+			}
+		}
+		int[] engaged = engagedList.stream().mapToInt(Integer::intValue).toArray();
+
+		for (int c : engaged) {
+			engage(c);
+		}
+		int target = numComponents;
+		rollback(0);
+
+		double sum = sumEquivalent(engaged, 0, 1, target);
+
+		if (engaged.length>0 && numVertices==target) {
+			// the empty subset is not counted for non-empty assemblies
+			double emptyProb = 1;
+			for (int c : engaged) {
+				emptyProb *= 1 - probs[c];
+			}
+			sum -= emptyProb;
+		}
+
+		return sum * outsideProb;
+	}
+
+	/**
+	 * Returns the number of connected components of the subgraph containing the edges of the given
+	 * interface clusters (and all vertices).
+	 * @param engagedSet
+	 * @return
+	 */
+	public int getNumComponents(PowerSet engagedSet) {
+		reset();
+		for (int i=0;i<engagedSet.size();i++) {
+			if (engagedSet.isOn(i)) engage(i);
+		}
+		return numComponents;
+	}
+
+	/**
+	 * Sums the probabilities of all subsets of the engaged clusters that contain the clusters currently in
+	 * the union-find, none of the clusters engaged[0..j-1] not in it, and have target components.
+	 * @param engaged
+	 * @param j the index of the next cluster in engaged to decide on
+	 * @param prob the probability of the decisions taken for engaged[0..j-1]
+	 * @param target
+	 * @return
+	 */
+	private double sumEquivalent(int[] engaged, int j, double prob, int target) {
+
+		// adding clusters never splits components: all completions have target components,
+		// and the probabilities of the undecided clusters sum to 1 over them
+		if (numComponents==target) return prob;
+
+		if (j==engaged.length) return 0;
+
+		int mark = historySize;
+
+		// engaging all the rest gives the minimum number of components reachable from here
+		for (int t=j;t<engaged.length;t++) {
+			engage(engaged[t]);
+		}
+		boolean reachable = numComponents==target;
+		rollback(mark);
+		if (!reachable) return 0;
+
+		int c = engaged[j];
+
+		engage(c);
+		double sum = sumEquivalent(engaged, j+1, prob * probs[c], target);
+		rollback(mark);
+
+		sum += sumEquivalent(engaged, j+1, prob * (1 - probs[c]), target);
+
+		return sum;
+	}
+
+	private void reset() {
+		for (int i=0;i<numVertices;i++) {
+			parent[i] = i;
+			size[i] = 1;
+		}
+		historySize = 0;
+		numComponents = numVertices;
+	}
+
+	private void engage(int cluster) {
+		int[] edges = clusterEdges[cluster];
+		for (int k=0;k<edges.length;k+=2) {
+			union(edges[k], edges[k+1]);
+		}
+	}
+
+	private int find(int v) {
+		while (parent[v]!=v) v = parent[v];
+		return v;
+	}
+
+	private void union(int u, int v) {
+		int ru = find(u);
+		int rv = find(v);
+		if (ru==rv) return;
+		if (size[ru]<size[rv]) {
+			int tmp = ru; ru = rv; rv = tmp;
+		}
+		parent[rv] = ru;
+		size[ru] += size[rv];
+		history[historySize++] = rv;
+		numComponents--;
+	}
+
+	private void rollback(int mark) {
+		while (historySize>mark) {
+			int rv = history[--historySize];
+			int ru = parent[rv];
+			size[ru] -= size[rv];
+			parent[rv] = rv;
+			numComponents++;
+		}
+	}
+}
@@ -1,6 +1,7 @@
 package eppic.assembly;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
@@ -11,6 +12,10 @@ import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.biojava.nbio.structure.Chain;
 import org.biojava.nbio.structure.Compound;
@@ -39,7 +44,12 @@ public class CrystalAssemblies implements Iterable<Assembly> {
 	 * If this max number of assemblies is exceeded the assembly enumeration will happen on
 	 * the heteromeric-contracted graph instead of on the full graph.
 	 */
-	private static final int MAX_ALLOWED_ASSEMBLIES = 1000;
+	private static final int DEF_MAX_ALLOWED_ASSEMBLIES = 1000;
+	
+	/**
+	 * The minimum number of candidates in a level of the enumeration tree to validate them in parallel
+	 */
+	private static final int MIN_CANDIDATES_FOR_PARALLEL = 8;
 	
 	private LatticeGraph<ChainVertex,InterfaceEdge> latticeGraph;
 	private Structure structure;
@@ -73,6 +83,20 @@ public class CrystalAssemblies implements Iterable<Assembly> {
 	 * heuristically contracting heteromeric edges.
 	 */
 	private boolean exhaustiveEnumeration;
+	
+	private int maxAllowedAssemblies;
+	
+	private int numThreads;
+	
+	/**
+	 * The validity checks of connected components, shared by all assemblies of the enumeration
+	 */
+	private SubAssemblyCheckCache subAssemblyCheckCache;
+	
+	/**
+	 * The scorer shared by all assemblies, initialised lazily on first scoring
+	 */
+	private AssemblyScorer assemblyScorer;
 		
 	/**
 	 * 
@@ -81,7 +105,7 @@ public class CrystalAssemblies implements Iterable<Assembly> {
 	 * @throws StructureException
 	 */
 	public CrystalAssemblies(Structure structure, StructureInterfaceList interfaces) throws StructureException {
-		init(structure, interfaces, false);
+		this(structure, interfaces, false);
 	}
 	
 	/**
@@ -92,6 +116,22 @@ public class CrystalAssemblies implements Iterable<Assembly> {
 	 * @throws StructureException
 	 */
 	public CrystalAssemblies(Structure structure, StructureInterfaceList interfaces, boolean forceContracted) throws StructureException {
+		this(structure, interfaces, forceContracted, DEF_MAX_ALLOWED_ASSEMBLIES, 1);
+	}
+	
+	/**
+	 * 
+	 * @param structure
+	 * @param interfaces
+	 * @param forceContracted
+	 * @param maxAllowedAssemblies if the full enumeration finds more valid assemblies than this, 
+	 * the enumeration is done on the heteromeric-contracted graph instead
+	 * @param numThreads the number of threads used to validate the candidate assemblies of each level of the enumeration tree
+	 * @throws StructureException
+	 */
+	public CrystalAssemblies(Structure structure, StructureInterfaceList interfaces, boolean forceContracted, int maxAllowedAssemblies, int numThreads) throws StructureException {
+		this.maxAllowedAssemblies = maxAllowedAssemblies;
+		this.numThreads = numThreads;
 		init(structure, interfaces, forceContracted);
 	}
 	
@@ -102,6 +142,7 @@ public class CrystalAssemblies implements Iterable<Assembly> {
 		this.exhaustiveEnumeration = true;
 		
 		this.structure = structure;
+		this.subAssemblyCheckCache = new SubAssemblyCheckCache();
 		this.latticeGraph = new LatticeGraph<ChainVertex,InterfaceEdge>(structure, interfaces,ChainVertex.class,InterfaceEdge.class);
 				
 		initEntityMaps();
@@ -120,7 +161,7 @@ public class CrystalAssemblies implements Iterable<Assembly> {
 
 		if (!forceContracted && largeNumAssemblies) {
 
-			logger.info("Structure has more than {} assemblies in full enumeration, will contract heteromeric interfaces to enumerate assemblies.", MAX_ALLOWED_ASSEMBLIES);
+			logger.info("Structure has more than {} assemblies in full enumeration, will contract heteromeric interfaces to enumerate assemblies.", maxAllowedAssemblies);
 
 			graphContractor = latticeGraph.contractGraph(InterfaceEdge.class);
 			
@@ -140,6 +181,8 @@ public class CrystalAssemblies implements Iterable<Assembly> {
 		initGroups();
 
 		initClusters();
+		
+		logger.info("Sub-assembly checks cache: {}", subAssemblyCheckCache.toString());
 	}
 	
 	public int size() {
@@ -162,64 +205,142 @@ public class CrystalAssemblies implements Iterable<Assembly> {
 	 * As the tree is traversed, if a node is found to be an invalid assembly, then all of its children
 	 * are pruned off and not tried. Thus the number of combinations reduces very quickly with a few
 	 * pruned top nodes.
+	 * <p>
+	 * The nodes are represented as BitSets of engaged interface clusters. Each node of a level is generated
+	 * only once, from its parent without its highest cluster, and it is discarded straight away if it is a 
+	 * superset of any invalid node (see {@link InvalidSetIndex}). Only the surviving nodes are made 
+	 * into Assemblies and validated, in parallel if numThreads is larger than 1. 
 	 * @return
 	 */
 	private void findValidAssemblies() {
 				
+		// the lattice graph might have been contracted since last enumeration: the cached component checks are not valid anymore
+		subAssemblyCheckCache.clear();
+		
 		Set<Assembly> validAssemblies = new HashSet<Assembly>();
 		
 		// in contracted case this will find the distinct interfaces for the contracted graph
 		int numInterfaceClusters = GraphUtils.getNumDistinctInterfaces(latticeGraph.getGraph());
 		
-		// the list of nodes in the tree found to be invalid: all of their children will also be invalid
-		List<Assembly> invalidNodes = new ArrayList<Assembly>();		
+		// the nodes in the tree found to be invalid: all of their children will also be invalid
+		InvalidSetIndex invalidNodes = new InvalidSetIndex(numInterfaceClusters);
 		
 		Assembly emptyAssembly = new Assembly(this, new PowerSet(numInterfaceClusters));
+		// the graph is built lazily: we need it now, while the lattice graph is the one we enumerate on.
+		// This also initialises the lazy members of the lattice graph before validating in parallel
+		emptyAssembly.getAssemblyGraph();
 		
 		validAssemblies.add(emptyAssembly); // the empty assembly (no engaged interfaces) is always a valid assembly
 		
-		Set<Assembly> prevLevel = new HashSet<Assembly>();
-		prevLevel.add(emptyAssembly);
-		Set<Assembly> nextLevel = null;
+		List<BitSet> prevLevel = new ArrayList<BitSet>();
+		prevLevel.add(new BitSet(numInterfaceClusters));
 
-		for (int k = 1; k<=numInterfaceClusters; k++) {
-
-			logger.debug("Traversing level {} of tree: {} parent nodes",k,prevLevel.size());
+		ExecutorService executor = null;
+		if (numThreads>1) {
+			executor = Executors.newFixedThreadPool(numThreads);
+		}
+		
+		try {
+			for (int k = 1; k<=numInterfaceClusters; k++) {
 
-			nextLevel = new HashSet<Assembly>();
+				logger.debug("Traversing level {} of tree: {} parent nodes",k,prevLevel.size());
 
-			for (Assembly p:prevLevel) {
-				List<Assembly> children = p.getChildren(invalidNodes);
+				List<BitSet> candidates = new ArrayList<BitSet>();
+				
+				for (BitSet p:prevLevel) {
+					// each child is generated only from the parent that lacks its highest cluster: 
+					// if that parent is invalid or pruned, the child contains an invalid node anyway
+					for (int i=p.length();i<numInterfaceClusters;i++) {
+						BitSet c = (BitSet) p.clone();
+						c.set(i);
+						// the parent is valid, so any invalid subset of c must contain i
+						if (invalidNodes.containsSubsetOf(c, i)) continue;
+						candidates.add(c);
+					}
+				}
+				
+				if (candidates.isEmpty()) break;
+				
+				List<Assembly> assemblies = new ArrayList<Assembly>(candidates.size());
+				for (BitSet c:candidates) {
+					assemblies.add(new Assembly(this, new PowerSet(c, numInterfaceClusters)));
+				}
+				
+				boolean[] valid = validate(assemblies, executor);
 
-				for (Assembly c:children) {
+				List<BitSet> nextLevel = new ArrayList<BitSet>();
 
-					if (!c.isValid()) {
+				for (int j=0;j<assemblies.size();j++) {
+					Assembly c = assemblies.get(j);
+					if (!valid[j]) {
 						logger.debug("Node {} is invalid, will prune off all of its children",c.toString());
-						invalidNodes.add(c);
+						invalidNodes.add(candidates.get(j));
 					} else {
 						// we only add a child for next level if we know it's valid, if it wasn't valid 
 						// then it's not added and thus the whole branch is pruned
-						nextLevel.add(c);
+						nextLevel.add(candidates.get(j));
 						// add assembly as valid
 						validAssemblies.add(c);
-
-						if (validAssemblies.size() > MAX_ALLOWED_ASSEMBLIES) {
-							logger.warn("Exceeded the default max number of allowed assemblies ({}). Will do assembly enumeration from heteromeric-contracted graph", MAX_ALLOWED_ASSEMBLIES);
-							largeNumAssemblies = true;
-							all = new HashSet<Assembly>();
-							return;
-						}
 					}
 				}
-			}
-			prevLevel = new HashSet<Assembly>(nextLevel); 
+				
+				if (validAssemblies.size() > maxAllowedAssemblies) {
+					logger.warn("Exceeded the max number of allowed assemblies ({}). Will do assembly enumeration from heteromeric-contracted graph", maxAllowedAssemblies);
+					largeNumAssemblies = true;
+					all = new HashSet<Assembly>();
+					return;
+				}
+				
+				prevLevel = nextLevel; 
 
+			}
+		} finally {
+			if (executor!=null) executor.shutdown();
 		}
+		
+		logger.info("Assembly enumeration: {} valid assemblies, {} invalid nodes", validAssemblies.size(), invalidNodes.size());
 
 		this.all = validAssemblies;
 		
 
 	}
+	
+	/**
+	 * Checks the validity of the given assemblies, in parallel if an executor is given.
+	 * @param assemblies
+	 * @param executor the executor or null to check them serially
+	 * @return an array with the validity of each of the given assemblies
+	 */
+	private boolean[] validate(List<Assembly> assemblies, ExecutorService executor) {
+		boolean[] valid = new boolean[assemblies.size()];
+		
+		if (executor==null || assemblies.size()<MIN_CANDIDATES_FOR_PARALLEL) {
+			for (int j=0;j<assemblies.size();j++) {
+				valid[j] = assemblies.get(j).isValid();
+			}
+			return valid;
+		}
+		
+		List<Future<Boolean>> futures = new ArrayList<Future<Boolean>>(assemblies.size());
+		for (Assembly a:assemblies) {
+			futures.add(executor.submit(() -> a.isValid()));
+		}
+		
+		for (int j=0;j<futures.size();j++) {
+			try {
+				valid[j] = futures.get(j).get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RuntimeException("Interrupted while validating assemblies", e);
+			} catch (ExecutionException e) {
+				Throwable cause = e.getCause();
+				if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+				if (cause instanceof Error) throw (Error) cause;
+				throw new RuntimeException(cause);
+			}
+		}
+		return valid;
+	}
 
 	private void initGroups() {
 		this.groups = new TreeMap<Integer, AssemblyGroup>();
@@ -321,6 +442,7 @@ public class CrystalAssemblies implements Iterable<Assembly> {
 
 		// this sets the exposed graph in lattice graph back to the full graph
 		latticeGraph.filterEngagedClusters(null); 
+		subAssemblyCheckCache.clear();
 		
 		// let's get the number of interfaces in the full graph
 		int numInterfaceClusters = GraphUtils.getNumDistinctInterfaces(latticeGraph.getGraph());
@@ -567,12 +689,33 @@ public class CrystalAssemblies implements Iterable<Assembly> {
 		return generateAssembly(icIds);
 	}
 	
+	/**
+	 * Returns the cache of sub-assembly validity checks shared by all assemblies 
+	 * @return
+	 */
+	SubAssemblyCheckCache getSubAssemblyCheckCache() {
+		return subAssemblyCheckCache;
+	}
+	
 	public InterfaceEvolContextList getInterfaceEvolContextList() {
 		return interfEvolContextList;		
 	}
 	
 	public void setInterfaceEvolContextList(InterfaceEvolContextList interfEvolContextList) {
 		this.interfEvolContextList = interfEvolContextList;
+		// the probabilities of the scorer come from the interface evol context list
+		this.assemblyScorer = null;
+	}
+	
+	/**
+	 * Returns the AssemblyScorer used to score all assemblies in the crystal
+	 * @return
+	 */
+	synchronized AssemblyScorer getAssemblyScorer() {
+		if (assemblyScorer==null) {
+			assemblyScorer = AssemblyScorer.fromLatticeGraph(latticeGraph.getGraph(), interfEvolContextList);
+		}
+		return assemblyScorer;
 	}
 	
 	/**
@@ -584,6 +727,11 @@ public class CrystalAssemblies implements Iterable<Assembly> {
 
 		// this gets each of the unique assembly clusters, represented by the maximal member
 		List<Assembly> uniques = getUniqueAssemblies();
+		
+		// the scorer is shared by all assemblies, we make sure it picks up the current interface cluster probabilities
+		synchronized (this) {
+			assemblyScorer = null;
+		}
 
 		// 1 Do individual assemblies scoring
 		for (Assembly a:uniques) {
@@ -0,0 +1,95 @@
+package eppic.assembly;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * An index of the sets of engaged interface clusters found to be invalid assemblies
+ * during the assembly enumeration. Any superset of an invalid set is also invalid, thus
+ * the index is used to prune candidates before building their assembly graphs.
+ * <p>
+ * The sets are stored as long[] masks in posting lists, one per interface cluster index:
+ * each invalid set is listed under each of its indices. Checking a candidate obtained by
+ * switching on index i in a valid parent only needs to look at the posting list of i,
+ * since any invalid subset of the candidate must contain i.
+ *
+ */
+class InvalidSetIndex {
+
+	private final List<List<long[]>> postings;
+
+	private int size;
+
+	/**
+	 * Constructs an empty index for sets of the given number of interface clusters
+	 * @param numInterfaceClusters
+	 */
+	public InvalidSetIndex(int numInterfaceClusters) {
+		this.postings = new ArrayList<List<long[]>>(numInterfaceClusters);
+		for (int i=0;i<numInterfaceClusters;i++) {
+			postings.add(new ArrayList<long[]>());
+		}
+		this.size = 0;
+	}
+
+	/**
+	 * Adds an invalid set to the index
+	 * @param invalid
+	 */
+	public void add(BitSet invalid) {
+		long[] mask = invalid.toLongArray();
+		for (int i = invalid.nextSetBit(0); i>=0; i = invalid.nextSetBit(i+1)) {
+			postings.get(i).add(mask);
+		}
+		size++;
+	}
+
+	/**
+	 * Returns true if any of the invalid sets containing index i is a subset of the given candidate.
+	 * If the candidate was obtained by switching on i in a set that is not a superset of any invalid
+	 * set, this is equivalent to checking for all invalid sets.
+	 * @param candidate
+	 * @param i
+	 * @return
+	 */
+	public boolean containsSubsetOf(BitSet candidate, int i) {
+		List<long[]> list = postings.get(i);
+		if (list.isEmpty()) return false;
+
+		long[] c = candidate.toLongArray();
+		for (long[] mask:list) {
+			if (isSubset(mask, c)) return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Returns true if any of the invalid sets is a subset of the given candidate
+	 * @param candidate
+	 * @return
+	 */
+	public boolean containsSubsetOf(BitSet candidate) {
+		for (int i = candidate.nextSetBit(0); i>=0; i = candidate.nextSetBit(i+1)) {
+			if (containsSubsetOf(candidate, i)) return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the number of invalid sets in the index
+	 * @return
+	 */
+	public int size() {
+		return size;
+	}
+
+	private static boolean isSubset(long[] sub, long[] sup) {
+		// toLongArray() drops trailing zero words: a longer sub has bits beyond sup
+		if (sub.length > sup.length) return false;
+		for (int w=0;w<sub.length;w++) {
+			if ((sub[w] & ~sup[w]) != 0) return false;
+		}
+		return true;
+	}
+}
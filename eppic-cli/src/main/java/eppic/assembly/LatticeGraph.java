@@ -87,7 +87,9 @@ public class LatticeGraph<V extends ChainVertex,E extends InterfaceEdge> {
 	 * Create the graph, initializing given the input structure and interfaces.
 	 * @param struct Structure, which must include crystallographic info
 	 * @param interfaces (Optional) list of interfaces from struct. If null, will
-	 *  be calculated from the structure (slow).
+	 *  be calculated from the structure (slow). Only the chain ids, transforms and ids
+	 *  of the interfaces are used, so that {@link StoredStructureInterface}s rebuilt
+	 *  from a previous run can be passed.
 	 * @param vertexClass Class of vertices, used to create new nodes
 	 * @param edgeClass Class of edges, used to create new edges
 	 * @throws StructureException
@@ -673,7 +675,7 @@ public class LatticeGraph<V extends ChainVertex,E extends InterfaceEdge> {
 	 * @param s
 	 * @return
 	 */
-	protected static SpaceGroup getSpaceGroup(Structure s) {
+	public static SpaceGroup getSpaceGroup(Structure s) {
 		PDBCrystallographicInfo crystalInfo = s.getCrystallographicInfo();
 		
 		// non-crystallographic cases (e.g. NMR): we set to P1
@@ -2,6 +2,7 @@ package eppic.assembly;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -30,6 +31,18 @@ public class PowerSet {
 		this.set = set;
 	}
 	
+	/**
+	 * Constructs a PowerSet of given size with the positions set in the given BitSet switched on
+	 * @param bits
+	 * @param size
+	 */
+	public PowerSet(BitSet bits, int size) {
+		this.set = new boolean[size];
+		for (int i = bits.nextSetBit(0); i>=0 && i<size; i = bits.nextSetBit(i+1)) {
+			this.set[i] = true;
+		}
+	}
+	
 	/**
 	 * Copy constructor
 	 * @param powerSet
@@ -112,6 +125,18 @@ public class PowerSet {
 		return this.set.length;
 	}
 	
+	/**
+	 * Returns a BitSet with the positions that are switched on in this PowerSet
+	 * @return
+	 */
+	public BitSet toBitSet() {
+		BitSet bits = new BitSet(set.length);
+		for (int i=0;i<set.length;i++) {
+			if (set[i]) bits.set(i);
+		}
+		return bits;
+	}
+	
 	@Override
 	public boolean equals(Object other) {
 		if (! (other instanceof PowerSet)) return false;
@@ -0,0 +1,75 @@
+package eppic.assembly;
+
+import org.biojava.nbio.structure.Atom;
+import org.biojava.nbio.structure.contact.StructureInterface;
+import org.biojava.nbio.structure.contact.StructureInterfaceCluster;
+import org.biojava.nbio.structure.xtal.CrystalTransform;
+import org.biojava.nbio.structure.xtal.SpaceGroup;
+
+/**
+ * A {@link StructureInterface} rebuilt from the properties stored for it by a previous eppic run
+ * (chain ids, operator, cluster id, isologous and infinite flags), without atoms or contacts.
+ * <p>
+ * It carries everything that {@link LatticeGraph} needs to build its vertices and edges, so
+ * that a graph can be constructed without recalculating the interfaces: the isologous and
+ * infinite properties, which {@link StructureInterface} would otherwise calculate from
+ * the contacts, are returned as stored.
+ * See https://github.com/eppic-team/eppic/issues/159
+ */
+public class StoredStructureInterface extends StructureInterface {
+
+	private static final long serialVersionUID = 1L;
+
+	private final boolean infinite;
+	private final boolean isologous;
+
+	/**
+	 *
+	 * @param interfaceId the interface id
+	 * @param clusterId the interface cluster id
+	 * @param firstMoleculeId the chain id of the first molecule
+	 * @param secondMoleculeId the chain id of the second molecule
+	 * @param sg the space group
+	 * @param operatorId the id of the operator of the second molecule within the space group,
+	 * the first molecule being untransformed
+	 * @param operator the full operator of the second molecule (including the lattice translation)
+	 * in algebraic notation
+	 * @param infinite
+	 * @param isologous
+	 * @throws IllegalArgumentException if the operator id is not one of the space group
+	 */
+	public StoredStructureInterface(int interfaceId, int clusterId, String firstMoleculeId, String secondMoleculeId,
+			SpaceGroup sg, int operatorId, String operator, boolean infinite, boolean isologous) {
+		super(new Atom[0], new Atom[0], firstMoleculeId, secondMoleculeId, null,
+				new CrystalTransform(sg, 0), createTransform(sg, operatorId, operator));
+
+		this.infinite = infinite;
+		this.isologous = isologous;
+
+		setId(interfaceId);
+		// one cluster object per interface: only the id is used by the lattice graph
+		StructureInterfaceCluster cluster = new StructureInterfaceCluster();
+		cluster.setId(clusterId);
+		setCluster(cluster);
+	}
+
+	private static CrystalTransform createTransform(SpaceGroup sg, int operatorId, String operator) {
+		if (operatorId < 0 || operatorId >= sg.getNumOperators()) {
+			throw new IllegalArgumentException("Operator id "+operatorId+" out of range, space group "+
+					sg.getShortSymbol()+" has "+sg.getNumOperators()+" operators");
+		}
+		CrystalTransform transf = new CrystalTransform(sg, operatorId);
+		transf.setMatTransform(SpaceGroup.getMatrixFromAlgebraic(operator));
+		return transf;
+	}
+
+	@Override
+	public boolean isInfinite() {
+		return infinite;
+	}
+
+	@Override
+	public boolean isIsologous() {
+		return isologous;
+	}
+}
@@ -0,0 +1,166 @@
+package eppic.assembly;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jgrapht.UndirectedGraph;
+
+/**
+ * A cache of the validity checks of connected components (SubAssemblies), shared by all
+ * assemblies of a {@link CrystalAssemblies} enumeration. Most connected components of a child
+ * in the enumeration tree are also connected components of its parent, so the checks
+ * (automorphism, cycle closure) of each distinct component only need to be done once.
+ * <p>
+ * A component is identified by its set of edges: the edges of the lattice graph are unique
+ * objects and all edges of an engaged interface cluster between vertices of a component
+ * belong to it. Components without edges (single vertices) are not cached.
+ * <p>
+ * The entity-isomorphism check of an assembly only depends on its set of unique
+ * stoichiometries, which is cached too.
+ * <p>
+ * The cache must be cleared whenever the lattice graph changes (e.g. when contracting it).
+ * This class is thread safe.
+ *
+ */
+class SubAssemblyCheckCache {
+
+	/**
+	 * The result of the validity checks of one connected component
+	 */
+	static class ComponentChecks {
+
+		final boolean automorphic;
+		final int numDistinctInterfaces;
+		final boolean allIsologous;
+		final boolean nonZeroMultiEdges;
+		final int numCycles;
+		final boolean allCyclesClosed;
+		final boolean heteromeric;
+
+		ComponentChecks(boolean automorphic, int numDistinctInterfaces, boolean allIsologous,
+				boolean nonZeroMultiEdges, int numCycles, boolean allCyclesClosed, boolean heteromeric) {
+			this.automorphic = automorphic;
+			this.numDistinctInterfaces = numDistinctInterfaces;
+			this.allIsologous = allIsologous;
+			this.nonZeroMultiEdges = nonZeroMultiEdges;
+			this.numCycles = numCycles;
+			this.allCyclesClosed = allCyclesClosed;
+			this.heteromeric = heteromeric;
+		}
+	}
+
+	private final ConcurrentMap<Set<InterfaceEdge>, ComponentChecks> components;
+	private final ConcurrentMap<Set<Stoichiometry<Integer>>, Boolean> entityIsomorphic;
+
+	private final AtomicLong componentHits;
+	private final AtomicLong componentMisses;
+	private final AtomicLong entityIsomorphicHits;
+	private final AtomicLong entityIsomorphicMisses;
+
+	public SubAssemblyCheckCache() {
+		this.components = new ConcurrentHashMap<>();
+		this.entityIsomorphic = new ConcurrentHashMap<>();
+		this.componentHits = new AtomicLong(0);
+		this.componentMisses = new AtomicLong(0);
+		this.entityIsomorphicHits = new AtomicLong(0);
+		this.entityIsomorphicMisses = new AtomicLong(0);
+	}
+
+	/**
+	 * Returns the checks for the given connected component, computing them if not cached.
+	 * @param subAssembly
+	 * @return
+	 */
+	public ComponentChecks getChecks(SubAssembly subAssembly) {
+		UndirectedGraph<ChainVertex, InterfaceEdge> g = subAssembly.getConnectedGraph();
+
+		if (g.edgeSet().isEmpty()) {
+			return AssemblyGraph.checkComponent(g);
+		}
+
+		// the edges have identity equality, the set is a cheap key
+		Set<InterfaceEdge> key = Collections.unmodifiableSet(new HashSet<>(g.edgeSet()));
+
+		ComponentChecks checks = components.get(key);
+		if (checks!=null) {
+			componentHits.incrementAndGet();
+			return checks;
+		}
+
+		// if another thread computes the same component concurrently, both results are identical
+		checks = AssemblyGraph.checkComponent(g);
+		ComponentChecks existing = components.putIfAbsent(key, checks);
+		componentMisses.incrementAndGet();
+		return existing!=null ? existing : checks;
+	}
+
+	/**
+	 * Returns true if none of the given unique stoichiometries overlap, see {@link AssemblyGraph#isEntityIsomorphic()}
+	 * @param uniqueStoichiometries
+	 * @return
+	 */
+	public boolean isEntityIsomorphic(List<Stoichiometry<Integer>> uniqueStoichiometries) {
+		Set<Stoichiometry<Integer>> key = new HashSet<>(uniqueStoichiometries);
+
+		Boolean isomorphic = entityIsomorphic.get(key);
+		if (isomorphic!=null) {
+			entityIsomorphicHits.incrementAndGet();
+			return isomorphic;
+		}
+
+		isomorphic = true;
+		for (int i=0;i<uniqueStoichiometries.size() && isomorphic;i++) {
+			for (int j=i+1;j<uniqueStoichiometries.size();j++) {
+				if (uniqueStoichiometries.get(i).isOverlapping(uniqueStoichiometries.get(j))) {
+					isomorphic = false;
+					break;
+				}
+			}
+		}
+		entityIsomorphic.putIfAbsent(key, isomorphic);
+		entityIsomorphicMisses.incrementAndGet();
+		return isomorphic;
+	}
+
+	/**
+	 * Removes all cached checks, to be called when the lattice graph changes.
+	 * The hit/miss counters are kept.
+	 */
+	public void clear() {
+		components.clear();
+		entityIsomorphic.clear();
+	}
+
+	public long getComponentHits() {
+		return componentHits.get();
+	}
+
+	public long getComponentMisses() {
+		return componentMisses.get();
+	}
+
+	public long getEntityIsomorphicHits() {
+		return entityIsomorphicHits.get();
+	}
+
+	public long getEntityIsomorphicMisses() {
+		return entityIsomorphicMisses.get();
+	}
+
+	@Override
+	public String toString() {
+		return String.format("components: %d hits, %d misses (%.1f%% hit rate); entity isomorphism: %d hits, %d misses (%.1f%% hit rate)",
+				getComponentHits(), getComponentMisses(), hitRate(getComponentHits(), getComponentMisses()),
+				getEntityIsomorphicHits(), getEntityIsomorphicMisses(), hitRate(getEntityIsomorphicHits(), getEntityIsomorphicMisses()));
+	}
+
+	private static double hitRate(long hits, long misses) {
+		if (hits+misses==0) return 0;
+		return 100.0 * hits / (hits+misses);
+	}
+}
@@ -61,6 +61,11 @@ public class HomologList implements  Serializable {//Iterable<UniprotHomolog>,
 	private static final boolean 	BLAST_NO_FILTERING = true;
 	private static final String 	UNIPROT_VER_FILE = "reldate.txt";
 	
+	/**
+	 * The UniProt version returned by {@link #readUniprotVer(String)} when it can't be read
+	 */
+	public static final String		UNKNOWN_UNIPROT_VER = "unknown";
+	
 	private static final int        BLASTCLUST_STARTING_CLUSTERING_ID = 98;
 	private static final int		CLUSTERING_ID_STEP = 1;
 	private static final double 	BLASTCLUST_CLUSTERING_COVERAGE = 0.99;
@@ -287,7 +292,7 @@ public class HomologList implements  Serializable {//Iterable<UniprotHomolog>,
 	}
 	
 	public static String readUniprotVer(String blastDbDir) {
-		String ver = "unknown";
+		String ver = UNKNOWN_UNIPROT_VER;
 		File uniprotVerFile = new File(blastDbDir,UNIPROT_VER_FILE);
 		try {
 			
@@ -939,9 +944,10 @@ public class HomologList implements  Serializable {//Iterable<UniprotHomolog>,
 	 */
 	public void computeEntropies(AAAlphabet alphabet) {
 		this.alphabet = alphabet;
-		this.entropies = new ArrayList<Double>(); 
+		this.entropies = new ArrayList<Double>(refInterval.getLength()); 
+		double[] columnEntropies = this.aln.computeAllColumnEntropies(alphabet);
 		for (int i=0;i<refInterval.getLength();i++){
-			entropies.add(this.aln.getColumnEntropy(this.aln.seq2al(ref.getUniId(),i+1), alphabet));
+			entropies.add(columnEntropies[this.aln.seq2al(ref.getUniId(),i+1)-1]);
 		}
 	}
 	
@@ -6,6 +6,7 @@ import java.io.IOException;
 import java.io.PrintStream;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
@@ -52,6 +53,10 @@ public class MultipleSequenceAlignment implements Serializable {
 	private TreeMap<Integer,int[]> mapAlign2Seq; // map of seq index to arrays mapping alignment serials to sequence serials 
 	private TreeMap<Integer,int[]> mapSeq2Align; // map of seq index to arrays mapping sequence serials to alignment serials
 	
+	// the column-major (transposed) matrix of alphabet group indices, see getEncodedColumns()
+	private transient byte[] encodedColumns;
+	private transient AAAlphabet encodedAlphabet; // the alphabet used for encodedColumns
+	
 	/*----------------------------- constructors ----------------------------*/
 	
 	/**
@@ -195,6 +200,10 @@ public class MultipleSequenceAlignment implements Serializable {
 	 * Both sequence and alignment indices start at 1
 	 */
 	private void doMapping() {
+		// the sequences changed: the column encoding needs to be recomputed
+		this.encodedColumns = null;
+		this.encodedAlphabet = null;
+		
 		this.mapAlign2Seq = new TreeMap<Integer, int[]>();
 		this.mapSeq2Align = new TreeMap<Integer, int[]>();
 				
@@ -618,14 +627,15 @@ public class MultipleSequenceAlignment implements Serializable {
      * @return
      */
     public String getSequenceNoGaps(String seqTag){
-    	String seq = "";
-    	for (int i=0;i<getAlignmentLength();i++){
-    		char letter = getAlignedSequence(seqTag).charAt(i);
+    	String alnSeq = getAlignedSequence(seqTag);
+    	StringBuilder seq = new StringBuilder(alnSeq.length());
+    	for (int i=0;i<alnSeq.length();i++){
+    		char letter = alnSeq.charAt(i);
     		if (letter!=GAPCHARACTER){
-    			seq+=letter;
+    			seq.append(letter);
     		}
     	}
-    	return seq;
+    	return seq.toString();
     }
     
     /**
@@ -662,11 +672,11 @@ public class MultipleSequenceAlignment implements Serializable {
      * @return
      */
     public String getColumn(int alignIndex){
-    	String col="";
-    	for (String seq:sequences){
-    		col+=seq.charAt(alignIndex-1);
+    	char[] col = new char[sequences.length];
+    	for (int i=0;i<sequences.length;i++){
+    		col[i] = sequences[i].charAt(alignIndex-1);
     	}
-    	return col;
+    	return new String(col);
     }
     
     /**
@@ -726,6 +736,90 @@ public class MultipleSequenceAlignment implements Serializable {
     	return counts;
     }
 
+    /**
+     * Calculates the entropies of all columns of the alignment in one pass, assuming that 
+     * this is a multiple protein sequence alignment. The values are identical to those of 
+     * {@link #getColumnEntropy(int, AAAlphabet)} but no per-column objects are created: the 
+     * alignment is encoded once into a transposed matrix of alphabet group indices that is
+     * kept for subsequent calls with the same alphabet. 
+     * @param alphabet the AAAlphabet
+     * @return an array of size {@link #getAlignmentLength()} with the entropy of column 
+     * alignIndex at array index alignIndex-1
+     */
+    public double[] computeAllColumnEntropies(AAAlphabet alphabet) {
+    	byte[] encoded = getEncodedColumns(alphabet);
+    	int numSeqs = this.getNumberOfSequences();
+    	int numLetters = alphabet.getNumLetters();
+    	int length = this.getAlignmentLength();
+    	
+    	double log2 = Math.log(2);
+    	
+    	double[] entropies = new double[length];
+    	int[] counts = new int[numLetters + 1];
+    	
+    	for (int col = 0; col < length; col++) {
+    		Arrays.fill(counts, 0);
+    		int offset = col * numSeqs;
+    		for (int i = offset; i < offset + numSeqs; i++) {
+    			byte group = encoded[i];
+    			// non-standard aas are encoded as -1 and not counted, as in getColumnCounts
+    			if (group >= 0) counts[group]++;
+    		}
+    		
+    		// important: we are considering also gaps when calculating probabilities
+    		double sumplogp = 0.0;
+    		for (int j = 1; j <= numLetters; j++) {
+    			if (counts[j] != 0) { // plogp is 0 for p=0, see getColumnEntropy
+    				double prob = (double)counts[j] / (double)numSeqs;
+    				sumplogp += prob*(Math.log(prob)/log2);
+    			}
+    		}
+    		entropies[col] = (-1.0)*sumplogp;
+    	}
+    	return entropies;
+    }
+    
+    /**
+     * Gets the alignment as a column-major (transposed) matrix of group indices of the given 
+     * alphabet: the group of sequence i at column alignIndex is at array index 
+     * (alignIndex-1)*{@link #getNumberOfSequences()}+i. Gaps are encoded as 0, standard aminoacids 
+     * as their group in the alphabet (from 1 to number of letters) and any other character as -1. 
+     * The matrix is cached until the sequences or the alphabet change.
+     * @param alphabet
+     * @return
+     */
+    private byte[] getEncodedColumns(AAAlphabet alphabet) {
+    	if (encodedColumns != null && encodedAlphabet == alphabet) {
+    		return encodedColumns;
+    	}
+    	
+    	// the lookup table from one-letter code to group index
+    	byte[] char2group = new byte[128];
+    	Arrays.fill(char2group, (byte)-1);
+    	char2group[GAPCHARACTER] = 0;
+    	for (char letter = 0; letter < char2group.length; letter++) {
+    		if (AminoAcid.isStandardAA(letter)) {
+    			char2group[letter] = (byte) alphabet.getGroupByOneLetterCode(letter);
+    		}
+    	}
+    	
+    	int numSeqs = this.getNumberOfSequences();
+    	int length = this.getAlignmentLength();
+    	byte[] encoded = new byte[length * numSeqs];
+    	
+    	for (int i = 0; i < numSeqs; i++) {
+    		String seq = sequences[i];
+    		for (int col = 0; col < length; col++) {
+    			char letter = seq.charAt(col);
+    			encoded[col * numSeqs + i] = letter < char2group.length ? char2group[letter] : -1;
+    		}
+    	}
+    	
+    	this.encodedColumns = encoded;
+    	this.encodedAlphabet = alphabet;
+    	return encoded;
+    }
+
     /**
      * Prints to given PrintStream profile information for the given tag's sequence, assuming 
      * it is a protein sequence (only aminoacids): aminoacid column counts and entropies
@@ -14,6 +14,7 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -26,6 +27,8 @@ import eppic.commons.util.Interval;
  * This seems to be at the moment the gold standard for PDB to Uniprot mapping. The class loads
  * the results from a given URL or file pointer and caches the results so that subsequent queries
  * are done in O(1) time (for the price of memory consumption).
+ * Alternatively, if the given file is a binary SIFTS index (see {@link SiftsIndex}), the index is
+ * memory-mapped and queries are binary searches on it, with no parsing and little memory needed.
  * See {@link http://www.ebi.ac.uk/msd/sifts}
  * 
  * @author duarte, stehr
@@ -39,6 +42,11 @@ public class SiftsConnection {
 	private HashMap<String,ArrayList<SiftsFeature>> chain2uniprot;
 	private HashMap<String,ArrayList<SiftsFeature>> uniprot2chain;	
 	
+	/**
+	 * The binary index, if the connection is backed by one. In that case the maps above are null.
+	 */
+	private SiftsIndex index;
+	
 	/**
 	 * Constructs a SiftsConnection using the default online URL, parsing the SIFTS data and storing it.
 	 * @throws IOException
@@ -48,17 +56,30 @@ public class SiftsConnection {
 	}
 	
 	/**
-	 * Constructs a SiftsConnection parsing the SIFTS data and storing it.
+	 * Constructs a SiftsConnection parsing the SIFTS data and storing it, or, if the given location
+	 * is a local SIFTS index file, memory-mapping the index.
 	 * To access the SIFTS data use {@link #getMappings(String, String)}
 	 * @param pdb2uniprotURL a URL pointing to the SIFTS pdb to uniprot mapping file or simply 
-	 * a path to a local file
+	 * a path to a local file (SIFTS mapping file or SIFTS index file)
 	 * @throws IOException
 	 */
 	public SiftsConnection(String pdb2uniprotURL) throws IOException{
+		if (!URL_PATTERN.matcher(pdb2uniprotURL).matches() && SiftsIndex.isSiftsIndex(new File(pdb2uniprotURL))) {
+			index = new SiftsIndex(new File(pdb2uniprotURL));
+			return;
+		}
 		chain2uniprot = new HashMap<String, ArrayList<SiftsFeature>>();
 		uniprot2chain = new HashMap<String, ArrayList<SiftsFeature>>();		
 		parsePdb2Uniprot(pdb2uniprotURL);
 	}
+	
+	/**
+	 * Returns true if this connection is backed by a memory-mapped SIFTS index file
+	 * @return
+	 */
+	public boolean isIndexed() {
+		return index!=null;
+	}
 
 	/**
 	 * Parses the SIFTS table and stores pdb2uniprot and uniprot2pdb maps.
@@ -133,6 +154,13 @@ public class SiftsConnection {
 	 * @throws NoMatchFoundException if no matching UniProt entry is found
 	 */
 	public List<SiftsFeature> getMappings(String pdbCode, String pdbChainCode) throws NoMatchFoundException{
+		if (index!=null) {
+			// records in the index are already sorted by cif intervals
+			List<SiftsFeature> list = index.getMappings(pdbCode, pdbChainCode);
+			if (list==null) 
+				throw new NoMatchFoundException("No SIFTS mapping for PDB "+pdbCode+", chain "+pdbChainCode);
+			return list;
+		}
 		if (!chain2uniprot.containsKey(pdbCode+pdbChainCode)) 
 			throw new NoMatchFoundException("No SIFTS mapping for PDB "+pdbCode+", chain "+pdbChainCode);
 		List<SiftsFeature> list = chain2uniprot.get(pdbCode+pdbChainCode);
@@ -155,6 +183,12 @@ public class SiftsConnection {
 	 * @throws NoMatchFoundException if no matching PDB chains are found
 	 */
 	public List<SiftsFeature> getUniprot2PdbMappings(String uniprotId) throws NoMatchFoundException {
+		if (index!=null) {
+			List<SiftsFeature> list = index.getUniprot2PdbMappings(uniprotId);
+			if (list==null) 
+				throw new NoMatchFoundException("No SIFTS mapping for UniProtID "+uniprotId);
+			return list;
+		}
 		if (!uniprot2chain.containsKey(uniprotId)) 
 			throw new NoMatchFoundException("No SIFTS mapping for UniProtID "+uniprotId);
 		return uniprot2chain.get(uniprotId);
@@ -165,6 +199,7 @@ public class SiftsConnection {
 	 * @return
 	 */
 	public Collection<ArrayList<SiftsFeature>> getAllMappings() {
+		if (index!=null) return index.getAllMappings();
 		return chain2uniprot.values();
 	}
 	
@@ -176,6 +211,7 @@ public class SiftsConnection {
 	 */
 	public HashMap<String, ArrayList<Interval>> getUniqueMappings() throws IOException {
 		HashMap<String, ArrayList<Interval>> uniqueMap = new HashMap<String, ArrayList<Interval>>();
+		Map<String, ? extends List<SiftsFeature>> uniprot2chain = index!=null ? index.getAllUniprot2PdbMappings() : this.uniprot2chain;
 		System.out.println("Unique UniProts in PDB: "+uniprot2chain.size());
 		
 		int count = 0;
@@ -200,9 +236,24 @@ public class SiftsConnection {
 	 * @return
 	 */
 	public int getMappingsCount() {
+		if (index!=null) return index.getNumChains();
 		return chain2uniprot.size();
 	}
 	
+	/**
+	 * The parsed PDB chain to UniProt map, null if backed by an index. Used to write the index.
+	 */
+	Map<String, ArrayList<SiftsFeature>> getChain2UniprotMap() {
+		return chain2uniprot;
+	}
+	
+	/**
+	 * The parsed UniProt to PDB chain map, null if backed by an index. Used to write the index.
+	 */
+	Map<String, ArrayList<SiftsFeature>> getUniprot2ChainMap() {
+		return uniprot2chain;
+	}
+	
 	public static void main (String[] args) throws IOException {
 		SiftsConnection sc = new SiftsConnection("/nfs/data/dbs/uniprot/current/pdb_chain_uniprot.lst");
 		
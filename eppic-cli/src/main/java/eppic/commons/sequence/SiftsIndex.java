@@ -0,0 +1,403 @@
+package eppic.commons.sequence;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A compact binary index of the SIFTS PDB chain to UniProt mappings, built once from
+ * the SIFTS pdb_chain_uniprot.lst file with {@link #write(SiftsConnection, File)} (see
+ * tool {@link eppic.tools.BuildSiftsIndex}) and memory-mapped read-only. Lookups are
+ * binary searches on the mapped file, so that opening the index is immediate, the heap
+ * usage is negligible and concurrent JVMs share the same pages through the OS page cache.
+ * <p>
+ * The file layout (all integers big-endian) is:
+ * <pre>
+ * header        : magic (8 bytes), version, numRecords, numChains, numUniprots, numPostings,
+ *                 and the offsets of the 5 sections below (int each)
+ * records       : numRecords x 9 ints (pdbCode, chainCode, uniprotId, cifBeg, cifEnd, pdbBeg, pdbEnd, uniBeg, uniEnd),
+ *                 strings given as offsets in the string pool. Sorted by chain key and cif interval
+ * chain index   : numChains x (key, first record, number of records), sorted by key (pdbCode+chainCode)
+ * uniprot index : numUniprots x (key, first posting, number of postings), sorted by key (UniProt id)
+ * postings      : numPostings x record index, for each UniProt id in the order of the SIFTS file
+ * string pool   : distinct strings as unsigned short length + UTF-8 bytes
+ * </pre>
+ * This class is thread safe.
+ *
+ */
+public class SiftsIndex {
+
+	private static final byte[] MAGIC = "EPSIFTSX".getBytes(StandardCharsets.US_ASCII);
+	private static final int VERSION = 1;
+
+	private static final int HEADER_SIZE = MAGIC.length + 10*4;
+	private static final int RECORD_SIZE = 9*4;
+	private static final int INDEX_ENTRY_SIZE = 3*4;
+
+	private final ByteBuffer buf;
+
+	private final int numRecords;
+	private final int numChains;
+	private final int numUniprots;
+	private final int recordsOffset;
+	private final int chainIndexOffset;
+	private final int uniprotIndexOffset;
+	private final int postingsOffset;
+	private final int stringsOffset;
+
+	/**
+	 * Memory-maps the given SIFTS index file
+	 * @param file
+	 * @throws IOException if the file can't be read or is not a SIFTS index of a supported version
+	 */
+	public SiftsIndex(File file) throws IOException {
+		try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+				FileChannel channel = raf.getChannel()) {
+			if (channel.size()>Integer.MAX_VALUE) {
+				throw new IOException("SIFTS index file "+file+" is too large");
+			}
+			// the mapping stays valid after closing the channel
+			MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			this.buf = mapped;
+		}
+
+		if (buf.capacity()<HEADER_SIZE || !hasMagic(buf)) {
+			throw new IOException("File "+file+" is not a SIFTS index file");
+		}
+		int pos = MAGIC.length;
+		int version = buf.getInt(pos);
+		if (version!=VERSION) {
+			throw new IOException("SIFTS index file "+file+" has version "+version+", only version "+VERSION+" is supported. Please rebuild it");
+		}
+		numRecords = buf.getInt(pos+=4);
+		numChains = buf.getInt(pos+=4);
+		numUniprots = buf.getInt(pos+=4);
+		buf.getInt(pos+=4); // numPostings, implicit in the uniprot index
+		recordsOffset = buf.getInt(pos+=4);
+		chainIndexOffset = buf.getInt(pos+=4);
+		uniprotIndexOffset = buf.getInt(pos+=4);
+		postingsOffset = buf.getInt(pos+=4);
+		stringsOffset = buf.getInt(pos+=4);
+	}
+
+	/**
+	 * Returns true if the given file exists and starts with the SIFTS index magic bytes
+	 * @param file
+	 * @return
+	 */
+	public static boolean isSiftsIndex(File file) {
+		if (!file.isFile()) return false;
+		byte[] start = new byte[MAGIC.length];
+		try (FileInputStream fis = new FileInputStream(file)) {
+			int read = 0;
+			while (read<start.length) {
+				int n = fis.read(start, read, start.length-read);
+				if (n<0) return false;
+				read += n;
+			}
+		} catch (IOException e) {
+			return false;
+		}
+		return Arrays.equals(start, MAGIC);
+	}
+
+	/**
+	 * Returns the mappings of the given PDB chain, sorted by cif intervals, or null if there are none
+	 * @param pdbCode
+	 * @param pdbChainCode
+	 * @return
+	 */
+	public List<SiftsFeature> getMappings(String pdbCode, String pdbChainCode) {
+		int i = search(chainIndexOffset, numChains, pdbCode+pdbChainCode);
+		if (i<0) return null;
+		int entry = chainIndexOffset + i*INDEX_ENTRY_SIZE;
+		int first = buf.getInt(entry+4);
+		int count = buf.getInt(entry+8);
+		List<SiftsFeature> list = new ArrayList<SiftsFeature>(count);
+		for (int r=first;r<first+count;r++) {
+			list.add(readRecord(r));
+		}
+		return list;
+	}
+
+	/**
+	 * Returns the mappings of the given UniProt id, in the order of the SIFTS file, or null if there are none
+	 * @param uniprotId
+	 * @return
+	 */
+	public List<SiftsFeature> getUniprot2PdbMappings(String uniprotId) {
+		int i = search(uniprotIndexOffset, numUniprots, uniprotId);
+		if (i<0) return null;
+		return getUniprotMappingsAt(i);
+	}
+
+	/**
+	 * Returns the mappings of all PDB chains
+	 * @return
+	 */
+	public List<ArrayList<SiftsFeature>> getAllMappings() {
+		List<ArrayList<SiftsFeature>> all = new ArrayList<ArrayList<SiftsFeature>>(numChains);
+		for (int i=0;i<numChains;i++) {
+			int entry = chainIndexOffset + i*INDEX_ENTRY_SIZE;
+			int first = buf.getInt(entry+4);
+			int count = buf.getInt(entry+8);
+			ArrayList<SiftsFeature> list = new ArrayList<SiftsFeature>(count);
+			for (int r=first;r<first+count;r++) {
+				list.add(readRecord(r));
+			}
+			all.add(list);
+		}
+		return all;
+	}
+
+	/**
+	 * Returns the mappings of all UniProt ids
+	 * @return
+	 */
+	public Map<String, List<SiftsFeature>> getAllUniprot2PdbMappings() {
+		Map<String, List<SiftsFeature>> all = new HashMap<String, List<SiftsFeature>>();
+		for (int i=0;i<numUniprots;i++) {
+			all.put(readString(buf.getInt(uniprotIndexOffset + i*INDEX_ENTRY_SIZE)), getUniprotMappingsAt(i));
+		}
+		return all;
+	}
+
+	/**
+	 * Returns the number of PDB chains with mappings
+	 * @return
+	 */
+	public int getNumChains() {
+		return numChains;
+	}
+
+	/**
+	 * Returns the number of UniProt ids with mappings
+	 * @return
+	 */
+	public int getNumUniprots() {
+		return numUniprots;
+	}
+
+	/**
+	 * Returns the number of mappings (lines in the SIFTS file)
+	 * @return
+	 */
+	public int getNumRecords() {
+		return numRecords;
+	}
+
+	private List<SiftsFeature> getUniprotMappingsAt(int i) {
+		int entry = uniprotIndexOffset + i*INDEX_ENTRY_SIZE;
+		int first = buf.getInt(entry+4);
+		int count = buf.getInt(entry+8);
+		List<SiftsFeature> list = new ArrayList<SiftsFeature>(count);
+		for (int p=first;p<first+count;p++) {
+			list.add(readRecord(buf.getInt(postingsOffset + p*4)));
+		}
+		return list;
+	}
+
+	/**
+	 * Binary search of the given key in the index section at the given offset
+	 * @return the entry index or -1 if not found
+	 */
+	private int search(int indexOffset, int size, String key) {
+		int lo = 0;
+		int hi = size-1;
+		while (lo<=hi) {
+			int mid = (lo+hi) >>> 1;
+			int cmp = readString(buf.getInt(indexOffset + mid*INDEX_ENTRY_SIZE)).compareTo(key);
+			if (cmp<0) lo = mid+1;
+			else if (cmp>0) hi = mid-1;
+			else return mid;
+		}
+		return -1;
+	}
+
+	private SiftsFeature readRecord(int r) {
+		int pos = recordsOffset + r*RECORD_SIZE;
+		return new SiftsFeature(
+				readString(buf.getInt(pos)),
+				readString(buf.getInt(pos+4)),
+				readString(buf.getInt(pos+8)),
+				buf.getInt(pos+12),
+				buf.getInt(pos+16),
+				readString(buf.getInt(pos+20)),
+				readString(buf.getInt(pos+24)),
+				buf.getInt(pos+28),
+				buf.getInt(pos+32));
+	}
+
+	private String readString(int offset) {
+		int pos = stringsOffset + offset;
+		int len = buf.getShort(pos) & 0xffff;
+		byte[] bytes = new byte[len];
+		// absolute gets only: the buffer's position is never modified, so reads are thread safe
+		for (int k=0;k<len;k++) {
+			bytes[k] = buf.get(pos+2+k);
+		}
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private static boolean hasMagic(ByteBuffer buf) {
+		for (int k=0;k<MAGIC.length;k++) {
+			if (buf.get(k)!=MAGIC[k]) return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Writes the SIFTS data of the given (text-parsed) SiftsConnection to a binary index file.
+	 * The file is first written to a temporary file in the same directory and then renamed,
+	 * so that readers never see a partially written index.
+	 * @param siftsConn
+	 * @param file
+	 * @throws IOException
+	 */
+	public static void write(SiftsConnection siftsConn, File file) throws IOException {
+
+		Map<String, ArrayList<SiftsFeature>> chain2uniprot = siftsConn.getChain2UniprotMap();
+		Map<String, ArrayList<SiftsFeature>> uniprot2chain = siftsConn.getUniprot2ChainMap();
+		if (chain2uniprot==null) {
+			throw new IllegalArgumentException("The SiftsConnection must be parsed from a SIFTS text file");
+		}
+
+		// records: sorted by chain key, within a chain by cif interval (stable, as in SiftsConnection.getMappings)
+		List<String> chainKeys = new ArrayList<String>(chain2uniprot.keySet());
+		Collections.sort(chainKeys);
+		List<SiftsFeature> records = new ArrayList<SiftsFeature>();
+		int[][] chainIndex = new int[chainKeys.size()][];
+		for (int i=0;i<chainKeys.size();i++) {
+			List<SiftsFeature> list = new ArrayList<SiftsFeature>(chain2uniprot.get(chainKeys.get(i)));
+			Collections.sort(list, (o1, o2) -> o1.getCifIntervalSet().first().compareTo(o2.getCifIntervalSet().first()));
+			chainIndex[i] = new int[] {records.size(), list.size()};
+			records.addAll(list);
+		}
+		Map<SiftsFeature, Integer> recordIndices = new IdentityHashMap<SiftsFeature, Integer>();
+		for (int r=0;r<records.size();r++) {
+			recordIndices.put(records.get(r), r);
+		}
+
+		List<String> uniprotIds = new ArrayList<String>(uniprot2chain.keySet());
+		Collections.sort(uniprotIds);
+		int[][] uniprotIndex = new int[uniprotIds.size()][];
+		int numPostings = 0;
+		for (int i=0;i<uniprotIds.size();i++) {
+			int count = uniprot2chain.get(uniprotIds.get(i)).size();
+			uniprotIndex[i] = new int[] {numPostings, count};
+			numPostings += count;
+		}
+
+		StringPool pool = new StringPool();
+		for (SiftsFeature f : records) {
+			pool.add(f.getPdbCode());
+			pool.add(f.getPdbChainCode());
+			pool.add(f.getUniprotId());
+			pool.add(f.getPdbBeg());
+			pool.add(f.getPdbEnd());
+		}
+		for (String key : chainKeys) pool.add(key);
+		for (String key : uniprotIds) pool.add(key);
+
+		long recordsOffset = HEADER_SIZE;
+		long chainIndexOffset = recordsOffset + (long)records.size()*RECORD_SIZE;
+		long uniprotIndexOffset = chainIndexOffset + (long)chainKeys.size()*INDEX_ENTRY_SIZE;
+		long postingsOffset = uniprotIndexOffset + (long)uniprotIds.size()*INDEX_ENTRY_SIZE;
+		long stringsOffset = postingsOffset + (long)numPostings*4;
+		if (stringsOffset + pool.size > Integer.MAX_VALUE) {
+			throw new IOException("SIFTS data too large for the index format");
+		}
+
+		File tmpFile = new File(file.getAbsoluteFile().getParentFile(), file.getName()+".tmp");
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)))) {
+			out.write(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(records.size());
+			out.writeInt(chainKeys.size());
+			out.writeInt(uniprotIds.size());
+			out.writeInt(numPostings);
+			out.writeInt((int)recordsOffset);
+			out.writeInt((int)chainIndexOffset);
+			out.writeInt((int)uniprotIndexOffset);
+			out.writeInt((int)postingsOffset);
+			out.writeInt((int)stringsOffset);
+
+			for (SiftsFeature f : records) {
+				out.writeInt(pool.offsetOf(f.getPdbCode()));
+				out.writeInt(pool.offsetOf(f.getPdbChainCode()));
+				out.writeInt(pool.offsetOf(f.getUniprotId()));
+				out.writeInt(f.getCifIntervalSet().first().beg);
+				out.writeInt(f.getCifIntervalSet().first().end);
+				out.writeInt(pool.offsetOf(f.getPdbBeg()));
+				out.writeInt(pool.offsetOf(f.getPdbEnd()));
+				out.writeInt(f.getUniprotIntervalSet().first().beg);
+				out.writeInt(f.getUniprotIntervalSet().first().end);
+			}
+			for (int i=0;i<chainKeys.size();i++) {
+				out.writeInt(pool.offsetOf(chainKeys.get(i)));
+				out.writeInt(chainIndex[i][0]);
+				out.writeInt(chainIndex[i][1]);
+			}
+			for (int i=0;i<uniprotIds.size();i++) {
+				out.writeInt(pool.offsetOf(uniprotIds.get(i)));
+				out.writeInt(uniprotIndex[i][0]);
+				out.writeInt(uniprotIndex[i][1]);
+			}
+			for (String uniprotId : uniprotIds) {
+				for (SiftsFeature f : uniprot2chain.get(uniprotId)) {
+					out.writeInt(recordIndices.get(f));
+				}
+			}
+			for (byte[] bytes : pool.strings) {
+				out.writeShort(bytes.length);
+				out.write(bytes);
+			}
+		}
+
+		if (!tmpFile.renameTo(file)) {
+			// renameTo doesn't replace an existing file on all platforms
+			if (!file.delete() || !tmpFile.renameTo(file)) {
+				throw new IOException("Could not rename "+tmpFile+" to "+file);
+			}
+		}
+	}
+
+	/**
+	 * The distinct strings of the index in order of addition, with their byte offsets in the pool
+	 */
+	private static class StringPool {
+		final Map<String, Integer> offsets = new HashMap<String, Integer>();
+		final List<byte[]> strings = new ArrayList<byte[]>();
+		long size = 0;
+
+		void add(String s) throws IOException {
+			if (offsets.containsKey(s)) return;
+			byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+			if (bytes.length>0xffff) {
+				throw new IOException("String too long for the SIFTS index format: "+s);
+			}
+			offsets.put(s, (int)size);
+			strings.add(bytes);
+			size += 2 + bytes.length;
+		}
+
+		int offsetOf(String s) {
+			return offsets.get(s);
+		}
+	}
+}
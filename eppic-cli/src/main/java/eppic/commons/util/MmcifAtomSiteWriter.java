@@ -0,0 +1,239 @@
+package eppic.commons.util;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPOutputStream;
+
+import javax.vecmath.Matrix4d;
+import javax.vecmath.Point3d;
+
+import org.biojava.nbio.structure.Atom;
+import org.biojava.nbio.structure.Chain;
+import org.biojava.nbio.structure.Element;
+import org.biojava.nbio.structure.Group;
+import org.biojava.nbio.structure.GroupType;
+import org.biojava.nbio.structure.ResidueNumber;
+
+/**
+ * Writes coordinates to an mmCIF file one atom_site row at a time, as opposed to
+ * BioJava's <code>MMCIFFileTools.toMMCIF()</code> which needs the whole list of atom sites in memory
+ * to align the columns. The rows contain the same values as those converted by
+ * <code>MMCIFFileTools.convertAtomToAtomSite()</code>, separated by single spaces.
+ * <p>
+ * Coordinates can be transformed while writing, so that symmetry copies of chains can be written
+ * without cloning them. The row buffer and the transformed point are reused for all atoms: this class
+ * is not thread safe.
+ *
+ */
+public class MmcifAtomSiteWriter implements Closeable {
+
+	private static final int BUFFER_SIZE = 1<<16;
+
+	private static final String[] ATOM_SITE_FIELDS = {
+		"group_PDB", "id", "type_symbol", "label_atom_id", "label_alt_id", "label_comp_id",
+		"label_asym_id", "label_entity_id", "label_seq_id", "pdbx_PDB_ins_code",
+		"Cartn_x", "Cartn_y", "Cartn_z", "occupancy", "B_iso_or_equiv",
+		"Cartn_x_esd", "Cartn_y_esd", "Cartn_z_esd", "occupancy_esd", "B_iso_or_equiv_esd", "pdbx_formal_charge",
+		"auth_seq_id", "auth_comp_id", "auth_asym_id", "auth_atom_id", "pdbx_PDB_model_num"
+	};
+
+	// the esd and formal charge columns, always unknown
+	private static final String UNKNOWN_FIELDS = "? ? ? ? ? ? ";
+
+	private static final String[] ELEMENT_SYMBOLS = new String[Element.values().length];
+	static {
+		for (Element e:Element.values()) {
+			// as in MMCIFFileTools, the unknown element R is written as X
+			ELEMENT_SYMBOLS[e.ordinal()] = e==Element.R ? "X" : e.toString().toUpperCase();
+		}
+	}
+
+	private final Writer writer;
+
+	private final StringBuilder row;
+	private char[] rowChars;
+	private final Point3d point;
+
+	/**
+	 * Opens a gzipped mmCIF file for writing.
+	 * @param file
+	 * @throws IOException
+	 */
+	public MmcifAtomSiteWriter(File file) throws IOException {
+		this(new GZIPOutputStream(new FileOutputStream(file), BUFFER_SIZE));
+	}
+
+	/**
+	 * Writes to the given stream, which is closed by {@link #close()}.
+	 * @param os
+	 */
+	public MmcifAtomSiteWriter(OutputStream os) {
+		this.writer = new BufferedWriter(new OutputStreamWriter(os, StandardCharsets.US_ASCII), BUFFER_SIZE);
+		this.row = new StringBuilder(128);
+		this.rowChars = new char[128];
+		this.point = new Point3d();
+	}
+
+	/**
+	 * Writes the data block header and the header of the atom_site loop. Must be called
+	 * before writing any atoms.
+	 * @param dataBlockName the name of the data block, written after "data_"
+	 * @throws IOException
+	 */
+	public void writeHeader(String dataBlockName) throws IOException {
+		writer.write("data_");
+		writer.write(dataBlockName);
+		writer.write('\n');
+		writer.write("#\n");
+		writer.write("loop_\n");
+		for (String field:ATOM_SITE_FIELDS) {
+			writer.write("_atom_site.");
+			writer.write(field);
+			writer.write('\n');
+		}
+	}
+
+	/**
+	 * Writes all atoms of the chain, including alt locs.
+	 * @param chain
+	 * @param chainName the author chain id (auth_asym_id)
+	 * @param chainId the chain id (label_asym_id)
+	 * @param firstAtomId the atom id of the first atom, following atoms numbered consecutively.
+	 * If negative the original atom serials are written.
+	 * @param transform the transformation to apply to the coordinates, if null they are written as they are
+	 * @return the number of atoms written
+	 * @throws IOException
+	 */
+	public int writeChain(Chain chain, String chainName, String chainId, int firstAtomId, Matrix4d transform) throws IOException {
+		int count = 0;
+		for (Group g: chain.getAtomGroups()) {
+			for (Atom a: g.getAtoms()) {
+				writeAtom(a, chainName, chainId, firstAtomId<0 ? a.getPDBserial() : firstAtomId+count, transform);
+				count++;
+			}
+			for (Group altG:g.getAltLocs()) {
+				for (Atom a: altG.getAtoms()) {
+					writeAtom(a, chainName, chainId, firstAtomId<0 ? a.getPDBserial() : firstAtomId+count, transform);
+					count++;
+				}
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Writes an atom_site row for the atom.
+	 * @param a
+	 * @param chainName the author chain id (auth_asym_id)
+	 * @param chainId the chain id (label_asym_id)
+	 * @param atomId
+	 * @param transform the transformation to apply to the coordinates, if null they are written as they are
+	 * @throws IOException
+	 */
+	public void writeAtom(Atom a, String chainName, String chainId, int atomId, Matrix4d transform) throws IOException {
+
+		Group g = a.getGroup();
+		ResidueNumber resNum = g.getResidueNumber();
+		Chain c = g.getChain();
+
+		String entityId = "0";
+		int labelSeqId = resNum.getSeqNum();
+		if (c!=null && c.getCompound()!=null) {
+			entityId = Integer.toString(c.getCompound().getMolId());
+			labelSeqId = c.getCompound().getAlignedResIndex(g, c);
+		}
+
+		point.set(a.getX(), a.getY(), a.getZ());
+		if (transform!=null) transform.transform(point);
+
+		row.setLength(0);
+
+		row.append(g.getType()==GroupType.HETATM ? "HETATM" : "ATOM").append(' ');
+		row.append(atomId).append(' ');
+		row.append(ELEMENT_SYMBOLS[a.getElement().ordinal()]).append(' ');
+		appendValue(a.getName());
+		Character altLoc = a.getAltLoc();
+		if (altLoc==null || altLoc==' ') row.append('.');
+		else row.append(altLoc.charValue());
+		row.append(' ');
+		appendValue(g.getPDBName());
+		appendValue(chainId);
+		row.append(entityId).append(' ');
+		row.append(labelSeqId).append(' ');
+		Character insCode = resNum.getInsCode();
+		if (insCode==null) row.append('?');
+		else row.append(insCode.charValue());
+		row.append(' ');
+		appendFixed(point.x, 3);
+		appendFixed(point.y, 3);
+		appendFixed(point.z, 3);
+		appendFixed(a.getOccupancy(), 2);
+		appendFixed(a.getTempFactor(), 2);
+		row.append(UNKNOWN_FIELDS);
+		row.append(resNum.getSeqNum()).append(' ');
+		appendValue(g.getPDBName());
+		appendValue(chainName);
+		appendValue(a.getName());
+		// a single model, as in the files written by eppic
+		row.append("1\n");
+
+		// copying through a reused array, Writer.append would create a String per row
+		int length = row.length();
+		if (length>rowChars.length) rowChars = new char[2*length];
+		row.getChars(0, length, rowChars, 0);
+		writer.write(rowChars, 0, length);
+	}
+
+	/**
+	 * Appends the value followed by a space, quoted as done in MMCIFFileTools
+	 * @param val
+	 */
+	private void appendValue(String val) {
+		if (val==null || val.isEmpty()) {
+			row.append('?');
+		} else if (val.indexOf('\'')>=0) {
+			// double quoting for strings containing single quotes, as the PDB does
+			row.append('"').append(val).append('"');
+		} else if (val.indexOf(' ')>=0 || val.charAt(0)=='_' || val.charAt(0)=='#') {
+			row.append('\'').append(val).append('\'');
+		} else {
+			row.append(val);
+		}
+		row.append(' ');
+	}
+
+	/**
+	 * Appends the value with the given number of decimals followed by a space, without
+	 * going through a formatter
+	 * @param val
+	 * @param decimals
+	 */
+	private void appendFixed(double val, int decimals) {
+		long factor = decimals==3 ? 1000 : 100;
+		// rounding half away from zero like String.format
+		long scaled = Math.round(Math.abs(val)*factor);
+		if (val<0 && scaled!=0) row.append('-');
+		row.append(scaled/factor).append('.');
+		long fraction = scaled%factor;
+		for (long f = factor/10; f>1 && fraction<f; f/=10) {
+			row.append('0');
+		}
+		row.append(fraction).append(' ');
+	}
+
+	/**
+	 * Ends the atom_site loop and closes the underlying stream.
+	 */
+	@Override
+	public void close() throws IOException {
+		writer.write("#\n");
+		writer.close();
+	}
+}
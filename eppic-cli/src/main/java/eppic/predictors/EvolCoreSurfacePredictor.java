@@ -311,12 +311,14 @@ public class EvolCoreSurfacePredictor implements InterfaceTypePredictor {
 		}
 		
 		// logging the actual samples averages
-		StringBuilder sb = new StringBuilder();
-		sb.append("Samples averages: ");
-		for (double sample:surfScoreDist) {
-			sb.append(String.format("%4.2f",sample)+" ");
+		if (LOGGER.isDebugEnabled()) {
+			StringBuilder sb = new StringBuilder();
+			sb.append("Samples averages: ");
+			for (double sample:surfScoreDist) {
+				sb.append(String.format("%4.2f",sample)+" ");
+			}
+			LOGGER.debug(sb.toString());
 		}
-		LOGGER.debug(sb.toString());
 
 
 		double zScore = Double.NaN;
@@ -0,0 +1,68 @@
+package eppic.tools;
+
+import java.io.File;
+import java.io.IOException;
+
+import eppic.commons.sequence.SiftsConnection;
+import eppic.commons.sequence.SiftsIndex;
+import gnu.getopt.Getopt;
+
+/**
+ * Builds a binary SIFTS index file from the SIFTS pdb_chain_uniprot.lst file.
+ * The index file can then be given as SIFTS_FILE in the eppic config file, see {@link SiftsIndex}.
+ *
+ */
+public class BuildSiftsIndex {
+
+	public static void main(String[] args) throws IOException {
+
+		String help =
+				"Usage: BuildSiftsIndex\n" +
+				"Builds a binary SIFTS index file from the SIFTS pdb to UniProt mapping file\n" +
+				" [-i <file/url>] : SIFTS pdb_chain_uniprot.lst file or URL. Default: "+SiftsConnection.PDB2UNIPROT_URL+"\n" +
+				"  -o <file>      : the output SIFTS index file\n";
+
+		Getopt g = new Getopt("BuildSiftsIndex", args, "i:o:h?");
+
+		String siftsLocation = SiftsConnection.PDB2UNIPROT_URL;
+		File outFile = null;
+
+		int c;
+		while ((c = g.getopt()) != -1) {
+			switch(c){
+			case 'i':
+				siftsLocation = g.getOptarg();
+				break;
+			case 'o':
+				outFile = new File(g.getOptarg());
+				break;
+			case 'h':
+				System.out.println(help);
+				System.exit(0);
+				break;
+			case '?':
+				System.err.println(help);
+				System.exit(1);
+				break;
+			}
+		}
+
+		if (outFile==null) {
+			System.err.println("An output file must be specified with -o");
+			System.err.println(help);
+			System.exit(1);
+		}
+
+		long start = System.currentTimeMillis();
+		SiftsConnection siftsConn = new SiftsConnection(siftsLocation);
+		if (siftsConn.isIndexed()) {
+			System.err.println("Input "+siftsLocation+" is already a SIFTS index file");
+			System.exit(1);
+		}
+		System.out.println("Parsed "+siftsConn.getMappingsCount()+" PDB chain mappings from "+siftsLocation+" in "+(System.currentTimeMillis()-start)/1000+" s");
+
+		start = System.currentTimeMillis();
+		SiftsIndex.write(siftsConn, outFile);
+		System.out.println("Wrote SIFTS index "+outFile+" ("+outFile.length()/1024+" KB) in "+(System.currentTimeMillis()-start)/1000+" s");
+	}
+}
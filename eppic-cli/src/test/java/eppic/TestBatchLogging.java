@@ -0,0 +1,100 @@
+package eppic;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.ThreadContext;
+import org.apache.logging.log4j.core.LoggerContext;
+import org.junit.Test;
+
+/**
+ * Checks that in batch mode the log lines of the thread pools created by an entry go to the entry's log file.
+ * Uses the main log4j2.xml, with the routing appender of BatchRunner.
+ */
+public class TestBatchLogging {
+
+	// the thread context key used by BatchRunner and log4j2.xml
+	private static final String LOG_FILENAME_CTX_KEY = "logFilename";
+
+	@Test
+	public void testPoolThreadsLogToEntryLog() throws Exception {
+		File dir = Files.createTempDirectory("batchlogging").toFile();
+		dir.deleteOnExit();
+		File batchLog = new File(dir, BatchRunner.BATCH_LOG_FILE_NAME);
+		File entryLog = new File(dir, "1abc.log");
+		batchLog.deleteOnExit();
+		entryLog.deleteOnExit();
+
+		String prevLogFilename = System.getProperty(LOG_FILENAME_CTX_KEY);
+		System.setProperty(LOG_FILENAME_CTX_KEY, batchLog.toString());
+
+		LoggerContext ctx = new LoggerContext("TestBatchLogging", null, new File("src/main/resources/log4j2.xml").toURI());
+		ctx.start();
+
+		try {
+			Logger logger = ctx.getLogger(TestBatchLogging.class.getName());
+
+			logger.info("batch line");
+
+			// the entry runs in a worker of the batch, its pools are created from within the entry thread as in Main
+			ExecutorService batchExecutor = Executors.newFixedThreadPool(1);
+			try {
+				batchExecutor.submit(() -> {
+					ThreadContext.put(LOG_FILENAME_CTX_KEY, entryLog.toString());
+					try {
+						logger.info("entry line");
+
+						ExecutorService executor = Executors.newFixedThreadPool(2);
+						try {
+							executor.submit(() -> logger.info("executor line")).get();
+						} finally {
+							executor.shutdown();
+						}
+
+						ForkJoinPool pool = new ForkJoinPool(2);
+						try {
+							pool.submit(() -> logger.info("fork join line")).get();
+						} finally {
+							pool.shutdown();
+						}
+					} finally {
+						ThreadContext.remove(LOG_FILENAME_CTX_KEY);
+					}
+					return null;
+				}).get();
+			} finally {
+				batchExecutor.shutdown();
+			}
+
+		} finally {
+			ctx.stop();
+			if (prevLogFilename==null) System.clearProperty(LOG_FILENAME_CTX_KEY);
+			else System.setProperty(LOG_FILENAME_CTX_KEY, prevLogFilename);
+		}
+
+		String entryLogContent = read(entryLog);
+		assertTrue(entryLogContent.contains("entry line"));
+		assertTrue(entryLogContent.contains("executor line"));
+		assertTrue(entryLogContent.contains("fork join line"));
+		assertFalse(entryLogContent.contains("batch line"));
+
+		String batchLogContent = read(batchLog);
+		assertTrue(batchLogContent.contains("batch line"));
+		assertFalse(batchLogContent.contains("entry line"));
+		assertFalse(batchLogContent.contains("executor line"));
+		assertFalse(batchLogContent.contains("fork join line"));
+	}
+
+	private static String read(File file) throws IOException {
+		assertTrue(file + " should exist", file.exists());
+		return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,90 @@
+package eppic;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.junit.Test;
+
+import eppic.commons.sequence.HomologList;
+import eppic.commons.sequence.UnirefEntry;
+import eppic.commons.util.Interval;
+
+public class TestEvolCache {
+
+	@Test
+	public void testPutGet() throws IOException {
+		File dir = Files.createTempDirectory("evolcache").toFile();
+		dir.deleteOnExit();
+
+		EvolCache cache = new EvolCache(dir, 1024*1024);
+		EppicParams params = new EppicParams();
+
+		String key = EvolCache.getKey(params, "2016_09", "P12345", new Interval(1, 20));
+		assertNull(cache.get(key));
+
+		cache.put(key, new EvolCache.Entry(createHomologList("P12345", 20), 0.6, 0.85));
+
+		EvolCache.Entry entry = cache.get(key);
+		assertNotNull(entry);
+		assertEquals(0.6, entry.getIdCutoff(), 0);
+		assertEquals(0.85, entry.getQueryCov(), 0);
+
+		// a different interval or UniProt version is a different entry
+		assertNull(cache.get(EvolCache.getKey(params, "2016_09", "P12345", new Interval(1, 19))));
+		assertNull(cache.get(EvolCache.getKey(params, "2016_10", "P12345", new Interval(1, 20))));
+
+		assertEquals(1, cache.getHits());
+		assertEquals(3, cache.getMisses());
+	}
+
+	@Test
+	public void testEviction() throws IOException, InterruptedException {
+		File dir = Files.createTempDirectory("evolcache").toFile();
+		dir.deleteOnExit();
+
+		EppicParams params = new EppicParams();
+		String firstKey = EvolCache.getKey(params, "2016_09", "P00000", new Interval(1, 2000));
+
+		// measuring the size of one entry
+		EvolCache cache = new EvolCache(dir, Long.MAX_VALUE);
+		cache.put(firstKey, new EvolCache.Entry(createHomologList("P00000", 2000), 0.6, 0.85));
+		long entrySize = getDirSize(dir);
+
+		// room for about 3 entries
+		cache = new EvolCache(dir, entrySize*3 + entrySize/2);
+		for (int i=1;i<6;i++) {
+			// the modification time is used for LRU, resolution can be 1 s in some file systems
+			Thread.sleep(1000);
+			cache.put(EvolCache.getKey(params, "2016_09", "P0000"+i, new Interval(1, 2000)),
+					new EvolCache.Entry(createHomologList("P0000"+i, 2000), 0.6, 0.85));
+		}
+
+		assertTrue(getDirSize(dir) <= entrySize*3 + entrySize/2);
+		assertNull(cache.get(firstKey));
+		assertNotNull(cache.get(EvolCache.getKey(params, "2016_09", "P00005", new Interval(1, 2000))));
+	}
+
+	private static HomologList createHomologList(String uniId, int length) {
+		UnirefEntry ref = new UnirefEntry();
+		ref.setUniprotId(uniId);
+		StringBuilder seq = new StringBuilder();
+		for (int i=0;i<length;i++) {
+			seq.append("ACDEFGHIKLMNPQRSTVWY".charAt(i%20));
+		}
+		ref.setSequence(seq.toString());
+		return new HomologList(ref);
+	}
+
+	private static long getDirSize(File dir) {
+		long size = 0;
+		for (File subDir : dir.listFiles()) {
+			for (File f : subDir.listFiles()) {
+				size += f.length();
+			}
+		}
+		return size;
+	}
+}
@@ -0,0 +1,66 @@
+package eppic;
+
+import static org.junit.Assert.*;
+
+import org.apache.commons.math.random.JDKRandomGenerator;
+import org.apache.commons.math.random.RandomGenerator;
+import org.junit.Test;
+
+public class TestResidueScoreSampler {
+
+	private static final double DELTA = 0.000001;
+
+	@Test
+	public void testSamplesWithoutReplacement() {
+		// powers of 2: the sum of a sample identifies uniquely which residues were drawn
+		double[] scores = new double[20];
+		for (int i=0;i<scores.length;i++) {
+			scores[i] = 1<<i;
+		}
+
+		ResidueScoreSampler sampler = new ResidueScoreSampler(scores);
+
+		int sampleSize = 7;
+		for (int i=0;i<1000;i++) {
+			long sum = Math.round(sampler.nextSampleScore(sampleSize)*sampleSize);
+			assertEquals(sampleSize, Long.bitCount(sum));
+		}
+	}
+
+	@Test
+	public void testFullSampleAndNaNs() {
+		double[] scores = {1.0, Double.NaN, 2.0, 3.0, Double.NaN};
+
+		ResidueScoreSampler sampler = new ResidueScoreSampler(scores);
+
+		// sampling all residues gives the average over all non-NaN residues
+		assertEquals(2.0, sampler.nextSampleScore(scores.length), DELTA);
+
+		// only NaNs gives NaN
+		sampler = new ResidueScoreSampler(new double[] {Double.NaN, Double.NaN});
+		assertTrue(Double.isNaN(sampler.nextSampleScore(1)));
+	}
+
+	@Test
+	public void testReproducible() {
+		double[] scores = new double[50];
+		for (int i=0;i<scores.length;i++) {
+			scores[i] = i%7;
+		}
+
+		RandomGenerator rg1 = new JDKRandomGenerator();
+		rg1.setSeed(42);
+		RandomGenerator rg2 = new JDKRandomGenerator();
+		rg2.setSeed(42);
+
+		double[] dist1 = new ResidueScoreSampler(scores, rg1).getScoreDist(100, 10);
+		double[] dist2 = new ResidueScoreSampler(scores, rg2).getScoreDist(100, 10);
+
+		assertArrayEquals(dist1, dist2, 0);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testSampleTooLarge() {
+		new ResidueScoreSampler(new double[] {1.0, 2.0}).nextSampleScore(3);
+	}
+}
@@ -0,0 +1,213 @@
+package eppic;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+
+import org.junit.Test;
+
+import eppic.commons.util.Goodies;
+import eppic.model.AssemblyContentDB;
+import eppic.model.AssemblyDB;
+import eppic.model.AssemblyScoreDB;
+import eppic.model.ChainClusterDB;
+import eppic.model.ContactDB;
+import eppic.model.HomologDB;
+import eppic.model.InterfaceClusterDB;
+import eppic.model.InterfaceClusterScoreDB;
+import eppic.model.InterfaceDB;
+import eppic.model.InterfaceScoreDB;
+import eppic.model.InterfaceWarningDB;
+import eppic.model.PdbInfoDB;
+import eppic.model.ResidueBurialDB;
+import eppic.model.ResidueInfoDB;
+import eppic.model.RunParametersDB;
+import eppic.modelio.ResultFileReader;
+
+public class TestResultFile {
+
+	@Test
+	public void testRoundTrip() throws IOException {
+		PdbInfoDB pdbInfo = createPdbInfo();
+
+		File file = File.createTempFile("eppic", ".webui.dat");
+		file.deleteOnExit();
+		ResultFileWriter.write(pdbInfo, file);
+
+		assertTrue(ResultFileReader.isBinary(file));
+		checkSame(pdbInfo, ResultFileReader.read(file));
+	}
+
+	@Test
+	public void testReadJavaSerialized() throws IOException {
+		PdbInfoDB pdbInfo = createPdbInfo();
+
+		File file = File.createTempFile("eppic", ".webui.dat");
+		file.deleteOnExit();
+		Goodies.serialize(file, pdbInfo);
+
+		assertFalse(ResultFileReader.isBinary(file));
+		checkSame(pdbInfo, ResultFileReader.read(file));
+	}
+
+	private static void checkSame(PdbInfoDB expected, PdbInfoDB actual) {
+		assertEquals(expected.getPdbCode(), actual.getPdbCode());
+		assertEquals(expected.getTitle(), actual.getTitle());
+		assertEquals(expected.getReleaseDate(), actual.getReleaseDate());
+		assertEquals(expected.getResolution(), actual.getResolution(), 0);
+		assertTrue(Double.isNaN(actual.getRfreeValue()));
+		assertEquals(expected.isNcsOpsPresent(), actual.isNcsOpsPresent());
+		assertEquals("1.0", actual.getRunParameters().getEppicVersion());
+		assertEquals(actual, actual.getRunParameters().getPdbInfo());
+
+		assertEquals(1, actual.getChainClusters().size());
+		ChainClusterDB cc = actual.getChainClusters().get(0);
+		assertEquals(actual, cc.getPdbInfo());
+		assertEquals("A", cc.getRepChain());
+		assertEquals(2, cc.getHomologs().size());
+		assertEquals("P12345", cc.getHomologs().get(0).getUniProtId());
+		assertEquals(10, cc.getResidueInfos().size());
+		for (int i=0; i<10; i++) {
+			assertEquals(i+1, cc.getResidueInfos().get(i).getResidueNumber());
+			assertEquals(expected.getChainClusters().get(0).getResidueInfos().get(i).getEntropyScore(),
+					cc.getResidueInfos().get(i).getEntropyScore(), 0);
+			assertEquals(cc, cc.getResidueInfos().get(i).getChainCluster());
+		}
+
+		assertEquals(1, actual.getInterfaceClusters().size());
+		InterfaceClusterDB ic = actual.getInterfaceClusters().get(0);
+		assertEquals("xtal", ic.getInterfaceClusterScore("eppic").getCallName());
+		InterfaceDB interf = ic.getInterfaces().get(0);
+		assertEquals(ic, interf.getInterfaceCluster());
+		assertEquals(-1, interf.getXtalTrans_x());
+		assertEquals(0.99, interf.getInterfaceScore("eppic").getConfidence(), 0);
+		assertEquals("a warning", interf.getInterfaceWarnings().get(0).getText());
+
+		assertEquals(3, interf.getContacts().size());
+		assertTrue(interf.getContacts().get(1).isClash());
+		assertFalse(interf.getContacts().get(0).isClash());
+		assertEquals(3.5, interf.getContacts().get(2).getMinDistance(), 0);
+
+		assertEquals(10, interf.getResidueBurials().size());
+		for (int i=0; i<10; i++) {
+			ResidueBurialDB rb = interf.getResidueBurials().get(i);
+			assertEquals(interf, rb.getInterfaceItem());
+			assertEquals(i%2==1, rb.getSide());
+			assertEquals(ResidueBurialDB.CORE_GEOMETRY, rb.getRegion());
+			// the residue infos are the same objects as the ones in the chain cluster
+			if (i==9) assertNull(rb.getResidueInfo());
+			else assertTrue(cc.getResidueInfos().get(i) == rb.getResidueInfo());
+		}
+
+		assertEquals(1, actual.getAssemblies().size());
+		AssemblyDB assembly = actual.getAssemblies().get(0);
+		assertEquals("bio", assembly.getAssemblyScores().get(0).getCallName());
+		assertEquals("A2", assembly.getAssemblyContents().get(0).getStoichiometry());
+		assertEquals(1, assembly.getInterfaceClusters().size());
+		assertTrue(assembly.getInterfaceClusters().iterator().next() == ic);
+		assertTrue(ic.getAssemblies().iterator().next() == assembly);
+	}
+
+	private static PdbInfoDB createPdbInfo() {
+		PdbInfoDB pdbInfo = new PdbInfoDB();
+		pdbInfo.setPdbCode("1abc");
+		pdbInfo.setTitle("A test entry with unicode: \u00c5ngstr\u00f6m");
+		pdbInfo.setReleaseDate(new Date(1000000000000L));
+		pdbInfo.setResolution(1.5);
+		pdbInfo.setRfreeValue(Double.NaN);
+		pdbInfo.setNcsOpsPresent(true);
+
+		RunParametersDB runParameters = new RunParametersDB();
+		runParameters.setEppicVersion("1.0");
+		runParameters.setPdbInfo(pdbInfo);
+		pdbInfo.setRunParameters(runParameters);
+
+		ChainClusterDB cc = new ChainClusterDB();
+		cc.setRepChain("A");
+		cc.setPdbInfo(pdbInfo);
+		cc.setHomologs(new ArrayList<HomologDB>());
+		cc.setResidueInfos(new ArrayList<ResidueInfoDB>());
+		pdbInfo.getChainClusters().add(cc);
+		for (String uniId : new String[] {"P12345", "Q12345"}) {
+			HomologDB h = new HomologDB();
+			h.setUniProtId(uniId);
+			h.setChainCluster(cc);
+			cc.getHomologs().add(h);
+		}
+		for (int i=1; i<=10; i++) {
+			ResidueInfoDB r = new ResidueInfoDB();
+			r.setResidueNumber(i);
+			r.setResidueType("ALA");
+			r.setEntropyScore(i/3.0);
+			r.setChainCluster(cc);
+			cc.getResidueInfos().add(r);
+		}
+
+		InterfaceClusterDB ic = new InterfaceClusterDB();
+		ic.setClusterId(1);
+		ic.setPdbInfo(pdbInfo);
+		pdbInfo.getInterfaceClusters().add(ic);
+		InterfaceClusterScoreDB ics = new InterfaceClusterScoreDB();
+		ics.setMethod("eppic");
+		ics.setCallName("xtal");
+		ics.setInterfaceCluster(ic);
+		ic.addInterfaceClusterScore(ics);
+
+		InterfaceDB interf = new InterfaceDB();
+		interf.setInterfaceId(1);
+		interf.setXtalTrans_x(-1);
+		interf.setInterfaceCluster(ic);
+		interf.setContacts(new ArrayList<ContactDB>());
+		ic.getInterfaces().add(interf);
+		InterfaceScoreDB is = new InterfaceScoreDB();
+		is.setMethod("eppic");
+		is.setConfidence(0.99);
+		is.setInterfaceItem(interf);
+		interf.addInterfaceScore(is);
+		InterfaceWarningDB warning = new InterfaceWarningDB();
+		warning.setText("a warning");
+		warning.setInterfaceItem(interf);
+		interf.getInterfaceWarnings().add(warning);
+		for (int i=0; i<3; i++) {
+			ContactDB contact = new ContactDB();
+			contact.setFirstResNumber(i+1);
+			contact.setSecondResNumber(i+5);
+			contact.setClash(i==1);
+			contact.setMinDistance(3.5);
+			contact.setInterfaceItem(interf);
+			interf.getContacts().add(contact);
+		}
+		for (int i=0; i<10; i++) {
+			ResidueBurialDB rb = new ResidueBurialDB();
+			rb.setSide(i%2==1);
+			rb.setAsa(100+i);
+			rb.setBsa(50+i);
+			rb.setRegion(ResidueBurialDB.CORE_GEOMETRY);
+			// one burial not mapped to a residue
+			if (i<9) rb.setResidueInfo(cc.getResidueInfos().get(i));
+			rb.setInterfaceItem(interf);
+			interf.getResidueBurials().add(rb);
+		}
+
+		AssemblyDB assembly = new AssemblyDB();
+		assembly.setId(1);
+		assembly.setPdbInfo(pdbInfo);
+		pdbInfo.addAssembly(assembly);
+		assembly.getInterfaceClusters().add(ic);
+		ic.addAssembly(assembly);
+		AssemblyScoreDB as = new AssemblyScoreDB();
+		as.setCallName("bio");
+		as.setAssembly(assembly);
+		assembly.addAssemblyScore(as);
+		AssemblyContentDB ac = new AssemblyContentDB();
+		ac.setStoichiometry("A2");
+		ac.setAssembly(assembly);
+		assembly.setAssemblyContents(new ArrayList<AssemblyContentDB>());
+		assembly.getAssemblyContents().add(ac);
+
+		return pdbInfo;
+	}
+}
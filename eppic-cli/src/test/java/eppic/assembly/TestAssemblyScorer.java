@@ -0,0 +1,93 @@
+package eppic.assembly;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Test {@link AssemblyScorer} against the explicit enumeration of all subsets of engaged interface clusters.
+ *
+ */
+public class TestAssemblyScorer {
+
+	private static final double DELTA = 0.0000001;
+
+	@Test
+	public void testAgainstBruteForce() {
+		Random rand = new Random(42);
+
+		for (int trial=0;trial<200;trial++) {
+			int numVertices = 1 + rand.nextInt(8);
+			int numClusters = 1 + rand.nextInt(7);
+
+			int[][] clusterEdges = new int[numClusters][];
+			double[] probs = new double[numClusters];
+			for (int c=0;c<numClusters;c++) {
+				int numEdges = rand.nextInt(4);
+				clusterEdges[c] = new int[numEdges*2];
+				for (int k=0;k<numEdges*2;k++) {
+					clusterEdges[c][k] = rand.nextInt(numVertices);
+				}
+				probs[c] = rand.nextDouble();
+			}
+
+			AssemblyScorer scorer = new AssemblyScorer(numVertices, clusterEdges, probs);
+
+			for (int mask=0;mask<(1<<numClusters);mask++) {
+				PowerSet engagedSet = new PowerSet(numClusters);
+				for (int c=0;c<numClusters;c++) {
+					if ((mask & (1<<c))!=0) engagedSet.switchOn(c);
+				}
+
+				assertEquals(countComponents(numVertices, clusterEdges, mask), scorer.getNumComponents(engagedSet));
+
+				assertEquals(bruteForceProbability(numVertices, clusterEdges, probs, mask), scorer.calcProbability(engagedSet), DELTA);
+			}
+		}
+	}
+
+	/**
+	 * The scoring as done before AssemblyScorer: all non-empty subsets of the engaged clusters
+	 * with the same number of components, plus the engaged set itself
+	 */
+	private static double bruteForceProbability(int numVertices, int[][] clusterEdges, double[] probs, int engaged) {
+		int target = countComponents(numVertices, clusterEdges, engaged);
+		double sum = 0;
+		for (int sub=engaged; ; sub = (sub-1) & engaged) {
+			if ((sub!=0 || engaged==0) && countComponents(numVertices, clusterEdges, sub)==target) {
+				double prob = 1;
+				for (int c=0;c<probs.length;c++) {
+					prob *= (sub & (1<<c))!=0 ? probs[c] : 1-probs[c];
+				}
+				sum += prob;
+			}
+			if (sub==0) break;
+		}
+		return sum;
+	}
+
+	private static int countComponents(int numVertices, int[][] clusterEdges, int mask) {
+		int[] parent = new int[numVertices];
+		for (int i=0;i<numVertices;i++) parent[i] = i;
+		int count = numVertices;
+		for (int c=0;c<clusterEdges.length;c++) {
+			if ((mask & (1<<c))==0) continue;
+			for (int k=0;k<clusterEdges[c].length;k+=2) {
+				int u = find(parent, clusterEdges[c][k]);
+				int v = find(parent, clusterEdges[c][k+1]);
+				if (u!=v) {
+					parent[u] = v;
+					count--;
+				}
+			}
+		}
+		return count;
+	}
+
+	private static int find(int[] parent, int v) {
+		while (parent[v]!=v) v = parent[v];
+		return v;
+	}
+}
@@ -0,0 +1,49 @@
+package eppic.assembly;
+
+import static org.junit.Assert.*;
+
+import java.util.BitSet;
+
+import org.junit.Test;
+
+/**
+ * Test the subset pruning of {@link InvalidSetIndex}.
+ *
+ */
+public class TestInvalidSetIndex {
+
+	@Test
+	public void testContainsSubsetOf() {
+		InvalidSetIndex index = new InvalidSetIndex(100);
+
+		index.add(bits(1, 3));
+		index.add(bits(70, 99)); // spans 2 words
+
+		assertEquals(2, index.size());
+
+		assertTrue(index.containsSubsetOf(bits(1, 2, 3)));
+		assertTrue(index.containsSubsetOf(bits(1, 2, 3), 3));
+		assertFalse(index.containsSubsetOf(bits(1, 2, 4)));
+		// only sets containing index 2 are looked at
+		assertFalse(index.containsSubsetOf(bits(1, 2, 3), 2));
+
+		assertTrue(index.containsSubsetOf(bits(0, 70, 99)));
+		assertFalse(index.containsSubsetOf(bits(0, 70)));
+		assertFalse(index.containsSubsetOf(bits(3, 99)));
+		assertFalse(index.containsSubsetOf(new BitSet()));
+	}
+
+	@Test
+	public void testPowerSetConversion() {
+		PowerSet ps = new PowerSet(new boolean[] { true, false, false, true, false });
+		BitSet b = ps.toBitSet();
+		assertEquals(bits(0, 3), b);
+		assertEquals(ps, new PowerSet(b, 5));
+	}
+
+	private static BitSet bits(int... indices) {
+		BitSet b = new BitSet();
+		for (int i:indices) b.set(i);
+		return b;
+	}
+}
@@ -9,7 +9,9 @@ import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.PrintWriter;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import javax.vecmath.Point3i;
 
@@ -17,13 +19,17 @@ import org.biojava.nbio.structure.Structure;
 import org.biojava.nbio.structure.StructureException;
 import org.biojava.nbio.structure.StructureIO;
 import org.biojava.nbio.structure.align.util.AtomCache;
+import org.biojava.nbio.structure.contact.StructureInterface;
 import org.biojava.nbio.structure.contact.StructureInterfaceList;
 import org.biojava.nbio.structure.io.FileParsingParameters;
 import org.biojava.nbio.structure.xtal.CrystalBuilder;
+import org.biojava.nbio.structure.xtal.SpaceGroup;
 import org.junit.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.collect.Lists;
+
 import eppic.EppicParams;
 import eppic.commons.util.StructureUtils;
 
@@ -463,6 +469,44 @@ public class TestLatticeGraph {
 	}
 	
 
+	@Test
+	public void testStoredInterfaces() throws IOException, StructureException {
+		
+		// 1smt (P 1 21 1 with 1 entity and 2 molecules A,B)
+		Structure s = getStructure("1smt");
+		StructureInterfaceList interfaces = getAllInterfaces(s);
+		SpaceGroup sg = s.getCrystallographicInfo().getSpaceGroup();
+		
+		// the interfaces as they are stored after an eppic run, see DataModelAdaptor
+		List<StructureInterface> stored = new ArrayList<>();
+		for (StructureInterface interf : interfaces) {
+			stored.add(new StoredStructureInterface(interf.getId(), interf.getCluster().getId(),
+					interf.getMoleculeIds().getFirst(), interf.getMoleculeIds().getSecond(),
+					sg, interf.getTransforms().getSecond().getTransformId(),
+					SpaceGroup.getAlgebraicFromMatrix(interf.getTransforms().getSecond().getMatTransform()),
+					interf.isInfinite(), interf.isIsologous()));
+		}
+		
+		LatticeGraph3D calculated = new LatticeGraph3D(s, Lists.newArrayList(interfaces));
+		LatticeGraph3D fromStored = new LatticeGraph3D(s, stored);
+		
+		assertEquals(calculated.getGraph().vertexSet().size(), fromStored.getGraph().vertexSet().size());
+		assertEquals(calculated.getGraph().edgeSet().size(), fromStored.getGraph().edgeSet().size());
+		assertEquals(getEdgeStrings(calculated), getEdgeStrings(fromStored));
+	}
+	
+	private static Set<String> getEdgeStrings(LatticeGraph3D lg) {
+		Set<String> edges = new HashSet<>();
+		for (InterfaceEdge3D e : lg.getGraph().edgeSet()) {
+			ChainVertex3D source = lg.getGraph().getEdgeSource(e);
+			ChainVertex3D target = lg.getGraph().getEdgeTarget(e);
+			edges.add(source.getChainId() + source.getOpId() + " -" + e.getInterfaceId() + "(" + e.getClusterId() + ")- " +
+					target.getChainId() + target.getOpId() + " " + e.getXtalTransString() + 
+					" " + e.isInfinite() + " " + e.isIsologous());
+		}
+		return edges;
+	}
+
 	/**
 	 * Utility to facilitate testing of lattice graph related stuff: gets the CrystalAssemblies object for a given PDB id
 	 * @param pdbId
@@ -0,0 +1,58 @@
+package eppic.commons.sequence;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class TestMultipleSequenceAlignment {
+
+	private static final double DELTA = 0.000001;
+
+	@Test
+	public void testAllColumnEntropies() throws AlignmentConstructionException {
+		String[] tags = {"s1", "s2", "s3", "s4", "s5"};
+		String[] seqs = {
+				"ACDEFGHIKLMNPQRSTVWY-",
+				"ACDEFGHIKLMNPQRSTVW--",
+				"AC-EFGHIKXMNPQRSTVWYA",
+				"ILKRFGHIKLMNPQRSTVWYW",
+				"--DEYWHIKLMNPQRSTVWY-"};
+
+		MultipleSequenceAlignment aln = new MultipleSequenceAlignment(tags, seqs);
+
+		for (AAAlphabet alphabet : new AAAlphabet[] {
+				new AAAlphabet(AAAlphabet.STANDARD_20),
+				new AAAlphabet(AAAlphabet.MIRNY_6),
+				new AAAlphabet(AAAlphabet.MURPHY_2)}) {
+
+			double[] entropies = aln.computeAllColumnEntropies(alphabet);
+
+			assertEquals(aln.getAlignmentLength(), entropies.length);
+
+			for (int i=1; i<=aln.getAlignmentLength(); i++) {
+				assertEquals(aln.getColumnEntropy(i, alphabet), entropies[i-1], DELTA);
+			}
+		}
+
+		// fully conserved column has 0 entropy
+		assertEquals(0, aln.computeAllColumnEntropies(new AAAlphabet(AAAlphabet.STANDARD_20))[7], DELTA);
+	}
+
+	@Test
+	public void testAllColumnEntropiesAfterAdding() throws AlignmentConstructionException {
+		String[] tags = {"s1", "s2"};
+		String[] seqs = {"ACD", "ACD"};
+
+		MultipleSequenceAlignment aln = new MultipleSequenceAlignment(tags, seqs);
+		AAAlphabet alphabet = new AAAlphabet(AAAlphabet.STANDARD_20);
+
+		assertEquals(0, aln.computeAllColumnEntropies(alphabet)[0], DELTA);
+
+		// the cached column encoding must be recomputed after modifying the alignment
+		aln.addSequence("s3", "KCD");
+		double[] entropies = aln.computeAllColumnEntropies(alphabet);
+		assertEquals(aln.getColumnEntropy(1, alphabet), entropies[0], DELTA);
+		assertTrue(entropies[0] > 0);
+
+	}
+}
@@ -0,0 +1,85 @@
+package eppic.commons.sequence;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.List;
+
+import org.junit.Test;
+
+public class TestSiftsIndex {
+
+	private static final String[] SIFTS_LINES = {
+			"# 2016/10/05 - 10:49 | PDB: 40.16 | UniProt: 2016.09",
+			"PDB	CHAIN	SP_PRIMARY	RES_BEG	RES_END	PDB_BEG	PDB_END	SP_BEG	SP_END",
+			"1abc	A	P12345	50	80	50	80	150	180",
+			"1abc	A	Q99999	1	49	1	49	1	49",
+			"1abc	B	P12345	1	100	1	100	101	200",
+			"2xyz	A	P12345	1	30	10A	39	1	30",
+			"2xyz	AA	O11111	1	10	1	10	5	14",
+	};
+
+	@Test
+	public void testIndexSameAsText() throws IOException, NoMatchFoundException {
+
+		File lstFile = File.createTempFile("sifts", ".lst");
+		lstFile.deleteOnExit();
+		try (PrintWriter pw = new PrintWriter(lstFile)) {
+			for (String line : SIFTS_LINES) pw.println(line);
+		}
+		File indexFile = File.createTempFile("sifts", ".idx");
+		indexFile.deleteOnExit();
+
+		SiftsConnection text = new SiftsConnection(lstFile.toString());
+		assertFalse(text.isIndexed());
+		assertFalse(SiftsIndex.isSiftsIndex(lstFile));
+
+		SiftsIndex.write(text, indexFile);
+		assertTrue(SiftsIndex.isSiftsIndex(indexFile));
+
+		SiftsConnection indexed = new SiftsConnection(indexFile.toString());
+		assertTrue(indexed.isIndexed());
+
+		assertEquals(text.getMappingsCount(), indexed.getMappingsCount());
+
+		String[][] chains = { {"1abc","A"}, {"1abc","B"}, {"2xyz","A"}, {"2xyz","AA"} };
+		for (String[] chain : chains) {
+			assertSameFeatures(text.getMappings(chain[0], chain[1]), indexed.getMappings(chain[0], chain[1]));
+		}
+		for (String uniprotId : new String[] {"P12345", "Q99999", "O11111"}) {
+			assertSameFeatures(text.getUniprot2PdbMappings(uniprotId), indexed.getUniprot2PdbMappings(uniprotId));
+		}
+
+		// sorted by cif intervals
+		List<SiftsFeature> mappings = indexed.getMappings("1abc", "A");
+		assertEquals("Q99999", mappings.get(0).getUniprotId());
+		assertEquals("P12345", mappings.get(1).getUniprotId());
+
+		assertEquals("10A", indexed.getMappings("2xyz", "A").get(0).getPdbBeg());
+	}
+
+	@Test(expected = NoMatchFoundException.class)
+	public void testNoMatch() throws IOException, NoMatchFoundException {
+		File lstFile = File.createTempFile("sifts", ".lst");
+		lstFile.deleteOnExit();
+		try (PrintWriter pw = new PrintWriter(lstFile)) {
+			for (String line : SIFTS_LINES) pw.println(line);
+		}
+		File indexFile = File.createTempFile("sifts", ".idx");
+		indexFile.deleteOnExit();
+		SiftsIndex.write(new SiftsConnection(lstFile.toString()), indexFile);
+
+		new SiftsConnection(indexFile.toString()).getMappings("1abc", "C");
+	}
+
+	private static void assertSameFeatures(List<SiftsFeature> expected, List<SiftsFeature> actual) {
+		assertEquals(expected.size(), actual.size());
+		for (int i=0;i<expected.size();i++) {
+			assertEquals(expected.get(i).toString(), actual.get(i).toString());
+			assertEquals(expected.get(i).getUniprotId(), actual.get(i).getUniprotId());
+			assertEquals(expected.get(i).getPdbChainCode(), actual.get(i).getPdbChainCode());
+		}
+	}
+}
@@ -0,0 +1,137 @@
+package eppic.commons.util;
+
+import static org.junit.Assert.*;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.vecmath.Matrix4d;
+import javax.vecmath.Point3d;
+import javax.vecmath.Vector3d;
+
+import org.biojava.nbio.structure.AminoAcidImpl;
+import org.biojava.nbio.structure.Atom;
+import org.biojava.nbio.structure.AtomImpl;
+import org.biojava.nbio.structure.Chain;
+import org.biojava.nbio.structure.ChainImpl;
+import org.biojava.nbio.structure.Element;
+import org.biojava.nbio.structure.Group;
+import org.biojava.nbio.structure.HetatomImpl;
+import org.biojava.nbio.structure.Structure;
+import org.biojava.nbio.structure.StructureException;
+import org.biojava.nbio.structure.StructureTools;
+import org.biojava.nbio.structure.io.mmcif.MMcifParser;
+import org.biojava.nbio.structure.io.mmcif.SimpleMMcifConsumer;
+import org.biojava.nbio.structure.io.mmcif.SimpleMMcifParser;
+import org.junit.Test;
+
+public class TestMmcifAtomSiteWriter {
+
+	@Test
+	public void testTransformedChainRoundTrip() throws IOException, StructureException {
+
+		Chain chain = new ChainImpl();
+		chain.setChainID("A");
+		chain.addGroup(getGroup(new AminoAcidImpl(), "ALA", 1, new String[]{"N","CA","C","O","CB"}));
+		chain.addGroup(getGroup(new AminoAcidImpl(), "GLY", 2, new String[]{"N","CA","C","O"}));
+
+		Matrix4d transform = new Matrix4d();
+		transform.rotZ(Math.PI/2);
+		transform.setTranslation(new Vector3d(10, -20, 0.5));
+
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		MmcifAtomSiteWriter writer = new MmcifAtomSiteWriter(os);
+		writer.writeHeader("test");
+		int count = writer.writeChain(chain, "A_2", "A_2", 1, transform);
+		writer.close();
+
+		assertEquals(9, count);
+
+		MMcifParser parser = new SimpleMMcifParser();
+		SimpleMMcifConsumer consumer = new SimpleMMcifConsumer();
+		parser.addMMcifConsumer(consumer);
+		parser.parse(new BufferedReader(new InputStreamReader(new ByteArrayInputStream(os.toByteArray()))));
+		Structure structure = consumer.getStructure();
+
+		Chain parsed = structure.getChainByPDB("A_2");
+		Atom[] originalAtoms = StructureTools.getAllAtomArray(chain);
+		Atom[] parsedAtoms = StructureTools.getAllAtomArray(parsed);
+		assertEquals(originalAtoms.length, parsedAtoms.length);
+
+		for (int i=0;i<originalAtoms.length;i++) {
+			Point3d expected = new Point3d(originalAtoms[i].getCoords());
+			transform.transform(expected);
+
+			assertEquals(originalAtoms[i].getName(), parsedAtoms[i].getName());
+			assertEquals(originalAtoms[i].getGroup().getPDBName(), parsedAtoms[i].getGroup().getPDBName());
+			assertEquals(i+1, parsedAtoms[i].getPDBserial());
+			assertEquals(expected.x, parsedAtoms[i].getX(), 0.001);
+			assertEquals(expected.y, parsedAtoms[i].getY(), 0.001);
+			assertEquals(expected.z, parsedAtoms[i].getZ(), 0.001);
+		}
+	}
+
+	@Test
+	public void testRowFormat() throws IOException {
+
+		Chain chain = new ChainImpl();
+		chain.setChainID("B");
+		Group g = getGroup(new HetatomImpl(), "DA", 5, new String[]{"O5'"});
+		chain.addGroup(g);
+		Atom a = g.getAtoms().get(0);
+		a.setCoords(new double[]{-0.0004, 1.0006, -12.5});
+		a.setPDBserial(42);
+
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		MmcifAtomSiteWriter writer = new MmcifAtomSiteWriter(os);
+		writer.writeHeader("test");
+		writer.writeChain(chain, "B", "B", -1, null);
+		writer.close();
+
+		List<String> rows = new ArrayList<String>();
+		int numFields = 0;
+		for (String line:new String(os.toByteArray()).split("\n")) {
+			if (line.startsWith("_atom_site.")) numFields++;
+			else if (line.startsWith("HETATM") || line.startsWith("ATOM")) rows.add(line);
+		}
+
+		assertEquals(1, rows.size());
+		String[] tokens = rows.get(0).split(" ");
+		assertEquals(numFields, tokens.length);
+
+		assertEquals("HETATM", tokens[0]);
+		assertEquals("42", tokens[1]);
+		assertEquals("O", tokens[2]);
+		assertEquals("\"O5'\"", tokens[3]);
+		assertEquals(".", tokens[4]);
+		assertEquals("5", tokens[8]);
+		assertEquals("?", tokens[9]);
+		assertEquals("0.000", tokens[10]);
+		assertEquals("1.001", tokens[11]);
+		assertEquals("-12.500", tokens[12]);
+		assertEquals("1.00", tokens[13]);
+		assertEquals("20.25", tokens[14]);
+		assertEquals("\"O5'\"", tokens[tokens.length-2]);
+	}
+
+	private static Group getGroup(Group g, String name, int resNum, String[] atomNames) {
+		g.setPDBName(name);
+		g.setResidueNumber(null, resNum, null);
+		for (int i=0;i<atomNames.length;i++) {
+			Atom a = new AtomImpl();
+			a.setName(atomNames[i]);
+			a.setElement(Element.valueOf(atomNames[i].substring(0, 1)));
+			a.setCoords(new double[]{resNum+i, 2.5*i, -1.25*resNum});
+			a.setOccupancy(1.0f);
+			a.setTempFactor(20.25f);
+			a.setPDBserial(resNum*10+i);
+			g.addAtom(a);
+		}
+		return g;
+	}
+}
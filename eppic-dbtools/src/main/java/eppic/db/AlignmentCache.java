@@ -0,0 +1,140 @@
+package eppic.db;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.biojava.nbio.alignment.NeedlemanWunsch;
+import org.biojava.nbio.alignment.SimpleGapPenalty;
+import org.biojava.nbio.alignment.template.GapPenalty;
+import org.biojava.nbio.core.alignment.SimpleSequencePair;
+import org.biojava.nbio.core.alignment.matrices.SubstitutionMatrixHelper;
+import org.biojava.nbio.core.alignment.template.AlignedSequence;
+import org.biojava.nbio.core.alignment.template.SequencePair;
+import org.biojava.nbio.core.alignment.template.SubstitutionMatrix;
+import org.biojava.nbio.core.exceptions.CompoundNotFoundException;
+import org.biojava.nbio.core.sequence.ProteinSequence;
+import org.biojava.nbio.core.sequence.compound.AminoAcidCompound;
+import org.biojava.nbio.structure.contact.Pair;
+
+/**
+ * A cache of the pairwise alignments of chain sequences done when comparing lattices, keyed by
+ * the pair of (ungapped) sequences aligned. The members of a sequence cluster usually share a handful
+ * of distinct sequences, so that a cache shared by all comparisons of a clustering run avoids
+ * realigning the same sequences for every pair of entries.
+ * <p>
+ * The least recently used alignments are evicted once the maximum size is reached.
+ * Thread safe: alignments are computed outside of the lock, so that the same pair may be aligned
+ * twice by concurrent threads, both getting equivalent alignments.
+ *
+ */
+public class AlignmentCache {
+
+	public static final int DEFAULT_MAX_SIZE = 10000;
+
+	private static final SubstitutionMatrix<AminoAcidCompound> MATRIX = SubstitutionMatrixHelper.getBlosum50();
+	private static final GapPenalty PENALTY = new SimpleGapPenalty((short)8,(short)1);
+
+	private final int maxSize;
+
+	// access-ordered: iteration starts from the least recently used
+	private final LinkedHashMap<Pair<String>, SequencePair<ProteinSequence,AminoAcidCompound>> alignments;
+
+	private long hits;
+	private long misses;
+
+	/**
+	 * @param maxSize the maximum number of alignments kept
+	 */
+	public AlignmentCache(int maxSize) {
+		this.maxSize = maxSize;
+		this.alignments = new LinkedHashMap<Pair<String>, SequencePair<ProteinSequence,AminoAcidCompound>>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Pair<String>, SequencePair<ProteinSequence,AminoAcidCompound>> eldest) {
+				return size() > AlignmentCache.this.maxSize;
+			}
+		};
+	}
+
+	/**
+	 * Returns the alignment of the two sequences, aligning them if not cached
+	 * @param seq1 the first sequence, the query of the alignment
+	 * @param seq2 the second sequence, the target of the alignment
+	 * @return
+	 * @throws CompoundNotFoundException if the sequences contain non-protein characters
+	 * @see #align(String, String)
+	 */
+	public SequencePair<ProteinSequence,AminoAcidCompound> getAlignment(String seq1, String seq2) throws CompoundNotFoundException {
+
+		Pair<String> key = new Pair<String>(seq1, seq2);
+
+		synchronized (this) {
+			SequencePair<ProteinSequence,AminoAcidCompound> aln = alignments.get(key);
+			if (aln!=null) {
+				hits++;
+				return aln;
+			}
+			misses++;
+		}
+
+		SequencePair<ProteinSequence,AminoAcidCompound> aln = align(seq1, seq2);
+
+		synchronized (this) {
+			alignments.put(key, aln);
+		}
+
+		return aln;
+	}
+
+	/**
+	 * Aligns the two sequences with Needleman-Wunsch (BLOSUM50, gap open 8, gap extension 1).
+	 * Identical sequences are not aligned: their alignment is the trivial one without gaps, which
+	 * is the optimal one since all identities have positive scores.
+	 * @param seq1 the first sequence, the query of the alignment
+	 * @param seq2 the second sequence, the target of the alignment
+	 * @return
+	 * @throws CompoundNotFoundException if the sequences contain non-protein characters
+	 */
+	public static SequencePair<ProteinSequence,AminoAcidCompound> align(String seq1, String seq2) throws CompoundNotFoundException {
+
+		// before move to Biojava, we had as tags of the sequences:  "first" and "second"
+		ProteinSequence s1 = new ProteinSequence(seq1);
+		ProteinSequence s2 = new ProteinSequence(seq2);
+
+		SequencePair<ProteinSequence,AminoAcidCompound> aln = null;
+
+		if (seq1.equals(seq2)) {
+			aln = new SimpleSequencePair<ProteinSequence,AminoAcidCompound>(s1, s2);
+		} else {
+			NeedlemanWunsch<ProteinSequence,AminoAcidCompound> nw =
+					new NeedlemanWunsch<ProteinSequence,AminoAcidCompound>(s1,s2, PENALTY, MATRIX);
+
+			aln = nw.getPair();
+		}
+
+		// the index mappings of aligned sequences are lazily initialised: we do it before the alignment
+		// is shared with other threads
+		initIndexMappings(aln.getQuery());
+		initIndexMappings(aln.getTarget());
+
+		return aln;
+	}
+
+	private static void initIndexMappings(AlignedSequence<ProteinSequence,AminoAcidCompound> seq) {
+		if (seq.getLength()==0 || seq.getOriginalSequence().getLength()==0) return;
+		seq.getAlignmentIndexAt(1);
+		seq.getSequenceIndexAt(1);
+	}
+
+	public synchronized int size() {
+		return alignments.size();
+	}
+
+	@Override
+	public synchronized String toString() {
+		long total = hits + misses;
+		return String.format("Alignment cache: %d alignments, %d hits, %d misses (%.1f%% hits)",
+				alignments.size(), hits, misses, total==0 ? 0.0 : 100.0*hits/total);
+	}
+}
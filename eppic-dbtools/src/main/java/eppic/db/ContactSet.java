@@ -1,6 +1,6 @@
 package eppic.db;
 
-import java.util.HashSet;
+import java.util.Arrays;
 import java.util.List;
 
 import org.biojava.nbio.core.alignment.template.SequencePair;
@@ -12,12 +12,19 @@ import eppic.model.ContactDB;
 
 /**
  * Represents a set of contacting residues for interface alignment. Contacts
- * are stored as a set of pairs of residue indices.
+ * are stored as a set of pairs of residue indices, each pair packed in a long
+ * (see {@link #pack(int, int)}) in sorted arrays without duplicates, so that 
+ * the common contacts of two sets are counted by merging their arrays.
  */
 public class ContactSet {
 	
-	private HashSet<Pair<SimpleResidue>> directSet;
-	private HashSet<Pair<SimpleResidue>> inverseSet;
+	private long[] directSet;
+	private int directSize;
+	private long[] inverseSet;
+	private int inverseSize;
+	
+	// whether the arrays are sorted and without duplicates, contacts are appended unsorted
+	private boolean sorted;
 
 	private SequencePair<ProteinSequence,AminoAcidCompound> aln11;
 	private SequencePair<ProteinSequence,AminoAcidCompound> aln22;
@@ -44,8 +51,8 @@ public class ContactSet {
 			SequencePair<ProteinSequence,AminoAcidCompound> aln11, SequencePair<ProteinSequence,AminoAcidCompound> aln22,
 			SequencePair<ProteinSequence,AminoAcidCompound> aln12, SequencePair<ProteinSequence,AminoAcidCompound> aln21 ) {
 		
-		this.directSet = new HashSet<Pair<SimpleResidue>>();
-		this.inverseSet = new HashSet<Pair<SimpleResidue>>();
+		this.directSet = new long[contacts.size()];
+		this.inverseSet = new long[aln12!=null && aln21!=null ? contacts.size() : 0];
 		
 		this.aln11 = aln11;
 		this.aln22 = aln22;
@@ -55,22 +62,67 @@ public class ContactSet {
 		for (ContactDB contact:contacts) {
 			addContact(contact);
 		}
+		
+		sort();
 
 	}
 	
 	public boolean contains(Pair<SimpleResidue> contact, boolean inverse) {
+		sort();
+		long packed = pack(contact.getFirst().getSerial(), contact.getSecond().getSerial());
 		if (!inverse)
-			return directSet.contains(contact);
+			return Arrays.binarySearch(directSet, 0, directSize, packed)>=0;
 		else
-			return inverseSet.contains(contact);
+			return Arrays.binarySearch(inverseSet, 0, inverseSize, packed)>=0;
 	}
 	
 	public int size() {
-		return directSet.size();
+		sort();
+		return directSize;
+	}
+	
+	/**
+	 * Counts the direct contacts of this set that are also contacts of the other set.
+	 * @param other
+	 * @param inverse if true the direct contacts of this set are searched in the inverse contacts of other,
+	 * if false in the direct contacts of other 
+	 * @return
+	 */
+	public int countCommon(ContactSet other, boolean inverse) {
+		this.sort();
+		other.sort();
+		
+		long[] a = this.directSet;
+		int sizeA = this.directSize;
+		long[] b = inverse ? other.inverseSet : other.directSet;
+		int sizeB = inverse ? other.inverseSize : other.directSize;
+		
+		int common = 0;
+		int i = 0;
+		int j = 0;
+		while (i<sizeA && j<sizeB) {
+			if (a[i]==b[j]) {
+				common++;
+				i++;
+				j++;
+			} else if (a[i]<b[j]) {
+				i++;
+			} else {
+				j++;
+			}
+		}
+		return common;
 	}
 	
-	public HashSet<Pair<SimpleResidue>> getDirectSet() {
-		return directSet;
+	/**
+	 * Packs a contact between the residues of given serials in a long, the first serial in 
+	 * the upper 32 bits and the second one in the lower 32 bits. 
+	 * @param resSerial1
+	 * @param resSerial2
+	 * @return
+	 */
+	public static long pack(int resSerial1, int resSerial2) {
+		return ((long)resSerial1 << 32) | (resSerial2 & 0xffffffffL);
 	}
 	
 	/**
@@ -106,11 +158,7 @@ public class ContactSet {
 			//TODO if they map to -1 that means they map to gap: what to do then?
 
 			
-			Pair<SimpleResidue> directPair = new Pair<SimpleResidue>(
-					new SimpleResidue(resSerial1),
-					new SimpleResidue(resSerial2));
-
-			directSet.add(directPair);
+			addDirect(pack(resSerial1, resSerial2));
 		}
 		if( indirectalignment) {
 			
@@ -120,28 +168,57 @@ public class ContactSet {
 			//TODO if they map to -1 that means they map to gap: what to do then?
 
 			
-			Pair<SimpleResidue> invertedPair = new Pair<SimpleResidue>(
-					new SimpleResidue(resSerial2),
-					new SimpleResidue(resSerial1));
-			
-			inverseSet.add(invertedPair);
+			addInverse(pack(resSerial2, resSerial1));
 			
 		}
 		if( !directalignment && !indirectalignment) {
 			
 			// first contact in comparison: we need no inverse set, and no mapping through alignment
 			
-			Pair<SimpleResidue> directPair = new Pair<SimpleResidue>(
-					new SimpleResidue(contact.getFirstResNumber()),
-					new SimpleResidue(contact.getSecondResNumber()));
-			
-			directSet.add(directPair);
+			addDirect(pack(contact.getFirstResNumber(), contact.getSecondResNumber()));
 		
 		}
 		
 		
 		
 		
+	}
+	
+	private void addDirect(long contact) {
+		if (directSize==directSet.length) {
+			directSet = Arrays.copyOf(directSet, Math.max(16, 2*directSize));
+		}
+		directSet[directSize++] = contact;
+		sorted = false;
+	}
+	
+	private void addInverse(long contact) {
+		if (inverseSize==inverseSet.length) {
+			inverseSet = Arrays.copyOf(inverseSet, Math.max(16, 2*inverseSize));
+		}
+		inverseSet[inverseSize++] = contact;
+		sorted = false;
+	}
+	
+	/**
+	 * Sorts the contacts and removes duplicates, if any contact was added since last sorted
+	 */
+	private void sort() {
+		if (sorted) return;
+		directSize = sortUnique(directSet, directSize);
+		inverseSize = sortUnique(inverseSet, inverseSize);
+		sorted = true;
+	}
+	
+	private static int sortUnique(long[] contacts, int size) {
+		Arrays.sort(contacts, 0, size);
+		int unique = 0;
+		for (int i=0;i<size;i++) {
+			if (unique==0 || contacts[i]!=contacts[unique-1]) {
+				contacts[unique++] = contacts[i];
+			}
+		}
+		return unique;
 	}
 	
 	/**
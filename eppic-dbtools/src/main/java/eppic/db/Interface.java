@@ -26,6 +26,8 @@ public class Interface {
 	private InterfaceDB interf;
 	private InterfaceCluster ic;
 	
+	private ContactSet contactSet;
+	
 	
 	public Interface(InterfaceDB interf, InterfaceCluster ic) {
 		this.interf = interf;
@@ -41,6 +43,21 @@ public class Interface {
 		return ic.getPdbInfo();
 	}
 	
+	/**
+	 * Returns the contacts of this interface with their original residue numbers, 
+	 * built on first call and reused for as long as this object is. The interfaces compared 
+	 * in lattice comparisons are kept by {@link PdbInfo#loadComparisonData(double)}, which also 
+	 * builds their contact sets.
+	 * Not thread safe.
+	 * @return
+	 */
+	public ContactSet getContactSet() {
+		if (contactSet==null) {
+			contactSet = new ContactSet(interf.getContacts(),null,null,null,null);
+		}
+		return contactSet;
+	}
+	
 	/**
 	 * Tells whether this interface has the same chain content as the given one. Chain "content"
 	 * is defined from the given sequence cluster level. 
@@ -77,7 +77,7 @@ public class InterfaceComparator {
 		SequencePair<ProteinSequence,AminoAcidCompound> aln21 = alignmentsPool.get(new Pair<String>(interf1SecondChain,interf2FirstChain));
 		
 				
-		cs1 = new ContactSet(interf1.getInterface().getContacts(),null,null,null,null);
+		cs1 = interf1.getContactSet();
 		cs2 = new ContactSet(interf2.getInterface().getContacts(),aln11, aln22, aln12, aln21);
 		
 		
@@ -120,12 +120,7 @@ public class InterfaceComparator {
 	
 	private double calcOverlap(boolean inverse) {
 		
-		int common = 0;
-		for (Pair<SimpleResidue> contact:cs1.getDirectSet()) {
-			if (cs2.contains(contact,inverse)) {
-				common++;
-			} 
-		}
+		int common = cs1.countCommon(cs2, inverse);
 		return (2.0*common)/(cs1.size()+cs2.size());
 	}
 }
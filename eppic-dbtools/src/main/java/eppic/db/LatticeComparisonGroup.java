@@ -1,8 +1,12 @@
 package eppic.db;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.TreeSet;
 
 import org.biojava.nbio.core.util.SingleLinkageClusterer;
@@ -12,7 +16,13 @@ import org.biojava.nbio.core.util.SingleLinkageClusterer;
 /**
  * A class to contain the comparison of lattices for a set of PDBs,
  * from which the Crystal Form clusters and interface clusters can be obtained.
- * 
+ * <p>
+ * By default the full lattice comparison and interface comparison matrices are kept and
+ * single-linkage clustered. In streaming mode (see {@link #LatticeComparisonGroup(PdbInfoList, double, double)})
+ * the clustering cutoffs are known in advance: single-linkage clusters at a cutoff are the connected 
+ * components of the pairs above the cutoff, so every comparison is merged in union-find structures
+ * as it is set and no matrix is kept. Memory is then linear in the number of entries and 
+ * interface clusters.
  * 
  * @author duarte_j
  *
@@ -24,6 +34,13 @@ public class LatticeComparisonGroup {
 		
 	private LatticeOverlapScore[][] latticeOverlapMatrix;
 	private double[][] interfCompMatrix;
+	
+	// streaming mode only: the cutoffs and the clusters merged so far
+	private boolean streaming;
+	private double losCutoff;
+	private double coCutoff;
+	private UnionFind cfUnion;
+	private UnionFind interfUnion;
 
 	public LatticeComparisonGroup(PdbInfoList pdbInfoList) {
 		this.pdbInfoList = pdbInfoList;
@@ -35,8 +52,37 @@ public class LatticeComparisonGroup {
 		this.interfCompMatrix = new double[numInterfaceClusters][numInterfaceClusters];
 	}
 	
+	/**
+	 * Creates a group in streaming mode: comparisons are clustered as they are set and the comparison
+	 * matrices are not kept, so that {@link #getLatticeComparisonMatrix()} and {@link #getInterfaceComparisonMatrix()}
+	 * return null. The clusters are the same as the ones of the default mode but they are numbered
+	 * in order of their first member. Thread safe: elements can be set concurrently.
+	 * @param pdbInfoList
+	 * @param losCutoff the lattice overlap score cutoff of the crystal form clusters
+	 * @param coCutoff the contact overlap score cutoff of the interface clusters
+	 */
+	public LatticeComparisonGroup(PdbInfoList pdbInfoList, double losCutoff, double coCutoff) {
+		this.pdbInfoList = pdbInfoList;
+		
+		this.streaming = true;
+		this.losCutoff = losCutoff;
+		this.coCutoff = coCutoff;
+		
+		this.cfUnion = new UnionFind(pdbInfoList.size());
+		this.interfUnion = new UnionFind(pdbInfoList.getNumInterfaceClusters());
+	}
+	
+	public boolean isStreaming() {
+		return streaming;
+	}
+	
 	public void setElement(int i, int j, LatticeOverlapScore los, LatticeMatchMatrix lmm) {
 		
+		if (streaming) {
+			mergeElement(i, j, los, lmm);
+			return;
+		}
+		
 		latticeOverlapMatrix[i][j] = los;
 		
 		double[][] coMatrix = lmm.getCoMatrix();
@@ -59,8 +105,43 @@ public class LatticeComparisonGroup {
 		return interfCompMatrix;
 	}
 	
+	/**
+	 * Merges the clusters of the entries and interfaces compared above the cutoffs. 
+	 * As in the matrices clustered by SingleLinkageClusterer, only pairs (i,j) with j&gt;i are used. 
+	 */
+	private void mergeElement(int i, int j, LatticeOverlapScore los, LatticeMatchMatrix lmm) {
+		
+		// the pairs above the cutoffs are found outside of the lock
+		boolean cfMatch = j>i && los.getAvgScore()>losCutoff;
+		
+		int offsetI = pdbInfoList.getOffset(i);
+		int offsetJ = pdbInfoList.getOffset(j);
+		double[][] coMatrix = lmm.getCoMatrix();
+		List<int[]> interfMatches = new ArrayList<int[]>();
+		for (int k=0;k<coMatrix.length;k++) {
+			for (int l=0;l<coMatrix[k].length;l++){
+				if (k+offsetI<l+offsetJ && coMatrix[k][l]>coCutoff) {
+					interfMatches.add(new int[] {k+offsetI, l+offsetJ});
+				}
+			}
+		}
+		
+		synchronized (this) {
+			if (cfMatch) cfUnion.union(i, j);
+			for (int[] match:interfMatches) {
+				interfUnion.union(match[0], match[1]);
+			}
+		}
+	}
+	
 	public Collection<GlobalPdbInfoCluster> getCFClusters(double losCutoff) {
 		
+		if (streaming) {
+			checkCutoff(losCutoff, this.losCutoff);
+			synchronized (this) {
+				return toCFClusters(cfUnion.getClusters());
+			}
+		}
 		
 		// first we convert the latticeOverlapMatrix into a double matrix
 		double[][] matrix = new double[pdbInfoList.size()][pdbInfoList.size()];
@@ -75,6 +156,11 @@ public class LatticeComparisonGroup {
 		//cl.setDebug();
 		Map<Integer,Set<Integer>> cls = cl.getClusters(losCutoff);
 		
+		return toCFClusters(cls);
+	}
+	
+	private Collection<GlobalPdbInfoCluster> toCFClusters(Map<Integer,Set<Integer>> cls) {
+		
 		// return the unique list sorted by ids (thanks to equals, hashCode and compareTo)
 		Set<GlobalPdbInfoCluster> set = new TreeSet<GlobalPdbInfoCluster>();
 		
@@ -94,11 +180,22 @@ public class LatticeComparisonGroup {
 	
 	public Collection<GlobalInterfaceCluster> getInterfClusters(double coCutoff) {
 		
+		if (streaming) {
+			checkCutoff(coCutoff, this.coCutoff);
+			synchronized (this) {
+				return toInterfClusters(interfUnion.getClusters());
+			}
+		}
+		
 		// note that the clusterer alters the matrix, keep that in mind if we wanted to use the matrix down the line
 		SingleLinkageClusterer cl = new SingleLinkageClusterer(interfCompMatrix, true);
 		
 		Map<Integer, Set<Integer>> cls = cl.getClusters(coCutoff);
 		
+		return toInterfClusters(cls);
+	}
+	
+	private Collection<GlobalInterfaceCluster> toInterfClusters(Map<Integer,Set<Integer>> cls) {
 		
 		// return the unique list sorted by ids (thanks to equals, hashCode and compareTo)
 		Set<GlobalInterfaceCluster> set = new TreeSet<GlobalInterfaceCluster>();
@@ -117,4 +214,74 @@ public class LatticeComparisonGroup {
 		return set;
 	}
 		
+	private static void checkCutoff(double cutoff, double streamingCutoff) {
+		if (cutoff!=streamingCutoff) {
+			throw new IllegalArgumentException("Clusters were streamed at cutoff "+streamingCutoff+", they can't be calculated at cutoff "+cutoff);
+		}
+	}
+	
+	/**
+	 * Disjoint sets of the indices 0 to n-1, with path halving and union by size
+	 */
+	private static class UnionFind {
+		
+		private final int[] parent;
+		private final int[] size;
+		
+		public UnionFind(int n) {
+			parent = new int[n];
+			size = new int[n];
+			for (int i=0;i<n;i++) {
+				parent[i] = i;
+				size[i] = 1;
+			}
+		}
+		
+		public int find(int i) {
+			while (parent[i]!=i) {
+				parent[i] = parent[parent[i]];
+				i = parent[i];
+			}
+			return i;
+		}
+		
+		public void union(int i, int j) {
+			int rootI = find(i);
+			int rootJ = find(j);
+			if (rootI==rootJ) return;
+			if (size[rootI]<size[rootJ]) {
+				int tmp = rootI;
+				rootI = rootJ;
+				rootJ = tmp;
+			}
+			parent[rootJ] = rootI;
+			size[rootI] += size[rootJ];
+		}
+		
+		/**
+		 * Returns the sets, including singletons, with ids starting at 1 in order of their smallest member 
+		 * @return
+		 */
+		public Map<Integer,Set<Integer>> getClusters() {
+			Map<Integer,Set<Integer>> byRoot = new LinkedHashMap<Integer,Set<Integer>>();
+			for (int i=0;i<parent.length;i++) {
+				int root = find(i);
+				Set<Integer> members = byRoot.get(root);
+				if (members==null) {
+					members = new TreeSet<Integer>();
+					byRoot.put(root, members);
+				}
+				members.add(i);
+			}
+			
+			Map<Integer,Set<Integer>> clusters = new TreeMap<Integer,Set<Integer>>();
+			int clusterId = 1;
+			for (Set<Integer> members:byRoot.values()) {
+				clusters.put(clusterId, members);
+				clusterId++;
+			}
+			return clusters;
+		}
+	}
+		
 }
@@ -2,11 +2,8 @@ package eppic.db;
 
 import static eppic.db.Interface.*;
 
-import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.Arrays;
 import java.util.List;
-import java.util.SortedSet;
-import java.util.TreeSet;
 
 import org.biojava.nbio.core.alignment.template.AlignedSequence;
 import org.biojava.nbio.core.alignment.template.Profile;
@@ -24,7 +21,8 @@ public class MultipleInterfaceComparator {
 
 	private List<DirectedInterface> interfaces;
 	private Profile<ProteinSequence, AminoAcidCompound> alignment;
-	private List<List<Integer>> contactIndices;
+	// for each interface, the sorted alignment indices of its contacting residues, without duplicates
+	private int[][] contactIndices;
 
 	/**
 	 * 
@@ -39,11 +37,11 @@ public class MultipleInterfaceComparator {
 		this.interfaces = interfaces;
 		this.alignment = alignment;
 
-		this.contactIndices = new ArrayList<>(interfaces.size());
+		this.contactIndices = new int[interfaces.size()][];
 		for(int i=0;i<interfaces.size();i++) {
 			AlignedSequence<ProteinSequence, AminoAcidCompound> seq = alignment.getAlignedSequence(i+1);
-			List<ContactDB> icontacts = contacts.get(i);
-			SortedSet<Integer> indices = new TreeSet<>();
+			int[] indices = new int[contacts.get(i).size()];
+			int size = 0;
 			
 			int dir = interfaces.get(i).getDirection();
 			for(ContactDB contact : contacts.get(i)) {
@@ -57,9 +55,9 @@ public class MultipleInterfaceComparator {
 					continue; //ligand
 				}
 				int alignIndex = seq.getAlignmentIndexAt(seqIndex);
-				indices.add(alignIndex);
+				indices[size++] = alignIndex;
 			}
-			this.contactIndices.add(new ArrayList<>(indices));
+			this.contactIndices[i] = sortUnique(indices, size);
 		}
 	}
 	/**
@@ -72,11 +70,11 @@ public class MultipleInterfaceComparator {
 	 * @return
 	 */
 	public double getOverlap(int i, int j) {
-		List<Integer> indicesI = contactIndices.get(i);
-		List<Integer> indicesJ = contactIndices.get(j);
+		int[] indicesI = contactIndices[i];
+		int[] indicesJ = contactIndices[j];
 
 		int common = getIntersectionSize(indicesI,indicesJ);
-		return 2.*common / ( indicesI.size()+indicesJ.size() );
+		return 2.*common / ( indicesI.length+indicesJ.length );
 	}
 	
 	/**
@@ -90,56 +88,56 @@ public class MultipleInterfaceComparator {
 	 * @return
 	 */
 	public double getJaccard(int i, int j) {
-		List<Integer> indicesI = contactIndices.get(i);
-		List<Integer> indicesJ = contactIndices.get(j);
+		int[] indicesI = contactIndices[i];
+		int[] indicesJ = contactIndices[j];
 
 		int common = getIntersectionSize(indicesI,indicesJ);
-		return (double)common / ( indicesI.size()+indicesJ.size() - common );
+		return (double)common / ( indicesI.length+indicesJ.length - common );
 
 	}
 	/**
-	 * Computes the size of the set intersection between two sorted lists
-	 * @param a sorted list
-	 * @param b sorted list
-	 * @return number of elements in both lists
+	 * Computes the size of the set intersection between two sorted arrays
+	 * @param a sorted array without duplicates
+	 * @param b sorted array without duplicates
+	 * @return number of elements in both arrays
 	 */
-	private static <T extends Comparable<T>> int getIntersectionSize(List<T> a, List<T> b) {
-		//Note these are sorted
-
-		if(a.isEmpty() || b.isEmpty())
-			return 0;
-
+	private static int getIntersectionSize(int[] a, int[] b) {
 		int common = 0;
-		
-		Iterator<T> itA = a.iterator();
-		Iterator<T> itB = b.iterator();
+		int i = 0;
+		int j = 0;
 
-		
-		// Run through both lists, counting matches
-		T valA = itA.next();
-		T valB = itB.next();
-		while(true) {
-			int comp = valA.compareTo(valB);
-			if(comp == 0) {
+		// Run through both arrays, counting matches and moving forward the smaller value
+		while(i < a.length && j < b.length) {
+			if(a[i] == b[j]) {
 				common++;
-				if( !itA.hasNext() || !itB.hasNext())
-					break;
-				valA = itA.next();
-				valB = itB.next();
-			} else if(comp < 0) {
-				// move forward the smaller value
-				if(!itA.hasNext())
-					break;
-				valA = itA.next();
+				i++;
+				j++;
+			} else if(a[i] < b[j]) {
+				i++;
 			} else {
-				if(!itB.hasNext())
-					break;
-				valB = itB.next();
+				j++;
 			}
 		}
 		return common;
 	}
 	
+	/**
+	 * Sorts the first size values of the array and returns them without duplicates
+	 * @param values
+	 * @param size
+	 * @return
+	 */
+	private static int[] sortUnique(int[] values, int size) {
+		Arrays.sort(values, 0, size);
+		int unique = 0;
+		for(int i=0;i<size;i++) {
+			if(unique == 0 || values[i] != values[unique-1]) {
+				values[unique++] = values[i];
+			}
+		}
+		return Arrays.copyOf(values, unique);
+	}
+	
 	public int size() {
 		return interfaces.size();
 	}
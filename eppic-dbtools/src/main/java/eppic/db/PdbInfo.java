@@ -5,12 +5,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
-import org.biojava.nbio.alignment.NeedlemanWunsch;
-import org.biojava.nbio.alignment.SimpleGapPenalty;
-import org.biojava.nbio.alignment.template.GapPenalty;
-import org.biojava.nbio.core.alignment.matrices.SubstitutionMatrixHelper;
 import org.biojava.nbio.core.alignment.template.SequencePair;
-import org.biojava.nbio.core.alignment.template.SubstitutionMatrix;
 import org.biojava.nbio.core.exceptions.CompoundNotFoundException;
 import org.biojava.nbio.core.sequence.ProteinSequence;
 import org.biojava.nbio.core.sequence.compound.AminoAcidCompound;
@@ -18,6 +13,7 @@ import org.biojava.nbio.structure.contact.Pair;
 
 import eppic.model.ChainClusterDB;
 import eppic.model.InterfaceClusterDB;
+import eppic.model.InterfaceDB;
 import eppic.model.PdbInfoDB;
 
 /**
@@ -35,6 +31,11 @@ public class PdbInfo {
 	
 	private HashMap<String,ChainCluster> chainIdLookup;
 	
+	// the interface clusters compared in lattice comparisons, kept so that the contact sets of their
+	// interfaces are built once for all comparisons of this entry, see loadComparisonData
+	private List<InterfaceCluster> comparisonInterfClusters;
+	private double comparisonMinArea;
+	
 	public PdbInfo(PdbInfoDB pdbInfo) {
 		this.pdbInfo = pdbInfo;
 		this.chainIdLookup = getChainIdLookup();
@@ -87,12 +88,68 @@ public class PdbInfo {
 		return list;		
 	}
 	
+	/**
+	 * Reads all data of this entry used in lattice comparisons: the sequence clusters of its chain clusters
+	 * and the contacts of its interfaces above the given area.
+	 * Those are LAZY fetched from the database, which is not thread safe: this must be called from a single
+	 * thread before comparing this entry from several threads.
+	 * The interface clusters above the given area and the contact sets of their representatives are also 
+	 * built here and kept for all subsequent comparisons with the same minimum area.
+	 * @param minArea
+	 */
+	public void loadComparisonData(double minArea) {
+		for (ChainClusterDB cc:pdbInfo.getChainClusters()) {
+			if (cc.getSeqCluster()!=null) cc.getSeqCluster().getC100();
+		}
+		for (InterfaceClusterDB ic:pdbInfo.getInterfaceClusters()) {
+			if (ic.getAvgArea()<=minArea) continue;
+			for (InterfaceDB interf:ic.getInterfaces()) {
+				interf.getContacts().size();
+			}
+		}
+		
+		List<InterfaceCluster> interfClusters = getInterfaceClustersAboveArea(minArea);
+		for (InterfaceCluster ic:interfClusters) {
+			// the contact sets are built lazily, which is not thread safe either
+			ic.getRepresentative().getContactSet();
+		}
+		comparisonMinArea = minArea;
+		comparisonInterfClusters = interfClusters;
+	}
+	
+	/**
+	 * Returns the interface clusters built by {@link #loadComparisonData(double)} if it was called with the 
+	 * same minimum area, or new ones otherwise.
+	 * @param minArea
+	 * @return
+	 */
+	private List<InterfaceCluster> getComparisonInterfaceClusters(double minArea) {
+		if (comparisonInterfClusters!=null && comparisonMinArea==minArea) {
+			return comparisonInterfClusters;
+		}
+		return getInterfaceClustersAboveArea(minArea);
+	}
+
 	public LatticeMatchMatrix calcLatticeOverlapMatrix(PdbInfo other, SeqClusterLevel seqClusterLevel, double minArea, boolean debug) 
 			 {
+		return calcLatticeOverlapMatrix(other, seqClusterLevel, minArea, null, debug);
+	}
+	
+	/**
+	 * Compares the lattices of this and other entries
+	 * @param other
+	 * @param seqClusterLevel
+	 * @param minArea
+	 * @param alignmentCache the cache of the alignments of chain sequences, if null all needed chains are aligned
+	 * @param debug
+	 * @return
+	 */
+	public LatticeMatchMatrix calcLatticeOverlapMatrix(PdbInfo other, SeqClusterLevel seqClusterLevel, double minArea, AlignmentCache alignmentCache, boolean debug) 
+			 {
 	
 		// Maps from a pair of chain Ids to their alignment
 		// Only includes chains from the same sequence cluster
-		Map<Pair<String>,SequencePair<ProteinSequence,AminoAcidCompound>> map = getAlignmentsPool(other, seqClusterLevel);
+		Map<Pair<String>,SequencePair<ProteinSequence,AminoAcidCompound>> map = getAlignmentsPool(other, seqClusterLevel, alignmentCache);
 		
 		if (debug) {
 			for (Pair<String> pair:map.keySet()) {
@@ -106,8 +163,10 @@ public class PdbInfo {
 	
 		double[][] matrix = new double[interfCount1][interfCount2];
 
-		for (InterfaceCluster thisInterfCluster : this.getInterfaceClustersAboveArea(minArea)) {
-			for (InterfaceCluster otherInterfCluster : other.getInterfaceClustersAboveArea(minArea)) {
+		List<InterfaceCluster> otherInterfClusters = other.getComparisonInterfaceClusters(minArea);
+
+		for (InterfaceCluster thisInterfCluster : this.getComparisonInterfaceClusters(minArea)) {
+			for (InterfaceCluster otherInterfCluster : otherInterfClusters) {
 								
 				double co = thisInterfCluster.getRepresentative().calcInterfaceOverlap(otherInterfCluster.getRepresentative(), map, seqClusterLevel, debug);
 				matrix[thisInterfCluster.getInterfaceClusterDB().getClusterId()-1][otherInterfCluster.getInterfaceClusterDB().getClusterId()-1] = co;
@@ -127,9 +186,10 @@ public class PdbInfo {
 	 * are ignored). Returned is a map from the two chainIds to the aligned sequences.
 	 * @param other Structure to compare to
 	 * @param seqClusterLevel Minimum sequence identity to compare chains
+	 * @param alignmentCache Cache of alignments, if null all pairs of chains are aligned
 	 * @return A map from the pair of chains to the alignment
 	 */
-	private Map<Pair<String>,SequencePair<ProteinSequence,AminoAcidCompound>> getAlignmentsPool(PdbInfo other, SeqClusterLevel seqClusterLevel) 
+	private Map<Pair<String>,SequencePair<ProteinSequence,AminoAcidCompound>> getAlignmentsPool(PdbInfo other, SeqClusterLevel seqClusterLevel, AlignmentCache alignmentCache) 
 		 {
 		
 		Map<Pair<String>,SequencePair<ProteinSequence,AminoAcidCompound>> map = new HashMap<Pair<String>,SequencePair<ProteinSequence,AminoAcidCompound>>();
@@ -147,15 +207,13 @@ public class PdbInfo {
 					String otherSeq = otherChainCluster.getChainCluster().getPdbAlignedSeq().replace("-", "");
 					
 					
-					SubstitutionMatrix<AminoAcidCompound> matrix = SubstitutionMatrixHelper.getBlosum50();
-					GapPenalty penalty = new SimpleGapPenalty((short)8,(short)1);
-
-					// before move to Biojava, we had as tags of the sequences:  "first" and "second"
-					ProteinSequence s1 = null; 
-					ProteinSequence s2 = null; 
+					SequencePair<ProteinSequence,AminoAcidCompound> aln = null; 
 					try {
-						s1 = new ProteinSequence(thisSeq);
-						s2 = new ProteinSequence(otherSeq);
+						if (alignmentCache!=null) {
+							aln = alignmentCache.getAlignment(thisSeq, otherSeq);
+						} else {
+							aln = AlignmentCache.align(thisSeq, otherSeq);
+						}
 					} catch (CompoundNotFoundException e) {
 						System.err.println("Non-protein characters in one of the sequences! "+e.getMessage());
 						System.err.println("Sequences are: ");
@@ -169,11 +227,6 @@ public class PdbInfo {
 						System.exit(1);
 					}
 
-					NeedlemanWunsch<ProteinSequence,AminoAcidCompound> nw = 
-							new NeedlemanWunsch<ProteinSequence,AminoAcidCompound>(s1,s2, penalty, matrix);
-					
-					SequencePair<ProteinSequence,AminoAcidCompound> aln = nw.getPair(); 
-
 					Pair<String> pair = new Pair<String>(thisChainCluster.getChainCluster().getRepChain(),
 														 otherChainCluster.getChainCluster().getRepChain());
 					map.put(pair, aln);
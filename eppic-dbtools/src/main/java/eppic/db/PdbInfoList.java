@@ -3,6 +3,10 @@ package eppic.db;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
 
 import eppic.model.PdbInfoDB;
 
@@ -16,6 +20,12 @@ import eppic.model.PdbInfoDB;
  */
 public class PdbInfoList {
 	
+	/**
+	 * Blocks of rows of the lattice comparison matrix with fewer comparisons are not split further
+	 * when comparing in parallel
+	 */
+	private static final int MIN_COMPARISONS_PER_BLOCK = 16;
+	
 	private List<PdbInfo> pdbList;
 	private boolean debug;
 	
@@ -25,6 +35,11 @@ public class PdbInfoList {
 	 */
 	private double minArea;
 
+	private AlignmentCache alignmentCache;
+	
+	private String progressLabel;
+	private long progressInterval;
+
 	private HashMap<Integer, InterfaceCluster> interfaceLookup;
 	private HashMap<Integer, Integer> offsets;
 	
@@ -39,23 +54,203 @@ public class PdbInfoList {
 		this.minArea = minArea;
 	}
 	
+	/**
+	 * Sets the cache of chain alignments used in lattice comparisons, it can be shared by several 
+	 * lists. If not set (default) all needed chains are aligned for every comparison.
+	 * @param alignmentCache
+	 */
+	public void setAlignmentCache(AlignmentCache alignmentCache) {
+		this.alignmentCache = alignmentCache;
+	}
+	
+	/**
+	 * Sets the reporting of the progress of lattice comparisons: every given interval the number 
+	 * of comparisons done and the throughput are printed to stderr, prefixed by the given label.
+	 * @param label
+	 * @param interval the interval in milliseconds, 0 to disable the reporting (default)
+	 */
+	public void setProgressReporting(String label, long interval) {
+		this.progressLabel = label;
+		this.progressInterval = interval;
+	}
+	
+	/**
+	 * Reads from the database all data used in lattice comparisons, see {@link PdbInfo#loadComparisonData(double)}.
+	 * Must be called from a single thread, after setting the minimum area and before comparing lattices 
+	 * from another thread (it is otherwise called by the comparison itself). 
+	 */
+	public void loadComparisonData() {
+		for (PdbInfo pdb:pdbList) {
+			pdb.loadComparisonData(minArea);
+		}
+	}
+	
+	/**
+	 * Compares the lattices of all pairs of entries in the calling thread.
+	 * @param seqClusterLevel
+	 * @param coCutoff
+	 * @return
+	 * @see #calcLatticeOverlapMatrix(SeqClusterLevel, double, ForkJoinPool)
+	 */
 	public LatticeComparisonGroup calcLatticeOverlapMatrix(SeqClusterLevel seqClusterLevel, double coCutoff) { 
+		return calcLatticeOverlapMatrix(seqClusterLevel, coCutoff, null);
+	}
+	
+	/**
+	 * Compares the lattices of all pairs of entries. The lattice overlap is symmetric so that only
+	 * the upper triangle of the matrix (i.e. j&gt;=i) is calculated, including the diagonal in order
+	 * to cluster interfaces within a PDB.
+	 * If a pool is given, the rows of the matrix are split in blocks compared in parallel by it, the 
+	 * results being the same as comparing in the calling thread.
+	 * @param seqClusterLevel
+	 * @param coCutoff
+	 * @param pool the pool to compare in parallel, if null all comparisons are done in the calling thread
+	 * @return
+	 */
+	public LatticeComparisonGroup calcLatticeOverlapMatrix(SeqClusterLevel seqClusterLevel, double coCutoff, ForkJoinPool pool) { 
+		
+		loadComparisonData();
 		
 		LatticeComparisonGroup cfCompare = new LatticeComparisonGroup(this);
 		
-		for (int i=0;i<pdbList.size();i++) {
-			for (int j=0;j<pdbList.size();j++) {
-				if (j<i) continue; // note we also do j==i in order to cluster interfaces within a PDB
+		compareLattices(cfCompare, seqClusterLevel, coCutoff, pool);
+		
+		return cfCompare;
+	}
+	
+	/**
+	 * Compares the lattices of all pairs of entries as {@link #calcLatticeOverlapMatrix(SeqClusterLevel, double, ForkJoinPool)},
+	 * clustering the comparisons as they are done instead of keeping the comparison matrices, see 
+	 * {@link LatticeComparisonGroup#LatticeComparisonGroup(PdbInfoList, double, double)}. 
+	 * The clusters are then obtained with the given cutoffs only.
+	 * @param seqClusterLevel
+	 * @param coCutoff the contact overlap score cutoff, for lattice overlap scores and interface clusters
+	 * @param losCutoff the lattice overlap score cutoff for crystal form clusters
+	 * @param pool the pool to compare in parallel, if null all comparisons are done in the calling thread
+	 * @return
+	 */
+	public LatticeComparisonGroup calcLatticeClusters(SeqClusterLevel seqClusterLevel, double coCutoff, double losCutoff, ForkJoinPool pool) {
+		
+		loadComparisonData();
+		
+		LatticeComparisonGroup cfCompare = new LatticeComparisonGroup(this, losCutoff, coCutoff);
+		
+		compareLattices(cfCompare, seqClusterLevel, coCutoff, pool);
+		
+		return cfCompare;
+	}
+	
+	private void compareLattices(LatticeComparisonGroup cfCompare, SeqClusterLevel seqClusterLevel, double coCutoff, ForkJoinPool pool) {
+		
+		RowBlockComparison task = new RowBlockComparison(cfCompare, seqClusterLevel, coCutoff, 0, pdbList.size(), new ComparisonProgress());
+		
+		if (pool==null) {
+			task.compareRows();
+		} else if (ForkJoinTask.getPool()==pool) {
+			// already running in the pool, e.g. when comparing several lists concurrently
+			task.invoke();
+		} else {
+			pool.invoke(task);
+		}
+	}
+	
+	/**
+	 * Returns the number of lattice comparisons done by {@link #calcLatticeOverlapMatrix(SeqClusterLevel, double)}
+	 * @return
+	 */
+	public long getNumComparisons() {
+		long n = pdbList.size();
+		return n*(n+1)/2;
+	}
+	
+	/**
+	 * Compares the lattices of a block of consecutive rows of the lattice comparison matrix. 
+	 * Blocks are split in halves of about the same number of comparisons down to single rows. 
+	 * Each comparison sets a different element of the LatticeComparisonGroup, so no synchronization is needed
+	 * (in streaming mode, the LatticeComparisonGroup synchronizes itself).
+	 */
+	private class RowBlockComparison extends RecursiveAction {
+		
+		private static final long serialVersionUID = 1L;
+		
+		private final LatticeComparisonGroup cfCompare;
+		private final SeqClusterLevel seqClusterLevel;
+		private final double coCutoff;
+		private final int firstRow;
+		private final int lastRow;
+		private final ComparisonProgress progress;
+		
+		public RowBlockComparison(LatticeComparisonGroup cfCompare, SeqClusterLevel seqClusterLevel, double coCutoff, 
+				int firstRow, int lastRow, ComparisonProgress progress) {
+			this.cfCompare = cfCompare;
+			this.seqClusterLevel = seqClusterLevel;
+			this.coCutoff = coCutoff;
+			this.firstRow = firstRow;
+			this.lastRow = lastRow;
+			this.progress = progress;
+		}
+		
+		@Override
+		protected void compute() {
+			if (lastRow-firstRow<2 || countComparisons(firstRow, lastRow)<=MIN_COMPARISONS_PER_BLOCK) {
+				compareRows();
+				return;
+			}
+			
+			// row i has size()-i comparisons: the first half of the rows is the most expensive
+			long half = countComparisons(firstRow, lastRow)/2;
+			int middleRow = firstRow+1;
+			while (middleRow<lastRow-1 && countComparisons(firstRow, middleRow)<half) {
+				middleRow++;
+			}
+			
+			invokeAll(new RowBlockComparison(cfCompare, seqClusterLevel, coCutoff, firstRow, middleRow, progress),
+					  new RowBlockComparison(cfCompare, seqClusterLevel, coCutoff, middleRow, lastRow, progress));
+		}
+		
+		private void compareRows() {
+			for (int i=firstRow;i<lastRow;i++) {
 				PdbInfo ipdb = pdbList.get(i);
-				PdbInfo jpdb = pdbList.get(j);
-								
-				LatticeMatchMatrix lmm = ipdb.calcLatticeOverlapMatrix(jpdb, seqClusterLevel, minArea, debug);
-				cfCompare.setElement(i, j, lmm.getLatticeOverlapScore(coCutoff), lmm);
-				 
+				for (int j=i;j<pdbList.size();j++) { // note we also do j==i in order to cluster interfaces within a PDB
+					PdbInfo jpdb = pdbList.get(j);
+					
+					LatticeMatchMatrix lmm = ipdb.calcLatticeOverlapMatrix(jpdb, seqClusterLevel, minArea, alignmentCache, debug);
+					cfCompare.setElement(i, j, lmm.getLatticeOverlapScore(coCutoff), lmm);
+					
+					progress.comparisonDone();
+				}
+			}
+		}
+		
+		private long countComparisons(int from, int to) {
+			long n = pdbList.size();
+			// sum of (n-i) for i in [from, to)
+			return (to-from)*(2*n-from-to+1)/2;
+		}
+	}
+	
+	/**
+	 * Counts the comparisons done, reporting the progress every progressInterval milliseconds
+	 */
+	private class ComparisonProgress {
+		
+		private final long start = System.currentTimeMillis();
+		private final long total = getNumComparisons();
+		private final AtomicLong done = new AtomicLong();
+		private final AtomicLong lastReport = new AtomicLong(start);
+		
+		public void comparisonDone() {
+			long count = done.incrementAndGet();
+			
+			if (progressInterval<=0) return;
+			
+			long now = System.currentTimeMillis();
+			long last = lastReport.get();
+			if (now-last>=progressInterval && lastReport.compareAndSet(last, now)) {
+				System.err.printf("%s: done %d of %d lattice comparisons (%.1f%%), %.1f comparisons/s\n", 
+						progressLabel, count, total, 100.0*count/total, 1000.0*count/(now-start));
 			}
-
 		}
-		return cfCompare;
 	}
 	
 	public int size() {
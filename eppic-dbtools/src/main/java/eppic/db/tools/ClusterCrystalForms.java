@@ -2,13 +2,18 @@ package eppic.db.tools;
 
 import java.io.File;
 import java.io.PrintWriter;
+import java.util.ArrayDeque;
 import java.util.Collection;
+import java.util.Deque;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import eppic.db.AlignmentCache;
 import eppic.db.InterfaceCluster;
 import eppic.db.GlobalInterfaceCluster;
 import eppic.db.LatticeComparisonGroup;
@@ -27,11 +32,21 @@ public class ClusterCrystalForms {
 	private static final double DEFAULT_MIN_AREA = 10;
 	private static final double DEFAULT_CO_CUTOFF = 0.2;
 	private static final double DEFAULT_LOS_CLUSTER_CUTOFF = 0.8;
+	private static final int DEFAULT_NUM_THREADS = 1;
+	
+	/**
+	 * Interval in milliseconds of the progress reports of the comparisons of a sequence cluster 
+	 */
+	private static final long PROGRESS_INTERVAL = 60*1000;
 	
 	private static int crystalFormId = 1;
 	private static int interfClusterGlobalId = 1;
 
 	private static boolean debug = false;
+	private static boolean streaming = false;
+	
+	// the alignments of chains are shared by the comparisons of all sequence clusters
+	private static AlignmentCache alignmentCache = new AlignmentCache(AlignmentCache.DEFAULT_MAX_SIZE);
 
 	public static void main(String[] args) throws Exception {
 
@@ -46,6 +61,11 @@ public class ClusterCrystalForms {
 				" [-A]        : ignore -i and calculate crystal-form clusters for all sequence clusters in DB\n"+
 				" [-f <file>] : file to write the crystal form cluster identifiers (only used in -A)\n"+
 				" [-F <file>] : file to write the global interface cluster identifiers (only used in -A)\n"+
+				" [-t <int>]  : number of threads to compare lattices (default "+DEFAULT_NUM_THREADS+"). With -A, also\n" +
+				"               the number of sequence clusters compared concurrently. Output is in the same order\n" +
+				"               as with 1 thread\n" +
+				" [-L]        : low memory mode: cluster the comparisons as they are done without keeping the\n" +
+				"               comparison matrices. Same clusters, but numbered by their first member. Not with -d\n" +
 				" [-d]        : print some debug output (full lattice comparison and interfaces comparison matrices)\n"+
 				" [-g <file>] : a configuration file containing the database access parameters, if not provided\n" +
 				"               the config will be read from file "+DBHandler.DEFAULT_CONFIG_FILE_NAME+" in home dir\n";
@@ -62,9 +82,10 @@ public class ClusterCrystalForms {
 		File interfClustersFile = null;
 		String dbName = null;
 		File configFile = null;
+		int numThreads = DEFAULT_NUM_THREADS;
 		
 		
-		Getopt g = new Getopt("ClusterCrystalForms", args, "D:i:c:a:l:s:Af:F:dg:h?");
+		Getopt g = new Getopt("ClusterCrystalForms", args, "D:i:c:a:l:s:Af:F:t:Ldg:h?");
 		int c;
 		while ((c = g.getopt()) != -1) {
 			switch(c){
@@ -95,6 +116,12 @@ public class ClusterCrystalForms {
 			case 'F':
 				interfClustersFile = new File(g.getOptarg());
 				break;
+			case 't':
+				numThreads = Integer.parseInt(g.getOptarg());
+				break;
+			case 'L':
+				streaming = true;
+				break;
 			case 'd':
 				debug = true;
 				break;
@@ -122,6 +149,16 @@ public class ClusterCrystalForms {
 			System.exit(1);
 		}
 		
+		if (streaming && debug) {
+			System.err.println("Debug output (-d) needs the comparison matrices, it can't be used with -L");
+			System.exit(1);
+		}
+		
+		if (numThreads<1) {
+			System.err.println("The number of threads must be at least 1");
+			System.exit(1);
+		}
+		
 		if (calcAllClusters == true && (cfClustersFile == null || interfClustersFile == null)) {
 			System.err.println("If -A specified, then -f and -F needed");
 			System.exit(1);
@@ -150,6 +187,12 @@ public class ClusterCrystalForms {
 			icPw.println("# interfaceItem_uid\tpdb\tinterfaceId\tC"+seqClusterLevel.getLevel()+"\tcfCluster\tglobalInterfClusterId");
 		}
 		
+		// with 1 thread everything runs in the main thread as before
+		ForkJoinPool pool = null;
+		if (numThreads>1) {
+			pool = new ForkJoinPool(numThreads);
+		}
+		
 		if (!calcAllClusters) {
 			Matcher match = Pattern.compile("^(....)\\.?(.*)$").matcher(pdbString);
 			if( !match.matches() ) {
@@ -179,7 +222,9 @@ public class ClusterCrystalForms {
 				System.err.println("Make sure that the PDB code is in the database and that the representative chain id is valid");
 			} else {
 			
-				calcCluster(seqClusterId, dbh, seqClusterLevel, coCutoff, minArea, losClusterCutoff, null, null);
+				ClusterComparison comparison = loadCluster(seqClusterId, dbh, seqClusterLevel, minArea);
+				compareCluster(comparison, pool, seqClusterLevel, coCutoff, losClusterCutoff);
+				printCluster(comparison, seqClusterLevel, null, null);
 			}
 			
 		} else {
@@ -187,9 +232,47 @@ public class ClusterCrystalForms {
 
 			System.out.println("Total number of clusters (at "+seqClusterLevel.getLevel()+"% seq id): "+clusterIds.size());
 
+			long start = System.currentTimeMillis();
+			long numComparisons = 0;
+			
+			// sequence clusters are read in the main thread and compared concurrently in the pool, while their 
+			// results are printed in the main thread in the original order. The number of clusters read 
+			// and not yet printed is limited to the number of threads to bound memory usage
+			Deque<Future<ClusterComparison>> pending = new ArrayDeque<Future<ClusterComparison>>();
+			
 			for (int clusterId:clusterIds) {
-				calcCluster(clusterId, dbh, seqClusterLevel, coCutoff, minArea, losClusterCutoff, cfcPw, icPw);
+				ClusterComparison comparison = loadCluster(clusterId, dbh, seqClusterLevel, minArea);
+				numComparisons += comparison.pdbList.getNumComparisons();
+				
+				if (pool==null) {
+					compareCluster(comparison, null, seqClusterLevel, coCutoff, losClusterCutoff);
+					printCluster(comparison, seqClusterLevel, cfcPw, icPw);
+					continue;
+				}
+				
+				final ForkJoinPool clusterPool = pool;
+				final SeqClusterLevel level = seqClusterLevel;
+				final double co = coCutoff;
+				final double losCutoff = losClusterCutoff;
+				pending.add(pool.submit(() -> compareCluster(comparison, clusterPool, level, co, losCutoff)));
+				
+				while (pending.size()>=numThreads) {
+					printCluster(pending.poll().get(), seqClusterLevel, cfcPw, icPw);
+				}
 			}
+			while (!pending.isEmpty()) {
+				printCluster(pending.poll().get(), seqClusterLevel, cfcPw, icPw);
+			}
+			
+			long time = System.currentTimeMillis() - start;
+			System.out.println("Done "+numComparisons+" lattice comparisons of "+clusterIds.size()+" sequence clusters in "+(time/1000)+" s"+
+					" ("+String.format("%.1f", getThroughput(numComparisons, time))+" comparisons/s)");
+		}
+		
+		System.out.println(alignmentCache);
+		
+		if (pool!=null) {
+			pool.shutdown();
 		}
 		
 		if (cfClustersFile!=null) {
@@ -200,24 +283,132 @@ public class ClusterCrystalForms {
 		}
 	}
 	
-	private static void calcCluster(int seqClusterId, DBHandler dbh, SeqClusterLevel seqClusterLevel, double coCutoff, double minArea, double losClusterCutoff,
-			PrintWriter cfcPw, PrintWriter icPw) 
-			{
+	/**
+	 * The lattice comparison of all members of a sequence cluster and the resulting crystal form
+	 * and interface clusters
+	 */
+	private static class ClusterComparison {
+		
+		int seqClusterId;
+		PdbInfoList pdbList;
+		
+		long deserializationTime;
+		long comparisonTime;
+		long cfClusteringTime;
+		long interfClusteringTime;
+		
+		LatticeComparisonGroup cfMatrix;
+		// the interface comparison matrix is altered by the interface clustering, we keep its debug output  
+		String interfCompMatrixOutput;
+		
+		Collection<GlobalPdbInfoCluster> cfClusters;
+		Collection<GlobalInterfaceCluster> interfClusters;
+	}
+	
+	/**
+	 * Reads the members of the sequence cluster from the database. As database access is not thread safe,
+	 * this must be called from the main thread. 
+	 * @param seqClusterId
+	 * @param dbh
+	 * @param seqClusterLevel
+	 * @param minArea
+	 * @return
+	 */
+	private static ClusterComparison loadCluster(int seqClusterId, DBHandler dbh, SeqClusterLevel seqClusterLevel, double minArea) {
+		
+		ClusterComparison comparison = new ClusterComparison();
+		comparison.seqClusterId = seqClusterId;
 		
 		long start = System.currentTimeMillis();
 		List<PdbInfoDB> pdbInfoList = dbh.deserializeSeqCluster(seqClusterId, seqClusterLevel.getLevel());
-		long end = System.currentTimeMillis();		
 
-		PdbInfoList pdbList = new PdbInfoList(pdbInfoList);
-		pdbList.setMinArea(minArea);
+		comparison.pdbList = new PdbInfoList(pdbInfoList);
+		comparison.pdbList.setMinArea(minArea);
+		comparison.pdbList.setAlignmentCache(alignmentCache);
+		comparison.pdbList.setProgressReporting("Sequence cluster "+seqClusterId, PROGRESS_INTERVAL);
+		// all LAZY fetched data needs to be read here, the comparison can run in another thread
+		comparison.pdbList.loadComparisonData();
 		
-		System.out.println ("### Sequence cluster id ("+seqClusterLevel.getLevel()+"%): "+seqClusterId+" ("+pdbList.size()+" members)");
-		System.out.println("Done deserialization in "+((end - start)/1000)+" s");
+		comparison.deserializationTime = System.currentTimeMillis() - start;
+		
+		return comparison;
+	}
+	
+	/**
+	 * Compares the lattices of the members of the sequence cluster and clusters them. 
+	 * Only uses the data read by {@link #loadCluster(int, DBHandler, SeqClusterLevel, double)}, so 
+	 * that it can run concurrently with the comparison of other sequence clusters.
+	 * @param comparison
+	 * @param pool the pool to compare in parallel, or null to compare in the calling thread
+	 * @param seqClusterLevel
+	 * @param coCutoff
+	 * @param losClusterCutoff
+	 * @return
+	 */
+	private static ClusterComparison compareCluster(ClusterComparison comparison, ForkJoinPool pool, 
+			SeqClusterLevel seqClusterLevel, double coCutoff, double losClusterCutoff) {
+		
+		long start = System.currentTimeMillis();
+		if (streaming) {
+			comparison.cfMatrix = comparison.pdbList.calcLatticeClusters(seqClusterLevel, coCutoff, losClusterCutoff, pool);
+		} else {
+			comparison.cfMatrix = comparison.pdbList.calcLatticeOverlapMatrix(seqClusterLevel, coCutoff, pool);
+		}
+		comparison.comparisonTime = System.currentTimeMillis() - start;
 		
 		start = System.currentTimeMillis();
-		LatticeComparisonGroup cfMatrix = pdbList.calcLatticeOverlapMatrix(seqClusterLevel, coCutoff);
-		end = System.currentTimeMillis();
-
+		comparison.cfClusters = comparison.cfMatrix.getCFClusters(losClusterCutoff);
+		comparison.cfClusteringTime = System.currentTimeMillis() - start;
+		
+		if (debug) {
+			comparison.interfCompMatrixOutput = getInterfCompMatrixOutput(comparison.pdbList, comparison.cfMatrix);
+		}
+		
+		start = System.currentTimeMillis();
+		comparison.interfClusters = comparison.cfMatrix.getInterfClusters(coCutoff);
+		comparison.interfClusteringTime = System.currentTimeMillis() - start;
+		
+		return comparison;
+	}
+	
+	private static String getInterfCompMatrixOutput(PdbInfoList pdbList, LatticeComparisonGroup cfMatrix) {
+		StringBuilder sb = new StringBuilder();
+		sb.append(String.format("%7s",""));
+		for (int i=0;i<pdbList.getNumInterfaceClusters();i++) {
+			InterfaceCluster iInterf = pdbList.getInterfaceCluster(i);
+			sb.append(String.format("%4s:%02d\t", iInterf.getRepresentative().getInterface().getPdbCode(),iInterf.getInterfaceClusterDB().getClusterId()));
+		}
+		sb.append(System.lineSeparator());
+		for (int i=0;i<cfMatrix.getInterfaceComparisonMatrix().length;i++) {
+			InterfaceCluster iInterf = pdbList.getInterfaceCluster(i);
+			sb.append(String.format("%4s:%02d",iInterf.getRepresentative().getInterface().getPdbCode(),iInterf.getInterfaceClusterDB().getClusterId() ));
+			for (int j=0;j<cfMatrix.getInterfaceComparisonMatrix()[i].length;j++) {
+				sb.append(String.format("%7.3f\t",cfMatrix.getInterfaceComparisonMatrix()[i][j]));
+			}
+			sb.append(System.lineSeparator());
+		}
+		return sb.toString();
+	}
+	
+	/**
+	 * Prints the results of the sequence cluster and assigns the global crystal form and interface cluster
+	 * identifiers. Must be called from the main thread in the order of the sequence clusters, so that 
+	 * identifiers and output don't depend on the order in which comparisons finish.
+	 * @param comparison
+	 * @param seqClusterLevel
+	 * @param cfcPw
+	 * @param icPw
+	 */
+	private static void printCluster(ClusterComparison comparison, SeqClusterLevel seqClusterLevel, PrintWriter cfcPw, PrintWriter icPw) {
+		
+		int seqClusterId = comparison.seqClusterId;
+		PdbInfoList pdbList = comparison.pdbList;
+		LatticeComparisonGroup cfMatrix = comparison.cfMatrix;
+		Collection<GlobalPdbInfoCluster> cfClusters = comparison.cfClusters;
+		Collection<GlobalInterfaceCluster> interfClusters = comparison.interfClusters;
+		
+		System.out.println ("### Sequence cluster id ("+seqClusterLevel.getLevel()+"%): "+seqClusterId+" ("+pdbList.size()+" members)");
+		System.out.println("Done deserialization in "+(comparison.deserializationTime/1000)+" s");
 		
 		// the lattice comparison matrix
 		if (debug) {
@@ -240,16 +431,14 @@ public class ClusterCrystalForms {
 
 			System.out.println();
 		}
-		System.out.println("Done comparison in "+((end - start)/1000)+" s");
+		System.out.println("Done comparison in "+(comparison.comparisonTime/1000)+" s"+
+				" ("+String.format("%.1f", getThroughput(pdbList.getNumComparisons(), comparison.comparisonTime))+" comparisons/s)");
 
 		
 		
 		// crystal form clusters
 		System.out.println("Calculating crystal form clusters...");
-		start = System.currentTimeMillis();
-		Collection<GlobalPdbInfoCluster> cfClusters = cfMatrix.getCFClusters(losClusterCutoff);
-		end = System.currentTimeMillis();
-		System.out.println("Crystal form clusters calculated in "+((end - start)/1000)+" s");
+		System.out.println("Crystal form clusters calculated in "+(comparison.cfClusteringTime/1000)+" s");
 		System.out.println("Total number of crystal form clusters: "+cfClusters.size());
 		for (GlobalPdbInfoCluster cfCluster:cfClusters) {
 			System.out.print("Cluster "+cfCluster.getId()+": ");			
@@ -274,28 +463,12 @@ public class ClusterCrystalForms {
 		
 		// the interface comparison mega-matrix (only printed in debug mode)
 		if (debug) {
-			System.out.printf("%7s","");
-			for (int i=0;i<pdbList.getNumInterfaceClusters();i++) {
-				InterfaceCluster iInterf = pdbList.getInterfaceCluster(i);
-				System.out.printf("%4s:%02d\t", iInterf.getRepresentative().getInterface().getPdbCode(),iInterf.getInterfaceClusterDB().getClusterId());
-			}
-			System.out.println();
-			for (int i=0;i<cfMatrix.getInterfaceComparisonMatrix().length;i++) {
-				InterfaceCluster iInterf = pdbList.getInterfaceCluster(i);
-				System.out.printf("%4s:%02d",iInterf.getRepresentative().getInterface().getPdbCode(),iInterf.getInterfaceClusterDB().getClusterId() );
-				for (int j=0;j<cfMatrix.getInterfaceComparisonMatrix()[i].length;j++) {
-					System.out.printf("%7.3f\t",cfMatrix.getInterfaceComparisonMatrix()[i][j]);
-				}
-				System.out.println();
-			}
+			System.out.print(comparison.interfCompMatrixOutput);
 		}
 		
 		// interface clusters
 		System.out.println("Calculating interface clusters...");
-		start = System.currentTimeMillis();
-		Collection<GlobalInterfaceCluster> interfClusters = cfMatrix.getInterfClusters(coCutoff);
-		end = System.currentTimeMillis();
-		System.out.println("Interfaces clusters calculated in "+((end - start)/1000)+" s");
+		System.out.println("Interfaces clusters calculated in "+(comparison.interfClusteringTime/1000)+" s");
 		System.out.println("Total number of interface clusters: "+interfClusters.size());
 		for (GlobalInterfaceCluster cluster:interfClusters) {
 
@@ -338,4 +511,9 @@ public class ClusterCrystalForms {
 			if (icPw !=null ) icPw.flush();
 		}
 	}
+
+	
+	private static double getThroughput(long numComparisons, long time) {
+		return 1000.0*numComparisons/Math.max(1, time);
+	}
 }
@@ -4,9 +4,7 @@
 package eppic.db.tools;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
@@ -48,6 +46,7 @@ import eppic.model.ResidueBurialDB_;
 import eppic.model.ResidueInfoDB;
 import eppic.model.SeqClusterDB;
 import eppic.model.SeqClusterDB_;
+import eppic.modelio.ResultFileReader;
 
 /**
  * Class to perform operations on the EPPIC database, such as adding by job,
@@ -61,6 +60,11 @@ public class DBHandler {
 	public static final String DEFAULT_CONFIG_FILE_NAME = "eppic-db.properties";
 	public static final File DEFAULT_CONFIG_FILE = new File(System.getProperty("user.home"), DEFAULT_CONFIG_FILE_NAME);
 	
+	/**
+	 * The maximum number of jobIds in the IN clause of a job status query
+	 */
+	private static final int JOB_STATUS_QUERY_CHUNK = 1000;
+	
 	
 	@PersistenceUnit
 	private EntityManagerFactory emf;
@@ -72,6 +76,18 @@ public class DBHandler {
 	 * @param userConfigFile a user supplied config file, if null the default location {@value #DEFAULT_CONFIG_FILE} will be used.
 	 */
 	public DBHandler(String dbName, File userConfigFile) {
+		this(dbName, userConfigFile, null);
+	}
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param dbName the database name
+	 * @param userConfigFile a user supplied config file, if null the default location {@value #DEFAULT_CONFIG_FILE} will be used.
+	 * @param extraProperties additional JPA/hibernate properties (e.g. jdbc batching settings) overriding 
+	 * the ones from the config file, can be null
+	 */
+	public DBHandler(String dbName, File userConfigFile, Map<String, String> extraProperties) {
 		
 		File configurationFile = null;
 		
@@ -91,6 +107,8 @@ public class DBHandler {
 			
 			System.out.println("Using database "+dbName+", jdbc url is: "+properties.get("javax.persistence.jdbc.url")); 
 			
+			if (extraProperties!=null) properties.putAll(extraProperties);
+			
 		} catch (IOException e) {
 			System.err.println("Problems while reading the configuration file "+configurationFile+". Error: "+e.getMessage());
 			System.exit(1);
@@ -125,22 +143,7 @@ public class DBHandler {
 		
 		em.getTransaction().begin(); 
 		
-		String pdbCode = pdbInfo.getPdbCode();
-
-		JobDB job = new JobDB();
-		job.setJobId(pdbCode);
-		job.setEmail(null);
-		job.setInputName(pdbCode);
-		job.setIp("localhost");
-		job.setStatus(StatusOfJob.FINISHED.getName());
-		job.setSubmissionDate(new Date());
-		job.setInputType(InputType.PDBCODE.getIndex());
-		job.setSubmissionId("-1");
-
-		pdbInfo.setJob(job);
-		job.setPdbInfo(pdbInfo);
-				
-		em.persist(job);
+		em.persist(createFinishedJob(pdbInfo));
 		
 		em.getTransaction().commit();
 		em.clear(); 
@@ -154,20 +157,73 @@ public class DBHandler {
 
 		em.getTransaction().begin(); 
 		
+		em.persist(createErrorJob(pdbCode));
+		
+		em.getTransaction().commit();
+		em.clear();   
+		
+	}
+	
+	/**
+	 * Persists all given jobs (with their cascading PdbInfo trees) in a single transaction.
+	 * If anything fails the transaction is rolled back and the exception rethrown, 
+	 * nothing is persisted in that case.
+	 * @param em
+	 * @param jobs jobs as created by {@link #createFinishedJob(PdbInfoDB)} or {@link #createErrorJob(String)}
+	 */
+	public void persistJobs(EntityManager em, List<JobDB> jobs) {
+		
+		em.getTransaction().begin();
+		try {
+			for (JobDB job : jobs) {
+				em.persist(job);
+			}
+			em.getTransaction().commit();
+		} catch (RuntimeException e) {
+			if (em.getTransaction().isActive()) {
+				em.getTransaction().rollback();
+			}
+			throw e;
+		} finally {
+			// the persistence context would otherwise keep all uploaded entities in memory
+			em.clear();
+		}
+	}
+	
+	/**
+	 * Creates a place-holder job with finished status for the given PdbInfoDB, linking both.
+	 * @param pdbInfo
+	 * @return
+	 */
+	public static JobDB createFinishedJob(PdbInfoDB pdbInfo) {
+		JobDB job = createPdbCodeJob(pdbInfo.getPdbCode(), StatusOfJob.FINISHED);
+
+		pdbInfo.setJob(job);
+		job.setPdbInfo(pdbInfo);
+		
+		return job;
+	}
+	
+	/**
+	 * Creates a job with error status for the given pdbCode.
+	 * @param pdbCode
+	 * @return
+	 */
+	public static JobDB createErrorJob(String pdbCode) {
+		return createPdbCodeJob(pdbCode, StatusOfJob.ERROR);
+	}
+	
+	private static JobDB createPdbCodeJob(String pdbCode, StatusOfJob status) {
 		JobDB job = new JobDB();
 		job.setJobId(pdbCode);
 		job.setEmail(null);
 		job.setInputName(pdbCode);
 		job.setIp("localhost");
-		job.setStatus(StatusOfJob.ERROR.getName());
+		job.setStatus(status.getName());
 		job.setSubmissionDate(new Date());
 		job.setInputType(InputType.PDBCODE.getIndex());
 		job.setSubmissionId("-1");
-		em.persist(job);
-		
-		em.getTransaction().commit();
-		em.clear();   
-		
+		return job;
 	}
 	
 	/**
@@ -259,6 +315,41 @@ public class DBHandler {
 		return 0;		
 	}
 	
+	/**
+	 * Gets the status of all jobs with the given jobIds present in the DataBase, with one query
+	 * per {@value #JOB_STATUS_QUERY_CHUNK} jobIds instead of one query per job.
+	 * Like {@link #checkJobExist(String)} this doesn't guarantee that the entries are complete.
+	 * @param jobIds
+	 * @return a map of jobIds to job status, jobIds not present in database are not in the map
+	 */
+	public Map<String, String> getJobStatuses(Collection<String> jobIds) {
+		EntityManager em = this.getEntityManager();
+		
+		Map<String, String> statuses = new HashMap<>();
+		
+		List<String> allJobIds = new ArrayList<>(jobIds);
+		
+		for (int i=0; i<allJobIds.size(); i+=JOB_STATUS_QUERY_CHUNK) {
+			List<String> chunk = allJobIds.subList(i, Math.min(i+JOB_STATUS_QUERY_CHUNK, allJobIds.size()));
+			
+			CriteriaBuilder cb = em.getCriteriaBuilder();
+			
+			CriteriaQuery<Object[]> cq = cb.createQuery(Object[].class);
+			Root<JobDB> rootJob = cq.from(JobDB.class);
+			cq.where(rootJob.get(JobDB_.jobId).in(chunk));
+			// only the 2 fields needed, selecting the entity would join the full hierarchy
+			cq.multiselect(rootJob.get(JobDB_.jobId), rootJob.get(JobDB_.status));
+			
+			for (Object[] row : em.createQuery(cq).getResultList()) {
+				statuses.put((String) row[0], (String) row[1]);
+			}
+		}
+		
+		em.close();
+		
+		return statuses;
+	}
+	
 	/**
 	 * Checks if entries with the given jobIds exist in the DataBase
 	 * Note this returns true whenever the query returns at least 1 record, i.e. it doesn't guarantee
@@ -405,7 +496,7 @@ public class DBHandler {
 	}
 	
 	/**
-	 * Returns a PdbInfoDB object after reading it from the serialized .webui.dat file
+	 * Returns a PdbInfoDB object after reading it from the .webui.dat file
 	 * @param jobDir directory containing the webui.dat file
 	 * @return 
 	 */
@@ -429,9 +520,7 @@ public class DBHandler {
 		
 		File webuiFile = new File(jobDir, pdbID + ".webui.dat");
 		
-		ObjectInputStream in = new ObjectInputStream(new FileInputStream(webuiFile));
-		PdbInfoDB pdbScoreItem = (PdbInfoDB)in.readObject();
-		in.close();
+		PdbInfoDB pdbScoreItem = ResultFileReader.read(webuiFile);
 		
 		em.close();
 		
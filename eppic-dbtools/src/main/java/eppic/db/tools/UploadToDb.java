@@ -1,16 +1,27 @@
 package eppic.db.tools;
 
+import ch.systemsx.sybit.shared.model.StatusOfJob;
+import eppic.model.JobDB;
 import eppic.model.PdbInfoDB;
+import eppic.modelio.ResultFileReader;
 import gnu.getopt.Getopt;
 
 import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileReader;
 import java.io.IOException;
-import java.io.ObjectInputStream;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.persistence.EntityManager;
 
@@ -23,8 +34,15 @@ public class UploadToDb {
 	private static final String DIVIDED_ROOT = "divided";
 	
 	// after this number of entry uploads time statistics will be produced
-	private static final int TIME_STATS_EVERY1 = 100;
-	private static final int TIME_STATS_EVERY2 = 1000;
+	private static final int TIME_STATS_EVERY = 1000;
+	
+	private static final int DEFAULT_NUM_READERS = 4;
+	private static final int DEFAULT_ENTRIES_PER_TRANSACTION = 20;
+	
+	// the number of transactions worth of deserialized entries that can wait in memory to be written
+	private static final int QUEUE_SIZE_PER_TRANSACTION = 2;
+	
+	private static final int JDBC_BATCH_SIZE = 50;
 	
 	public static void main(String[] args) {
 		
@@ -39,6 +57,8 @@ public class UploadToDb {
 				"                 directory to take (default: uses all subdirs in the root directory) \n" +
 				" [-g <file>]   : a configuration file containing the database access parameters, if not provided\n" +
 				"                 the config will be read from file "+DBHandler.DEFAULT_CONFIG_FILE_NAME+" in home dir\n" +
+				" [-t <int>]    : number of threads reading the serialized files ahead of the db writer. Default: "+DEFAULT_NUM_READERS+"\n" +
+				" [-b <int>]    : number of entries persisted per db transaction. Default: "+DEFAULT_ENTRIES_PER_TRANSACTION+"\n" +
 				" OPERATION MODE\n" +
 				" Default operation: only entries not already present in database will be inserted \n"+
 				" [-F]          : forces everything chosen to be inserted, deletes previous entries if present\n" +
@@ -57,7 +77,10 @@ public class UploadToDb {
 		String dbName = null;
 		File configFile = null;
 		
-		Getopt g = new Getopt("UploadToDB", args, "D:d:lf:g:Frh?");
+		int numReaders = DEFAULT_NUM_READERS;
+		int entriesPerTransaction = DEFAULT_ENTRIES_PER_TRANSACTION;
+		
+		Getopt g = new Getopt("UploadToDB", args, "D:d:lf:g:t:b:Frh?");
 		int c;
 		while ((c = g.getopt()) != -1) {
 			switch(c){
@@ -76,6 +99,12 @@ public class UploadToDb {
 			case 'g':
 				configFile = new File(g.getOptarg());
 				break;				
+			case 't':
+				numReaders = Integer.parseInt(g.getOptarg());
+				break;
+			case 'b':
+				entriesPerTransaction = Integer.parseInt(g.getOptarg());
+				break;
 			case 'F':
 				modeEverything = true;
 				modeNew = false;
@@ -102,6 +131,11 @@ public class UploadToDb {
 			System.exit(1);
 		}
 		
+		if (numReaders < 1 || entriesPerTransaction < 1) {
+			System.err.println("The number of reader threads (-t) and of entries per transaction (-b) must be at least 1");
+			System.exit(1);
+		}
+		
 		if (jobDirectoriesRoot == null || ! jobDirectoriesRoot.isDirectory() ){
 			System.err.println("\n\nHey Jim, Output Directory not specified correctly! \n");
 			System.err.println(help);
@@ -143,28 +177,21 @@ public class UploadToDb {
 			System.out.println("Directories under "+jobDirectoriesRoot+" will be considered to be PDB codes directly, no PDB divided layout will be used. ");
 		}
 		
-		dbh = new DBHandler(dbName, configFile);
+		// note that all our entities use IDENTITY ids, for which hibernate can't batch the inserts 
+		// themselves, but all other statements still get batched and ordered
+		Map<String, String> jdbcProperties = new HashMap<String, String>();
+		jdbcProperties.put("hibernate.jdbc.batch_size", Integer.toString(JDBC_BATCH_SIZE));
+		jdbcProperties.put("hibernate.order_inserts", "true");
+		jdbcProperties.put("hibernate.order_updates", "true");
+		jdbcProperties.put("hibernate.jdbc.batch_versioned_data", "true");
 		
-		List<String> pdbsWithWarnings = new ArrayList<String>();
-		
-		// Start the Process
-		int i = -1;
-		long avgTimeStart1 = 0;
-		long avgTimeEnd1 = 0;
-		long avgTimeStart2 = 0;
-		long avgTimeEnd2 = 0;
+		dbh = new DBHandler(dbName, configFile, jdbcProperties);
 		
 		long totalStart = System.currentTimeMillis();
 		
-		EntityManager em = dbh.getEntityManager();
-		
-		int countPresent = 0;
-		int countUploaded = 0;
-		int countRemoved = 0;
-		int countErrorJob = 0;
-		
+		// Check the directories and get the PDB codes
+		Map<String, File> pdbCodes2dirs = new LinkedHashMap<String, File>();
 		for (File jobDirectory : jobsDirectories) {
-			i++;
 			
 			//Check if it really is a directory
 			if (!jobDirectory.isDirectory()){
@@ -179,140 +206,83 @@ public class UploadToDb {
 				System.out.println("Dir name doesn't look like a PDB code, skipping directory " + jobDirectory);
 				continue; 
 			}
-
-
-			System.out.print(jobDirectory.getName()+" ");
-
-			long start = System.currentTimeMillis();
-
-			String currentPDB = jobDirectory.getName();
-
-
-			// Get the PDB-Score Item to be read
-			File webuiFile = new File(jobDirectory, currentPDB + ".webui.dat");
-			boolean isSerializedFilePresent = webuiFile.isFile();
-
-			try {				
-
-
-				//MODE FORCE
-				if (modeEverything) {
-					boolean ifRemoved = dbh.removeJob(currentPDB);
-					if (ifRemoved) System.out.print(" Found.. Removing and Updating.. ");
-					else System.out.print(" Not Found.. Adding.. ");
-					if(isSerializedFilePresent) {
-						PdbInfoDB pdbScoreItem = readFromSerializedFile(webuiFile);
-						// if something goes wrong while reading the file (a warning message is already printed in readFromSerializedFile)
-						if (pdbScoreItem == null) continue;				
-
-						dbh.persistFinishedJob(em,pdbScoreItem);
-					}
-					else {
-						dbh.persistErrorJob(em, currentPDB);
-					}
-					//continue;
+			
+			pdbCodes2dirs.put(jobDirectory.getName(), jobDirectory);
+		}
+		
+		// A single bulk query for the status of all entries, instead of a round trip per entry
+		long start = System.currentTimeMillis();
+		Map<String, String> statuses = dbh.getJobStatuses(pdbCodes2dirs.keySet());
+		System.out.println("Found "+statuses.size()+" of "+pdbCodes2dirs.size()+" entries already in database ("+
+				(System.currentTimeMillis()-start)/1000+" s)");
+		
+		List<String> pdbsWithWarnings = new ArrayList<String>();
+		
+		int countPresent = 0;
+		int countRemoved = 0;
+		
+		List<UploadItem> toUpload = new ArrayList<UploadItem>();
+		
+		for (Map.Entry<String, File> entry : pdbCodes2dirs.entrySet()) {
+			String currentPDB = entry.getKey();
+			String status = statuses.get(currentPDB);
+			
+			//MODE FORCE
+			if (modeEverything) {
+				toUpload.add(new UploadItem(currentPDB, entry.getValue(), status!=null));
+			}
+			
+			//MODE NEW INSERT
+			if (modeNew) {
+				if (status == null) { 
+					// not present
+					toUpload.add(new UploadItem(currentPDB, entry.getValue(), false));
+				} else if (status.equals(StatusOfJob.ERROR.getName())) {
+					// already present but as an error, we have to remove and reinsert
+					toUpload.add(new UploadItem(currentPDB, entry.getValue(), true));
+				} else {
+					// already present and is not an error
+					countPresent++;
 				}
-
-				//MODE NEW INSERT
-				if (modeNew){
-					int isPresent = dbh.checkJobExist(currentPDB);
-					if(isPresent == 0){ // not present
-						System.out.print(" Not Present.. Adding.. ");
-						if(isSerializedFilePresent) {
-							PdbInfoDB pdbScoreItem = readFromSerializedFile(webuiFile);
-							// if something goes wrong while reading the file (a warning message is already printed in readFromSerializedFile)
-							if (pdbScoreItem == null) continue;				
-
-							dbh.persistFinishedJob(em,pdbScoreItem);
-						}
-						else {
-							dbh.persistErrorJob(em, currentPDB);
-							countErrorJob++;
-						}
-						countUploaded++;
-					} else if (isPresent ==2) {
-						// already present but as an error, we have to remove and reinsert
-						boolean ifRemoved = dbh.removeJob(currentPDB);
-						if (ifRemoved) System.out.print(" Found as error.. Removing and Updating.. ");
-						else {
-							System.err.print(" Warning! Not Found, but there should be an error job. Skipping..");
-							continue;
-						}
-						
-						if(isSerializedFilePresent) {
-							PdbInfoDB pdbScoreItem = readFromSerializedFile(webuiFile);
-							// if something goes wrong while reading the file (a warning message is already printed in readFromSerializedFile)
-							if (pdbScoreItem == null) continue;				
-
-							dbh.persistFinishedJob(em,pdbScoreItem);
-						}
-						else {
-							dbh.persistErrorJob(em, currentPDB);
-							countErrorJob++;
-						}
-						countUploaded++;
-						
-					} else {
-						// already present and is not an error
-						countPresent++;
-						System.out.print(" Already Present.. Skipping.. ");
-					}
-					//continue;
+			}
+			
+			//MODE REMOVE
+			if (modeRemove) {
+				if (status == null) {
+					System.out.println(currentPDB+" Not Found.. ");
+					continue;
 				}
-
-				//MODE REMOVE
-				if (modeRemove) {
-					boolean ifRemoved = dbh.removeJob(currentPDB);
-					if (ifRemoved) {
-						System.out.print(" Removed.. ");
+				try {
+					if (dbh.removeJob(currentPDB)) {
+						System.out.println(currentPDB+" Removed.. ");
 						countRemoved++;
 					}
-					else {
-						System.out.print(" Not Found.. ");
-					}
-					//continue;
-				}
-
-				long end = System.currentTimeMillis();
-				System.out.print(((end-start)/1000)+"s\n");
-
-				if (i%TIME_STATS_EVERY1==0) {
-					avgTimeEnd1 = System.currentTimeMillis();
-
-					if (i!=0) // no statistics before starting
-						System.out.println("Last "+TIME_STATS_EVERY1+" entries in "+((avgTimeEnd1-avgTimeStart1)/1000)+" s");
-
-					avgTimeStart1 = System.currentTimeMillis();
-				}
-
-				if (i%TIME_STATS_EVERY2==0) {
-					avgTimeEnd2 = System.currentTimeMillis();
-
-					if (i!=0) // no statistics before starting
-						System.out.println("Last "+TIME_STATS_EVERY2+" entries in "+((avgTimeEnd2-avgTimeStart2)/1000)+" s");
-
-					avgTimeStart2 = System.currentTimeMillis();
-				}
-
-				
-			} catch (Exception e) {
-				if (em.getTransaction().isActive()) {
-					em.getTransaction().rollback();
+				} catch (Exception e) {
+					System.err.println("WARNING: problems while removing "+currentPDB+". Error: "+e.getMessage());
+					pdbsWithWarnings.add(currentPDB);
 				}
-				System.err.println("WARNING: problems while inserting "+currentPDB+". Error: "+e.getMessage());
-				pdbsWithWarnings.add(currentPDB);
-				continue;
-			} 
+			}
 		}
 		
+		UploadStats stats = new UploadStats();
+		
+		if (!toUpload.isEmpty()) {
+			System.out.println("Uploading "+toUpload.size()+" entries with "+numReaders+" reader threads and "+
+					entriesPerTransaction+" entries per transaction");
+			upload(toUpload, numReaders, entriesPerTransaction, stats, pdbsWithWarnings);
+		}
 		
 		long totalEnd = System.currentTimeMillis();
 		
 		System.out.println("Completed all "+jobsDirectories.length+" entries in "+((totalEnd-totalStart)/1000)+" s");
+		if (!toUpload.isEmpty()) {
+			System.out.println(stats.toString());
+		}
 		if (modeNew) {
-			System.out.println("Already present: "+countPresent+", uploaded: "+countUploaded+", couldn't insert: "+pdbsWithWarnings.size());
-			System.out.println("There were "+countErrorJob+" error jobs in "+countUploaded+" uploaded entries.");
+			System.out.println("Already present: "+countPresent+", uploaded: "+stats.countUploaded+", couldn't insert: "+pdbsWithWarnings.size());
+			System.out.println("There were "+stats.countErrorJob+" error jobs in "+stats.countUploaded+" uploaded entries.");
 		}
+		if (modeEverything) System.out.println("Replaced: "+stats.countReplaced+", uploaded: "+stats.countUploaded+", couldn't insert: "+pdbsWithWarnings.size());
 		if (modeRemove) System.out.println("Removed: "+countRemoved);
 
 		if (!pdbsWithWarnings.isEmpty()) {
@@ -324,7 +294,7 @@ public class UploadToDb {
 		}
 
 		// make sure we exit with an error state in cases with many failures
-		int maxFailuresTolerated = (countPresent + countUploaded)/2;
+		int maxFailuresTolerated = (countPresent + stats.countUploaded)/2;
 		if (pdbsWithWarnings.size() > maxFailuresTolerated) {
 			System.err.println("Total of "+pdbsWithWarnings.size()+" failures, more than "+maxFailuresTolerated+" failures. Something must be wrong!"); 
 			System.exit(1);
@@ -332,19 +302,258 @@ public class UploadToDb {
 
 	}
 	
-	private static PdbInfoDB readFromSerializedFile(File webuiFile) {
-		PdbInfoDB pdbScoreItem = null;
+	/**
+	 * Uploads the given entries in a pipeline: a pool of reader threads deserializes the 
+	 * webui.dat files ahead into a bounded queue (bounding the memory used), while this 
+	 * thread persists them in transactions of entriesPerTransaction entries.
+	 * @param toUpload
+	 * @param numReaders
+	 * @param entriesPerTransaction
+	 * @param stats
+	 * @param pdbsWithWarnings entries that fail are added to this list
+	 */
+	private static void upload(List<UploadItem> toUpload, int numReaders, int entriesPerTransaction, 
+			UploadStats stats, List<String> pdbsWithWarnings) {
+		
+		final BlockingQueue<UploadItem> queue = new ArrayBlockingQueue<UploadItem>(QUEUE_SIZE_PER_TRANSACTION * entriesPerTransaction);
+		
+		ExecutorService readers = Executors.newFixedThreadPool(numReaders);
+		
+		for (final UploadItem item : toUpload) {
+			readers.submit(new Callable<Void>() {
+				@Override
+				public Void call() throws InterruptedException {
+					long start = System.nanoTime();
+					boolean read = false;
+					try {
+						item.read();
+						read = true;
+					} catch (Exception e) {
+						System.err.println("Problem reading serialized file for entry "+item.pdbCode+". Error: "+e.getMessage());
+					} catch (Error e) {
+						// e.g. out of memory for a very large entry: nobody looks at the future, so report it here
+						System.err.println("Unexpected error reading serialized file for entry "+item.pdbCode+". Error: "+e);
+						throw e;
+					} finally {
+						// the item must make it to the queue in any case, or the writer would wait forever
+						if (!read) {
+							item.readFailed = true;
+							item.pdbInfo = null;
+						}
+						stats.read.add(System.nanoTime() - start, item.bytes);
+						queue.put(item);
+					}
+					return null;
+				}
+			});
+		}
+		readers.shutdown();
+		
+		EntityManager em = dbh.getEntityManager();
+		
+		List<UploadItem> batch = new ArrayList<UploadItem>();
+		long lastStatsTime = System.currentTimeMillis();
+		int lastStatsCount = 0;
+		
 		try {
-			ObjectInputStream in = new ObjectInputStream(new FileInputStream(webuiFile));
-			pdbScoreItem = (PdbInfoDB)in.readObject();
-			in.close();
-		} catch (IOException e) {
-			System.err.println("Problem reading serialized file, skipping entry"+webuiFile+". Error: "+e.getMessage());
-		} catch (ClassNotFoundException e) {
-			System.err.println("Problem reading serialized file, skipping entry"+webuiFile+". Error: "+e.getMessage());					
+			for (int i=0; i<toUpload.size(); i++) {
+				long start = System.nanoTime();
+				UploadItem item = queue.take();
+				stats.writerWaitNanos += System.nanoTime() - start;
+				
+				if (item.readFailed) {
+					pdbsWithWarnings.add(item.pdbCode);
+					continue;
+				}
+				
+				batch.add(item);
+				
+				if (batch.size() >= entriesPerTransaction || i == toUpload.size()-1) {
+					writeBatch(em, batch, stats, pdbsWithWarnings);
+					batch.clear();
+					
+					if (stats.countUploaded - lastStatsCount >= TIME_STATS_EVERY) {
+						long now = System.currentTimeMillis();
+						System.out.println("Last "+(stats.countUploaded - lastStatsCount)+" entries in "+((now-lastStatsTime)/1000)+" s. "+
+								"Queue: "+queue.size()+"/"+(queue.size()+queue.remainingCapacity())+". "+stats.toString());
+						lastStatsTime = now;
+						lastStatsCount = stats.countUploaded;
+					}
+				}
+			}
+			// a last batch in case the last item taken failed reading
+			if (!batch.isEmpty()) {
+				writeBatch(em, batch, stats, pdbsWithWarnings);
+			}
+			
+		} catch (InterruptedException e) {
+			System.err.println("Interrupted while waiting for entries to upload. Error: "+e.getMessage());
+			readers.shutdownNow();
+			Thread.currentThread().interrupt();
+		} finally {
+			em.close();
+		}
+		
+	}
+	
+	/**
+	 * Persists the given entries in one transaction, previously removing the ones that need replacing. 
+	 * If the transaction fails the entries are persisted again one per transaction to find the 
+	 * failing ones.
+	 * @param em
+	 * @param batch
+	 * @param stats
+	 * @param pdbsWithWarnings
+	 */
+	private static void writeBatch(EntityManager em, List<UploadItem> batch, UploadStats stats, List<String> pdbsWithWarnings) {
+		long start = System.nanoTime();
+		
+		List<UploadItem> toPersist = new ArrayList<UploadItem>();
+		for (UploadItem item : batch) {
+			if (item.toRemove) {
+				try {
+					if (!dbh.removeJob(item.pdbCode)) {
+						System.err.println("Warning! "+item.pdbCode+" Not Found, but it was present before. Skipping..");
+						pdbsWithWarnings.add(item.pdbCode);
+						continue;
+					}
+				} catch (Exception e) {
+					System.err.println("WARNING: problems while removing "+item.pdbCode+". Error: "+e.getMessage());
+					pdbsWithWarnings.add(item.pdbCode);
+					continue;
+				}
+			}
+			toPersist.add(item);
+		}
+		
+		List<JobDB> jobs = new ArrayList<JobDB>();
+		for (UploadItem item : toPersist) {
+			jobs.add(item.createJob());
+		}
+		
+		try {
+			dbh.persistJobs(em, jobs);
+			stats.transactions++;
+			for (UploadItem item : toPersist) {
+				uploaded(item, stats);
+			}
+		} catch (Exception e) {
+			System.err.println("WARNING: problems while inserting batch of "+toPersist.size()+" entries, will insert them one by one. Error: "+e.getMessage());
+			
+			for (UploadItem item : toPersist) {
+				try {
+					// the failed transaction left generated ids in the entities: we need them fresh from file
+					item.read();
+					dbh.persistJobs(em, Collections.singletonList(item.createJob()));
+					stats.transactions++;
+					uploaded(item, stats);
+				} catch (Exception e1) {
+					System.err.println("WARNING: problems while inserting "+item.pdbCode+". Error: "+e1.getMessage());
+					pdbsWithWarnings.add(item.pdbCode);
+				}
+			}
+		}
+		
+		// releasing the entity graphs, the batch list can be held a bit longer by the caller
+		for (UploadItem item : batch) {
+			item.pdbInfo = null;
+		}
+		
+		stats.write.add(System.nanoTime() - start, 0);
+	}
+	
+	private static void uploaded(UploadItem item, UploadStats stats) {
+		stats.countUploaded++;
+		if (item.pdbInfo == null) stats.countErrorJob++;
+		if (item.toRemove) stats.countReplaced++;
+		System.out.println(item.pdbCode+(item.toRemove?" Replaced":" Added")+(item.pdbInfo==null?" (error job)":""));
+	}
+	
+	/**
+	 * An entry to upload, with its deserialized PdbInfoDB once read
+	 */
+	private static class UploadItem {
+		
+		final String pdbCode;
+		final File webuiFile;
+		final boolean toRemove;
+		
+		volatile PdbInfoDB pdbInfo;
+		volatile boolean readFailed;
+		volatile long bytes;
+		
+		UploadItem(String pdbCode, File jobDirectory, boolean toRemove) {
+			this.pdbCode = pdbCode;
+			this.webuiFile = new File(jobDirectory, pdbCode + ".webui.dat");
+			this.toRemove = toRemove;
+		}
+		
+		/**
+		 * Reads the webui.dat file, if there's no file then the entry is an error job
+		 * @throws IOException
+		 */
+		void read() throws IOException {
+			if (webuiFile.isFile()) {
+				bytes = webuiFile.length();
+				pdbInfo = ResultFileReader.read(webuiFile);
+			}
+		}
+		
+		JobDB createJob() {
+			if (pdbInfo != null) return DBHandler.createFinishedJob(pdbInfo);
+			else return DBHandler.createErrorJob(pdbCode);
+		}
+	}
+	
+	/**
+	 * Time spent in a pipeline stage, summed over all threads of the stage
+	 */
+	private static class StageStats {
+		
+		private final String name;
+		private final AtomicLong count = new AtomicLong(0);
+		private final AtomicLong nanos = new AtomicLong(0);
+		private final AtomicLong bytes = new AtomicLong(0);
+		
+		StageStats(String name) {
+			this.name = name;
+		}
+		
+		void add(long nanos, long bytes) {
+			this.count.incrementAndGet();
+			this.nanos.addAndGet(nanos);
+			this.bytes.addAndGet(bytes);
+		}
+		
+		@Override
+		public String toString() {
+			double secs = nanos.get()/1e9;
+			return String.format("%s: %d in %.1f s busy (%.1f per s busy", name, count.get(), secs, secs>0?count.get()/secs:0) +
+					(bytes.get()>0?String.format(", %.1f MB/s", secs>0?bytes.get()/secs/1024/1024:0):"") + ")";
+		}
+	}
+	
+	/**
+	 * Throughput statistics of the upload pipeline. Only the read stage is updated concurrently.
+	 */
+	private static class UploadStats {
+		
+		final StageStats read = new StageStats("Read entries");
+		final StageStats write = new StageStats("Written batches");
+		
+		long writerWaitNanos = 0;
+		int transactions = 0;
+		
+		int countUploaded = 0;
+		int countErrorJob = 0;
+		int countReplaced = 0;
+		
+		@Override
+		public String toString() {
+			// a writer waiting a lot means that reading is the bottleneck
+			return read.toString()+". "+write.toString()+", "+transactions+" transactions. "+
+					String.format("Writer waited %.1f s for readers", writerWaitNanos/1e9);
 		}
-		// will be null if an exception occurs
-		return pdbScoreItem;
 	}
 	
 	private static File[] listAllDirs(boolean isDividedLayout, File rootDir) {
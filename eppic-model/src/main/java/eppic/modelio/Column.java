@@ -0,0 +1,400 @@
+package eppic.modelio;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.ObjDoubleConsumer;
+import java.util.function.ObjIntConsumer;
+import java.util.function.ObjLongConsumer;
+import java.util.function.Predicate;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToIntFunction;
+import java.util.function.ToLongFunction;
+
+/**
+ * A column of a {@link Table} in the binary result file: a named, typed property of the rows,
+ * encoded for all rows at once.
+ * <ul>
+ * <li>INT, LONG and REF (index of a row of another table, -1 for null): zig-zag varints
+ * of the difference to the previous row</li>
+ * <li>DOUBLE: IEEE 754 bits split in 8 byte planes (all highest bytes first), so that the
+ * following compression sees the repetitive sign/exponent bytes together</li>
+ * <li>BOOLEAN: bit set, 8 rows per byte</li>
+ * <li>STRING: a dictionary of the distinct values followed by a varint index per row (0 for null)</li>
+ * </ul>
+ *
+ * @param <T> the row type
+ */
+public abstract class Column<T> {
+
+	public enum Type {
+		INT(1), LONG(2), DOUBLE(3), BOOLEAN(4), STRING(5), REF(6);
+
+		private final byte code;
+
+		Type(int code) {
+			this.code = (byte) code;
+		}
+
+		public byte getCode() {
+			return code;
+		}
+
+		public static Type fromCode(byte code) throws IOException {
+			for (Type type : values()) {
+				if (type.code == code) return type;
+			}
+			throw new IOException("Unknown column type code "+code);
+		}
+	}
+
+	private final String name;
+	private final Type type;
+
+	protected Column(String name, Type type) {
+		this.name = name;
+		this.type = type;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public Type getType() {
+		return type;
+	}
+
+	public abstract void write(List<T> rows, RowSet rowSet, DataOutput out) throws IOException;
+
+	public abstract void read(List<T> rows, RowSet rowSet, DataInput in) throws IOException;
+
+	/**
+	 * Reads and discards the data of a column of given type, used for columns
+	 * in the file that are not part of the current schema.
+	 * @param type
+	 * @param numRows
+	 * @param in
+	 * @throws IOException
+	 */
+	public static void skip(Type type, int numRows, DataInput in) throws IOException {
+		switch (type) {
+		case INT:
+		case REF:
+		case LONG:
+			for (int i=0; i<numRows; i++) readVarLong(in);
+			break;
+		case DOUBLE:
+			// skipBytes can skip less than asked
+			in.readFully(new byte[8*numRows]);
+			break;
+		case BOOLEAN:
+			in.readFully(new byte[(numRows+7)/8]);
+			break;
+		case STRING:
+			readStrings(numRows, in);
+			break;
+		}
+	}
+
+	public static class IntColumn<T> extends Column<T> {
+
+		private final ToIntFunction<T> getter;
+		private final ObjIntConsumer<T> setter;
+
+		public IntColumn(String name, ToIntFunction<T> getter, ObjIntConsumer<T> setter) {
+			super(name, Type.INT);
+			this.getter = getter;
+			this.setter = setter;
+		}
+
+		@Override
+		public void write(List<T> rows, RowSet rowSet, DataOutput out) throws IOException {
+			long previous = 0;
+			for (T row : rows) {
+				int value = getter.applyAsInt(row);
+				writeVarLong(out, value - previous);
+				previous = value;
+			}
+		}
+
+		@Override
+		public void read(List<T> rows, RowSet rowSet, DataInput in) throws IOException {
+			long previous = 0;
+			for (T row : rows) {
+				previous += readVarLong(in);
+				setter.accept(row, (int) previous);
+			}
+		}
+	}
+
+	public static class LongColumn<T> extends Column<T> {
+
+		private final ToLongFunction<T> getter;
+		private final ObjLongConsumer<T> setter;
+
+		public LongColumn(String name, ToLongFunction<T> getter, ObjLongConsumer<T> setter) {
+			super(name, Type.LONG);
+			this.getter = getter;
+			this.setter = setter;
+		}
+
+		@Override
+		public void write(List<T> rows, RowSet rowSet, DataOutput out) throws IOException {
+			long previous = 0;
+			for (T row : rows) {
+				long value = getter.applyAsLong(row);
+				writeVarLong(out, value - previous);
+				previous = value;
+			}
+		}
+
+		@Override
+		public void read(List<T> rows, RowSet rowSet, DataInput in) throws IOException {
+			long previous = 0;
+			for (T row : rows) {
+				previous += readVarLong(in);
+				setter.accept(row, previous);
+			}
+		}
+	}
+
+	public static class DoubleColumn<T> extends Column<T> {
+
+		private final ToDoubleFunction<T> getter;
+		private final ObjDoubleConsumer<T> setter;
+
+		public DoubleColumn(String name, ToDoubleFunction<T> getter, ObjDoubleConsumer<T> setter) {
+			super(name, Type.DOUBLE);
+			this.getter = getter;
+			this.setter = setter;
+		}
+
+		@Override
+		public void write(List<T> rows, RowSet rowSet, DataOutput out) throws IOException {
+			long[] bits = new long[rows.size()];
+			for (int i=0; i<bits.length; i++) {
+				bits[i] = Double.doubleToLongBits(getter.applyAsDouble(rows.get(i)));
+			}
+			byte[] plane = new byte[bits.length];
+			for (int shift=56; shift>=0; shift-=8) {
+				for (int i=0; i<bits.length; i++) {
+					plane[i] = (byte) (bits[i] >>> shift);
+				}
+				out.write(plane);
+			}
+		}
+
+		@Override
+		public void read(List<T> rows, RowSet rowSet, DataInput in) throws IOException {
+			long[] bits = new long[rows.size()];
+			byte[] plane = new byte[bits.length];
+			for (int shift=56; shift>=0; shift-=8) {
+				in.readFully(plane);
+				for (int i=0; i<bits.length; i++) {
+					bits[i] |= (plane[i] & 0xffL) << shift;
+				}
+			}
+			for (int i=0; i<bits.length; i++) {
+				setter.accept(rows.get(i), Double.longBitsToDouble(bits[i]));
+			}
+		}
+	}
+
+	public static class BooleanColumn<T> extends Column<T> {
+
+		private final Predicate<T> getter;
+		private final BiConsumer<T, Boolean> setter;
+
+		public BooleanColumn(String name, Predicate<T> getter, BiConsumer<T, Boolean> setter) {
+			super(name, Type.BOOLEAN);
+			this.getter = getter;
+			this.setter = setter;
+		}
+
+		@Override
+		public void write(List<T> rows, RowSet rowSet, DataOutput out) throws IOException {
+			byte[] bytes = new byte[(rows.size()+7)/8];
+			for (int i=0; i<rows.size(); i++) {
+				if (getter.test(rows.get(i))) {
+					bytes[i/8] |= 1 << (i%8);
+				}
+			}
+			out.write(bytes);
+		}
+
+		@Override
+		public void read(List<T> rows, RowSet rowSet, DataInput in) throws IOException {
+			byte[] bytes = new byte[(rows.size()+7)/8];
+			in.readFully(bytes);
+			for (int i=0; i<rows.size(); i++) {
+				setter.accept(rows.get(i), (bytes[i/8] & (1 << (i%8))) != 0);
+			}
+		}
+	}
+
+	public static class StringColumn<T> extends Column<T> {
+
+		private final Function<T, String> getter;
+		private final BiConsumer<T, String> setter;
+
+		public StringColumn(String name, Function<T, String> getter, BiConsumer<T, String> setter) {
+			super(name, Type.STRING);
+			this.getter = getter;
+			this.setter = setter;
+		}
+
+		@Override
+		public void write(List<T> rows, RowSet rowSet, DataOutput out) throws IOException {
+			Map<String, Integer> dictionary = new HashMap<>();
+			List<String> distinct = new ArrayList<>();
+			int[] codes = new int[rows.size()];
+			for (int i=0; i<codes.length; i++) {
+				String value = getter.apply(rows.get(i));
+				if (value == null) continue;
+				Integer code = dictionary.get(value);
+				if (code == null) {
+					distinct.add(value);
+					code = distinct.size();
+					dictionary.put(value, code);
+				}
+				codes[i] = code;
+			}
+
+			writeVarLong(out, distinct.size());
+			for (String value : distinct) {
+				writeString(out, value);
+			}
+			for (int code : codes) {
+				writeVarLong(out, code);
+			}
+		}
+
+		@Override
+		public void read(List<T> rows, RowSet rowSet, DataInput in) throws IOException {
+			String[] values = readStrings(rows.size(), in);
+			for (int i=0; i<values.length; i++) {
+				setter.accept(rows.get(i), values[i]);
+			}
+		}
+	}
+
+	/**
+	 * A reference to a row of another table, read after the referenced table.
+	 * The setter must link both sides of the relation.
+	 *
+	 * @param <T> the row type
+	 * @param <P> the type of the referenced rows
+	 */
+	public static class RefColumn<T, P> extends Column<T> {
+
+		private final Table<P> referenced;
+		private final Function<T, P> getter;
+		private final BiConsumer<T, P> setter;
+
+		public RefColumn(String name, Table<P> referenced, Function<T, P> getter, BiConsumer<T, P> setter) {
+			super(name, Type.REF);
+			this.referenced = referenced;
+			this.getter = getter;
+			this.setter = setter;
+		}
+
+		@Override
+		public void write(List<T> rows, RowSet rowSet, DataOutput out) throws IOException {
+			long previous = 0;
+			for (T row : rows) {
+				P value = getter.apply(row);
+				int index = rowSet.indexOf(referenced, value);
+				if (value != null && index < 0) {
+					throw new IOException("Row referenced from column "+getName()+" is not in table "+referenced.getName());
+				}
+				writeVarLong(out, index - previous);
+				previous = index;
+			}
+		}
+
+		@Override
+		public void read(List<T> rows, RowSet rowSet, DataInput in) throws IOException {
+			List<P> referencedRows = rowSet.getRows(referenced);
+			long previous = 0;
+			for (T row : rows) {
+				previous += readVarLong(in);
+				if (previous < 0) continue;
+				if (previous >= referencedRows.size()) {
+					throw new IOException("Column "+getName()+" references row "+previous+" of table "+referenced.getName()+
+							", which has only "+referencedRows.size()+" rows");
+				}
+				setter.accept(row, referencedRows.get((int) previous));
+			}
+		}
+	}
+
+	private static String[] readStrings(int numRows, DataInput in) throws IOException {
+		int dictionarySize = (int) readVarLong(in);
+		String[] distinct = new String[dictionarySize+1];
+		for (int i=1; i<=dictionarySize; i++) {
+			distinct[i] = readString(in);
+		}
+		String[] values = new String[numRows];
+		for (int i=0; i<numRows; i++) {
+			int code = (int) readVarLong(in);
+			if (code > dictionarySize) {
+				throw new IOException("String code "+code+" out of dictionary of size "+dictionarySize);
+			}
+			values[i] = distinct[code];
+		}
+		return values;
+	}
+
+	/**
+	 * Writes a signed value as a zig-zag encoded varint: 7 bits per byte,
+	 * small absolute values take few bytes.
+	 * @param out
+	 * @param value
+	 * @throws IOException
+	 */
+	public static void writeVarLong(DataOutput out, long value) throws IOException {
+		long zigzag = (value << 1) ^ (value >> 63);
+		while ((zigzag & ~0x7fL) != 0) {
+			out.writeByte((int) ((zigzag & 0x7f) | 0x80));
+			zigzag >>>= 7;
+		}
+		out.writeByte((int) zigzag);
+	}
+
+	public static long readVarLong(DataInput in) throws IOException {
+		long zigzag = 0;
+		for (int shift=0; shift<64; shift+=7) {
+			byte b = in.readByte();
+			zigzag |= (long) (b & 0x7f) << shift;
+			if ((b & 0x80) == 0) {
+				return (zigzag >>> 1) ^ -(zigzag & 1);
+			}
+		}
+		throw new IOException("Malformed varint");
+	}
+
+	/**
+	 * Writes a non-null string as its varint length followed by its UTF-8 bytes
+	 * @param out
+	 * @param value
+	 * @throws IOException
+	 */
+	public static void writeString(DataOutput out, String value) throws IOException {
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		writeVarLong(out, bytes.length);
+		out.write(bytes);
+	}
+
+	public static String readString(DataInput in) throws IOException {
+		byte[] bytes = new byte[(int) readVarLong(in)];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
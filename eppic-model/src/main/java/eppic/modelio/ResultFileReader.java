@@ -0,0 +1,155 @@
+package eppic.modelio;
+
+import java.io.BufferedInputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import eppic.model.PdbInfoDB;
+
+/**
+ * Reads the result (webui.dat) files written by eppic: the binary format described in
+ * {@link ResultSchema} and also the Java-serialized files written by older versions,
+ * recognised by their stream header.
+ * <p>
+ * This package is kept out of eppic.model, which is also compiled by GWT.
+ */
+public class ResultFileReader {
+
+	private static final int BUFFER_SIZE = 64*1024;
+
+	// the first 2 bytes of any Java serialization stream
+	private static final byte[] JAVA_SERIALIZATION_MAGIC = { (byte) 0xac, (byte) 0xed };
+
+	/**
+	 * Reads the PdbInfoDB tree from the given result file, in either binary or Java-serialized format.
+	 * @param file
+	 * @return
+	 * @throws IOException if the file can't be read or is in neither format
+	 */
+	public static PdbInfoDB read(File file) throws IOException {
+
+		byte[] magic = new byte[ResultSchema.MAGIC.length];
+		int read;
+		try (InputStream is = new FileInputStream(file)) {
+			read = readFully(is, magic);
+		}
+
+		if (read == magic.length && Arrays.equals(magic, ResultSchema.MAGIC)) {
+			return readBinary(file);
+		}
+		if (read >= 2 && magic[0] == JAVA_SERIALIZATION_MAGIC[0] && magic[1] == JAVA_SERIALIZATION_MAGIC[1]) {
+			return readSerialized(file);
+		}
+		throw new IOException("File "+file+" is not an eppic result file");
+	}
+
+	/**
+	 * Returns true if the given file is in the binary format (as opposed to Java serialization)
+	 * @param file
+	 * @return
+	 * @throws IOException
+	 */
+	public static boolean isBinary(File file) throws IOException {
+		byte[] magic = new byte[ResultSchema.MAGIC.length];
+		try (InputStream is = new FileInputStream(file)) {
+			return readFully(is, magic) == magic.length && Arrays.equals(magic, ResultSchema.MAGIC);
+		}
+	}
+
+	private static PdbInfoDB readBinary(File file) throws IOException {
+		try (DataInputStream header = new DataInputStream(new FileInputStream(file))) {
+
+			header.skipBytes(ResultSchema.MAGIC.length);
+			int version = header.readInt();
+			if (version > ResultSchema.FORMAT_VERSION) {
+				throw new IOException("File "+file+" has format version "+version+
+						", this version of eppic can only read up to version "+ResultSchema.FORMAT_VERSION);
+			}
+
+			DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(header, BUFFER_SIZE), BUFFER_SIZE));
+
+			RowSet rowSet = new RowSet();
+
+			int numTables = (int) Column.readVarLong(in);
+			for (int i=0; i<numTables; i++) {
+				String tableName = Column.readString(in);
+				int numRows = (int) Column.readVarLong(in);
+				int numColumns = (int) Column.readVarLong(in);
+
+				String[] columnNames = new String[numColumns];
+				Column.Type[] columnTypes = new Column.Type[numColumns];
+				for (int j=0; j<numColumns; j++) {
+					columnNames[j] = Column.readString(in);
+					columnTypes[j] = Column.Type.fromCode(in.readByte());
+				}
+
+				Table<?> table = ResultSchema.getTable(tableName);
+				if (table == null) {
+					// a table added in a later version: skipped
+					for (Column.Type type : columnTypes) {
+						Column.skip(type, numRows, in);
+					}
+				} else {
+					readTable(table, numRows, columnNames, columnTypes, rowSet, in);
+				}
+			}
+
+			List<PdbInfoDB> pdbInfos = rowSet.getRows(ResultSchema.PDB_INFO);
+			if (pdbInfos.size() != 1) {
+				throw new IOException("File "+file+" contains "+pdbInfos.size()+" PdbInfo rows, expected 1");
+			}
+			return pdbInfos.get(0);
+		}
+	}
+
+	private static <T> void readTable(Table<T> table, int numRows, String[] columnNames, Column.Type[] columnTypes,
+			RowSet rowSet, DataInput in) throws IOException {
+
+		List<T> rows = new ArrayList<>(numRows);
+		for (int i=0; i<numRows; i++) {
+			rows.add(table.newRow());
+		}
+		rowSet.setRows(table, rows);
+
+		for (int j=0; j<columnNames.length; j++) {
+			Column<T> column = table.getColumn(columnNames[j]);
+			if (column == null) {
+				// a column removed from the model or added in a later version: skipped
+				Column.skip(columnTypes[j], numRows, in);
+			} else if (column.getType() != columnTypes[j]) {
+				throw new IOException("Column "+table.getName()+"."+columnNames[j]+" has type "+columnTypes[j]+
+						" in file, expected "+column.getType());
+			} else {
+				column.read(rows, rowSet, in);
+			}
+		}
+		table.finish(rows);
+	}
+
+	private static PdbInfoDB readSerialized(File file) throws IOException {
+		try (ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE))) {
+			return (PdbInfoDB) in.readObject();
+		} catch (ClassNotFoundException|ClassCastException e) {
+			throw new IOException("File "+file+" does not contain a serialized PdbInfoDB: "+e.getMessage(), e);
+		}
+	}
+
+	private static int readFully(InputStream is, byte[] buf) throws IOException {
+		int total = 0;
+		while (total < buf.length) {
+			int n = is.read(buf, total, buf.length - total);
+			if (n < 0) break;
+			total += n;
+		}
+		return total;
+	}
+}
@@ -0,0 +1,346 @@
+package eppic.modelio;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import eppic.model.AssemblyContentDB;
+import eppic.model.AssemblyDB;
+import eppic.model.AssemblyScoreDB;
+import eppic.model.ChainClusterDB;
+import eppic.model.ContactDB;
+import eppic.model.HomologDB;
+import eppic.model.InterfaceClusterDB;
+import eppic.model.InterfaceClusterScoreDB;
+import eppic.model.InterfaceDB;
+import eppic.model.InterfaceScoreDB;
+import eppic.model.InterfaceWarningDB;
+import eppic.model.PdbInfoDB;
+import eppic.model.ResidueBurialDB;
+import eppic.model.ResidueInfoDB;
+import eppic.model.RunParametersDB;
+import eppic.model.UniProtRefWarningDB;
+import eppic.modelio.Column.BooleanColumn;
+import eppic.modelio.Column.DoubleColumn;
+import eppic.modelio.Column.IntColumn;
+import eppic.modelio.Column.LongColumn;
+import eppic.modelio.Column.RefColumn;
+import eppic.modelio.Column.StringColumn;
+
+/**
+ * The schema of the binary result file (the webui.dat file): the {@link PdbInfoDB} tree
+ * stored as one table per entity type, each table with one column per persisted property.
+ * Parent/child relations are columns referencing the row index of the parent.
+ * <p>
+ * The file is:
+ * <pre>
+ * magic "EPPICRES" | int format version | gzip(
+ *     varint number of tables
+ *     per table: name | varint rows | varint columns | per column: name, type code | per column: data )
+ * </pre>
+ * Table and column names and types are stored in the file: readers skip tables and columns
+ * that they don't know and leave properties missing in the file at their defaults, so that
+ * adding or removing properties in the model doesn't break reading old files.
+ * The format version only needs increasing for changes in the meaning of existing columns.
+ * <p>
+ * Database ids (uids), the job and the sequence clusters are not stored: they are assigned
+ * when persisting to the database.
+ */
+public class ResultSchema {
+
+	public static final byte[] MAGIC = "EPPICRES".getBytes(StandardCharsets.US_ASCII);
+
+	public static final int FORMAT_VERSION = 1;
+
+	private static final long NULL_DATE = Long.MIN_VALUE;
+
+	/**
+	 * A row of the many-to-many relation between assemblies and interface clusters
+	 */
+	public static class AssemblyInterfaceCluster {
+		private AssemblyDB assembly;
+		private InterfaceClusterDB interfaceCluster;
+
+		public AssemblyInterfaceCluster() {
+
+		}
+
+		public AssemblyInterfaceCluster(AssemblyDB assembly, InterfaceClusterDB interfaceCluster) {
+			this.assembly = assembly;
+			this.interfaceCluster = interfaceCluster;
+		}
+
+		public AssemblyDB getAssembly() {
+			return assembly;
+		}
+
+		public InterfaceClusterDB getInterfaceCluster() {
+			return interfaceCluster;
+		}
+	}
+
+	public static final Table<PdbInfoDB> PDB_INFO = new Table<PdbInfoDB>("PdbInfo", PdbInfoDB::new)
+			.add(new StringColumn<>("pdbCode", PdbInfoDB::getPdbCode, PdbInfoDB::setPdbCode))
+			.add(new StringColumn<>("title", PdbInfoDB::getTitle, PdbInfoDB::setTitle))
+			.add(new LongColumn<>("releaseDate",
+					p -> p.getReleaseDate()==null ? NULL_DATE : p.getReleaseDate().getTime(),
+					(p, v) -> p.setReleaseDate(v==NULL_DATE ? null : new Date(v))))
+			.add(new StringColumn<>("spaceGroup", PdbInfoDB::getSpaceGroup, PdbInfoDB::setSpaceGroup))
+			.add(new DoubleColumn<>("resolution", PdbInfoDB::getResolution, PdbInfoDB::setResolution))
+			.add(new DoubleColumn<>("rfreeValue", PdbInfoDB::getRfreeValue, PdbInfoDB::setRfreeValue))
+			.add(new StringColumn<>("expMethod", PdbInfoDB::getExpMethod, PdbInfoDB::setExpMethod))
+			.add(new IntColumn<>("numChainClusters", PdbInfoDB::getNumChainClusters, PdbInfoDB::setNumChainClusters))
+			.add(new BooleanColumn<>("ncsOpsPresent", PdbInfoDB::isNcsOpsPresent, PdbInfoDB::setNcsOpsPresent))
+			.add(new DoubleColumn<>("cellA", PdbInfoDB::getCellA, PdbInfoDB::setCellA))
+			.add(new DoubleColumn<>("cellB", PdbInfoDB::getCellB, PdbInfoDB::setCellB))
+			.add(new DoubleColumn<>("cellC", PdbInfoDB::getCellC, PdbInfoDB::setCellC))
+			.add(new DoubleColumn<>("cellAlpha", PdbInfoDB::getCellAlpha, PdbInfoDB::setCellAlpha))
+			.add(new DoubleColumn<>("cellBeta", PdbInfoDB::getCellBeta, PdbInfoDB::setCellBeta))
+			.add(new DoubleColumn<>("cellGamma", PdbInfoDB::getCellGamma, PdbInfoDB::setCellGamma))
+			.add(new IntColumn<>("crystalFormId", PdbInfoDB::getCrystalFormId, PdbInfoDB::setCrystalFormId))
+			.add(new BooleanColumn<>("nonStandardSg", PdbInfoDB::isNonStandardSg, PdbInfoDB::setNonStandardSg))
+			.add(new BooleanColumn<>("nonStandardCoordFrameConvention", PdbInfoDB::isNonStandardCoordFrameConvention, PdbInfoDB::setNonStandardCoordFrameConvention))
+			.add(new BooleanColumn<>("exhaustiveAssemblyEnumeration", PdbInfoDB::isExhaustiveAssemblyEnumeration, PdbInfoDB::setExhaustiveAssemblyEnumeration))
+			.add(new IntColumn<>("maxNumClashesAnyInterface", PdbInfoDB::getMaxNumClashesAnyInterface, PdbInfoDB::setMaxNumClashesAnyInterface));
+
+	public static final Table<RunParametersDB> RUN_PARAMETERS = new Table<RunParametersDB>("RunParameters", RunParametersDB::new)
+			.add(new RefColumn<>("pdbInfo", PDB_INFO, RunParametersDB::getPdbInfo,
+					(r, p) -> { r.setPdbInfo(p); p.setRunParameters(r); }))
+			.add(new DoubleColumn<>("homSoftIdCutoff", RunParametersDB::getHomSoftIdCutoff, RunParametersDB::setHomSoftIdCutoff))
+			.add(new DoubleColumn<>("homHardIdCutoff", RunParametersDB::getHomHardIdCutoff, RunParametersDB::setHomHardIdCutoff))
+			.add(new DoubleColumn<>("queryCovCutoff", RunParametersDB::getQueryCovCutoff, RunParametersDB::setQueryCovCutoff))
+			.add(new IntColumn<>("minNumSeqsCutoff", RunParametersDB::getMinNumSeqsCutoff, RunParametersDB::setMinNumSeqsCutoff))
+			.add(new IntColumn<>("maxNumSeqsCutoff", RunParametersDB::getMaxNumSeqsCutoff, RunParametersDB::setMaxNumSeqsCutoff))
+			.add(new StringColumn<>("alphabet", RunParametersDB::getAlphabet, RunParametersDB::setAlphabet))
+			.add(new DoubleColumn<>("caCutoffForGeom", RunParametersDB::getCaCutoffForGeom, RunParametersDB::setCaCutoffForGeom))
+			.add(new DoubleColumn<>("caCutoffForCoreRim", RunParametersDB::getCaCutoffForCoreRim, RunParametersDB::setCaCutoffForCoreRim))
+			.add(new DoubleColumn<>("caCutoffForCoreSurface", RunParametersDB::getCaCutoffForCoreSurface, RunParametersDB::setCaCutoffForCoreSurface))
+			.add(new IntColumn<>("geomCallCutoff", RunParametersDB::getGeomCallCutoff, RunParametersDB::setGeomCallCutoff))
+			.add(new DoubleColumn<>("crCallCutoff", RunParametersDB::getCrCallCutoff, RunParametersDB::setCrCallCutoff))
+			.add(new DoubleColumn<>("csCallCutoff", RunParametersDB::getCsCallCutoff, RunParametersDB::setCsCallCutoff))
+			.add(new StringColumn<>("searchMode", RunParametersDB::getSearchMode, RunParametersDB::setSearchMode))
+			.add(new StringColumn<>("uniProtVersion", RunParametersDB::getUniProtVersion, RunParametersDB::setUniProtVersion))
+			.add(new StringColumn<>("eppicVersion", RunParametersDB::getEppicVersion, RunParametersDB::setEppicVersion))
+			.add(new StringColumn<>("eppicBuild", RunParametersDB::getEppicBuild, RunParametersDB::setEppicBuild));
+
+	public static final Table<ChainClusterDB> CHAIN_CLUSTER = new Table<ChainClusterDB>("ChainCluster", ChainClusterDB::new)
+			.add(new RefColumn<>("pdbInfo", PDB_INFO, ChainClusterDB::getPdbInfo,
+					(c, p) -> { c.setPdbInfo(p); p.getChainClusters().add(c); }))
+			.add(new StringColumn<>("pdbCode", ChainClusterDB::getPdbCode, ChainClusterDB::setPdbCode))
+			.add(new StringColumn<>("repChain", ChainClusterDB::getRepChain, ChainClusterDB::setRepChain))
+			.add(new StringColumn<>("memberChains", ChainClusterDB::getMemberChains, ChainClusterDB::setMemberChains))
+			.add(new IntColumn<>("numMembers", ChainClusterDB::getNumMembers, ChainClusterDB::setNumMembers))
+			.add(new BooleanColumn<>("protein", ChainClusterDB::isProtein, ChainClusterDB::setProtein))
+			.add(new StringColumn<>("refUniProtId", ChainClusterDB::getRefUniProtId, ChainClusterDB::setRefUniProtId))
+			.add(new IntColumn<>("refUniProtStart", ChainClusterDB::getRefUniProtStart, ChainClusterDB::setRefUniProtStart))
+			.add(new IntColumn<>("refUniProtEnd", ChainClusterDB::getRefUniProtEnd, ChainClusterDB::setRefUniProtEnd))
+			.add(new IntColumn<>("pdbStart", ChainClusterDB::getPdbStart, ChainClusterDB::setPdbStart))
+			.add(new IntColumn<>("pdbEnd", ChainClusterDB::getPdbEnd, ChainClusterDB::setPdbEnd))
+			.add(new StringColumn<>("pdbAlignedSeq", ChainClusterDB::getPdbAlignedSeq, ChainClusterDB::setPdbAlignedSeq))
+			.add(new StringColumn<>("refAlignedSeq", ChainClusterDB::getRefAlignedSeq, ChainClusterDB::setRefAlignedSeq))
+			.add(new BooleanColumn<>("hasUniProtRef", ChainClusterDB::isHasUniProtRef, ChainClusterDB::setHasUniProtRef))
+			.add(new IntColumn<>("numHomologs", ChainClusterDB::getNumHomologs, ChainClusterDB::setNumHomologs))
+			.add(new StringColumn<>("msaAlignedSeq", ChainClusterDB::getMsaAlignedSeq, ChainClusterDB::setMsaAlignedSeq))
+			.add(new DoubleColumn<>("seqIdCutoff", ChainClusterDB::getSeqIdCutoff, ChainClusterDB::setSeqIdCutoff))
+			.add(new DoubleColumn<>("clusteringSeqId", ChainClusterDB::getClusteringSeqId, ChainClusterDB::setClusteringSeqId))
+			.add(new StringColumn<>("firstTaxon", ChainClusterDB::getFirstTaxon, ChainClusterDB::setFirstTaxon))
+			.add(new StringColumn<>("lastTaxon", ChainClusterDB::getLastTaxon, ChainClusterDB::setLastTaxon))
+			// the child lists are not initialised in the constructor
+			.setFinisher(c -> {
+				if (c.getUniProtRefWarnings()==null) c.setUniProtRefWarnings(new ArrayList<UniProtRefWarningDB>());
+				if (c.getHomologs()==null) c.setHomologs(new ArrayList<HomologDB>());
+				if (c.getResidueInfos()==null) c.setResidueInfos(new ArrayList<ResidueInfoDB>());
+			});
+
+	public static final Table<UniProtRefWarningDB> UNIPROT_REF_WARNING = new Table<UniProtRefWarningDB>("UniProtRefWarning", UniProtRefWarningDB::new)
+			.add(new RefColumn<>("chainCluster", CHAIN_CLUSTER, UniProtRefWarningDB::getChainCluster,
+					(w, c) -> { w.setChainCluster(c); c.getUniProtRefWarnings().add(w); }))
+			.add(new StringColumn<>("text", UniProtRefWarningDB::getText, UniProtRefWarningDB::setText));
+
+	public static final Table<HomologDB> HOMOLOG = new Table<HomologDB>("Homolog", HomologDB::new)
+			.add(new RefColumn<>("chainCluster", CHAIN_CLUSTER, HomologDB::getChainCluster,
+					(h, c) -> { h.setChainCluster(c); c.getHomologs().add(h); }))
+			.add(new StringColumn<>("uniProtId", HomologDB::getUniProtId, HomologDB::setUniProtId))
+			.add(new DoubleColumn<>("seqId", HomologDB::getSeqId, HomologDB::setSeqId))
+			.add(new DoubleColumn<>("queryCoverage", HomologDB::getQueryCoverage, HomologDB::setQueryCoverage))
+			.add(new StringColumn<>("firstTaxon", HomologDB::getFirstTaxon, HomologDB::setFirstTaxon))
+			.add(new StringColumn<>("lastTaxon", HomologDB::getLastTaxon, HomologDB::setLastTaxon))
+			.add(new IntColumn<>("queryStart", HomologDB::getQueryStart, HomologDB::setQueryStart))
+			.add(new IntColumn<>("queryEnd", HomologDB::getQueryEnd, HomologDB::setQueryEnd))
+			.add(new IntColumn<>("subjectStart", HomologDB::getSubjectStart, HomologDB::setSubjectStart))
+			.add(new IntColumn<>("subjectEnd", HomologDB::getSubjectEnd, HomologDB::setSubjectEnd))
+			.add(new StringColumn<>("alignedSeq", HomologDB::getAlignedSeq, HomologDB::setAlignedSeq));
+
+	public static final Table<ResidueInfoDB> RESIDUE_INFO = new Table<ResidueInfoDB>("ResidueInfo", ResidueInfoDB::new)
+			.add(new RefColumn<>("chainCluster", CHAIN_CLUSTER, ResidueInfoDB::getChainCluster,
+					(r, c) -> { r.setChainCluster(c); c.getResidueInfos().add(r); }))
+			.add(new StringColumn<>("pdbCode", ResidueInfoDB::getPdbCode, ResidueInfoDB::setPdbCode))
+			.add(new StringColumn<>("repChain", ResidueInfoDB::getRepChain, ResidueInfoDB::setRepChain))
+			.add(new IntColumn<>("residueNumber", ResidueInfoDB::getResidueNumber, ResidueInfoDB::setResidueNumber))
+			.add(new StringColumn<>("pdbResidueNumber", ResidueInfoDB::getPdbResidueNumber, ResidueInfoDB::setPdbResidueNumber))
+			.add(new StringColumn<>("residueType", ResidueInfoDB::getResidueType, ResidueInfoDB::setResidueType))
+			.add(new IntColumn<>("uniProtNumber", ResidueInfoDB::getUniProtNumber, ResidueInfoDB::setUniProtNumber))
+			.add(new BooleanColumn<>("mismatchToRef", ResidueInfoDB::isMismatchToRef, ResidueInfoDB::setMismatchToRef))
+			.add(new DoubleColumn<>("entropyScore", ResidueInfoDB::getEntropyScore, ResidueInfoDB::setEntropyScore));
+
+	public static final Table<InterfaceClusterDB> INTERFACE_CLUSTER = new Table<InterfaceClusterDB>("InterfaceCluster", InterfaceClusterDB::new)
+			.add(new RefColumn<>("pdbInfo", PDB_INFO, InterfaceClusterDB::getPdbInfo,
+					(ic, p) -> { ic.setPdbInfo(p); p.getInterfaceClusters().add(ic); }))
+			.add(new StringColumn<>("pdbCode", InterfaceClusterDB::getPdbCode, InterfaceClusterDB::setPdbCode))
+			.add(new IntColumn<>("clusterId", InterfaceClusterDB::getClusterId, InterfaceClusterDB::setClusterId))
+			.add(new DoubleColumn<>("avgArea", InterfaceClusterDB::getAvgArea, InterfaceClusterDB::setAvgArea))
+			.add(new DoubleColumn<>("avgContactOverlapScore", InterfaceClusterDB::getAvgContactOverlapScore, InterfaceClusterDB::setAvgContactOverlapScore))
+			.add(new BooleanColumn<>("infinite", InterfaceClusterDB::isInfinite, InterfaceClusterDB::setInfinite))
+			.add(new BooleanColumn<>("isologous", InterfaceClusterDB::isIsologous, InterfaceClusterDB::setIsologous))
+			.add(new IntColumn<>("numMembers", InterfaceClusterDB::getNumMembers, InterfaceClusterDB::setNumMembers))
+			.add(new IntColumn<>("globalInterfClusterId", InterfaceClusterDB::getGlobalInterfClusterId, InterfaceClusterDB::setGlobalInterfClusterId));
+
+	public static final Table<InterfaceClusterScoreDB> INTERFACE_CLUSTER_SCORE = new Table<InterfaceClusterScoreDB>("InterfaceClusterScore", InterfaceClusterScoreDB::new)
+			.add(new RefColumn<>("interfaceCluster", INTERFACE_CLUSTER, InterfaceClusterScoreDB::getInterfaceCluster,
+					(s, ic) -> { s.setInterfaceCluster(ic); ic.addInterfaceClusterScore(s); }))
+			.add(new StringColumn<>("pdbCode", InterfaceClusterScoreDB::getPdbCode, InterfaceClusterScoreDB::setPdbCode))
+			.add(new IntColumn<>("clusterId", InterfaceClusterScoreDB::getClusterId, InterfaceClusterScoreDB::setClusterId))
+			.add(new StringColumn<>("method", InterfaceClusterScoreDB::getMethod, InterfaceClusterScoreDB::setMethod))
+			.add(new StringColumn<>("callName", InterfaceClusterScoreDB::getCallName, InterfaceClusterScoreDB::setCallName))
+			.add(new StringColumn<>("callReason", InterfaceClusterScoreDB::getCallReason, InterfaceClusterScoreDB::setCallReason))
+			.add(new DoubleColumn<>("score", InterfaceClusterScoreDB::getScore, InterfaceClusterScoreDB::setScore))
+			.add(new DoubleColumn<>("confidence", InterfaceClusterScoreDB::getConfidence, InterfaceClusterScoreDB::setConfidence))
+			.add(new DoubleColumn<>("score1", InterfaceClusterScoreDB::getScore1, InterfaceClusterScoreDB::setScore1))
+			.add(new DoubleColumn<>("score2", InterfaceClusterScoreDB::getScore2, InterfaceClusterScoreDB::setScore2));
+
+	public static final Table<InterfaceDB> INTERFACE = new Table<InterfaceDB>("Interface", InterfaceDB::new)
+			.add(new RefColumn<>("interfaceCluster", INTERFACE_CLUSTER, InterfaceDB::getInterfaceCluster,
+					(i, ic) -> { i.setInterfaceCluster(ic); ic.getInterfaces().add(i); }))
+			.add(new StringColumn<>("pdbCode", InterfaceDB::getPdbCode, InterfaceDB::setPdbCode))
+			.add(new IntColumn<>("interfaceId", InterfaceDB::getInterfaceId, InterfaceDB::setInterfaceId))
+			.add(new IntColumn<>("clusterId", InterfaceDB::getClusterId, InterfaceDB::setClusterId))
+			.add(new DoubleColumn<>("area", InterfaceDB::getArea, InterfaceDB::setArea))
+			.add(new StringColumn<>("chain1", InterfaceDB::getChain1, InterfaceDB::setChain1))
+			.add(new StringColumn<>("chain2", InterfaceDB::getChain2, InterfaceDB::setChain2))
+			.add(new StringColumn<>("operator", InterfaceDB::getOperator, InterfaceDB::setOperator))
+			.add(new StringColumn<>("operatorType", InterfaceDB::getOperatorType, InterfaceDB::setOperatorType))
+			.add(new BooleanColumn<>("infinite", InterfaceDB::isInfinite, InterfaceDB::setInfinite))
+			.add(new BooleanColumn<>("isologous", InterfaceDB::isIsologous, InterfaceDB::setIsologous))
+			.add(new DoubleColumn<>("selfContactOverlapScore", InterfaceDB::getSelfContactOverlapScore, InterfaceDB::setSelfContactOverlapScore))
+			.add(new BooleanColumn<>("prot1", InterfaceDB::isProt1, InterfaceDB::setProt1))
+			.add(new BooleanColumn<>("prot2", InterfaceDB::isProt2, InterfaceDB::setProt2))
+			.add(new IntColumn<>("operatorId", InterfaceDB::getOperatorId, InterfaceDB::setOperatorId))
+			.add(new IntColumn<>("xtalTrans_x", InterfaceDB::getXtalTrans_x, InterfaceDB::setXtalTrans_x))
+			.add(new IntColumn<>("xtalTrans_y", InterfaceDB::getXtalTrans_y, InterfaceDB::setXtalTrans_y))
+			.add(new IntColumn<>("xtalTrans_z", InterfaceDB::getXtalTrans_z, InterfaceDB::setXtalTrans_z))
+			.add(new IntColumn<>("globalInterfClusterId", InterfaceDB::getGlobalInterfClusterId, InterfaceDB::setGlobalInterfClusterId))
+			// the contacts list is not initialised in the constructor
+			.setFinisher(i -> {
+				if (i.getContacts()==null) i.setContacts(new ArrayList<ContactDB>());
+			});
+
+	public static final Table<InterfaceScoreDB> INTERFACE_SCORE = new Table<InterfaceScoreDB>("InterfaceScore", InterfaceScoreDB::new)
+			.add(new RefColumn<>("interface", INTERFACE, InterfaceScoreDB::getInterfaceItem,
+					(s, i) -> { s.setInterfaceItem(i); i.addInterfaceScore(s); }))
+			.add(new StringColumn<>("pdbCode", InterfaceScoreDB::getPdbCode, InterfaceScoreDB::setPdbCode))
+			.add(new IntColumn<>("interfaceId", InterfaceScoreDB::getInterfaceId, InterfaceScoreDB::setInterfaceId))
+			.add(new StringColumn<>("method", InterfaceScoreDB::getMethod, InterfaceScoreDB::setMethod))
+			.add(new StringColumn<>("callName", InterfaceScoreDB::getCallName, InterfaceScoreDB::setCallName))
+			.add(new StringColumn<>("callReason", InterfaceScoreDB::getCallReason, InterfaceScoreDB::setCallReason))
+			.add(new DoubleColumn<>("score", InterfaceScoreDB::getScore, InterfaceScoreDB::setScore))
+			.add(new DoubleColumn<>("confidence", InterfaceScoreDB::getConfidence, InterfaceScoreDB::setConfidence))
+			.add(new DoubleColumn<>("score1", InterfaceScoreDB::getScore1, InterfaceScoreDB::setScore1))
+			.add(new DoubleColumn<>("score2", InterfaceScoreDB::getScore2, InterfaceScoreDB::setScore2));
+
+	public static final Table<InterfaceWarningDB> INTERFACE_WARNING = new Table<InterfaceWarningDB>("InterfaceWarning", InterfaceWarningDB::new)
+			.add(new RefColumn<>("interface", INTERFACE, InterfaceWarningDB::getInterfaceItem,
+					(w, i) -> { w.setInterfaceItem(i); i.getInterfaceWarnings().add(w); }))
+			.add(new StringColumn<>("text", InterfaceWarningDB::getText, InterfaceWarningDB::setText));
+
+	public static final Table<ContactDB> CONTACT = new Table<ContactDB>("Contact", ContactDB::new)
+			.add(new RefColumn<>("interface", INTERFACE, ContactDB::getInterfaceItem,
+					(c, i) -> { c.setInterfaceItem(i); i.getContacts().add(c); }))
+			.add(new StringColumn<>("pdbCode", ContactDB::getPdbCode, ContactDB::setPdbCode))
+			.add(new IntColumn<>("interfaceId", ContactDB::getInterfaceId, ContactDB::setInterfaceId))
+			.add(new IntColumn<>("firstResNumber", ContactDB::getFirstResNumber, ContactDB::setFirstResNumber))
+			.add(new IntColumn<>("secondResNumber", ContactDB::getSecondResNumber, ContactDB::setSecondResNumber))
+			.add(new StringColumn<>("firstResType", ContactDB::getFirstResType, ContactDB::setFirstResType))
+			.add(new StringColumn<>("secondResType", ContactDB::getSecondResType, ContactDB::setSecondResType))
+			.add(new DoubleColumn<>("firstBurial", ContactDB::getFirstBurial, ContactDB::setFirstBurial))
+			.add(new DoubleColumn<>("secondBurial", ContactDB::getSecondBurial, ContactDB::setSecondBurial))
+			.add(new DoubleColumn<>("minDistance", ContactDB::getMinDistance, ContactDB::setMinDistance))
+			.add(new IntColumn<>("numAtoms", ContactDB::getNumAtoms, ContactDB::setNumAtoms))
+			.add(new BooleanColumn<>("clash", ContactDB::isClash, ContactDB::setClash))
+			.add(new IntColumn<>("numHBonds", ContactDB::getNumHBonds, ContactDB::setNumHBonds))
+			.add(new BooleanColumn<>("disulfide", ContactDB::isDisulfide, ContactDB::setDisulfide));
+
+	public static final Table<ResidueBurialDB> RESIDUE_BURIAL = new Table<ResidueBurialDB>("ResidueBurial", ResidueBurialDB::new)
+			.add(new RefColumn<>("interface", INTERFACE, ResidueBurialDB::getInterfaceItem,
+					(r, i) -> { r.setInterfaceItem(i); i.getResidueBurials().add(r); }))
+			// null if the burial could not be mapped to a residue of the representative chain
+			.add(new RefColumn<>("residueInfo", RESIDUE_INFO, ResidueBurialDB::getResidueInfo, ResidueBurialDB::setResidueInfo))
+			.add(new BooleanColumn<>("side", ResidueBurialDB::getSide, ResidueBurialDB::setSide))
+			.add(new DoubleColumn<>("asa", ResidueBurialDB::getAsa, ResidueBurialDB::setAsa))
+			.add(new DoubleColumn<>("bsa", ResidueBurialDB::getBsa, ResidueBurialDB::setBsa))
+			.add(new IntColumn<>("region", ResidueBurialDB::getRegion, (r, v) -> r.setRegion((short) v)));
+
+	public static final Table<AssemblyDB> ASSEMBLY = new Table<AssemblyDB>("Assembly", AssemblyDB::new)
+			.add(new RefColumn<>("pdbInfo", PDB_INFO, AssemblyDB::getPdbInfo,
+					(a, p) -> { a.setPdbInfo(p); p.addAssembly(a); }))
+			.add(new StringColumn<>("pdbCode", AssemblyDB::getPdbCode, AssemblyDB::setPdbCode))
+			.add(new IntColumn<>("id", AssemblyDB::getId, AssemblyDB::setId))
+			.add(new BooleanColumn<>("topologicallyValid", AssemblyDB::isTopologicallyValid, AssemblyDB::setTopologicallyValid))
+			.add(new StringColumn<>("interfaceClusterIds", AssemblyDB::getInterfaceClusterIds, AssemblyDB::setInterfaceClusterIds))
+			// the contents list is not initialised in the constructor
+			.setFinisher(a -> {
+				if (a.getAssemblyContents()==null) a.setAssemblyContents(new ArrayList<AssemblyContentDB>());
+			});
+
+	public static final Table<AssemblyScoreDB> ASSEMBLY_SCORE = new Table<AssemblyScoreDB>("AssemblyScore", AssemblyScoreDB::new)
+			.add(new RefColumn<>("assembly", ASSEMBLY, AssemblyScoreDB::getAssembly,
+					(s, a) -> { s.setAssembly(a); a.addAssemblyScore(s); }))
+			.add(new StringColumn<>("pdbCode", AssemblyScoreDB::getPdbCode, AssemblyScoreDB::setPdbCode))
+			.add(new StringColumn<>("method", AssemblyScoreDB::getMethod, AssemblyScoreDB::setMethod))
+			.add(new StringColumn<>("callName", AssemblyScoreDB::getCallName, AssemblyScoreDB::setCallName))
+			.add(new StringColumn<>("callReason", AssemblyScoreDB::getCallReason, AssemblyScoreDB::setCallReason))
+			.add(new DoubleColumn<>("score", AssemblyScoreDB::getScore, AssemblyScoreDB::setScore))
+			.add(new DoubleColumn<>("confidence", AssemblyScoreDB::getConfidence, AssemblyScoreDB::setConfidence));
+
+	public static final Table<AssemblyContentDB> ASSEMBLY_CONTENT = new Table<AssemblyContentDB>("AssemblyContent", AssemblyContentDB::new)
+			.add(new RefColumn<>("assembly", ASSEMBLY, AssemblyContentDB::getAssembly,
+					(c, a) -> { c.setAssembly(a); a.getAssemblyContents().add(c); }))
+			.add(new StringColumn<>("pdbCode", AssemblyContentDB::getPdbCode, AssemblyContentDB::setPdbCode))
+			.add(new IntColumn<>("mmSize", AssemblyContentDB::getMmSize, AssemblyContentDB::setMmSize))
+			.add(new StringColumn<>("symmetry", AssemblyContentDB::getSymmetry, AssemblyContentDB::setSymmetry))
+			.add(new StringColumn<>("stoichiometry", AssemblyContentDB::getStoichiometry, AssemblyContentDB::setStoichiometry))
+			.add(new StringColumn<>("composition", AssemblyContentDB::getComposition, AssemblyContentDB::setComposition))
+			.add(new StringColumn<>("compositionRepChainIds", AssemblyContentDB::getCompositionRepChainIds, AssemblyContentDB::setCompositionRepChainIds))
+			.add(new StringColumn<>("chainIds", AssemblyContentDB::getChainIds, AssemblyContentDB::setChainIds));
+
+	public static final Table<AssemblyInterfaceCluster> ASSEMBLY_INTERFACE_CLUSTER = new Table<AssemblyInterfaceCluster>("AssemblyInterfaceCluster", AssemblyInterfaceCluster::new)
+			.add(new RefColumn<>("assembly", ASSEMBLY, AssemblyInterfaceCluster::getAssembly, (l, a) -> l.assembly = a))
+			.add(new RefColumn<>("interfaceCluster", INTERFACE_CLUSTER, AssemblyInterfaceCluster::getInterfaceCluster, (l, ic) -> l.interfaceCluster = ic))
+			.setFinisher(l -> {
+				if (l.assembly==null || l.interfaceCluster==null) return;
+				l.assembly.getInterfaceClusters().add(l.interfaceCluster);
+				l.interfaceCluster.addAssembly(l.assembly);
+			});
+
+	/**
+	 * All tables, referenced tables before the tables referencing them
+	 */
+	public static final List<Table<?>> TABLES = Collections.unmodifiableList(Arrays.<Table<?>>asList(
+			PDB_INFO, RUN_PARAMETERS,
+			CHAIN_CLUSTER, UNIPROT_REF_WARNING, HOMOLOG, RESIDUE_INFO,
+			INTERFACE_CLUSTER, INTERFACE_CLUSTER_SCORE, INTERFACE, INTERFACE_SCORE, INTERFACE_WARNING, CONTACT, RESIDUE_BURIAL,
+			ASSEMBLY, ASSEMBLY_SCORE, ASSEMBLY_CONTENT, ASSEMBLY_INTERFACE_CLUSTER));
+
+	public static Table<?> getTable(String name) {
+		for (Table<?> table : TABLES) {
+			if (table.getName().equals(name)) return table;
+		}
+		return null;
+	}
+
+	private ResultSchema() {
+
+	}
+}
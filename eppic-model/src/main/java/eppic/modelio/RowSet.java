@@ -0,0 +1,57 @@
+package eppic.modelio;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The rows of all tables of a result file, with the row indices needed to
+ * encode the references between tables.
+ */
+public class RowSet {
+
+	private final Map<Table<?>, List<?>> rows;
+	private final Map<Table<?>, Map<Object, Integer>> indices;
+
+	public RowSet() {
+		this.rows = new HashMap<>();
+		this.indices = new HashMap<>();
+	}
+
+	public <T> void setRows(Table<T> table, List<T> tableRows) {
+		rows.put(table, tableRows);
+		indices.remove(table);
+	}
+
+	@SuppressWarnings("unchecked")
+	public <T> List<T> getRows(Table<T> table) {
+		List<T> tableRows = (List<T>) rows.get(table);
+		if (tableRows == null) return Collections.emptyList();
+		return tableRows;
+	}
+
+	/**
+	 * Returns the index of the given row (by identity) in the table, -1 if the row is null
+	 * or not in the table.
+	 * @param table
+	 * @param row
+	 * @return
+	 */
+	public <T> int indexOf(Table<T> table, T row) {
+		if (row == null) return -1;
+		Map<Object, Integer> index = indices.get(table);
+		if (index == null) {
+			index = new IdentityHashMap<>();
+			List<T> tableRows = getRows(table);
+			for (int i=0; i<tableRows.size(); i++) {
+				index.put(tableRows.get(i), i);
+			}
+			indices.put(table, index);
+		}
+		Integer i = index.get(row);
+		if (i == null) return -1;
+		return i;
+	}
+}
@@ -0,0 +1,67 @@
+package eppic.modelio;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * A table of the binary result file: one row per entity of a type, with its columns.
+ *
+ * @param <T> the row type
+ */
+public class Table<T> {
+
+	private final String name;
+	private final Supplier<T> factory;
+	private final List<Column<T>> columns;
+	private Consumer<T> finisher;
+
+	public Table(String name, Supplier<T> factory) {
+		this.name = name;
+		this.factory = factory;
+		this.columns = new ArrayList<>();
+	}
+
+	public Table<T> add(Column<T> column) {
+		columns.add(column);
+		return this;
+	}
+
+	/**
+	 * Sets an action to run on every row once all columns of the table are read
+	 * @param finisher
+	 * @return
+	 */
+	public Table<T> setFinisher(Consumer<T> finisher) {
+		this.finisher = finisher;
+		return this;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public T newRow() {
+		return factory.get();
+	}
+
+	public List<Column<T>> getColumns() {
+		return Collections.unmodifiableList(columns);
+	}
+
+	public Column<T> getColumn(String columnName) {
+		for (Column<T> column : columns) {
+			if (column.getName().equals(columnName)) return column;
+		}
+		return null;
+	}
+
+	public void finish(List<T> rows) {
+		if (finisher == null) return;
+		for (T row : rows) {
+			finisher.accept(row);
+		}
+	}
+}
@@ -29,18 +29,13 @@ import ch.systemsx.sybit.crkwebui.server.commons.util.log.LogHandler;
 import ch.systemsx.sybit.crkwebui.server.commons.validators.PreSubmitValidator;
 import ch.systemsx.sybit.crkwebui.server.commons.validators.RunJobDataValidator;
 import ch.systemsx.sybit.crkwebui.server.commons.validators.SessionValidator;
-import ch.systemsx.sybit.crkwebui.server.db.dao.AssemblyDAO;
+import ch.systemsx.sybit.crkwebui.server.db.ResultCache;
 import ch.systemsx.sybit.crkwebui.server.db.dao.ChainClusterDAO;
-import ch.systemsx.sybit.crkwebui.server.db.dao.InterfaceClusterDAO;
-import ch.systemsx.sybit.crkwebui.server.db.dao.InterfaceDAO;
 import ch.systemsx.sybit.crkwebui.server.db.dao.JobDAO;
 import ch.systemsx.sybit.crkwebui.server.db.dao.PDBInfoDAO;
 import ch.systemsx.sybit.crkwebui.server.db.dao.ResidueDAO;
 import ch.systemsx.sybit.crkwebui.server.db.dao.UserSessionDAO;
-import ch.systemsx.sybit.crkwebui.server.db.dao.jpa.AssemblyDAOJpa;
 import ch.systemsx.sybit.crkwebui.server.db.dao.jpa.ChainClusterDAOJpa;
-import ch.systemsx.sybit.crkwebui.server.db.dao.jpa.InterfaceClusterDAOJpa;
-import ch.systemsx.sybit.crkwebui.server.db.dao.jpa.InterfaceDAOJpa;
 import ch.systemsx.sybit.crkwebui.server.db.dao.jpa.JobDAOJpa;
 import ch.systemsx.sybit.crkwebui.server.db.dao.jpa.PDBInfoDAOJpa;
 import ch.systemsx.sybit.crkwebui.server.db.dao.jpa.ResidueDAOJpa;
@@ -54,6 +49,7 @@ import ch.systemsx.sybit.crkwebui.server.jobs.managers.JobManagerFactory;
 import ch.systemsx.sybit.crkwebui.server.jobs.managers.commons.JobManager;
 import ch.systemsx.sybit.crkwebui.server.jobs.managers.commons.JobStatusUpdater;
 import ch.systemsx.sybit.crkwebui.server.runners.CrkRunner;
+import ch.systemsx.sybit.crkwebui.server.runners.JobDeduplicator;
 import ch.systemsx.sybit.crkwebui.server.settings.generators.ApplicationSettingsGenerator;
 import ch.systemsx.sybit.crkwebui.shared.exceptions.CrkWebException;
 import ch.systemsx.sybit.crkwebui.shared.exceptions.DaoException;
@@ -61,10 +57,6 @@ import ch.systemsx.sybit.crkwebui.shared.exceptions.JobHandlerException;
 import ch.systemsx.sybit.crkwebui.shared.exceptions.JobManagerException;
 import ch.systemsx.sybit.crkwebui.shared.helpers.PDBSearchResult;
 import ch.systemsx.sybit.crkwebui.shared.model.ApplicationSettings;
-import ch.systemsx.sybit.crkwebui.shared.model.Assembly;
-import ch.systemsx.sybit.crkwebui.shared.model.ChainCluster;
-import ch.systemsx.sybit.crkwebui.shared.model.Interface;
-import ch.systemsx.sybit.crkwebui.shared.model.InterfaceCluster;
 import ch.systemsx.sybit.crkwebui.shared.model.JobsForSession;
 import ch.systemsx.sybit.crkwebui.shared.model.PdbInfo;
 import ch.systemsx.sybit.crkwebui.shared.model.ProcessingData;
@@ -150,6 +142,9 @@ public class CrkWebServiceImpl extends XsrfProtectedServiceServlet implements Cr
 	// the suffix of the filename used for writing the steps for the progress animation
 	public static final String STEPS_FILE_NAME_SUFFIX 	= ".steps.log";
 
+	// the priority of jobs submitted without email address, for job managers scheduling the jobs themselves
+	private static final int INTERACTIVE_JOB_PRIORITY = JobManager.DEFAULT_PRIORITY + 1;
+
 	/**
 	 * The settings to be passed to EntityManagerHandler to initialise the JPA connection
 	 */
@@ -191,6 +186,7 @@ public class CrkWebServiceImpl extends XsrfProtectedServiceServlet implements Cr
 
 	private JobManager jobManager;
 	private CrkRunner crkRunner;
+	private JobDeduplicator jobDeduplicator;
 
 	private JobStatusUpdater jobStatusUpdater;
 	private Thread jobDaemon;
@@ -263,6 +259,26 @@ public class CrkWebServiceImpl extends XsrfProtectedServiceServlet implements Cr
 		doIPBasedVerification = Boolean.parseBoolean(properties.getProperty("limit_access_by_ip","false"));
 		defaultNrOfAllowedSubmissionsForIP = Integer.parseInt(properties.getProperty("nr_of_allowed_submissions_for_ip","100"));
 
+		try {
+			ResultCache.configure(properties);
+		} catch (IllegalArgumentException e) {
+			throw new ServletException("Invalid value for result cache properties: "+e.getMessage());
+		}
+
+		if(Boolean.parseBoolean(properties.getProperty("dedup_jobs", "false")))
+		{
+			String dedupIndexPath = properties.getProperty("dedup_index_path", "").trim();
+			File dedupIndexDir = dedupIndexPath.isEmpty() ? new File(generalTmpDirectoryName, "eppic_job_index") : new File(dedupIndexPath);
+			long dedupMaxAge = Long.parseLong(properties.getProperty("dedup_max_age_days", "7"))*24*3600*1000;
+			try {
+				jobDeduplicator = new JobDeduplicator(new File(generalDestinationDirectoryName), dedupIndexDir, crkApplicationLocation, dedupMaxAge);
+				logger.info("Identical job submissions reuse results of jobs up to {} days old, index in {}",
+						dedupMaxAge/(24*3600*1000), dedupIndexDir);
+			} catch (IOException e) {
+				throw new ServletException("Could not create the directory for the job index ('dedup_index_path' option): "+dedupIndexDir+". Error: "+e.getMessage());
+			}
+		}
+
 		String queuingSystem = properties.getProperty("queuing_system");
 		if(queuingSystem == null)
 		{
@@ -385,12 +401,24 @@ public class CrkWebServiceImpl extends XsrfProtectedServiceServlet implements Cr
 			properties.get(ApplicationSettingsGenerator.DEVELOPMENT_MODE).equals("true")) {
 			
 			logger.info("Proceeding to spawn the job status updater daemon");
-			jobStatusUpdater = new JobStatusUpdater(jobManager,
-					new JobDAOJpa(),
-					resultsPathUrl,
-					emailSender,
-					emailMessageData,
-					generalDestinationDirectoryName);
+			long minPollingInterval = Long.parseLong(properties.getProperty("job_status_min_polling_interval", String.valueOf(JobStatusUpdater.POLLING_INTERVAL)));
+			long maxPollingInterval = Long.parseLong(properties.getProperty("job_status_max_polling_interval", String.valueOf(minPollingInterval)));
+			boolean watchJobMarkers = Boolean.parseBoolean(properties.getProperty("job_status_watch_markers", "false"));
+			try {
+				jobStatusUpdater = new JobStatusUpdater(jobManager,
+						new JobDAOJpa(),
+						resultsPathUrl,
+						emailSender,
+						emailMessageData,
+						generalDestinationDirectoryName,
+						minPollingInterval,
+						maxPollingInterval,
+						watchJobMarkers);
+			} catch (IllegalArgumentException e) {
+				throw new ServletException("Invalid value for job status polling properties: "+e.getMessage());
+			}
+			logger.info("Job statuses polled every {} to {} ms, watching of job directories {}",
+					minPollingInterval, maxPollingInterval, watchJobMarkers ? "enabled" : "disabled");
 			jobDaemon = new Thread(jobStatusUpdater);
 			jobDaemon.start();
 		} else {
@@ -509,9 +537,27 @@ public class CrkWebServiceImpl extends XsrfProtectedServiceServlet implements Cr
 					PreSubmitValidator.checkIfSubmit(localCifDir, runJobData.getInput());
 				}
 
-				submissionId = crkRunner.run(runJobData,
-						localDestinationDirName,
-						inputType);
+				// without an email address the user waits for the results on the page: the job goes first
+				int priority = (runJobData.getEmailAddress() == null || runJobData.getEmailAddress().trim().isEmpty()) ?
+						INTERACTIVE_JOB_PRIORITY : JobManager.DEFAULT_PRIORITY;
+
+				RunJobDataValidator.validateInput(runJobData.getInput());
+				RunJobDataValidator.validateInputParameters(runJobData.getInputParameters());
+				String originalJobId = findIdenticalJob(runJobData, inputType, localDestinationDirName, jobDAO);
+
+				if(originalJobId != null)
+				{
+					LogHandler.writeToLogFile(logFile, "Job submitted - identical to a previous job, reusing its results\n");
+					submissionId = JobDeduplicator.DUPLICATE_SUBMISSION_ID_PREFIX + originalJobId;
+				}
+				else
+				{
+					submissionId = crkRunner.run(runJobData,
+							localDestinationDirName,
+							inputType,
+							getThreadLocalRequest().getRemoteAddr(),
+							priority);
+				}
 
 				emailTitle = emailMessageData.getEmailJobSubmittedTitle().replaceFirst("%s", runJobData.getInput());
 				emailMessage = emailMessageData.getEmailJobSubmittedMessage().replaceFirst("%s", runJobData.getInput());
@@ -555,6 +601,37 @@ public class CrkWebServiceImpl extends XsrfProtectedServiceServlet implements Cr
 		return null;
 	}
 
+	/**
+	 * Retrieves a previous job with the same input and parameters whose results can be reused,
+	 * registering the given job as the one computing them if there is none.
+	 * @param runJobData the job to run
+	 * @param inputType type of the input
+	 * @param jobDirectoryName directory of the job
+	 * @param jobDAO
+	 * @return identifier of the previous job, null if the job has to be run
+	 */
+	private String findIdenticalJob(RunJobData runJobData, int inputType, String jobDirectoryName, JobDAO jobDAO)
+	{
+		if(jobDeduplicator == null)
+		{
+			return null;
+		}
+
+		try
+		{
+			String key = jobDeduplicator.computeKey(runJobData.getInput(),
+					inputType,
+					runJobData.getInputParameters(),
+					new File(jobDirectoryName));
+			return jobDeduplicator.findOrRegister(key, runJobData.getJobId(), jobDAO);
+		}
+		catch(IOException | DaoException e)
+		{
+			logger.warn("Could not check whether job "+runJobData.getJobId()+" is identical to a previous job, running it. Error: "+e.getMessage());
+			return null;
+		}
+	}
+
 	@Override
 	public ProcessingData getResultsOfProcessing(String jobId) throws Exception //whaveter calls this fails
 	{
@@ -715,30 +792,27 @@ public class CrkWebServiceImpl extends XsrfProtectedServiceServlet implements Cr
 		JobDAO jobDAO = new JobDAOJpa();
 		InputWithType input = jobDAO.getInputWithTypeForJob(jobId);
 
-		PDBInfoDAO pdbInfoDAO = new PDBInfoDAOJpa();
-		PdbInfo pdbInfo = pdbInfoDAO.getPDBInfo(jobId);
-		
-		AssemblyDAO assemblyDAO = new AssemblyDAOJpa();
-		List<Assembly> assemblies = assemblyDAO.getAssemblies(pdbInfo.getUid());
-		pdbInfo.setAssemblies(assemblies); 
-
-		InterfaceClusterDAO clusterDAO = new InterfaceClusterDAOJpa();
-		List<InterfaceCluster> clusters = clusterDAO.getInterfaceClustersWithoutInterfaces(pdbInfo.getUid());
-
-		InterfaceDAO interfaceDAO = new InterfaceDAOJpa();
-		for(InterfaceCluster cluster: clusters){
-			List<Interface> interfaceItems = interfaceDAO.getInterfacesWithScores(cluster.getUid());
-			cluster.setInterfaces(interfaceItems);
+		// the results of precomputed entries only change through the upload tools, which give the job a new uid
+		boolean cacheable = input.getInputType() == InputType.PDBCODE.getIndex();
+		ResultCache<PdbInfo> cache = ResultCache.getPdbInfoCache();
+		if (cacheable) {
+			PdbInfo pdbInfo = cache.get(jobId, null, input.getJobUid());
+			if (pdbInfo != null) {
+				return pdbInfo;
+			}
 		}
-		pdbInfo.setInterfaceClusters(clusters);
 
-		ChainClusterDAO chainClusterDAO = new ChainClusterDAOJpa();
-		List<ChainCluster> chainClusters = chainClusterDAO.getChainClusters(pdbInfo.getUid());
-		pdbInfo.setChainClusters(chainClusters);
+		PDBInfoDAO pdbInfoDAO = new PDBInfoDAOJpa();
+		PdbInfo pdbInfo = pdbInfoDAO.getPDBInfoWithResults(jobId, null, false, true, true);
 		
 		pdbInfo.setInputType(input.getInputType());
 		pdbInfo.setInputName(input.getInputName());
 		
+		if (cacheable) {
+			cache.put(jobId, null, input.getJobUid(), pdbInfo);
+			logger.debug("{}", cache);
+		}
+		
 		return pdbInfo;
 	}
 
@@ -814,7 +888,11 @@ public class CrkWebServiceImpl extends XsrfProtectedServiceServlet implements Cr
 			File killFile = new File(jobDirectory, KILLED_FILE_NAME);
 			killFile.createNewFile();
 
-			jobManager.stopJob(submissionId);
+			// the original job of a duplicate may be in use by other jobs
+			if(!JobDeduplicator.isDuplicate(submissionId))
+			{
+				jobManager.stopJob(submissionId);
+			}
 
 			result = "Job: " + jobId + " was stopped";
 
@@ -882,6 +960,8 @@ public class CrkWebServiceImpl extends XsrfProtectedServiceServlet implements Cr
 
 		}
 
+		logger.info(jobStatusUpdater.getDetectionStatistics());
+
 		try
 		{
 			jobManager.finalize();
@@ -1,23 +1,34 @@
 package ch.systemsx.sybit.crkwebui.server.commons.util.io;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.LinkedList;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
-import java.util.Map;
-import java.util.PriorityQueue;
+import java.util.Properties;
 import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -25,12 +36,20 @@ import org.slf4j.LoggerFactory;
 
 /**
  * Thread-safe caching of files.
- * 
+ *
  * <p>Conceptually this can be thought of as a simple key-value cache, where
  * the unique key happens to be the path to a file and the value can be returned
  * as a String, Reader, File handle, etc. Behind the hood, values are cached to
- * memory (for a limited number of hits) and to disk.
- * 
+ * memory (for a limited number of entries and bytes) and to disk.
+ *
+ * <p>Requests for different paths don't block each other: the contents are
+ * computed in a thread pool outside of any lock, and concurrent requests for
+ * the same path wait for a single computation. The least recently used entries
+ * are evicted from memory once either the maximum number of entries or the maximum
+ * number of bytes is exceeded. Entries still being written to disk are kept
+ * until the writing finishes. Optionally the contents are kept gzip-compressed in memory,
+ * trading some CPU on each access for a smaller footprint of large (e.g. json) contents.
+ *
  * <p>All paths referenced in the FileCache should be considered to be owned by
  * the cache. Although the {@link #getFile(String, Callable)} method provides
  * access to the underlying object, this should not be used to write or delete
@@ -43,63 +62,148 @@ import org.slf4j.LoggerFactory;
 public class FileCache {
 	private static final Logger logger = LoggerFactory.getLogger(FileCache.class);
 
+	/**
+	 * Server property for the maximum number of files kept in memory
+	 */
+	public static final String PROPERTY_MAX_ENTRIES = "file_cache_max_entries";
+	/**
+	 * Server property for the maximum number of bytes kept in memory
+	 */
+	public static final String PROPERTY_MAX_BYTES = "file_cache_max_bytes";
+	/**
+	 * Server property to keep the contents gzip-compressed in memory
+	 */
+	public static final String PROPERTY_COMPRESS = "file_cache_compress";
+
+	public static final int DEFAULT_MAX_ENTRIES = 16;
+	public static final long DEFAULT_MAX_BYTES = 256L * 1024 * 1024;
+
+	/**
+	 * The contents of a file as kept in memory, either as a String or gzip-compressed
+	 */
+	private static class CachedValue {
+
+		private final String str;
+		private final byte[] compressed;
+
+		private CachedValue(String str, byte[] compressed) {
+			this.str = str;
+			this.compressed = compressed;
+		}
+
+		public static CachedValue create(String str, boolean compress) throws IOException {
+			if (!compress || str == null) {
+				return new CachedValue(str, null);
+			}
+			ByteArrayOutputStream bos = new ByteArrayOutputStream(Math.max(32, str.length() / 8));
+			try (Writer writer = new OutputStreamWriter(new GZIPOutputStream(bos), StandardCharsets.UTF_8)) {
+				writer.write(str);
+			}
+			return new CachedValue(null, bos.toByteArray());
+		}
+
+		public String getString() throws IOException {
+			if (compressed == null) {
+				return str;
+			}
+			StringBuilder sb = new StringBuilder(compressed.length * 4);
+			try (Reader reader = new InputStreamReader(new GZIPInputStream(new ByteArrayInputStream(compressed)), StandardCharsets.UTF_8)) {
+				char[] buf = new char[8192];
+				int n;
+				while ((n = reader.read(buf)) >= 0) {
+					sb.append(buf, 0, n);
+				}
+			}
+			return sb.toString();
+		}
+
+		/**
+		 * @return the approximate size in bytes of this value in memory
+		 */
+		public long getWeight() {
+			if (compressed != null) {
+				return compressed.length + 16;
+			}
+			return str == null ? 16 : 2L * str.length() + 40;
+		}
+	}
+
 	/**
 	 * Represents the cached contents of a file. Only one CacheFile should exist
 	 * for any given path. Also, it is assumed that this class owns the underlying
 	 * file (e.g. it will not be modified by other processes during the life of
 	 * the CacheFile object.
-	 * 
-	 * <p>This class is not internally synchronized, so external synchronization
-	 * (e.g. on FileCache.memcache) is required for all access.
+	 *
+	 * <p>The contents are loaded (read from disk or computed) in the cache's thread pool
+	 * as soon as the object is created, and then written to disk asynchronously.
 	 * @author Spencer Bliven
 	 *
 	 */
-	protected static class CacheFile implements Comparable<CacheFile> {
-		
-		// auto-incrementing global serial number. Synchronize on the class object for access.
-		private static long nextSerial = 0;
-		// serial number at last time of access
-		private long serial;
-		
-		private final Future<String> contents;
-		private final Future<?> writer;
+	protected static class CacheFile {
+
+		// value of the cache's clock at last time of access
+		private volatile long lastAccess;
+
+		private final FileCache cache;
+		private final Future<CachedValue> contents;
+		// completed once the contents are on disk
+		private final CompletableFuture<Void> written;
+		private volatile Future<?> writer;
+		private volatile boolean deleted;
 		private final File file;
-		public CacheFile(File file, Callable<String> contents, ExecutorService executor) {
-			// assign next serial number
-			synchronized (CacheFile.class) {
-				serial = nextSerial;
-				nextSerial++;
-			}
+
+		public CacheFile(File file, Callable<String> contents, FileCache cache) {
+			this.cache = cache;
 			this.file = file;
+			touch();
 
 			// if already cached, don't recalculate
-			if(fileExists(file)) {
-				contents = () -> FileContentReader.readContentOfFile(file, false);
-			}
+			boolean onDisk = fileExists(file);
+			this.written = onDisk ? CompletableFuture.completedFuture(null) : new CompletableFuture<>();
+
 			// begin reading contents
-			this.contents = executor.submit(contents);
-			// begin writing contents
-			if(!fileExists(file)) {
-				Runnable write = () -> {
-					try
-					{
-						String str = this.contents.get();
-						try ( FileWriter writer = new FileWriter(file) ) {
-							writer.write(str);
+			this.contents = cache.executor.submit(() -> {
+				long start = System.nanoTime();
+				try {
+					String str;
+					if (onDisk) {
+						str = FileContentReader.readContentOfFile(file, false);
+						cache.diskLoads.incrementAndGet();
+					} else {
+						str = contents.call();
+						cache.computations.incrementAndGet();
+						// begin writing contents
+						if (!deleted) {
+							writer = cache.executor.submit(() -> write(str));
 						}
-					} catch (IOException|InterruptedException|ExecutionException e) {
-						logger.error("Error writing {}",file,e);
 					}
-				};
-				this.writer = executor.submit(write);
-			} else {
-				this.writer = null;
-			}
+					cache.totalLoadTime.addAndGet(System.nanoTime() - start);
+					return CachedValue.create(str, cache.compress);
+				} catch (Exception e) {
+					cache.loadFailures.incrementAndGet();
+					written.completeExceptionally(e);
+					throw e;
+				}
+			});
 		}
-		@Override
-		public int compareTo(CacheFile o) {
-			return Long.compare(this.serial, o.serial);
+
+		private void write(String str) {
+			if (deleted) {
+				written.cancel(false);
+				return;
+			}
+			try ( FileWriter writer = new FileWriter(file) ) {
+				writer.write(str);
+			} catch (IOException e) {
+				logger.error("Error writing {}",file,e);
+				written.completeExceptionally(e);
+				return;
+			}
+			written.complete(null);
+			// entries are not evicted while writing: do it now if they were due
+			cache.removeExpired();
 		}
+
 		/**
 		 * @return The contents of this file
 		 * @throws CancellationException if the computation was cancelled
@@ -108,16 +212,21 @@ public class FileCache {
 		 */
 		public String get() throws CancellationException, InterruptedException, ExecutionException {
 			touch();
-			return contents.get();
+			return getString(contents.get());
 		}
 		public String get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
 			touch();
-			return contents.get(timeout, unit);
+			return getString(contents.get(timeout, unit));
 		}
-		public File getFile() throws InterruptedException, ExecutionException {
-			if(writer != null) {
-				writer.get();
+		private static String getString(CachedValue value) throws ExecutionException {
+			try {
+				return value.getString();
+			} catch (IOException e) {
+				throw new ExecutionException(e);
 			}
+		}
+		public File getFile() throws InterruptedException, ExecutionException {
+			written.get();
 			assert file.exists();//File should have been written before here
 			return file;
 		}
@@ -128,102 +237,221 @@ public class FileCache {
 		 * Delete this cachefile. The CacheFile object should be discarded afterwards.
 		 */
 		public void delete() {
-			if(writer != null)
-				writer.cancel(true);
+			deleted = true;
+			Future<?> w = writer;
+			if(w != null)
+				w.cancel(true);
 			contents.cancel(true);
+			written.cancel(false);
 			file.delete();
 		}
 		/** Marks this file as recently accessed for purposes of cache recency
 		 */
 		public void touch() {
-			synchronized (CacheFile.class) {
-				if( serial == nextSerial) {
-					return; // already newest file
-				}
-				serial = nextSerial;
-				nextSerial++;
-			}
+			lastAccess = cache.clock.incrementAndGet();
 		}
-		
+
+		public long getLastAccess() {
+			return lastAccess;
+		}
+
 		/**
-		 * Wait for the file to finish writing before finalizing
-		 * @throws Throwable
+		 * @return the approximate size in bytes of the contents in memory, 0 if not loaded yet
 		 */
-		@Override
-		protected void finalize() throws Throwable {
-			boolean completed = writer == null || writer.isDone();
-			while(!completed) {
-				logger.info("Waiting to finish writing {}",this.file);
-				try {
-					writer.get(10, TimeUnit.SECONDS);
-					completed = true;
-				} catch(TimeoutException e) {}
+		public long getWeight() {
+			if (!contents.isDone() || contents.isCancelled()) {
+				return 0;
+			}
+			try {
+				return contents.get().getWeight();
+			} catch (InterruptedException|ExecutionException e) {
+				return 0;
 			}
-			super.finalize();
 		}
+
+		/**
+		 * Get whether loading the contents failed
+		 * @return
+		 */
+		public boolean isFailed() {
+			return written.isCompletedExceptionally();
+		}
+
 		/**
 		 * Get whether the contents have finished writing to disk
 		 * @return
 		 */
 		public boolean isSynced() {
-			if(writer != null && writer.isDone() && !writer.isCancelled() ) {
-				return true;
+			if (!written.isDone()) {
+				return false;
 			}
-			return file.exists() && file.length()>0;
+			return !written.isCompletedExceptionally() || fileExists(file);
 		}
 	}
-		
 
-	private ExecutorService executor;
+	/**
+	 * A snapshot of the cache statistics
+	 */
+	public static class Stats {
+		private final long hits;
+		private final long misses;
+		private final long diskLoads;
+		private final long computations;
+		private final long loadFailures;
+		private final long evictions;
+		private final long totalLoadTime;
+		private final int entries;
+		private final long bytes;
+
+		private Stats(FileCache cache, int entries, long bytes) {
+			this.hits = cache.hits.get();
+			this.misses = cache.misses.get();
+			this.diskLoads = cache.diskLoads.get();
+			this.computations = cache.computations.get();
+			this.loadFailures = cache.loadFailures.get();
+			this.evictions = cache.evictions.get();
+			this.totalLoadTime = cache.totalLoadTime.get();
+			this.entries = entries;
+			this.bytes = bytes;
+		}
+
+		/**
+		 * @return the number of requests served from memory
+		 */
+		public long getHits() {
+			return hits;
+		}
+		/**
+		 * @return the number of requests for paths not in memory
+		 */
+		public long getMisses() {
+			return misses;
+		}
+		/**
+		 * @return the number of misses loaded from a file on disk
+		 */
+		public long getDiskLoads() {
+			return diskLoads;
+		}
+		/**
+		 * @return the number of misses whose contents had to be computed
+		 */
+		public long getComputations() {
+			return computations;
+		}
+		public long getLoadFailures() {
+			return loadFailures;
+		}
+		public long getEvictions() {
+			return evictions;
+		}
+		/**
+		 * @return the mean time in milliseconds to load (read or compute) a file
+		 */
+		public double getMeanLoadTime() {
+			long loads = diskLoads + computations;
+			return loads == 0 ? 0 : totalLoadTime / 1000000.0 / loads;
+		}
+		public double getHitRate() {
+			long requests = hits + misses;
+			return requests == 0 ? 0 : (double) hits / requests;
+		}
+		public int getEntries() {
+			return entries;
+		}
+		public long getBytes() {
+			return bytes;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%d entries, %d bytes in memory. Hits: %d, misses: %d (%.1f%% hit rate), " +
+					"loaded from disk: %d, computed: %d, failed: %d, mean load time: %.1f ms, evictions: %d",
+					entries, bytes, hits, misses, 100.0 * getHitRate(),
+					diskLoads, computations, loadFailures, getMeanLoadTime(), evictions);
+		}
+	}
+
+	private final ExecutorService executor;
 
-	// access the following 3 members are synchronized on memcache
 	// map of all files currently in memory
-	private Map<String, CacheFile> memcache;
-	// queue of memcache values, to allow easy expiration of oldest entries
-	private PriorityQueue<CacheFile> queue;
+	private final ConcurrentHashMap<String, CacheFile> memcache;
 	// Set of "safe" files, used to implement purging. null indicates all are safe.
-	private Set<String> notpurged = null;
-	
-	private int capacity;
-	
+	private volatile Set<String> notpurged = null;
+
+	// logical clock giving the access order of the entries
+	private final AtomicLong clock = new AtomicLong();
+	// only one thread evicts at a time, gets and loads are not blocked by it
+	private final ReentrantLock evictionLock = new ReentrantLock();
+
+	private volatile int capacity;
+	private volatile long maxBytes;
+	private volatile boolean compress;
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong diskLoads = new AtomicLong();
+	private final AtomicLong computations = new AtomicLong();
+	private final AtomicLong loadFailures = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+	private final AtomicLong totalLoadTime = new AtomicLong();
+
 	/**
 	 * For most situations, use {@link #getInstance()} instead
 	 */
 	public FileCache() { // package visibility for testing only
 		executor = Executors.newCachedThreadPool();
-		memcache = new HashMap<>();
-		queue = new PriorityQueue<>();
-		setCapacity(16);
+		memcache = new ConcurrentHashMap<>();
+		setCapacity(DEFAULT_MAX_ENTRIES);
+		setMaxBytes(DEFAULT_MAX_BYTES);
 	}
-	
+
 	// Singleton instance
 	private static FileCache instance = null;
 	/**
 	 * Get the singleton instance
 	 * @return
 	 */
-	public static FileCache getInstance() {
+	public static synchronized FileCache getInstance() {
 		if(instance == null) {
 			instance = new FileCache();
 		}
 		return instance;
 	}
-	
+
+	/**
+	 * Sets the capacity and the in-memory compression from the given server properties
+	 * ({@value #PROPERTY_MAX_ENTRIES}, {@value #PROPERTY_MAX_BYTES} and {@value #PROPERTY_COMPRESS}).
+	 * Properties not set are left unchanged.
+	 * @param properties
+	 */
+	public void configure(Properties properties) {
+		String maxEntries = properties.getProperty(PROPERTY_MAX_ENTRIES);
+		if (maxEntries != null && !maxEntries.trim().isEmpty()) {
+			setCapacity(Integer.parseInt(maxEntries.trim()));
+		}
+		String maxBytes = properties.getProperty(PROPERTY_MAX_BYTES);
+		if (maxBytes != null && !maxBytes.trim().isEmpty()) {
+			setMaxBytes(Long.parseLong(maxBytes.trim()));
+		}
+		String compress = properties.getProperty(PROPERTY_COMPRESS);
+		if (compress != null && !compress.trim().isEmpty()) {
+			setCompress(Boolean.parseBoolean(compress.trim()));
+		}
+		logger.info("File cache capacity set to {} entries and {} bytes, compression in memory {}",
+				getCapacity(), getMaxBytes(), isCompress() ? "on" : "off");
+	}
+
 	/**
 	 * Checks if the path has been calculated, either in memory on on disk
 	 * @param path
 	 * @return
 	 */
 	public boolean isCached(String path) {
-		synchronized(memcache) {
-			if( memcache.containsKey(path) )
-				return true;
-			File file = new File(path);
-			if(fileExists(file) ) {
-				return true;
-			}
-		}
-		return false;
+		if( memcache.containsKey(path) )
+			return true;
+		File file = new File(path);
+		return fileExists(file);
 	}
 	/**
 	 * Checks if the path has been calculated and is still in memory
@@ -231,49 +459,75 @@ public class FileCache {
 	 * @return
 	 */
 	public boolean isCachedInMemory(String path) {
-		synchronized(memcache) {
-			return memcache.containsKey(path);
-		}
-
+		return memcache.containsKey(path);
 	}
-	
+
 	private static boolean fileExists(File file) {
 		return file.exists() && file.length()>0;
 	}
 
+	/**
+	 * Evicts the least recently used entries until both the number of entries and
+	 * the bytes in memory are within capacity. Entries that are still loading or
+	 * writing are skipped (they are evicted once written), so that
+	 * memcache may be temporarily over-capacity.
+	 */
 	protected void removeExpired() {
-		synchronized( memcache ) {
-			List<CacheFile> stillwriting = new LinkedList<>();
-			while(queue.size() > capacity) {
-				CacheFile expired = queue.remove(); //lowest serial
-				if( !expired.isSynced()) {
-					// save actively writing cases to be pushed back on the queue
-					stillwriting.add(expired);
-				} else {
-					memcache.remove(expired.getFilename());
+		evictionLock.lock();
+		try {
+			List<CacheFile> entries = new ArrayList<>(memcache.values());
+			long bytes = 0;
+			for (CacheFile cacheFile : entries) {
+				bytes += cacheFile.getWeight();
+			}
+			int count = entries.size();
+			if (count <= capacity && bytes <= maxBytes) {
+				return;
+			}
+			entries.sort(Comparator.comparingLong(CacheFile::getLastAccess));
+			for (CacheFile expired : entries) {
+				if (count <= capacity && bytes <= maxBytes) {
+					break;
+				}
+				if (!expired.isSynced() && !expired.isFailed()) {
+					continue;
+				}
+				if (memcache.remove(expired.getFilename(), expired)) {
+					count--;
+					bytes -= expired.getWeight();
+					evictions.incrementAndGet();
 				}
 			}
-			//re-add cases that are still writing
-			//Note that this may cause memcache to be temporarily over-capacity
-			queue.addAll(stillwriting);
+		} finally {
+			evictionLock.unlock();
 		}
 	}
-	
+
 	protected CacheFile getCacheFile(String path, Callable<String> contents) {
-		CacheFile cacheFile;
-		if( memcache.containsKey(path) ) {
-			cacheFile = memcache.get(path);
-		} else {
-			File file = new File(path);
-			if(notpurged != null && !notpurged.contains(path)) {
+		CacheFile cacheFile = memcache.get(path);
+		if (cacheFile != null) {
+			hits.incrementAndGet();
+			return cacheFile;
+		}
+		// single flight: only one CacheFile (and thus one computation) per path
+		boolean[] created = new boolean[1];
+		cacheFile = memcache.computeIfAbsent(path, p -> {
+			created[0] = true;
+			File file = new File(p);
+			Set<String> safe = notpurged;
+			if(safe != null && !safe.contains(p)) {
 				file.delete();
 			}
-			cacheFile = new CacheFile(file, contents, executor);
-			memcache.put(path, cacheFile);
-			queue.add(cacheFile);
-			if(notpurged != null) {
-				notpurged.add(path);
+			CacheFile newFile = new CacheFile(file, contents, this);
+			if(safe != null) {
+				safe.add(p);
 			}
+			return newFile;
+		});
+		if (created[0]) {
+			misses.incrementAndGet();
+		} else {
+			hits.incrementAndGet();
 		}
 		return cacheFile;
 	}
@@ -286,7 +540,8 @@ public class FileCache {
 	 * {@link Callable}s that would produce the same strings). Otherwise the cache may
 	 * be out of date.
 	 * <p>
-	 * This function blocks while the result is calculated.
+	 * This function blocks while the result is calculated. A failed computation is
+	 * not cached: the next call for the same path will compute it again.
 	 * @param path Path to the cache location
 	 * @param contents Method to generate the contents, if needed
 	 * @return A (possibly cached) value equivalent to calling <tt>contents.call()</tt>
@@ -294,11 +549,14 @@ public class FileCache {
 	 * @throws InterruptedException if the computation thread was interrupted while waiting
 	 */
 	public String getString(String path, Callable<String> contents) throws InterruptedException, ExecutionException {
-		synchronized( memcache ) {
-			CacheFile cacheFile = getCacheFile(path, contents);
-			String contentsStr = cacheFile.get();
+		CacheFile cacheFile = getCacheFile(path, contents);
+		try {
+			return cacheFile.get();
+		} catch (ExecutionException|CancellationException e) {
+			memcache.remove(path, cacheFile);
+			throw e;
+		} finally {
 			removeExpired();
-			return contentsStr;
 		}
 	}
 	/**
@@ -317,20 +575,19 @@ public class FileCache {
 	 * @throws InterruptedException if the computation thread was interrupted while waiting
 	 */
 	public String getString(String path) throws InterruptedException, ExecutionException {
-		synchronized( memcache) {
-			if( !memcache.containsKey(path) ) {
-				return null;
-			}
-			CacheFile cacheFile = memcache.get(path);
-			String contents = cacheFile.get();
-			return contents;
+		CacheFile cacheFile = memcache.get(path);
+		if( cacheFile == null ) {
+			misses.incrementAndGet();
+			return null;
 		}
+		hits.incrementAndGet();
+		return cacheFile.get();
 	}
 
 	/**
 	 * Get a file for the specified path location. Blocks until the contents
 	 * are fully written.
-	 * 
+	 *
 	 * <p>Paths should never be directly used as filenames (<tt>new File(path)</tt>)
 	 * since no guarentees can be made in that case about the existence or contents
 	 * of the file. Likewise, the returned File object should not be written or
@@ -342,42 +599,43 @@ public class FileCache {
 	 * @throws ExecutionException
 	 */
 	public File getFile(String path, Callable<String> contents) throws InterruptedException, ExecutionException {
-		synchronized( memcache ) {
-			CacheFile cacheFile = getCacheFile(path, contents);
-			File contentsFile = cacheFile.getFile();
+		CacheFile cacheFile = getCacheFile(path, contents);
+		try {
+			cacheFile.touch();
+			return cacheFile.getFile();
+		} catch (ExecutionException|CancellationException e) {
+			memcache.remove(path, cacheFile);
+			throw e;
+		} finally {
 			removeExpired();
-			return contentsFile;
 		}
 	}
 	public File getFile(String path) throws InterruptedException, ExecutionException {
-		synchronized( memcache) {
-			File file;
-			if( memcache.containsKey(path) ) {
-				CacheFile cacheFile = memcache.get(path);
-				file = cacheFile.getFile();
-			} else {
-				file = new File(path);
-			}
-			if(fileExists(file)) {
-				if(notpurged != null) {
-					notpurged.add(path);
-				}
-				return file;
+		File file;
+		CacheFile cacheFile = memcache.get(path);
+		if( cacheFile != null ) {
+			file = cacheFile.getFile();
+		} else {
+			file = new File(path);
+		}
+		if(fileExists(file)) {
+			Set<String> safe = notpurged;
+			if(safe != null) {
+				safe.add(path);
 			}
+			return file;
 		}
 		return null;
 	}
-	
+
 	/**
 	 * Ensure that all files are synced to disk
-	 * @throws ExecutionException 
-	 * @throws InterruptedException 
+	 * @throws ExecutionException
+	 * @throws InterruptedException
 	 */
 	public void flush() throws InterruptedException, ExecutionException {
-		synchronized(memcache) {
-			for( CacheFile f : memcache.values()) {
-				f.getFile();
-			}
+		for( CacheFile f : memcache.values()) {
+			f.getFile();
 		}
 	}
 	/**
@@ -395,69 +653,115 @@ public class FileCache {
 	public void setCapacity(int capacity) {
 		this.capacity = capacity;
 	}
-	
+
+	/**
+	 * Get the maximum number of bytes (approximately) to keep in memory
+	 * @return
+	 */
+	public long getMaxBytes() {
+		return maxBytes;
+	}
+
+	/**
+	 * Set the maximum number of bytes (approximately) to keep in memory
+	 * @param maxBytes
+	 */
+	public void setMaxBytes(long maxBytes) {
+		this.maxBytes = maxBytes;
+	}
+
 	/**
-	 * 
+	 * Whether contents loaded from now on are kept gzip-compressed in memory
+	 * @return
+	 */
+	public boolean isCompress() {
+		return compress;
+	}
+
+	public void setCompress(boolean compress) {
+		this.compress = compress;
+	}
+
+	/**
+	 *
 	 * @return The number of files cached in memory
 	 */
 	int size() {
 		return memcache.size();
 	}
-	
+
+	/**
+	 * @return The approximate number of bytes cached in memory
+	 */
+	public long getWeight() {
+		long bytes = 0;
+		for (CacheFile cacheFile : memcache.values()) {
+			bytes += cacheFile.getWeight();
+		}
+		return bytes;
+	}
+
+	/**
+	 * Get the current hit/miss/load/eviction statistics
+	 * @return
+	 */
+	public Stats getStats() {
+		return new Stats(this, memcache.size(), getWeight());
+	}
+
 	/**
 	 * Clears the in-memory cache. Files on disk are still retained and will be
 	 * reused.
 	 * @see #purge()
 	 */
 	public void clear() {
-		synchronized(memcache) {
-			memcache.clear();
-			queue.clear();
-		}
+		memcache.clear();
 	}
-	
+
 	/**
 	 * Purge a particular file from the cache, both on disk and in memory
 	 * @param path
 	 */
 	public void delete(String path) {
-		synchronized(memcache) {
-			if(memcache.containsKey(path)) {
-				CacheFile file = memcache.get(path);
-				file.delete();
-				memcache.remove(path);
-				queue.remove(file);
-			} else {
-				File file = new File(path);
-				file.delete();
-			}
-			notpurged.remove(path);
+		CacheFile cacheFile = memcache.remove(path);
+		if(cacheFile != null) {
+			cacheFile.delete();
+		} else {
+			File file = new File(path);
+			file.delete();
+		}
+		Set<String> safe = notpurged;
+		if(safe != null) {
+			safe.remove(path);
 		}
 	}
-	
+
 	/**
 	 * Marks all files as out-of-date and in need of recomputation.
 	 * Files currently cached in memory will be deleted, but older items may
 	 * need to be cleaned up manually on disk.
-	 * 
+	 *
 	 * <p>Call purge() on an empty FileCache to enable tracking of all files.
 	 * This guarantees that subsequent calls to purge will remove all files.
 	 */
 	public void purge() {
-		synchronized(memcache) {
+		evictionLock.lock();
+		try {
 			// delete known files
 			for( CacheFile cacheFile : memcache.values()) {
 				cacheFile.delete();
 			}
-			if(notpurged != null) {
-				for( String filename : notpurged) {
+			Set<String> safe = notpurged;
+			if(safe != null) {
+				for( String filename : safe) {
 					File file = new File(filename);
 					file.delete();
 				}
 			}
 			memcache.clear();
-			queue.clear();
-			notpurged = new HashSet<>();
+			notpurged = ConcurrentHashMap.newKeySet();
+		} finally {
+			evictionLock.unlock();
 		}
 	}
 
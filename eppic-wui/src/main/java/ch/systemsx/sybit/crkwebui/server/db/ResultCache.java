@@ -0,0 +1,277 @@
+package ch.systemsx.sybit.crkwebui.server.db;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Properties;
+import java.util.function.ToLongFunction;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ch.systemsx.sybit.crkwebui.shared.model.PdbInfo;
+
+/**
+ * In-memory cache of results read from the database, keyed by job id and request options.
+ * <p>
+ * Every entry carries a stamp identifying the stored version of the job (the uid of the job row,
+ * which changes whenever the upload tools remove and reinsert an entry), so that an entry
+ * replaced or removed in the database by another process is not served: {@link #get(String, String, long)}
+ * with a different stamp drops it. Within the web application {@link #invalidate(String)} and
+ * {@link #invalidateAll()} remove entries explicitly. Since some tools update entries in place
+ * (e.g. the sequence clusters), entries also expire after a maximum age.
+ * <p>
+ * The least recently used entries are evicted once the total weight of the entries exceeds the maximum.
+ * A maximum of 0 disables the cache.
+ *
+ * @param <V> the type of the cached values
+ */
+public class ResultCache<V> {
+
+	private static final Logger logger = LoggerFactory.getLogger(ResultCache.class);
+
+	public static final String PROPERTY_MAX_ENTRIES = "result_cache_max_entries";
+	public static final String PROPERTY_MAX_XML_BYTES = "result_cache_max_xml_bytes";
+	public static final String PROPERTY_MAX_AGE_MINUTES = "result_cache_max_age_minutes";
+
+	public static final long DEFAULT_MAX_ENTRIES = 200;
+	public static final long DEFAULT_MAX_XML_BYTES = 64*1024*1024;
+	public static final long DEFAULT_MAX_AGE_MINUTES = 24*60;
+
+	private static final ResultCache<PdbInfo> PDB_INFO_CACHE = new ResultCache<PdbInfo>("pdb info", DEFAULT_MAX_ENTRIES, v -> 1);
+	// java strings take 2 bytes per char
+	private static final ResultCache<String> XML_CACHE = new ResultCache<String>("xml", DEFAULT_MAX_XML_BYTES, v -> 2L*v.length());
+
+	private final String name;
+	private final ToLongFunction<V> weigher;
+	private long maxWeight;
+	private long maxAge;
+
+	// access-ordered: iteration starts from the least recently used
+	private final LinkedHashMap<String, CachedResult<V>> entries;
+	private long weight;
+
+	private long hits;
+	private long misses;
+	private long evictions;
+
+	private static class CachedResult<V> {
+		final String jobId;
+		final long stamp;
+		final V value;
+		final long weight;
+		final long created;
+
+		CachedResult(String jobId, long stamp, V value, long weight) {
+			this.jobId = jobId;
+			this.stamp = stamp;
+			this.value = value;
+			this.weight = weight;
+			this.created = System.currentTimeMillis();
+		}
+	}
+
+	/**
+	 * @param name name of the cache used in logs
+	 * @param maxWeight maximum total weight of the entries, 0 disables the cache
+	 * @param weigher the weight of a value
+	 */
+	public ResultCache(String name, long maxWeight, ToLongFunction<V> weigher) {
+		this.name = name;
+		this.maxWeight = maxWeight;
+		this.weigher = weigher;
+		this.maxAge = DEFAULT_MAX_AGE_MINUTES*60*1000;
+		this.entries = new LinkedHashMap<String, CachedResult<V>>(16, 0.75f, true);
+	}
+
+	/**
+	 * The cache of the fully assembled PdbInfo results served by the web service,
+	 * weighted by number of entries
+	 * @return
+	 */
+	public static ResultCache<PdbInfo> getPdbInfoCache() {
+		return PDB_INFO_CACHE;
+	}
+
+	/**
+	 * The cache of the xml of single results served by the data download servlet,
+	 * weighted by approximate number of bytes
+	 * @return
+	 */
+	public static ResultCache<String> getXmlCache() {
+		return XML_CACHE;
+	}
+
+	/**
+	 * Sets the maximum sizes of the caches from the given server properties,
+	 * see {@link #PROPERTY_MAX_ENTRIES}, {@link #PROPERTY_MAX_XML_BYTES} and {@link #PROPERTY_MAX_AGE_MINUTES}.
+	 * Missing properties leave the current values.
+	 * @param properties
+	 * @throws NumberFormatException if a value is not a valid number
+	 */
+	public static void configure(Properties properties) {
+		String maxEntries = properties.getProperty(PROPERTY_MAX_ENTRIES);
+		if (maxEntries != null) {
+			PDB_INFO_CACHE.setMaxWeight(Long.parseLong(maxEntries.trim()));
+		}
+		String maxXmlBytes = properties.getProperty(PROPERTY_MAX_XML_BYTES);
+		if (maxXmlBytes != null) {
+			XML_CACHE.setMaxWeight(Long.parseLong(maxXmlBytes.trim()));
+		}
+		String maxAgeMinutes = properties.getProperty(PROPERTY_MAX_AGE_MINUTES);
+		if (maxAgeMinutes != null) {
+			long maxAge = Long.parseLong(maxAgeMinutes.trim())*60*1000;
+			PDB_INFO_CACHE.setMaxAge(maxAge);
+			XML_CACHE.setMaxAge(maxAge);
+		}
+	}
+
+	/**
+	 * Invalidates all cached results of the given job in all caches
+	 * @param jobId
+	 */
+	public static void invalidateJob(String jobId) {
+		PDB_INFO_CACHE.invalidate(jobId);
+		XML_CACHE.invalidate(jobId);
+	}
+
+	/**
+	 * Returns the cached value for the job and options, or null if it is not cached.
+	 * A value cached with a different stamp or older than the maximum age is removed.
+	 * @param jobId
+	 * @param options the request options the value depends on, may be null
+	 * @param stamp the stored version of the job
+	 * @return
+	 */
+	public synchronized V get(String jobId, String options, long stamp) {
+		String key = getKey(jobId, options);
+		CachedResult<V> entry = entries.get(key);
+		if (entry == null) {
+			misses++;
+			return null;
+		}
+		if (entry.stamp != stamp) {
+			logger.info("Dropping {} cache entry for job {}: it was replaced in the database", name, jobId);
+			remove(key);
+			misses++;
+			return null;
+		}
+		if (maxAge > 0 && System.currentTimeMillis() - entry.created > maxAge) {
+			remove(key);
+			misses++;
+			return null;
+		}
+		hits++;
+		return entry.value;
+	}
+
+	/**
+	 * Caches the value for the job and options, evicting the least recently used entries if needed.
+	 * A value heavier than the maximum is not cached.
+	 * @param jobId
+	 * @param options the request options the value depends on, may be null
+	 * @param stamp the stored version of the job
+	 * @param value
+	 */
+	public synchronized void put(String jobId, String options, long stamp, V value) {
+		long valueWeight = weigher.applyAsLong(value);
+		if (valueWeight > maxWeight) {
+			return;
+		}
+		String key = getKey(jobId, options);
+		remove(key);
+		entries.put(key, new CachedResult<V>(jobId, stamp, value, valueWeight));
+		weight += valueWeight;
+
+		Iterator<CachedResult<V>> it = entries.values().iterator();
+		while (weight > maxWeight && it.hasNext()) {
+			CachedResult<V> eldest = it.next();
+			it.remove();
+			weight -= eldest.weight;
+			evictions++;
+		}
+	}
+
+	/**
+	 * Removes all values of the given job
+	 * @param jobId
+	 */
+	public synchronized void invalidate(String jobId) {
+		Iterator<CachedResult<V>> it = entries.values().iterator();
+		while (it.hasNext()) {
+			CachedResult<V> entry = it.next();
+			if (entry.jobId.equals(jobId)) {
+				it.remove();
+				weight -= entry.weight;
+			}
+		}
+	}
+
+	/**
+	 * Removes all values
+	 */
+	public synchronized void invalidateAll() {
+		entries.clear();
+		weight = 0;
+	}
+
+	/**
+	 * Sets the maximum total weight, evicting the least recently used entries if needed.
+	 * 0 disables the cache.
+	 * @param maxWeight
+	 * @throws IllegalArgumentException if negative
+	 */
+	public synchronized void setMaxWeight(long maxWeight) {
+		if (maxWeight < 0) {
+			throw new IllegalArgumentException("Maximum weight of "+name+" cache can't be negative: "+maxWeight);
+		}
+		this.maxWeight = maxWeight;
+		Iterator<CachedResult<V>> it = entries.values().iterator();
+		while (weight > maxWeight && it.hasNext()) {
+			weight -= it.next().weight;
+			it.remove();
+			evictions++;
+		}
+	}
+
+	/**
+	 * Sets the maximum age of the entries in milliseconds, 0 for no expiry
+	 * @param maxAge
+	 */
+	public synchronized void setMaxAge(long maxAge) {
+		this.maxAge = maxAge;
+	}
+
+	public synchronized long getMaxAge() {
+		return maxAge;
+	}
+
+	public synchronized long getMaxWeight() {
+		return maxWeight;
+	}
+
+	public synchronized long getWeight() {
+		return weight;
+	}
+
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	@Override
+	public synchronized String toString() {
+		return String.format("%s cache: %d entries, weight %d of %d, %d hits, %d misses, %d evictions",
+				name, entries.size(), weight, maxWeight, hits, misses, evictions);
+	}
+
+	private void remove(String key) {
+		CachedResult<V> entry = entries.remove(key);
+		if (entry != null) {
+			weight -= entry.weight;
+		}
+	}
+
+	private static String getKey(String jobId, String options) {
+		if (options == null) return jobId;
+		return jobId + "?" + options;
+	}
+}
@@ -1,7 +1,9 @@
 package ch.systemsx.sybit.crkwebui.server.db.dao;
 
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 
 import ch.systemsx.sybit.crkwebui.server.db.data.InputWithType;
 import ch.systemsx.sybit.crkwebui.server.db.data.JobStatusDetails;
@@ -78,6 +80,14 @@ public interface JobDAO
 	 * @throws DaoException when can not retrieve information from data storage
 	 */
 	public StatusOfJob getStatusForJob(String jobId) throws DaoException;
+	
+	/**
+	 * Retrieves statuses of the selected jobs.
+	 * @param jobIds identifiers of the jobs
+	 * @return map of job identifiers to statuses, jobs that do not exist are not in the map
+	 * @throws DaoException when can not retrieve information from data storage
+	 */
+	public Map<String, StatusOfJob> getStatusForJobs(Collection<String> jobIds) throws DaoException;
 
 	/**
 	 * Retrieves type of the input for specified job identifier.
@@ -119,9 +129,9 @@ public interface JobDAO
 	public void untieSelectedJobFromSession(String sessionId, String jobToUntie) throws DaoException;
 
 	/**
-	 * Retrieves input with type(pdb code/name) for specified job.
+	 * Retrieves input with type(pdb code/name) and uid for specified job.
 	 * @param jobId identifier of the job
-	 * @return input with type(pdb code/file name)
+	 * @return input with type(pdb code/file name) and job uid
 	 * @throws DaoException when can not retrieve information from data storage
 	 */
 	public InputWithType getInputWithTypeForJob(String jobId) throws DaoException;
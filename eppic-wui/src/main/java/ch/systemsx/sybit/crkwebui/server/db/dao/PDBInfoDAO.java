@@ -1,5 +1,7 @@
 package ch.systemsx.sybit.crkwebui.server.db.dao;
 
+import java.util.List;
+
 import ch.systemsx.sybit.crkwebui.shared.exceptions.DaoException;
 import ch.systemsx.sybit.crkwebui.shared.model.PdbInfo;
 import eppic.model.PdbInfoDB;
@@ -19,6 +21,23 @@ public interface PDBInfoDAO
 	 */
 	public PdbInfo getPDBInfo(String jobId) throws DaoException;
 	
+	/**
+	 * Retrieves pdb info item by job identifier together with its interface clusters, interfaces
+	 * and assemblies, and optionally its chain clusters. Every kind of child is fetched with one query 
+	 * for the whole entry, so that the number of queries does not grow with the size of the entry.
+	 * The interface clusters of the assemblies are the same objects as the interface clusters of the pdb info.
+	 * @param jobId identifier of the job
+	 * @param interfaceIds ids of the interfaces to retrieve, null for all of them. Interface clusters
+	 * without any of the interfaces are removed
+	 * @param withResidues whether to retrieve the residues of the interfaces
+	 * @param withWarnings whether to retrieve the warnings of the interfaces
+	 * @param withChainClusters whether to retrieve the chain clusters with their homologs
+	 * @return pdb info item
+	 * @throws DaoException when can not retrieve pdb info item for job
+	 */
+	public PdbInfo getPDBInfoWithResults(String jobId, List<Integer> interfaceIds, 
+			boolean withResidues, boolean withWarnings, boolean withChainClusters) throws DaoException;
+	
 	/**
 	 * Persists pdb info item.
 	 * @param pdbInfo pdb info item to persist
@@ -2,13 +2,17 @@ package ch.systemsx.sybit.crkwebui.server.db.dao.jpa;
 
 import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
 
 import javax.persistence.EntityManager;
 import javax.persistence.Query;
+import javax.persistence.Tuple;
 import javax.persistence.TypedQuery;
 import javax.persistence.criteria.CriteriaBuilder;
 import javax.persistence.criteria.CriteriaQuery;
@@ -43,6 +47,8 @@ public class JobDAOJpa implements JobDAO
 {
 	private static final Logger logger = LoggerFactory.getLogger(JobDAOJpa.class);
 	
+	private static final int MAX_JOB_IDS_PER_QUERY = 1000;
+	
 	@Override
 	public void insertNewJob(String jobId,
 							 String sessionId,
@@ -354,6 +360,56 @@ public class JobDAOJpa implements JobDAO
 		return StatusOfJob.getByName(status);
 	}
 
+	@Override
+	public Map<String, StatusOfJob> getStatusForJobs(Collection<String> jobIds) throws DaoException
+	{
+		// with the default mysql collation the job ids are matched case insensitively, as in getStatusForJob
+		Map<String, StatusOfJob> statuses = new TreeMap<String, StatusOfJob>(String.CASE_INSENSITIVE_ORDER);
+		EntityManager entityManager = null;
+
+		try
+		{
+			entityManager = EntityManagerHandler.getEntityManager();
+
+			List<String> jobIdList = new ArrayList<String>(jobIds);
+			// keeping the number of parameters of a single query bounded
+			for (int from = 0; from < jobIdList.size(); from += MAX_JOB_IDS_PER_QUERY)
+			{
+				List<String> chunk = jobIdList.subList(from, Math.min(from + MAX_JOB_IDS_PER_QUERY, jobIdList.size()));
+
+				CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
+				CriteriaQuery<Tuple> criteriaQuery = criteriaBuilder.createTupleQuery();
+
+				Root<JobDB> jobRoot = criteriaQuery.from(JobDB.class);
+				criteriaQuery.multiselect(jobRoot.get(JobDB_.jobId), jobRoot.get(JobDB_.status));
+				criteriaQuery.where(jobRoot.get(JobDB_.jobId).in(chunk));
+
+				for (Tuple job : entityManager.createQuery(criteriaQuery).getResultList())
+				{
+					statuses.put(job.get(0, String.class), StatusOfJob.getByName(job.get(1, String.class)));
+				}
+			}
+		}
+		catch(Throwable t)
+		{
+			logger.error(t.getMessage(),t);
+			throw new DaoException(t);
+		}
+		finally
+		{
+			try
+			{
+				entityManager.close();
+			}
+			catch(Throwable t)
+			{
+				logger.error("Error closing EntityManager",t);
+			}
+		}
+
+		return statuses;
+	}
+
 	@Override
 	public int getInputTypeForJob(String jobId) throws DaoException
 	{
@@ -612,19 +668,20 @@ public class JobDAOJpa implements JobDAO
 			entityManager = EntityManagerHandler.getEntityManager();
 
 			CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
-			CriteriaQuery<JobDB> criteriaQuery = criteriaBuilder.createQuery(JobDB.class);
+			CriteriaQuery<Tuple> criteriaQuery = criteriaBuilder.createTupleQuery();
 
 			Root<JobDB> sessionRoot = criteriaQuery.from(JobDB.class);
 			criteriaQuery.multiselect(sessionRoot.get(JobDB_.inputName),
-									  sessionRoot.get(JobDB_.inputType));
+									  sessionRoot.get(JobDB_.inputType),
+									  sessionRoot.get(JobDB_.uid));
 			Predicate condition = criteriaBuilder.equal(sessionRoot.get(JobDB_.jobId), jobId);
 			criteriaQuery.where(condition);
 			
-			Query query = entityManager.createQuery(criteriaQuery);
-			JobDB job = (JobDB)query.getSingleResult();
+			Tuple job = entityManager.createQuery(criteriaQuery).getSingleResult();
 			
-			InputWithType inputWithType = new InputWithType(job.getInputName(), 
-															job.getInputType());
+			InputWithType inputWithType = new InputWithType(job.get(0, String.class), 
+															job.get(1, Integer.class),
+															job.get(2, Long.class));
 			return inputWithType;
 		}
 		catch(Throwable e)
@@ -1,18 +1,57 @@
 package ch.systemsx.sybit.crkwebui.server.db.dao.jpa;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
 import javax.persistence.EntityManager;
+import javax.persistence.Tuple;
 import javax.persistence.TypedQuery;
 import javax.persistence.criteria.CriteriaBuilder;
 import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.JoinType;
 import javax.persistence.criteria.Path;
 import javax.persistence.criteria.Predicate;
 import javax.persistence.criteria.Root;
+import javax.persistence.criteria.SetJoin;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import eppic.model.AssemblyContentDB;
+import eppic.model.AssemblyContentDB_;
+import eppic.model.AssemblyDB;
+import eppic.model.AssemblyDB_;
+import eppic.model.AssemblyScoreDB;
+import eppic.model.AssemblyScoreDB_;
+import eppic.model.ChainClusterDB;
+import eppic.model.ChainClusterDB_;
+import eppic.model.HomologDB;
+import eppic.model.HomologDB_;
+import eppic.model.InterfaceClusterDB;
+import eppic.model.InterfaceClusterDB_;
+import eppic.model.InterfaceClusterScoreDB;
+import eppic.model.InterfaceClusterScoreDB_;
+import eppic.model.InterfaceDB;
+import eppic.model.InterfaceDB_;
+import eppic.model.InterfaceScoreDB;
+import eppic.model.InterfaceScoreDB_;
+import eppic.model.InterfaceWarningDB;
+import eppic.model.InterfaceWarningDB_;
 import eppic.model.JobDB_;
 import eppic.model.PdbInfoDB_;
+import eppic.model.ResidueBurialDB;
+import eppic.model.ResidueBurialDB_;
+import eppic.model.UniProtRefWarningDB;
+import eppic.model.UniProtRefWarningDB_;
 import ch.systemsx.sybit.crkwebui.server.db.EntityManagerHandler;
 import ch.systemsx.sybit.crkwebui.server.db.dao.PDBInfoDAO;
 import ch.systemsx.sybit.crkwebui.shared.exceptions.DaoException;
+import ch.systemsx.sybit.crkwebui.shared.model.Assembly;
+import ch.systemsx.sybit.crkwebui.shared.model.InterfaceCluster;
 import ch.systemsx.sybit.crkwebui.shared.model.PdbInfo;
 import eppic.model.JobDB;
 import eppic.model.PdbInfoDB;
@@ -24,6 +63,7 @@ import eppic.model.PdbInfoDB;
  */
 public class PDBInfoDAOJpa implements PDBInfoDAO 
 {
+	private static final Logger logger = LoggerFactory.getLogger(PDBInfoDAOJpa.class);
 	
 	public PDBInfoDAOJpa() 
 	{
@@ -39,35 +79,7 @@ public class PDBInfoDAOJpa implements PDBInfoDAO
 		try
 		{
 			entityManager = EntityManagerHandler.getEntityManager();
-			CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
-			CriteriaQuery<PdbInfoDB> criteriaQuery = criteriaBuilder.createQuery(PdbInfoDB.class);
-			
-			Root<PdbInfoDB> pdbScoreItemRoot = criteriaQuery.from(PdbInfoDB.class);
-			Path<JobDB> jobItemPath = pdbScoreItemRoot.get(PdbInfoDB_.job);
-			Predicate condition = criteriaBuilder.equal(jobItemPath.get(JobDB_.jobId), jobId);
-			criteriaQuery.where(condition);
-			criteriaQuery.multiselect(pdbScoreItemRoot.get(PdbInfoDB_.uid),
-									  pdbScoreItemRoot.get(PdbInfoDB_.job),
-									  pdbScoreItemRoot.get(PdbInfoDB_.pdbCode),
-									  pdbScoreItemRoot.get(PdbInfoDB_.title),
-									  pdbScoreItemRoot.get(PdbInfoDB_.spaceGroup),
-									  pdbScoreItemRoot.get(PdbInfoDB_.expMethod),
-									  pdbScoreItemRoot.get(PdbInfoDB_.resolution),
-									  pdbScoreItemRoot.get(PdbInfoDB_.rfreeValue),
-									  pdbScoreItemRoot.get(PdbInfoDB_.cellA),
-									  pdbScoreItemRoot.get(PdbInfoDB_.cellB),
-									  pdbScoreItemRoot.get(PdbInfoDB_.cellC),
-									  pdbScoreItemRoot.get(PdbInfoDB_.cellAlpha),
-									  pdbScoreItemRoot.get(PdbInfoDB_.cellBeta),
-									  pdbScoreItemRoot.get(PdbInfoDB_.cellGamma),
-									  pdbScoreItemRoot.get(PdbInfoDB_.crystalFormId),
-									  pdbScoreItemRoot.get(PdbInfoDB_.runParameters),
-									  pdbScoreItemRoot.get(PdbInfoDB_.nonStandardSg),
-									  pdbScoreItemRoot.get(PdbInfoDB_.nonStandardCoordFrameConvention),
-									  pdbScoreItemRoot.get(PdbInfoDB_.exhaustiveAssemblyEnumeration));
-			
-			TypedQuery<PdbInfoDB> query = entityManager.createQuery(criteriaQuery);
-			PdbInfoDB pdbScoreItemDB = query.getSingleResult();
+			PdbInfoDB pdbScoreItemDB = getPdbInfoDB(entityManager, jobId);
 			
 			result = PdbInfo.create(pdbScoreItemDB);
 			result.setJobId(jobId);
@@ -92,6 +104,167 @@ public class PDBInfoDAOJpa implements PDBInfoDAO
 		return result;
 	}
 	
+	@Override
+	public PdbInfo getPDBInfoWithResults(String jobId, List<Integer> interfaceIds,
+			boolean withResidues, boolean withWarnings, boolean withChainClusters) throws DaoException
+	{
+		EntityManager entityManager = null;
+		PdbInfo result = null;
+
+		try
+		{
+			entityManager = EntityManagerHandler.getEntityManager();
+
+			long start = System.currentTimeMillis();
+			PdbInfoDB pdbInfoDB = getPdbInfoDB(entityManager, jobId);
+			int pdbInfoUid = pdbInfoDB.getUid();
+			long pdbInfoTime = System.currentTimeMillis() - start;
+
+			// chain clusters first: the residue infos of the burials refer to them
+			start = System.currentTimeMillis();
+			List<ChainClusterDB> chainClusterDBs = null;
+			if (withChainClusters || withResidues) {
+				chainClusterDBs = getChainClusterDBs(entityManager, pdbInfoUid);
+			}
+			if (withChainClusters) {
+				Map<Integer, List<HomologDB>> homologs = groupByParent(
+						getByPdbInfo(entityManager, HomologDB.class, pdbInfoUid,
+								root -> root.get(HomologDB_.chainCluster).get(ChainClusterDB_.pdbInfo)),
+						h -> h.getChainCluster().getUid());
+				Map<Integer, List<UniProtRefWarningDB>> uniProtRefWarnings = groupByParent(
+						getByPdbInfo(entityManager, UniProtRefWarningDB.class, pdbInfoUid,
+								root -> root.get(UniProtRefWarningDB_.chainCluster).get(ChainClusterDB_.pdbInfo)),
+						w -> w.getChainCluster().getUid());
+				for (ChainClusterDB chainClusterDB : chainClusterDBs) {
+					chainClusterDB.setHomologs(getChildren(homologs, chainClusterDB.getUid()));
+					chainClusterDB.setUniProtRefWarnings(getChildren(uniProtRefWarnings, chainClusterDB.getUid()));
+				}
+				pdbInfoDB.setChainClusters(chainClusterDBs);
+			}
+			long chainClustersTime = System.currentTimeMillis() - start;
+
+			start = System.currentTimeMillis();
+			List<InterfaceClusterDB> interfaceClusterDBs = getByPdbInfo(entityManager, InterfaceClusterDB.class, pdbInfoUid,
+					root -> root.get(InterfaceClusterDB_.pdbInfo));
+			Map<Integer, List<InterfaceClusterScoreDB>> interfaceClusterScores = groupByParent(
+					getByPdbInfo(entityManager, InterfaceClusterScoreDB.class, pdbInfoUid,
+							root -> root.get(InterfaceClusterScoreDB_.interfaceCluster).get(InterfaceClusterDB_.pdbInfo)),
+					s -> s.getInterfaceCluster().getUid());
+			List<InterfaceDB> interfaceDBs = getByPdbInfo(entityManager, InterfaceDB.class, pdbInfoUid,
+					root -> root.get(InterfaceDB_.interfaceCluster).get(InterfaceClusterDB_.pdbInfo));
+			if (interfaceIds != null) {
+				Iterator<InterfaceDB> it = interfaceDBs.iterator();
+				while (it.hasNext()) {
+					if (!interfaceIds.contains(it.next().getInterfaceId())) it.remove();
+				}
+			}
+			Map<Integer, List<InterfaceScoreDB>> interfaceScores = groupByParent(
+					getByPdbInfo(entityManager, InterfaceScoreDB.class, pdbInfoUid,
+							root -> root.get(InterfaceScoreDB_.interfaceItem).get(InterfaceDB_.interfaceCluster).get(InterfaceClusterDB_.pdbInfo)),
+					s -> s.getInterfaceItem().getUid());
+			Map<Integer, List<InterfaceWarningDB>> interfaceWarnings = null;
+			if (withWarnings) {
+				interfaceWarnings = groupByParent(
+						getByPdbInfo(entityManager, InterfaceWarningDB.class, pdbInfoUid,
+								root -> root.get(InterfaceWarningDB_.interfaceItem).get(InterfaceDB_.interfaceCluster).get(InterfaceClusterDB_.pdbInfo)),
+						w -> w.getInterfaceItem().getUid());
+			}
+			long interfacesTime = System.currentTimeMillis() - start;
+
+			start = System.currentTimeMillis();
+			Map<Integer, List<ResidueBurialDB>> residueBurials = null;
+			if (withResidues) {
+				residueBurials = groupByParent(getResidueBurialDBs(entityManager, pdbInfoUid, interfaceIds),
+						r -> r.getInterfaceItem().getUid());
+			}
+			long residuesTime = System.currentTimeMillis() - start;
+
+			Map<Integer, List<InterfaceDB>> interfacesPerCluster = groupByParent(interfaceDBs, i -> i.getInterfaceCluster().getUid());
+			for (InterfaceDB interfaceDB : interfaceDBs) {
+				interfaceDB.setInterfaceScores(getChildren(interfaceScores, interfaceDB.getUid()));
+				interfaceDB.setInterfaceWarnings(withWarnings ? getChildren(interfaceWarnings, interfaceDB.getUid()) : null);
+				interfaceDB.setResidueBurials(withResidues ? getChildren(residueBurials, interfaceDB.getUid()) : null);
+			}
+			for (InterfaceClusterDB interfaceClusterDB : interfaceClusterDBs) {
+				interfaceClusterDB.setInterfaceClusterScores(getChildren(interfaceClusterScores, interfaceClusterDB.getUid()));
+				interfaceClusterDB.setInterfaces(getChildren(interfacesPerCluster, interfaceClusterDB.getUid()));
+			}
+			pdbInfoDB.setInterfaceClusters(interfaceClusterDBs);
+
+			start = System.currentTimeMillis();
+			List<AssemblyDB> assemblyDBs = getByPdbInfo(entityManager, AssemblyDB.class, pdbInfoUid,
+					root -> root.get(AssemblyDB_.pdbInfo));
+			Map<Integer, List<AssemblyScoreDB>> assemblyScores = groupByParent(
+					getByPdbInfo(entityManager, AssemblyScoreDB.class, pdbInfoUid,
+							root -> root.get(AssemblyScoreDB_.assembly).get(AssemblyDB_.pdbInfo)),
+					s -> s.getAssembly().getUid());
+			Map<Integer, List<AssemblyContentDB>> assemblyContents = groupByParent(
+					getByPdbInfo(entityManager, AssemblyContentDB.class, pdbInfoUid,
+							root -> root.get(AssemblyContentDB_.assembly).get(AssemblyDB_.pdbInfo)),
+					c -> c.getAssembly().getUid());
+			Map<Integer, List<Integer>> assemblyInterfaceClusterUids = getAssemblyInterfaceClusterUids(entityManager, pdbInfoUid);
+			for (AssemblyDB assemblyDB : assemblyDBs) {
+				assemblyDB.setAssemblyScores(getChildren(assemblyScores, assemblyDB.getUid()));
+				assemblyDB.setAssemblyContents(getChildren(assemblyContents, assemblyDB.getUid()));
+				// linked below to the interface clusters of the entry, instead of creating a copy per assembly
+				assemblyDB.setInterfaceClusters(null);
+			}
+			pdbInfoDB.setAssemblies(assemblyDBs);
+			long assembliesTime = System.currentTimeMillis() - start;
+
+			start = System.currentTimeMillis();
+			result = PdbInfo.create(pdbInfoDB);
+			result.setJobId(jobId);
+
+			Map<Integer, InterfaceCluster> interfaceClustersByUid = new HashMap<Integer, InterfaceCluster>();
+			for (InterfaceCluster interfaceCluster : result.getInterfaceClusters()) {
+				interfaceClustersByUid.put(interfaceCluster.getUid(), interfaceCluster);
+			}
+			for (Assembly assembly : result.getAssemblies()) {
+				List<InterfaceCluster> interfaceClusters = new ArrayList<InterfaceCluster>();
+				for (int interfaceClusterUid : getChildren(assemblyInterfaceClusterUids, assembly.getUid())) {
+					interfaceClusters.add(interfaceClustersByUid.get(interfaceClusterUid));
+				}
+				assembly.setInterfaceClusters(interfaceClusters);
+			}
+
+			// now we remove interface clusters with no interfaces, which can happen when interfaceIds is provided
+			if (interfaceIds != null) {
+				Iterator<InterfaceCluster> it = result.getInterfaceClusters().iterator();
+				while (it.hasNext()) {
+					InterfaceCluster cluster = it.next();
+					if (cluster.getInterfaces().size()==0) {
+						it.remove();
+						logger.debug("Removing cluster uid="+cluster.getUid()+", clusterId="+cluster.getClusterId()+" since none of its interfaces was requested");
+					}
+				}
+			}
+			long createTime = System.currentTimeMillis() - start;
+
+			logger.info("Loaded result data of job {} in {} ms: pdb info {} ms, chain clusters {} ms, interfaces {} ms, residues {} ms, assemblies {} ms, model objects {} ms",
+					jobId, pdbInfoTime + chainClustersTime + interfacesTime + residuesTime + assembliesTime + createTime,
+					pdbInfoTime, chainClustersTime, interfacesTime, residuesTime, assembliesTime, createTime);
+		}
+		catch(Throwable e)
+		{
+			e.printStackTrace();
+			throw new DaoException(e);
+		}
+		finally
+		{
+			try
+			{
+				entityManager.close();
+			}
+			catch(Throwable t)
+			{
+				t.printStackTrace();
+			}
+		}
+
+		return result;
+	}
+	
 	@Override
 	public void insertPDBInfo(PdbInfoDB pdbScoreItem) throws DaoException
 	{
@@ -131,4 +304,152 @@ public class PDBInfoDAOJpa implements PDBInfoDAO
 			}
 		}
 	}
+	
+	/**
+	 * Retrieves the pdb info of the job, without any of its children.
+	 */
+	private static PdbInfoDB getPdbInfoDB(EntityManager entityManager, String jobId)
+	{
+		CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
+		CriteriaQuery<PdbInfoDB> criteriaQuery = criteriaBuilder.createQuery(PdbInfoDB.class);
+		
+		Root<PdbInfoDB> pdbScoreItemRoot = criteriaQuery.from(PdbInfoDB.class);
+		Path<JobDB> jobItemPath = pdbScoreItemRoot.get(PdbInfoDB_.job);
+		Predicate condition = criteriaBuilder.equal(jobItemPath.get(JobDB_.jobId), jobId);
+		criteriaQuery.where(condition);
+		criteriaQuery.multiselect(pdbScoreItemRoot.get(PdbInfoDB_.uid),
+								  pdbScoreItemRoot.get(PdbInfoDB_.job),
+								  pdbScoreItemRoot.get(PdbInfoDB_.pdbCode),
+								  pdbScoreItemRoot.get(PdbInfoDB_.title),
+								  pdbScoreItemRoot.get(PdbInfoDB_.spaceGroup),
+								  pdbScoreItemRoot.get(PdbInfoDB_.expMethod),
+								  pdbScoreItemRoot.get(PdbInfoDB_.resolution),
+								  pdbScoreItemRoot.get(PdbInfoDB_.rfreeValue),
+								  pdbScoreItemRoot.get(PdbInfoDB_.cellA),
+								  pdbScoreItemRoot.get(PdbInfoDB_.cellB),
+								  pdbScoreItemRoot.get(PdbInfoDB_.cellC),
+								  pdbScoreItemRoot.get(PdbInfoDB_.cellAlpha),
+								  pdbScoreItemRoot.get(PdbInfoDB_.cellBeta),
+								  pdbScoreItemRoot.get(PdbInfoDB_.cellGamma),
+								  pdbScoreItemRoot.get(PdbInfoDB_.crystalFormId),
+								  pdbScoreItemRoot.get(PdbInfoDB_.runParameters),
+								  pdbScoreItemRoot.get(PdbInfoDB_.nonStandardSg),
+								  pdbScoreItemRoot.get(PdbInfoDB_.nonStandardCoordFrameConvention),
+								  pdbScoreItemRoot.get(PdbInfoDB_.exhaustiveAssemblyEnumeration));
+		
+		TypedQuery<PdbInfoDB> query = entityManager.createQuery(criteriaQuery);
+		return query.getSingleResult();
+	}
+	
+	/**
+	 * Retrieves with one query all entities of given class belonging to a pdb info, ordered by uid.
+	 * @param entityManager
+	 * @param entityClass
+	 * @param pdbInfoUid
+	 * @param pdbInfoPath the path from the entity to its pdb info
+	 * @return
+	 */
+	private static <T> List<T> getByPdbInfo(EntityManager entityManager, Class<T> entityClass, int pdbInfoUid, 
+			Function<Root<T>, Path<PdbInfoDB>> pdbInfoPath)
+	{
+		CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
+		CriteriaQuery<T> criteriaQuery = criteriaBuilder.createQuery(entityClass);
+		
+		Root<T> root = criteriaQuery.from(entityClass);
+		criteriaQuery.where(criteriaBuilder.equal(pdbInfoPath.apply(root).get(PdbInfoDB_.uid), pdbInfoUid));
+		criteriaQuery.orderBy(criteriaBuilder.asc(root.get("uid")));
+		
+		return entityManager.createQuery(criteriaQuery).getResultList();
+	}
+	
+	private static List<ChainClusterDB> getChainClusterDBs(EntityManager entityManager, int pdbInfoUid)
+	{
+		CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
+		CriteriaQuery<ChainClusterDB> criteriaQuery = criteriaBuilder.createQuery(ChainClusterDB.class);
+		
+		Root<ChainClusterDB> root = criteriaQuery.from(ChainClusterDB.class);
+		// the seq cluster is a mapped-by one-to-one, that would otherwise be loaded with one query per chain cluster
+		root.fetch(ChainClusterDB_.seqCluster, JoinType.LEFT);
+		criteriaQuery.where(criteriaBuilder.equal(root.get(ChainClusterDB_.pdbInfo).get(PdbInfoDB_.uid), pdbInfoUid));
+		criteriaQuery.orderBy(criteriaBuilder.asc(root.get(ChainClusterDB_.uid)));
+		
+		return entityManager.createQuery(criteriaQuery).getResultList();
+	}
+	
+	private static List<ResidueBurialDB> getResidueBurialDBs(EntityManager entityManager, int pdbInfoUid, List<Integer> interfaceIds)
+	{
+		if (interfaceIds != null && interfaceIds.isEmpty()) {
+			return new ArrayList<ResidueBurialDB>();
+		}
+		
+		CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
+		CriteriaQuery<ResidueBurialDB> criteriaQuery = criteriaBuilder.createQuery(ResidueBurialDB.class);
+		
+		Root<ResidueBurialDB> root = criteriaQuery.from(ResidueBurialDB.class);
+		root.fetch(ResidueBurialDB_.residueInfo, JoinType.LEFT);
+		Path<InterfaceDB> interfacePath = root.get(ResidueBurialDB_.interfaceItem);
+		Predicate condition = criteriaBuilder.equal(
+				interfacePath.get(InterfaceDB_.interfaceCluster).get(InterfaceClusterDB_.pdbInfo).get(PdbInfoDB_.uid), pdbInfoUid);
+		if (interfaceIds != null) {
+			condition = criteriaBuilder.and(condition, interfacePath.get(InterfaceDB_.interfaceId).in(interfaceIds));
+		}
+		criteriaQuery.where(condition);
+		criteriaQuery.orderBy(criteriaBuilder.asc(root.get(ResidueBurialDB_.uid)));
+		
+		return entityManager.createQuery(criteriaQuery).getResultList();
+	}
+	
+	/**
+	 * Retrieves the uids of the interface clusters of each assembly of a pdb info.
+	 * @param entityManager
+	 * @param pdbInfoUid
+	 * @return map of assembly uids to interface cluster uids
+	 */
+	private static Map<Integer, List<Integer>> getAssemblyInterfaceClusterUids(EntityManager entityManager, int pdbInfoUid)
+	{
+		CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
+		CriteriaQuery<Tuple> criteriaQuery = criteriaBuilder.createTupleQuery();
+		
+		Root<AssemblyDB> root = criteriaQuery.from(AssemblyDB.class);
+		SetJoin<AssemblyDB, InterfaceClusterDB> interfaceClusters = root.join(AssemblyDB_.interfaceClusters);
+		criteriaQuery.multiselect(root.get(AssemblyDB_.uid), interfaceClusters.get(InterfaceClusterDB_.uid));
+		criteriaQuery.where(criteriaBuilder.equal(root.get(AssemblyDB_.pdbInfo).get(PdbInfoDB_.uid), pdbInfoUid));
+		criteriaQuery.orderBy(criteriaBuilder.asc(root.get(AssemblyDB_.uid)), 
+				criteriaBuilder.asc(interfaceClusters.get(InterfaceClusterDB_.uid)));
+		
+		Map<Integer, List<Integer>> result = new HashMap<Integer, List<Integer>>();
+		for (Tuple tuple : entityManager.createQuery(criteriaQuery).getResultList()) {
+			int assemblyUid = tuple.get(0, Integer.class);
+			if (!result.containsKey(assemblyUid)) {
+				result.put(assemblyUid, new ArrayList<Integer>());
+			}
+			result.get(assemblyUid).add(tuple.get(1, Integer.class));
+		}
+		return result;
+	}
+	
+	/**
+	 * Groups the children by the uid of their parent, keeping their order.
+	 */
+	private static <T> Map<Integer, List<T>> groupByParent(List<T> children, Function<T, Integer> parentUid)
+	{
+		Map<Integer, List<T>> result = new HashMap<Integer, List<T>>();
+		for (T child : children) {
+			Integer uid = parentUid.apply(child);
+			if (!result.containsKey(uid)) {
+				result.put(uid, new ArrayList<T>());
+			}
+			result.get(uid).add(child);
+		}
+		return result;
+	}
+	
+	private static <T> List<T> getChildren(Map<Integer, List<T>> childrenByParent, int parentUid)
+	{
+		List<T> children = childrenByParent.get(parentUid);
+		if (children == null) {
+			return new ArrayList<T>();
+		}
+		return children;
+	}
 }
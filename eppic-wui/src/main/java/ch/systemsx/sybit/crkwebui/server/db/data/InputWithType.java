@@ -16,6 +16,11 @@ public class InputWithType
 	 * Job input type.
 	 */
 	private int inputType;
+	
+	/**
+	 * Uid of the job row, which changes when the job is removed and inserted again.
+	 */
+	private long jobUid;
 
 	/**
 	 * Creates empty instance of inputName with type.
@@ -31,6 +36,14 @@ public class InputWithType
 		this.inputName = inputName;
 		this.inputType = inputType;
 	}
+	
+	public InputWithType(String inputName,
+						 int inputType,
+						 long jobUid)
+	{
+		this(inputName, inputType);
+		this.jobUid = jobUid;
+	}
 
 	public String getInputName() {
 		return inputName;
@@ -48,4 +61,11 @@ public class InputWithType
 		return inputType;
 	}
 
+	public long getJobUid() {
+		return jobUid;
+	}
+
+	public void setJobUid(long jobUid) {
+		this.jobUid = jobUid;
+	}
 }
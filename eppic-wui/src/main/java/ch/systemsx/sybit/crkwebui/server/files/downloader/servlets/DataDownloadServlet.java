@@ -2,9 +2,8 @@ package ch.systemsx.sybit.crkwebui.server.files.downloader.servlets;
 
 import java.io.IOException;
 import java.io.PrintWriter;
-import java.util.ArrayList;
+import java.io.StringWriter;
 import java.util.Date;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
@@ -21,18 +20,11 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import ch.systemsx.sybit.crkwebui.server.commons.servlets.BaseServlet;
+import ch.systemsx.sybit.crkwebui.server.db.ResultCache;
 import ch.systemsx.sybit.crkwebui.server.db.dao.DataDownloadTrackingDAO;
-import ch.systemsx.sybit.crkwebui.server.db.dao.AssemblyDAO;
-import ch.systemsx.sybit.crkwebui.server.db.dao.ChainClusterDAO;
-import ch.systemsx.sybit.crkwebui.server.db.dao.InterfaceClusterDAO;
-import ch.systemsx.sybit.crkwebui.server.db.dao.InterfaceDAO;
 import ch.systemsx.sybit.crkwebui.server.db.dao.JobDAO;
 import ch.systemsx.sybit.crkwebui.server.db.dao.PDBInfoDAO;
 import ch.systemsx.sybit.crkwebui.server.db.dao.jpa.DataDownloadTrackingDAOJpa;
-import ch.systemsx.sybit.crkwebui.server.db.dao.jpa.AssemblyDAOJpa;
-import ch.systemsx.sybit.crkwebui.server.db.dao.jpa.ChainClusterDAOJpa;
-import ch.systemsx.sybit.crkwebui.server.db.dao.jpa.InterfaceClusterDAOJpa;
-import ch.systemsx.sybit.crkwebui.server.db.dao.jpa.InterfaceDAOJpa;
 import ch.systemsx.sybit.crkwebui.server.db.dao.jpa.JobDAOJpa;
 import ch.systemsx.sybit.crkwebui.server.db.dao.jpa.PDBInfoDAOJpa;
 import ch.systemsx.sybit.crkwebui.server.db.data.InputWithType;
@@ -41,11 +33,8 @@ import ch.systemsx.sybit.crkwebui.server.files.downloader.validators.DataDownloa
 import ch.systemsx.sybit.crkwebui.server.ip.validators.IPVerifier;
 import ch.systemsx.sybit.crkwebui.shared.exceptions.DaoException;
 import ch.systemsx.sybit.crkwebui.shared.exceptions.ValidationException;
-import ch.systemsx.sybit.crkwebui.shared.model.Assembly;
-import ch.systemsx.sybit.crkwebui.shared.model.ChainCluster;
-import ch.systemsx.sybit.crkwebui.shared.model.Interface;
-import ch.systemsx.sybit.crkwebui.shared.model.InterfaceCluster;
 import ch.systemsx.sybit.crkwebui.shared.model.PdbInfo;
+import ch.systemsx.sybit.shared.model.InputType;
 
 /**
  * Servlet used to download results in xml format
@@ -63,6 +52,13 @@ public class DataDownloadServlet extends BaseServlet{
 	private static final long serialVersionUID = 1L;
 	
 	private static final Logger logger = LoggerFactory.getLogger(DataDownloadServlet.class);
+	
+	private static JAXBContext jaxbContext;
+	
+	/**
+	 * Maximum number of jobs in a call for their xml to be added to the cache
+	 */
+	private static final int MAX_JOBS_TO_CACHE = 5;
 		
 	//Parameters
 	private int maxNumJobIds;
@@ -74,7 +70,12 @@ public class DataDownloadServlet extends BaseServlet{
 		
 		maxNumJobIds = Integer.parseInt(properties.getProperty("max_jobs_in_one_call","1"));
 		defaultNrOfAllowedSubmissionsForIP = Integer.parseInt(properties.getProperty("nr_of_allowed_submissions_for_ip","100"));
-	
+		
+		try {
+			ResultCache.configure(properties);
+		} catch (IllegalArgumentException e) {
+			throw new ServletException("Invalid value for result cache properties: "+e.getMessage());
+		}
 	}
 
 	/**
@@ -97,19 +98,15 @@ public class DataDownloadServlet extends BaseServlet{
 			
 			Map<String, List<Integer>> jobIdMap = JobListWithInterfacesGenerator.generateJobList(jobIdCommaSep);
 			
+			// this also checks that all jobs exist and are finished, before anything is written:
+			// once the first entry is streamed the status of the response can't be changed anymore
 			DataDownloadServletInputValidator.validateFileDownloadInput(type, jobIdMap, getSeqInfo, maxNumJobIds);
 			
 			IPVerifier.verifyIfCanBeSubmitted(requestIP, 
 										      defaultNrOfAllowedSubmissionsForIP, 
 										      true);
 			
-			List<PdbInfo> pdbList = new ArrayList<PdbInfo>();
-
-			for(String jobId: jobIdMap.keySet()){
-				pdbList.add(getResultData(jobId, jobIdMap.get(jobId), getSeqInfo));
-			}
-
-			createXMLResponse(response, pdbList);
+			createXMLResponse(response, jobIdMap, getSeqInfo);
 
 		}
 		catch(ValidationException e) {
@@ -121,6 +118,15 @@ public class DataDownloadServlet extends BaseServlet{
 		}
 	}
 	
+	/**
+	 * Same as GET, for lists of job ids too long for a URL passed as form parameters in the body.
+	 */
+	protected void doPost(HttpServletRequest request,
+			HttpServletResponse response) throws ServletException, IOException
+	{
+		doGet(request, response);
+	}
+	
 	/**
 	 * Inserts the ip to the DB
 	 * @param ip
@@ -132,99 +138,135 @@ public class DataDownloadServlet extends BaseServlet{
 	}
 	
 	/**
-	 * Retrieves pdbInfo item for job.
+	 * Writes the xml of the pdbInfo item for job. The xml of precomputed entries is cached,
+	 * see {@link ResultCache#getXmlCache()}.
+	 * @param writer the writer to write the xml fragment to
+	 * @param marshaller the marshaller used if the xml is not cached
 	 * @param jobId identifier of the job
 	 * @param interfaceIdList list of interface ids to be retrieved (null for everything)
-	 * @return pdb info item
+	 * @param getSeqInfo
+	 * @param populateCache whether to add the xml to the cache if it was not cached
 	 * @throws DaoException when can not retrieve result of the job
+	 * @throws JAXBException
 	 */
-	private PdbInfo getResultData(String jobId, List<Integer> interfaceIdList, String getSeqInfo) throws DaoException
+	private void writeResultXml(PrintWriter writer, Marshaller marshaller, String jobId, List<Integer> interfaceIdList, String getSeqInfo,
+			boolean populateCache) throws DaoException, JAXBException
 	{
 		JobDAO jobDAO = new JobDAOJpa();
 		InputWithType input = jobDAO.getInputWithTypeForJob(jobId);
-
-		PDBInfoDAO pdbInfoDAO = new PDBInfoDAOJpa();
-		PdbInfo pdbInfo = pdbInfoDAO.getPDBInfo(jobId);
 		
-		InterfaceClusterDAO clusterDAO = new InterfaceClusterDAOJpa();
-		List<InterfaceCluster> clusters = clusterDAO.getInterfaceClustersWithoutInterfaces(pdbInfo.getUid());
-
-		InterfaceDAO interfaceDAO = new InterfaceDAOJpa();
-		for(InterfaceCluster cluster: clusters){
-			logger.debug("Getting data for interface cluster uid {}", cluster.getUid());
-			List<Interface> interfaceItems;
-			if(interfaceIdList != null){
-				logger.debug("Interface id list requested: {}", interfaceIdList.toString()); 
-				interfaceItems = interfaceDAO.getInterfacesWithResidues(cluster.getUid(), interfaceIdList);
-			}
-			else{
-				interfaceItems = interfaceDAO.getInterfacesWithResidues(cluster.getUid());
-			}
-			cluster.setInterfaces(interfaceItems);
-		}
+		boolean withChainClusters = getSeqInfo == null || getSeqInfo.equals("t");
+		String options = "interfaces=" + interfaceIdList + "&seqInfo=" + withChainClusters;
 
-		// now we remove interface clusters with no interfaces, which can happen when interfaceIdList is provided
-		if (interfaceIdList!=null) {
-			Iterator<InterfaceCluster> it = clusters.iterator();
-			while (it.hasNext()) {
-				InterfaceCluster cluster = it.next();
-				if (cluster.getInterfaces().size()==0) {
-					it.remove();
-					logger.debug("Removing cluster uid="+cluster.getUid()+", clusterId="+cluster.getClusterId()+" since none of its interfaces was requested");
-				}
+		// the results of precomputed entries only change through the upload tools, which give the job a new uid
+		boolean cacheable = input.getInputType() == InputType.PDBCODE.getIndex();
+		ResultCache<String> cache = ResultCache.getXmlCache();
+		if (cacheable) {
+			String xml = cache.get(jobId, options, input.getJobUid());
+			if (xml != null) {
+				writer.append(xml);
+				return;
 			}
 		}
 		
-		pdbInfo.setInterfaceClusters(clusters);
-
-		if(getSeqInfo == null || getSeqInfo.equals("t")){	
-			ChainClusterDAO chainClusterDAO = new ChainClusterDAOJpa();
-			List<ChainCluster> chainClusters = chainClusterDAO.getChainClusters(pdbInfo.getUid());
-			pdbInfo.setChainClusters(chainClusters);
+		PdbInfo pdbInfo = getResultData(jobId, input, interfaceIdList, withChainClusters);
+		
+		if (cacheable && populateCache) {
+			StringWriter xmlWriter = new StringWriter();
+			marshaller.marshal(pdbInfo, xmlWriter);
+			String xml = xmlWriter.toString();
+			cache.put(jobId, options, input.getJobUid(), xml);
+			logger.debug("{}", cache);
+			writer.append(xml);
+		} else {
+			marshaller.marshal(pdbInfo, writer);
 		}
+	}
+	
+	/**
+	 * Retrieves pdbInfo item for job.
+	 * @param jobId identifier of the job
+	 * @param input the input of the job
+	 * @param interfaceIdList list of interface ids to be retrieved (null for everything)
+	 * @param withChainClusters whether to retrieve the chain clusters
+	 * @return pdb info item
+	 * @throws DaoException when can not retrieve result of the job
+	 */
+	private PdbInfo getResultData(String jobId, InputWithType input, List<Integer> interfaceIdList, boolean withChainClusters) throws DaoException
+	{
+		if(interfaceIdList != null){
+			logger.debug("Interface id list requested: {}", interfaceIdList.toString()); 
+		}
+		
+		PDBInfoDAO pdbInfoDAO = new PDBInfoDAOJpa();
+		// as before, the interface warnings are only included when a list of interfaces is requested
+		PdbInfo pdbInfo = pdbInfoDAO.getPDBInfoWithResults(jobId, interfaceIdList, true, interfaceIdList != null, withChainClusters);
 		
 		pdbInfo.setInputType(input.getInputType());
 		pdbInfo.setInputName(input.getInputName());
 		
-		
-		// assemblies info
-		AssemblyDAO assemblyDAO = new AssemblyDAOJpa();
-		
-		List<Assembly> assemblies = assemblyDAO.getAssemblies(pdbInfo.getUid());
-		pdbInfo.setAssemblies(assemblies);
-		
 		return pdbInfo;
 	}
 
 	/**
-	 * converts the contents of the class to xml file
+	 * Writes the xml of the pdb info items of the jobs to the response. The items are retrieved 
+	 * and written one at a time, each flushed to the client as soon as written, so that the memory used 
+	 * does not depend on the number of jobs. Bulk requests (more than {@link #MAX_JOBS_TO_CACHE} jobs) 
+	 * use cached items but don't add to the cache, so that they don't evict the frequently requested ones.
+	 * <p>
+	 * The jobs must have been checked to exist and be finished before calling this. If an entry still fails
+	 * to be retrieved: if nothing was sent yet, the buffered output is discarded and the exception thrown, 
+	 * so that an error status is sent instead. Otherwise the exception is thrown without closing the list:
+	 * the servlet container then aborts the connection, so that the client doesn't get a truncated 
+	 * document with a successful status.
 	 * @param response to write xml file
+	 * @param jobIdMap map of job ids to the ids of their interfaces to write (null for all)
+	 * @param getSeqInfo
 	 * @throws IOException 
 	 * @throws JAXBException 
+	 * @throws DaoException 
 	 */
-	void createXMLResponse(HttpServletResponse response, List<PdbInfo> pdbList) throws IOException, JAXBException{
-
-		if(pdbList == null) return;
+	void createXMLResponse(HttpServletResponse response, Map<String, List<Integer>> jobIdMap, String getSeqInfo) 
+			throws IOException, JAXBException, DaoException {
 
 		response.setContentType("text/xml");
 		response.setCharacterEncoding("UTF-8");
 
 		PrintWriter writer = response.getWriter();
+		Marshaller marshaller = createMarshaller();
+		boolean populateCache = jobIdMap.size() <= MAX_JOBS_TO_CACHE;
 
-		serializePdbInfoList(pdbList, writer);
-
+		writer.append("<eppicAnalysisList>");
+		int written = 0;
+		String jobId = null;
+		try {
+			for(String id: jobIdMap.keySet()){
+				jobId = id;
+				writeResultXml(writer, marshaller, jobId, jobIdMap.get(jobId), getSeqInfo, populateCache);
+				writer.flush();
+				// the print writer doesn't throw: stop loading entries if the client went away
+				if (writer.checkError()) {
+					logger.info("Client disconnected from xml download after {} of {} entries", written, jobIdMap.size());
+					return;
+				}
+				written++;
+			}
+		} catch (DaoException | JAXBException | RuntimeException e) {
+			if (!response.isCommitted()) {
+				// nothing sent yet: the error status can still be sent
+				response.resetBuffer();
+			} else {
+				logger.error("Could not retrieve entry {} of xml download after {} of {} entries were sent, aborting the response", 
+						jobId, written, jobIdMap.size());
+			}
+			throw e;
+		}
+		writer.append("</eppicAnalysisList>");
 	}
 
 	public void serializePdbInfoList(List<PdbInfo> pdbList, PrintWriter writer) throws JAXBException {
-	    // create JAXB context and initializing Marshaller
-	    JAXBContext jaxbContext = JAXBContext.newInstance(PdbInfo.class);
-	    Marshaller jaxbMarshaller = jaxbContext.createMarshaller();
-
-	    // for getting nice formatted output
-	    jaxbMarshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, Boolean.TRUE);
-	    jaxbMarshaller.setProperty(Marshaller.JAXB_FRAGMENT, Boolean.TRUE);
+	    Marshaller jaxbMarshaller = createMarshaller();
 
-	    // Writing to console
 	    writer.append("<eppicAnalysisList>");
 	    
 	    for(PdbInfo pdb:pdbList){
@@ -232,4 +274,26 @@ public class DataDownloadServlet extends BaseServlet{
 	    }
 	    writer.append("</eppicAnalysisList>");
 	}
+	
+	/**
+	 * Creates a marshaller of PdbInfo xml fragments. The JAXBContext is thread-safe and expensive to
+	 * create, so it is created once and shared, while marshallers are not thread-safe and cheap.
+	 * @return
+	 * @throws JAXBException
+	 */
+	private static Marshaller createMarshaller() throws JAXBException {
+		Marshaller jaxbMarshaller = getJAXBContext().createMarshaller();
+
+		// for getting nice formatted output
+		jaxbMarshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, Boolean.TRUE);
+		jaxbMarshaller.setProperty(Marshaller.JAXB_FRAGMENT, Boolean.TRUE);
+		return jaxbMarshaller;
+	}
+	
+	private static synchronized JAXBContext getJAXBContext() throws JAXBException {
+		if (jaxbContext == null) {
+			jaxbContext = JAXBContext.newInstance(PdbInfo.class);
+		}
+		return jaxbContext;
+	}
 }
@@ -2,6 +2,7 @@ package ch.systemsx.sybit.crkwebui.server.files.downloader.validators;
 
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -39,9 +40,7 @@ public class DataDownloadServletInputValidator {
 			throw new ValidationException("Exceeded maximum number of jobs allowed ("+maxXMLJobs+") to be retrieved in one call");
 		}
 		
-		for(String jobId: jobIdMap.keySet()){
-			checkIfResultsExist(jobId);
-		}
+		checkIfResultsExist(jobIdMap.keySet());
 		
 		if(getSeqInfo != null){
 			if(!( getSeqInfo.equals("t") || getSeqInfo.equals("f") )){
@@ -53,22 +52,22 @@ public class DataDownloadServletInputValidator {
 	
 
 	/**
-	 * 
-	 * @param jobId
+	 * Checks that all the jobs exist and are finished, with a single query for all of them
+	 * @param jobIds
+	 * @throws ValidationException if any of the jobs is not found or not finished
 	 * @throws DaoException 
-	 * @throws Exception
 	 */
-	private static void checkIfResultsExist(String jobId) throws ValidationException, DaoException
+	private static void checkIfResultsExist(Set<String> jobIds) throws ValidationException, DaoException
 	{
-		StatusOfJob status = null;
-
 		JobDAO jobDAO = new JobDAOJpa();
-		status = jobDAO.getStatusForJob(jobId);
+		Map<String, StatusOfJob> statuses = jobDAO.getStatusForJobs(jobIds);
 
-		if(status == null || !status.equals(StatusOfJob.FINISHED))
-		{
+		for(String jobId: jobIds){
+			StatusOfJob status = statuses.get(jobId);
+			if(status == null || !status.equals(StatusOfJob.FINISHED))
+			{
 				throw new ValidationException("Nothing found with the provided id:"+ jobId);
+			}
 		}
-
 	}
 }
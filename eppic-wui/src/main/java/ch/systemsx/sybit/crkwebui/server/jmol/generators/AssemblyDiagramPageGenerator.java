@@ -11,6 +11,7 @@ import java.util.concurrent.ExecutionException;
 
 import org.biojava.nbio.structure.Structure;
 import org.biojava.nbio.structure.StructureException;
+import org.biojava.nbio.structure.contact.StructureInterface;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -24,6 +25,7 @@ import com.github.mustachejava.MustacheFactory;
 import eppic.EppicParams;
 import eppic.assembly.ChainVertex3D;
 import eppic.assembly.InterfaceEdge3D;
+import eppic.assembly.LatticeGraph;
 import eppic.assembly.gui.LatticeGUIMustache;
 import eppic.assembly.layout.GraphLayout;
 
@@ -46,7 +48,7 @@ public class AssemblyDiagramPageGenerator {
 	 * @param auFile the structure file containing the AU
 	 * @param title Page title [default: structure name]
 	 * @param size the canvas size 
-	 * @param interfaces List of all interfaces to build the latticegraph
+	 * @param interfaces List of all interfaces to build the latticegraph, if null they are recalculated
 	 * @param requestedIfaces 
 	 * @param out
 	 * @return the HTML page
@@ -63,7 +65,14 @@ public class AssemblyDiagramPageGenerator {
 
 			Structure auStruct = LatticeGraphPageGenerator.readStructure(auFile);
 
-			LatticeGUIMustache gui = LatticeGUIMustache.createLatticeGUIMustache(LatticeGUIMustache.TEMPLATE_ASSEMBLY_DIAGRAM_JSON, auStruct, requestedIfaces);
+			// as for the lattice graph page, the graph is built from the interfaces stored for the job 
+			// instead of recalculating them. They are only recalculated if no interfaces are given
+			List<StructureInterface> siList = null;
+			if (interfaces != null) {
+				siList = LatticeGraphPageGenerator.createStructureInterfaces(interfaces, LatticeGraph.getSpaceGroup(auStruct));
+			}
+
+			LatticeGUIMustache gui = new LatticeGUIMustache(LatticeGUIMustache.TEMPLATE_ASSEMBLY_DIAGRAM_JSON, auStruct, requestedIfaces, siList);
 
 			GraphLayout<ChainVertex3D, InterfaceEdge3D> layout2D = LatticeGUIMustache.getDefaultLayout2D(auStruct);
 			gui.setLayout2D( layout2D );
@@ -13,18 +13,13 @@ import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.zip.GZIPInputStream;
 
-import org.biojava.nbio.structure.Atom;
-//import org.biojava.nbio.structure.PDBCrystallographicInfo;
 import org.biojava.nbio.structure.Structure;
 import org.biojava.nbio.structure.StructureException;
-import org.biojava.nbio.structure.contact.AtomContactSet;
 import org.biojava.nbio.structure.contact.StructureInterface;
-import org.biojava.nbio.structure.contact.StructureInterfaceCluster;
 import org.biojava.nbio.structure.io.PDBFileParser;
 import org.biojava.nbio.structure.io.mmcif.MMcifParser;
 import org.biojava.nbio.structure.io.mmcif.SimpleMMcifConsumer;
 import org.biojava.nbio.structure.io.mmcif.SimpleMMcifParser;
-import org.biojava.nbio.structure.xtal.CrystalTransform;
 import org.biojava.nbio.structure.xtal.SpaceGroup;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -38,7 +33,9 @@ import com.github.mustachejava.MustacheFactory;
 import com.google.gson.Gson;
 
 import eppic.EppicParams;
+import eppic.assembly.LatticeGraph;
 import eppic.assembly.LatticeGraph3D;
+import eppic.assembly.StoredStructureInterface;
 import eppic.assembly.gui.LatticeGUIMustache;
 
 /**
@@ -125,21 +122,15 @@ public class LatticeGraphPageGenerator {
 
 			Structure struc = readStructure(strucFile);
 
-			// Read spacegroup
-			//PDBCrystallographicInfo crystInfo = struc
-			//		.getCrystallographicInfo();
-			//SpaceGroup sg = crystInfo.getSpaceGroup();
-
-			//List<StructureInterface> siList = createStructureInterfaces(interfaces, sg);
-
-			// Because of issue #159 we have to pass null for the interfaces here so that they are recalculated from 
-			// the passed struc, which makes this quite slow the first time it is called for a certain combination
-			// of interfaces - JD 2017-08-29
-			// This is ok since the json files for all valid assemblies are precalculated in CLI,
-			// this can only be called if a non-valid combination of interfaces is requested by crafting a URL
-			// TODO it'd be good to have a better solution by implementing a LatticeGraph constructor that
-			// takes Interface bean objects as input instead of converting the beans to full StructureInterface objects.
-			LatticeGraph3D graph = new LatticeGraph3D(struc, null);
+			// the graph is built from the interfaces stored for the job: no need to recalculate them (see issue #159)
+			// This is only needed if a non-precalculated combination of interfaces is requested
+			// (the json files for all valid assemblies are precalculated in CLI)
+			List<StructureInterface> siList = null;
+			if (interfaces != null) {
+				siList = createStructureInterfaces(interfaces, LatticeGraph.getSpaceGroup(struc));
+			}
+
+			LatticeGraph3D graph = new LatticeGraph3D(struc, siList);
 			if( requestedIfaces != null ) {
 				logger.info("Filtering LatticeGraph3D to edges {}",requestedIfaces);
 				graph.filterEngagedInterfaces(requestedIfaces);
@@ -165,7 +156,8 @@ public class LatticeGraphPageGenerator {
 	}
 
 	/**
-	 * Convert `Interface` beans to full StructureInterface objects
+	 * Convert `Interface` beans to StructureInterface objects with the stored operators
+	 * and properties, but without atoms or contacts. Enough to build a LatticeGraph.
 	 * @param interfaces
 	 * @param sg
 	 * @return
@@ -173,40 +165,18 @@ public class LatticeGraphPageGenerator {
 	public static List<StructureInterface> createStructureInterfaces(
 			List<Interface> interfaces, SpaceGroup sg) {
 		
-		// TODO note this is broken at the moment, see https://github.com/eppic-team/eppic/issues/159 - JD 2017-01-20
-		//      the functionality is still fine anyway because we produce the json files from CLI
 		List<StructureInterface> siList = new ArrayList<StructureInterface>(
 				interfaces.size());
 		for (Interface iface : interfaces) {
-			Atom[] firstMolecule = new Atom[0];
-			Atom[] secondMolecule = new Atom[0];
-			String firstMoleculeId = iface.getChain1();
-			String secondMoleculeId = iface.getChain2();
-			AtomContactSet contacts = null;
-			int interfaceId = iface.getInterfaceId();
 			int opId = iface.getOperatorId();
 			if(opId < 0 || opId >= sg.getNumOperators() ) {
-				logger.error("Found interface {} in the database, but only {} operators in spacegroup",opId, sg.getNumOperators());
+				logger.error("Found interface {} with operator id {} in the database, but only {} operators in spacegroup",
+						iface.getInterfaceId(), opId, sg.getNumOperators());
 				continue;
 			}
-			CrystalTransform firstTransf = new CrystalTransform(sg, 0);
-			CrystalTransform secondTransf = new CrystalTransform(sg,
-					opId);
-			secondTransf.setMatTransform(SpaceGroup.getMatrixFromAlgebraic(iface.getOperator()));
-			
-			// TODO The problem with issue #159 is that here we can't set the isologous property in StructureInterface.
-			// Later when isIsologous is called it results in a NPE because the code attempts to calculate it 
-			// from contact overlap scores which is not possible because the residue information is missing - JD 2017-08-29
-			
-			StructureInterface siface = new StructureInterface(
-					firstMolecule, secondMolecule, firstMoleculeId,
-					secondMoleculeId, contacts, firstTransf, secondTransf);
-			siface.setId(interfaceId);
-			// hack, new cluster for each interface but with duplicate IDs
-			StructureInterfaceCluster cluster = new StructureInterfaceCluster();
-			cluster.setId(iface.getClusterId());
-			siface.setCluster(cluster );
-			siList.add(siface);
+			siList.add(new StoredStructureInterface(iface.getInterfaceId(), iface.getClusterId(),
+					iface.getChain1(), iface.getChain2(),
+					sg, opId, iface.getOperator(), iface.isInfinite(), iface.isIsologous()));
 		}
 		return siList;
 	}
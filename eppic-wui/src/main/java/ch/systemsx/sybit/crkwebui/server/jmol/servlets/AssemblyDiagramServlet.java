@@ -21,6 +21,7 @@ import org.slf4j.LoggerFactory;
 
 import ch.systemsx.sybit.crkwebui.server.commons.servlets.BaseServlet;
 import ch.systemsx.sybit.crkwebui.server.commons.util.io.DirLocatorUtil;
+import ch.systemsx.sybit.crkwebui.server.commons.util.io.FileCache;
 import ch.systemsx.sybit.crkwebui.server.files.downloader.servlets.FileDownloadServlet;
 import ch.systemsx.sybit.crkwebui.server.jmol.generators.AssemblyDiagramPageGenerator;
 import ch.systemsx.sybit.crkwebui.server.jmol.validators.AssemblyDiagramServletInputValidator;
@@ -69,6 +70,12 @@ public class AssemblyDiagramServlet extends BaseServlet
 		//resultsLocation = properties.getProperty("results_location");
 		destination_path = properties.getProperty("destination_path");
 		atomCachePath = propertiesCli.getProperty("ATOM_CACHE_PATH");
+
+		try {
+			FileCache.getInstance().configure(properties);
+		} catch (NumberFormatException e) {
+			throw new ServletException("Invalid value for file cache properties: "+e.getMessage());
+		}
 		
 		if (atomCachePath == null) 
 			logger.warn("ATOM_CACHE_PATH is not set in config file, will not be able to reuse cache for PDB cif.gz files!");
@@ -125,6 +132,7 @@ public class AssemblyDiagramServlet extends BaseServlet
 				File auFile = LatticeGraphServlet.getAuFileName(dir, input, atomCachePath);
 				// important: input (second param) here must be the truncated input name or otherwise user jobs don't work - JD 2017-02-04
 				AssemblyDiagramPageGenerator.generateJSONPage(dir,inputPrefix, auFile, ifaceList, requestedIfaces,outputStream);
+				logger.debug("File cache: {}", FileCache.getInstance().getStats());
 			} else {
 				// Request URL, with format=json
 				StringBuffer jsonURL = request.getRequestURL();
@@ -25,6 +25,7 @@ import org.slf4j.LoggerFactory;
 
 import ch.systemsx.sybit.crkwebui.server.commons.servlets.BaseServlet;
 import ch.systemsx.sybit.crkwebui.server.commons.util.io.DirLocatorUtil;
+import ch.systemsx.sybit.crkwebui.server.commons.util.io.FileCache;
 import ch.systemsx.sybit.crkwebui.server.db.dao.InterfaceDAO;
 import ch.systemsx.sybit.crkwebui.server.db.dao.JobDAO;
 import ch.systemsx.sybit.crkwebui.server.db.dao.PDBInfoDAO;
@@ -86,6 +87,12 @@ public class LatticeGraphServlet extends BaseServlet
 		resultsLocation = properties.getProperty("results_location");
 		destination_path = properties.getProperty("destination_path");
 		atomCachePath = propertiesCli.getProperty("ATOM_CACHE_PATH");
+
+		try {
+			FileCache.getInstance().configure(properties);
+		} catch (NumberFormatException e) {
+			throw new ServletException("Invalid value for file cache properties: "+e.getMessage());
+		}
 		
 		if (atomCachePath == null) 
 			logger.warn("ATOM_CACHE_PATH is not set in config file, will not be able to reuse cache for PDB cif.gz files!");
@@ -158,6 +165,7 @@ public class LatticeGraphServlet extends BaseServlet
 			if(format != null && format.equalsIgnoreCase("json")) {
 				// important: input (second param) here must be the truncated input name or otherwise user jobs don't work - JD 2017-02-04
 				LatticeGraphPageGenerator.generateJSONPage(dir, inputPrefix, auFile, ifaceList, requestedIfaces, outputStream);
+				logger.debug("File cache: {}", FileCache.getInstance().getStats());
 			} else {
 				String nglJsUrl = properties.getProperty("urlNglJs");
 				if (nglJsUrl == null || nglJsUrl.equals("")) {
@@ -7,6 +7,7 @@ import org.slf4j.LoggerFactory;
 
 import ch.systemsx.sybit.crkwebui.server.jobs.managers.commons.JobManager;
 import ch.systemsx.sybit.crkwebui.server.jobs.managers.drmaa.DrmaaJobManager;
+import ch.systemsx.sybit.crkwebui.server.jobs.managers.local.LocalJobManager;
 import ch.systemsx.sybit.crkwebui.shared.exceptions.JobManagerException;
 
 /**
@@ -40,6 +41,11 @@ public class JobManagerFactory
 												 queuingSystemProperties,
 												 jobsDirectory);
 			}
+			else if(queuingSystemName.equals("local"))
+			{
+				LOGGER.info("Initialising LocalJobManager with jobsDirectory {}", jobsDirectory);
+				jobManager = new LocalJobManager(queuingSystemProperties, jobsDirectory);
+			}
 		}
 
 		return jobManager;
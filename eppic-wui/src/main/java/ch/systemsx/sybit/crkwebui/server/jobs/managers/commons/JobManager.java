@@ -1,6 +1,10 @@
 package ch.systemsx.sybit.crkwebui.server.jobs.managers.commons;
 
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+
+import org.slf4j.LoggerFactory;
 
 import ch.systemsx.sybit.crkwebui.shared.exceptions.JobHandlerException;
 import ch.systemsx.sybit.shared.model.StatusOfJob;
@@ -12,6 +16,11 @@ import ch.systemsx.sybit.shared.model.StatusOfJob;
  */
 public interface JobManager
 {
+	/**
+	 * Priority of jobs submitted without one.
+	 */
+	public static final int DEFAULT_PRIORITY = 0;
+
 	/**
 	 * Starts new job.
 	 * @param jobId identifier of the job to submit
@@ -27,6 +36,32 @@ public interface JobManager
 						   String jobDirectory, 
 						   int nrOfThreadsForSubmission) throws JobHandlerException;
 
+	/**
+	 * Starts new job on behalf of a submitter. Job managers scheduling the jobs themselves use the memory
+	 * to account for the resources, the submitter to share them fairly and the priority to order the jobs.
+	 * The default ignores them, leaving the scheduling to the queuing system.
+	 * @param jobId identifier of the job to submit
+	 * @param command command to execute
+	 * @param jobDirectory directory where results of the job are to be stored
+	 * @param nrOfThreadsForSubmission nr of threads used to run command
+	 * @param assignedMemory memory in megabytes assigned to the command
+	 * @param submitter identifier of the submitter of the job (e.g. its IP address), may be null
+	 * @param priority priority of the job, jobs with higher priority are started first
+	 * @return submissionId
+	 * @throws JobHandlerException when job can not be successfully started
+	 */
+	public default String startJob(String javaVMExec,
+								   String jobId,
+								   List<String> command,
+								   String jobDirectory,
+								   int nrOfThreadsForSubmission,
+								   int assignedMemory,
+								   String submitter,
+								   int priority) throws JobHandlerException
+	{
+		return startJob(javaVMExec, jobId, command, jobDirectory, nrOfThreadsForSubmission);
+	}
+
 	/**
 	 * Retrieves current status of specified job.
 	 * @param jobId identifier of the job
@@ -36,6 +71,31 @@ public interface JobManager
 	 */
 	public StatusOfJob getStatusOfJob(String jobId, String submissionId) throws JobHandlerException;
 
+	/**
+	 * Retrieves current statuses of the specified jobs in one call. Implementations able to query
+	 * several jobs at once should override the default, which retrieves them one by one.
+	 * @param submissionIds submission identifiers of the jobs keyed by identifier of the job
+	 * @return statuses keyed by identifier of the job, jobs whose status can not be retrieved are omitted
+	 */
+	public default Map<String, StatusOfJob> getStatusOfJobs(Map<String, String> submissionIds)
+	{
+		Map<String, StatusOfJob> statuses = new HashMap<String, StatusOfJob>();
+
+		for(Map.Entry<String, String> job : submissionIds.entrySet())
+		{
+			try
+			{
+				statuses.put(job.getKey(), getStatusOfJob(job.getKey(), job.getValue()));
+			}
+			catch(JobHandlerException e)
+			{
+				LoggerFactory.getLogger(JobManager.class).warn("Can not retrieve status of job {}: {}", job.getKey(), e.getMessage());
+			}
+		}
+
+		return statuses;
+	}
+
 	/**
 	 * Stops execution of the job.
 	 * @param submissionId submission identifier of the job to stop
@@ -0,0 +1,208 @@
+package ch.systemsx.sybit.crkwebui.server.jobs.managers.commons;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ch.systemsx.sybit.crkwebui.server.CrkWebServiceImpl;
+import ch.systemsx.sybit.crkwebui.server.commons.util.io.DirLocatorUtil;
+
+/**
+ * Watches the directories of unfinished jobs for the marker files signalling the end of a job:
+ * {@link CrkWebServiceImpl#FINISHED_FILE_NAME}, written by eppic at the end of a successful run, and
+ * {@link CrkWebServiceImpl#KILLED_FILE_NAME}, written when a job is stopped.
+ * <p>
+ * File system events are not delivered for files written from other hosts to network file systems
+ * (e.g. jobs running on cluster nodes), so the watcher only speeds up the detection of finished jobs:
+ * the job manager still has to be polled as a fallback.
+ * <p>
+ * Not thread safe, except for {@link #close()} which also wakes up a thread waiting in {@link #awaitMarkers(long)}.
+ */
+public class JobMarkerWatcher implements Closeable
+{
+	private static final Logger logger = LoggerFactory.getLogger(JobMarkerWatcher.class);
+
+	private final File jobsDirectory;
+	private final WatchService watchService;
+
+	private final Map<String, WatchKey> watchedJobs;
+
+	// jobs whose marker already existed when their directory started being watched
+	private final Set<String> pendingJobs;
+
+	/**
+	 * Creates a watcher for jobs stored in the given directory.
+	 * @param jobsDirectory directory where results of jobs are stored
+	 * @throws IOException when the watch service can not be created
+	 */
+	public JobMarkerWatcher(File jobsDirectory) throws IOException
+	{
+		this.jobsDirectory = jobsDirectory;
+		this.watchService = FileSystems.getDefault().newWatchService();
+		this.watchedJobs = new HashMap<String, WatchKey>();
+		this.pendingJobs = new HashSet<String>();
+	}
+
+	/**
+	 * Watches the directories of the given jobs and stops watching the directories of any other job.
+	 * Jobs whose directory does not exist yet are retried on the next call.
+	 * @param jobIds identifiers of the jobs to watch
+	 */
+	public void watchJobs(Collection<String> jobIds)
+	{
+		Set<String> jobsToWatch = new HashSet<String>(jobIds);
+
+		Iterator<Map.Entry<String, WatchKey>> it = watchedJobs.entrySet().iterator();
+		while(it.hasNext())
+		{
+			Map.Entry<String, WatchKey> entry = it.next();
+			if(!jobsToWatch.contains(entry.getKey()))
+			{
+				entry.getValue().cancel();
+				it.remove();
+			}
+		}
+		pendingJobs.retainAll(jobsToWatch);
+
+		for(String jobId : jobsToWatch)
+		{
+			if(watchedJobs.containsKey(jobId))
+			{
+				continue;
+			}
+
+			File jobDirectory = DirLocatorUtil.getJobDir(jobsDirectory, jobId);
+			if(!jobDirectory.isDirectory())
+			{
+				continue;
+			}
+
+			try
+			{
+				watchedJobs.put(jobId, jobDirectory.toPath().register(watchService, ENTRY_CREATE));
+			}
+			catch(IOException e)
+			{
+				logger.warn("Can not watch directory {} of job {}: {}", jobDirectory, jobId, e.getMessage());
+				continue;
+			}
+
+			// the marker may have been written before the directory was registered
+			if(getMarkerFile(jobDirectory) != null)
+			{
+				pendingJobs.add(jobId);
+			}
+		}
+	}
+
+	/**
+	 * Waits until a marker file is created in the directory of a watched job or the timeout elapses,
+	 * returning immediately if markers were already created.
+	 * @param timeout maximum time to wait in milliseconds, 0 to not wait
+	 * @return identifiers of the jobs for which a marker file was created, empty if the timeout elapsed
+	 * or the watcher was closed
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	public Set<String> awaitMarkers(long timeout) throws InterruptedException
+	{
+		Set<String> jobIds = new HashSet<String>(pendingJobs);
+		pendingJobs.clear();
+
+		try
+		{
+			WatchKey key = jobIds.isEmpty() ? watchService.poll(timeout, TimeUnit.MILLISECONDS) : watchService.poll();
+
+			while(key != null)
+			{
+				String jobId = ((Path) key.watchable()).getFileName().toString();
+
+				for(WatchEvent<?> event : key.pollEvents())
+				{
+					// events were lost: let the caller check the job
+					if(event.kind() == OVERFLOW || isMarker((Path) event.context()))
+					{
+						jobIds.add(jobId);
+					}
+				}
+
+				// no longer valid if the directory was removed
+				if(!key.reset())
+				{
+					watchedJobs.remove(jobId);
+				}
+
+				key = watchService.poll();
+			}
+		}
+		catch(ClosedWatchServiceException e)
+		{
+			return new HashSet<String>();
+		}
+
+		// events of jobs no longer watched may still have been queued
+		jobIds.retainAll(watchedJobs.keySet());
+		return jobIds;
+	}
+
+	/**
+	 * Retrieves the marker file of a job.
+	 * @param jobDirectory directory of the job
+	 * @return the finished or killed file of the job, null if none exists
+	 */
+	public static File getMarkerFile(File jobDirectory)
+	{
+		File finishedFile = new File(jobDirectory, CrkWebServiceImpl.FINISHED_FILE_NAME);
+		if(finishedFile.exists())
+		{
+			return finishedFile;
+		}
+
+		File killedFile = new File(jobDirectory, CrkWebServiceImpl.KILLED_FILE_NAME);
+		if(killedFile.exists())
+		{
+			return killedFile;
+		}
+
+		return null;
+	}
+
+	/**
+	 * Retrieves the number of job directories currently watched.
+	 * @return number of watched job directories
+	 */
+	public int getNumberOfWatchedJobs()
+	{
+		return watchedJobs.size();
+	}
+
+	private static boolean isMarker(Path fileName)
+	{
+		String name = fileName.toString();
+		return name.equals(CrkWebServiceImpl.FINISHED_FILE_NAME) || name.equals(CrkWebServiceImpl.KILLED_FILE_NAME);
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		watchService.close();
+	}
+}
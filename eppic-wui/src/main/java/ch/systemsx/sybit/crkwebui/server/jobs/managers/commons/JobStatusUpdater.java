@@ -1,12 +1,17 @@
 package ch.systemsx.sybit.crkwebui.server.jobs.managers.commons;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.ObjectInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
-//import org.slf4j.Logger;
-//import org.slf4j.LoggerFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import ch.systemsx.sybit.crkwebui.server.CrkWebServiceImpl;
 import ch.systemsx.sybit.crkwebui.server.commons.util.io.DirLocatorUtil;
@@ -17,23 +22,33 @@ import ch.systemsx.sybit.crkwebui.server.db.dao.JobDAO;
 import ch.systemsx.sybit.crkwebui.server.db.data.JobStatusDetails;
 import ch.systemsx.sybit.crkwebui.server.email.data.EmailMessageData;
 import ch.systemsx.sybit.crkwebui.server.email.managers.EmailSender;
+import ch.systemsx.sybit.crkwebui.server.runners.JobDeduplicator;
 import ch.systemsx.sybit.crkwebui.shared.exceptions.DaoException;
 import ch.systemsx.sybit.crkwebui.shared.exceptions.DeserializationException;
-import ch.systemsx.sybit.crkwebui.shared.exceptions.JobHandlerException;
 import ch.systemsx.sybit.shared.model.StatusOfJob;
 import eppic.model.PdbInfoDB;
+import eppic.modelio.ResultFileReader;
 
 /**
  * Daemon used to update status of submitted jobs.
+ * <p>
+ * The statuses of all unfinished jobs are retrieved from the job manager in one batch per polling pass.
+ * The polling interval starts at the minimum and doubles after every pass without changes up to the maximum,
+ * going back to the minimum as soon as a change is detected. If watching of markers is enabled, the directories
+ * of the unfinished jobs are also watched for the finished and killed files (see {@link JobMarkerWatcher}): a job
+ * is then checked as soon as its marker is written, polling being only a fallback for the events that can't
+ * be watched (e.g. jobs starting or failing, or files written to network file systems from other hosts).
+ * The delay between the writing of the markers and the detection of the end of the jobs is recorded,
+ * see {@link #getDetectionStatistics()}.
  * @author AS
  *
  */
 public class JobStatusUpdater implements Runnable
 {
-	//private static final Logger logger = LoggerFactory.getLogger(JobStatusUpdater.class);
+	private static final Logger logger = LoggerFactory.getLogger(JobStatusUpdater.class);
 	
 	/**
-	 * The polling interval in milliseconds
+	 * The default polling interval in milliseconds
 	 */
 	public static final int POLLING_INTERVAL = 2000;
 	
@@ -46,6 +61,19 @@ public class JobStatusUpdater implements Runnable
 	private EmailMessageData emailMessageData;
 	private String generalDestinationDirectoryName;
 
+	private long minPollingInterval;
+	private long maxPollingInterval;
+	private JobMarkerWatcher markerWatcher;
+	private final Object sleepMonitor = new Object();
+
+	private long nrOfDetectionsByWatch;
+	private long nrOfDetectionsByPolling;
+	private long totalDetectionLatency;
+	private long maxDetectionLatency;
+
+	/**
+	 * Creates a daemon polling the job manager every {@link #POLLING_INTERVAL} milliseconds.
+	 */
 	public JobStatusUpdater(JobManager jobManager,
 							JobDAO jobDAO,
 							String resultsPathUrl,
@@ -53,6 +81,33 @@ public class JobStatusUpdater implements Runnable
 							EmailMessageData emailMessageData,
 							String generalDestinationDirectoryName)
 	{
+		this(jobManager, jobDAO, resultsPathUrl, emailSender, emailMessageData, generalDestinationDirectoryName,
+				POLLING_INTERVAL, POLLING_INTERVAL, false);
+	}
+
+	/**
+	 * Creates a daemon polling the job manager with an adaptive interval, optionally watching the job directories.
+	 * @param minPollingInterval polling interval in milliseconds used while job statuses change
+	 * @param maxPollingInterval polling interval in milliseconds reached while no job status changes
+	 * @param watchMarkers whether to watch the job directories for finished and killed files,
+	 * if watching is not supported only polling is used
+	 * @throws IllegalArgumentException if the minimum interval is not positive or is larger than the maximum
+	 */
+	public JobStatusUpdater(JobManager jobManager,
+							JobDAO jobDAO,
+							String resultsPathUrl,
+							EmailSender emailSender,
+							EmailMessageData emailMessageData,
+							String generalDestinationDirectoryName,
+							long minPollingInterval,
+							long maxPollingInterval,
+							boolean watchMarkers)
+	{
+		if(minPollingInterval <= 0 || minPollingInterval > maxPollingInterval)
+		{
+			throw new IllegalArgumentException("Invalid polling intervals: minimum "+minPollingInterval+", maximum "+maxPollingInterval);
+		}
+
 		this.running = true;
 		this.jobManager = jobManager;
 		this.jobDAO = jobDAO;
@@ -60,11 +115,29 @@ public class JobStatusUpdater implements Runnable
 		this.emailSender = emailSender;
 		this.emailMessageData = emailMessageData;
 		this.generalDestinationDirectoryName = generalDestinationDirectoryName;
+		this.minPollingInterval = minPollingInterval;
+		this.maxPollingInterval = maxPollingInterval;
+
+		if(watchMarkers)
+		{
+			try
+			{
+				markerWatcher = new JobMarkerWatcher(new File(generalDestinationDirectoryName));
+			}
+			catch(IOException e)
+			{
+				logger.warn("Can not watch job directories, job statuses will only be polled. Error: "+e.getMessage());
+			}
+		}
 	}
 
 	@Override
 	public void run()
 	{
+		long pollingInterval = minPollingInterval;
+		long lastPollingTime = 0;
+		Set<String> signalledJobs = Collections.emptySet();
+
 		while(running)
 		{
 			isUpdating = true;
@@ -73,64 +146,282 @@ public class JobStatusUpdater implements Runnable
 			{
 				List<JobStatusDetails> unfinishedJobs = jobDAO.getListOfUnfinishedJobs();
 
+				long now = System.currentTimeMillis();
+				boolean polling = now - lastPollingTime >= pollingInterval;
+
+				List<JobStatusDetails> jobsToCheck = new ArrayList<JobStatusDetails>();
+				List<String> unfinishedJobIds = new ArrayList<String>();
 				for(JobStatusDetails unfinishedJob : unfinishedJobs)
 				{
-					try
+					unfinishedJobIds.add(unfinishedJob.getJobId());
+					if(polling || signalledJobs.contains(unfinishedJob.getJobId()))
 					{
-						StatusOfJob savedStatus = StatusOfJob.getByName(unfinishedJob.getStatus());
-
-						StatusOfJob currentStatus = jobManager.getStatusOfJob(unfinishedJob.getJobId(), unfinishedJob.getSubmissionId());
-
-						if(savedStatus != currentStatus)
-						{
-							File logFileDirectory = DirLocatorUtil.getJobDir(new File(generalDestinationDirectoryName), unfinishedJob.getJobId());
-							File logFile = new File(logFileDirectory, CrkWebServiceImpl.PROGRESS_LOG_FILE_NAME);
-
-							if(currentStatus == StatusOfJob.FINISHED)
-							{
-								handleJobFinishedSuccessfully(unfinishedJob, logFile);
-							}
-							else if(currentStatus == StatusOfJob.ERROR)
-							{
-								handleJobFinishedWithError(unfinishedJob);
-							}
-							else if(currentStatus == StatusOfJob.RUNNING)
-							{
-								handleRunningJob(unfinishedJob.getJobId());
-							}
-							else if(currentStatus == StatusOfJob.WAITING)
-							{
-								handleWaitingJob(unfinishedJob.getJobId());
-							}
-							else if(currentStatus == StatusOfJob.STOPPED)
-							{
-								handleStoppedJob(unfinishedJob.getJobId());
-							}
-						}
+						jobsToCheck.add(unfinishedJob);
 					}
-					catch(DeserializationException e)
+				}
+
+				if(markerWatcher != null)
+				{
+					markerWatcher.watchJobs(unfinishedJobIds);
+				}
+
+				boolean changed = updateStatuses(jobsToCheck, signalledJobs);
+
+				if(changed)
+				{
+					pollingInterval = minPollingInterval;
+				}
+				else if(polling)
+				{
+					pollingInterval = Math.min(2*pollingInterval, maxPollingInterval);
+				}
+
+				if(polling)
+				{
+					lastPollingTime = now;
+				}
+			}
+			catch (Throwable t)
+			{
+				t.printStackTrace();
+				// waiting a full interval before retrying
+				lastPollingTime = System.currentTimeMillis();
+			}
+			
+			isUpdating = false;
+
+			signalledJobs = waitForChanges(Math.max(0, lastPollingTime + pollingInterval - System.currentTimeMillis()));
+		}
+	}
+
+	/**
+	 * Retrieves the current statuses of the jobs in one batch and handles the ones that changed.
+	 * @param jobsToCheck the jobs to check
+	 * @param signalledJobs identifiers of the jobs whose marker was seen being written
+	 * @return whether the status of any job changed
+	 */
+	private boolean updateStatuses(List<JobStatusDetails> jobsToCheck, Set<String> signalledJobs)
+	{
+		if(jobsToCheck.isEmpty())
+		{
+			return false;
+		}
+
+		Map<String, String> submissionIds = new LinkedHashMap<String, String>();
+		Map<String, String> originalJobIds = new HashMap<String, String>();
+		for(JobStatusDetails job : jobsToCheck)
+		{
+			if(JobDeduplicator.isDuplicate(job.getSubmissionId()))
+			{
+				originalJobIds.put(job.getJobId(), JobDeduplicator.getOriginalJobId(job.getSubmissionId()));
+			}
+			else
+			{
+				submissionIds.put(job.getJobId(), job.getSubmissionId());
+			}
+		}
+
+		Map<String, StatusOfJob> currentStatuses = new HashMap<String, StatusOfJob>();
+		if(!submissionIds.isEmpty())
+		{
+			currentStatuses.putAll(jobManager.getStatusOfJobs(submissionIds));
+		}
+		if(!originalJobIds.isEmpty())
+		{
+			currentStatuses.putAll(getStatusOfDuplicates(originalJobIds));
+		}
+
+		boolean changed = false;
+
+		for(JobStatusDetails unfinishedJob : jobsToCheck)
+		{
+			StatusOfJob currentStatus = currentStatuses.get(unfinishedJob.getJobId());
+			if(currentStatus == null)
+			{
+				continue;
+			}
+
+			try
+			{
+				StatusOfJob savedStatus = StatusOfJob.getByName(unfinishedJob.getStatus());
+
+				if(savedStatus != currentStatus)
+				{
+					changed = true;
+
+					File logFileDirectory = DirLocatorUtil.getJobDir(new File(generalDestinationDirectoryName), unfinishedJob.getJobId());
+					File logFile = new File(logFileDirectory, CrkWebServiceImpl.PROGRESS_LOG_FILE_NAME);
+
+					if(currentStatus == StatusOfJob.FINISHED)
+					{
+						recordDetection(unfinishedJob, signalledJobs.contains(unfinishedJob.getJobId()));
+						handleJobFinishedSuccessfully(unfinishedJob, logFile);
+					}
+					else if(currentStatus == StatusOfJob.ERROR)
 					{
 						handleJobFinishedWithError(unfinishedJob);
 					}
-					catch (JobHandlerException e)
+					else if(currentStatus == StatusOfJob.RUNNING)
 					{
-						e.printStackTrace();
+						handleRunningJob(unfinishedJob.getJobId());
 					}
-					catch (DaoException e)
+					else if(currentStatus == StatusOfJob.WAITING)
 					{
-						e.printStackTrace();
+						handleWaitingJob(unfinishedJob.getJobId());
+					}
+					else if(currentStatus == StatusOfJob.STOPPED)
+					{
+						recordDetection(unfinishedJob, signalledJobs.contains(unfinishedJob.getJobId()));
+						handleStoppedJob(unfinishedJob.getJobId());
 					}
 				}
-				
-				Thread.sleep(POLLING_INTERVAL);
 			}
-			catch (Throwable t)
+			catch(DeserializationException e)
 			{
-				t.printStackTrace();
+				try
+				{
+					handleJobFinishedWithError(unfinishedJob);
+				}
+				catch (DaoException e1)
+				{
+					e1.printStackTrace();
+				}
+			}
+			catch (DaoException e)
+			{
+				e.printStackTrace();
 			}
-			
-			isUpdating = false;
 		}
+
+		return changed;
+	}
+
+	/**
+	 * Retrieves the statuses of jobs reusing the results of another job (see {@link JobDeduplicator}):
+	 * the status of the original job while it is in progress, finished once the results of the
+	 * finished original job are linked, error if the original job didn't finish successfully.
+	 * @param originalJobIds identifiers of the original jobs keyed by identifier of the duplicate jobs
+	 * @return statuses keyed by identifier of the duplicate job, empty if they can not be retrieved
+	 */
+	private Map<String, StatusOfJob> getStatusOfDuplicates(Map<String, String> originalJobIds)
+	{
+		Map<String, StatusOfJob> statuses = new HashMap<String, StatusOfJob>();
+
+		Map<String, StatusOfJob> originalStatuses;
+		try
+		{
+			originalStatuses = jobDAO.getStatusForJobs(originalJobIds.values());
+		}
+		catch(DaoException e)
+		{
+			logger.warn("Can not retrieve status of original jobs of duplicate jobs: " + e.getMessage());
+			return statuses;
+		}
+
+		File jobsDirectory = new File(generalDestinationDirectoryName);
+
+		for(Map.Entry<String, String> duplicate : originalJobIds.entrySet())
+		{
+			StatusOfJob originalStatus = originalStatuses.get(duplicate.getValue());
+
+			if(originalStatus == StatusOfJob.FINISHED)
+			{
+				try
+				{
+					JobDeduplicator.linkResults(DirLocatorUtil.getJobDir(jobsDirectory, duplicate.getValue()),
+							DirLocatorUtil.getJobDir(jobsDirectory, duplicate.getKey()));
+					statuses.put(duplicate.getKey(), StatusOfJob.FINISHED);
+				}
+				catch(IOException e)
+				{
+					logger.warn("Can not link results of job {} for duplicate job {}: {}",
+							duplicate.getValue(), duplicate.getKey(), e.getMessage());
+					statuses.put(duplicate.getKey(), StatusOfJob.ERROR);
+				}
+			}
+			else if(originalStatus == StatusOfJob.QUEUING ||
+					originalStatus == StatusOfJob.RUNNING ||
+					originalStatus == StatusOfJob.WAITING)
+			{
+				statuses.put(duplicate.getKey(), originalStatus);
+			}
+			else
+			{
+				statuses.put(duplicate.getKey(), StatusOfJob.ERROR);
+			}
+		}
+
+		return statuses;
+	}
+
+	/**
+	 * Waits until the next polling pass is due, or until markers are written if they are watched.
+	 * @param timeout time to wait in milliseconds
+	 * @return identifiers of the jobs whose marker was written, empty if the timeout elapsed
+	 */
+	private Set<String> waitForChanges(long timeout)
+	{
+		try
+		{
+			if(markerWatcher != null)
+			{
+				return markerWatcher.awaitMarkers(timeout);
+			}
+
+			synchronized(sleepMonitor)
+			{
+				if(running && timeout > 0)
+				{
+					sleepMonitor.wait(timeout);
+				}
+			}
+		}
+		catch(InterruptedException e)
+		{
+			logger.warn("Job status updater interrupted while waiting");
+		}
+
+		return Collections.emptySet();
+	}
+
+	/**
+	 * Records the delay between the writing of the marker of a finished or stopped job and its detection.
+	 * Duplicate jobs are not recorded: their marker is linked from the original job.
+	 * @param job the job
+	 * @param byWatch whether the job was checked because its marker was seen being written
+	 */
+	private void recordDetection(JobStatusDetails job, boolean byWatch)
+	{
+		if(JobDeduplicator.isDuplicate(job.getSubmissionId()))
+		{
+			return;
+		}
+
+		String jobId = job.getJobId();
+		File markerFile = JobMarkerWatcher.getMarkerFile(DirLocatorUtil.getJobDir(new File(generalDestinationDirectoryName), jobId));
+		if(markerFile == null)
+		{
+			return;
+		}
+
+		long latency = Math.max(0, System.currentTimeMillis() - markerFile.lastModified());
+
+		synchronized(this)
+		{
+			if(byWatch)
+			{
+				nrOfDetectionsByWatch++;
+			}
+			else
+			{
+				nrOfDetectionsByPolling++;
+			}
+			totalDetectionLatency += latency;
+			maxDetectionLatency = Math.max(maxDetectionLatency, latency);
+		}
+
+		logger.info("End of job {} detected by {} {} ms after its marker {} was written",
+				jobId, byWatch ? "watch" : "polling", latency, markerFile.getName());
 	}
 
 	/**
@@ -187,7 +478,8 @@ public class JobStatusUpdater implements Runnable
 		}
 		
 		
-		String errorMsg = null;
+		// no error log e.g. for jobs lost in a restart of a local job manager
+		String errorMsg = "Unknown error";
 		
 		if(errorLogFile != null)
 		{
@@ -257,34 +549,15 @@ public class JobStatusUpdater implements Runnable
 
 		if (resultFile.exists())
 		{
-			FileInputStream fileInputStream = null;
-			ObjectInputStream inputStream = null;
-
 			try
 			{
-				fileInputStream = new FileInputStream(resultFile);
-				inputStream = new ObjectInputStream(fileInputStream);
-				pdbScoreItem = (PdbInfoDB)inputStream.readObject();
+				pdbScoreItem = ResultFileReader.read(resultFile);
 			}
 			catch (Throwable e)
 			{
 				e.printStackTrace();
 				throw new DeserializationException(e);
 			}
-			finally
-			{
-				if(inputStream != null)
-				{
-					try
-					{
-						inputStream.close();
-					}
-					catch(Throwable t)
-					{
-						t.printStackTrace();
-					}
-				}
-			}
 		}
 		else
 		{
@@ -294,9 +567,47 @@ public class JobStatusUpdater implements Runnable
 		return pdbScoreItem;
 	}
 	
+	/**
+	 * Sets whether the daemon should keep running. Stopping it wakes it up if it is waiting for changes.
+	 * @param running
+	 */
 	public void setRunning(boolean running)
 	{
 		this.running = running;
+
+		if(!running)
+		{
+			synchronized(sleepMonitor)
+			{
+				sleepMonitor.notifyAll();
+			}
+
+			if(markerWatcher != null)
+			{
+				try
+				{
+					markerWatcher.close();
+				}
+				catch(IOException e)
+				{
+					logger.warn("Can not close watcher of job directories: "+e.getMessage());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Retrieves statistics of the detection of the end of jobs: how many finished or stopped jobs
+	 * were detected by watching their markers and by polling, and the average and maximum delay
+	 * between the writing of the markers and the detection.
+	 * @return statistics of the detection of the end of jobs
+	 */
+	public synchronized String getDetectionStatistics()
+	{
+		long nrOfDetections = nrOfDetectionsByWatch + nrOfDetectionsByPolling;
+		return String.format("Ends of jobs detected: %d by watch, %d by polling; latency average %d ms, maximum %d ms",
+				nrOfDetectionsByWatch, nrOfDetectionsByPolling,
+				nrOfDetections == 0 ? 0 : totalDetectionLatency / nrOfDetections, maxDetectionLatency);
 	}
 
 	/**
@@ -0,0 +1,588 @@
+package ch.systemsx.sybit.crkwebui.server.jobs.managers.local;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ch.systemsx.sybit.crkwebui.server.CrkWebServiceImpl;
+import ch.systemsx.sybit.crkwebui.server.commons.util.io.DirLocatorUtil;
+import ch.systemsx.sybit.crkwebui.server.jobs.managers.commons.JobManager;
+import ch.systemsx.sybit.crkwebui.shared.exceptions.JobHandlerException;
+import ch.systemsx.sybit.crkwebui.shared.exceptions.JobManagerException;
+import ch.systemsx.sybit.shared.model.StatusOfJob;
+
+/**
+ * Job manager running the jobs as child processes of the web server, for installations without a queuing system.
+ * <p>
+ * Jobs are started as long as the sum of their threads and of their memory fits within the budget of the machine
+ * (see {@link #MAX_CORES_PROPERTY} and {@link #MAX_MEMORY_PROPERTY}), the others wait in a queue.
+ * The next job to start is the one with the highest priority. Among equal priorities, the submitter with
+ * fewest running jobs goes first, then the one served least recently, so that a single submitter can't
+ * take over the machine while others wait. The jobs of a submitter start in order of priority and submission.
+ * <p>
+ * As with SGE, the output and error of a job are written to the files jobId.o&lt;submissionId&gt; and
+ * jobId.e&lt;submissionId&gt; of its directory.
+ * The queue is not persisted: jobs queued or running when the job manager is finalized are lost and
+ * are reported as failed after a restart.
+ */
+public class LocalJobManager implements JobManager
+{
+	private static final Logger logger = LoggerFactory.getLogger(LocalJobManager.class);
+
+	/**
+	 * Maximum number of threads used by all running jobs, by default the number of processors
+	 */
+	public static final String MAX_CORES_PROPERTY = "max_cores";
+
+	/**
+	 * Maximum memory in megabytes assigned to all running jobs (sum of their java heaps)
+	 */
+	public static final String MAX_MEMORY_PROPERTY = "max_memory";
+
+	public static final int DEFAULT_MAX_MEMORY = 4096;
+
+	/**
+	 * Memory in megabytes accounted to jobs whose command does not specify a maximum java heap
+	 */
+	public static final int DEFAULT_JOB_MEMORY = 512;
+
+	private static final Pattern MAX_HEAP_REGEX = Pattern.compile("-Xmx(\\d+)([kKmMgG]?)");
+
+	private static final Comparator<LocalJob> JOB_ORDER = new Comparator<LocalJob>() {
+		@Override
+		public int compare(LocalJob job1, LocalJob job2) {
+			if(job1.priority != job2.priority)
+			{
+				return job1.priority > job2.priority ? -1 : 1;
+			}
+			return Long.compare(job1.sequenceNumber, job2.sequenceNumber);
+		}
+	};
+
+	private final String jobsDirectory;
+	private final int maxCores;
+	private final int maxMemory;
+
+	// ids stay unique across restarts of the web server
+	private final String submissionIdPrefix;
+	private long nrOfSubmissions;
+	private long nrOfStarts;
+
+	private final Map<String, LocalJob> jobs;
+	private final Map<String, Submitter> submitters;
+	private final ExecutorService processWaiters;
+
+	private int usedCores;
+	private int usedMemory;
+	private int nrOfQueuedJobs;
+	private boolean finalized;
+
+	private int maxQueueDepth;
+	private long nrOfStartedJobs;
+	private long totalWaitTime;
+	private long maxWaitTime;
+
+	private static class LocalJob
+	{
+		final String jobId;
+		final String submissionId;
+		final List<String> command;
+		final File jobDirectory;
+		final int cores;
+		final int memory;
+		final Submitter submitter;
+		final int priority;
+		final long sequenceNumber;
+		final long submissionTime;
+
+		Process process;
+		StatusOfJob status;
+		boolean stopped;
+
+		LocalJob(String jobId, String submissionId, List<String> command, File jobDirectory,
+				int cores, int memory, Submitter submitter, int priority, long sequenceNumber)
+		{
+			this.jobId = jobId;
+			this.submissionId = submissionId;
+			this.command = command;
+			this.jobDirectory = jobDirectory;
+			this.cores = cores;
+			this.memory = memory;
+			this.submitter = submitter;
+			this.priority = priority;
+			this.sequenceNumber = sequenceNumber;
+			this.submissionTime = System.currentTimeMillis();
+			this.status = StatusOfJob.QUEUING;
+		}
+	}
+
+	private static class Submitter
+	{
+		final String name;
+		final PriorityQueue<LocalJob> queue = new PriorityQueue<LocalJob>(11, JOB_ORDER);
+		int nrOfRunningJobs;
+		long lastStart;
+
+		Submitter(String name)
+		{
+			this.name = name;
+		}
+
+		boolean isIdle()
+		{
+			return queue.isEmpty() && nrOfRunningJobs == 0;
+		}
+	}
+
+	/**
+	 * Creates instance of local job manager.
+	 * @param queuingSystemProperties properties of the local queuing system, see {@link #MAX_CORES_PROPERTY}
+	 * and {@link #MAX_MEMORY_PROPERTY}
+	 * @param jobsDirectory directory where results of jobs are stored
+	 * @throws JobManagerException when the properties are invalid
+	 */
+	public LocalJobManager(Properties queuingSystemProperties,
+						   String jobsDirectory) throws JobManagerException
+	{
+		try
+		{
+			this.maxCores = Integer.parseInt(queuingSystemProperties.getProperty(MAX_CORES_PROPERTY,
+					String.valueOf(Runtime.getRuntime().availableProcessors())).trim());
+			this.maxMemory = Integer.parseInt(queuingSystemProperties.getProperty(MAX_MEMORY_PROPERTY,
+					String.valueOf(DEFAULT_MAX_MEMORY)).trim());
+		}
+		catch(NumberFormatException e)
+		{
+			throw new JobManagerException("Invalid value for local queuing system properties: " + e.getMessage(), e);
+		}
+
+		if(maxCores <= 0 || maxMemory <= 0)
+		{
+			throw new JobManagerException("Cores (" + maxCores + ") and memory (" + maxMemory + ") of local queuing system must be positive");
+		}
+
+		this.jobsDirectory = jobsDirectory;
+		this.submissionIdPrefix = "local-" + System.currentTimeMillis() + "-";
+		this.jobs = new HashMap<String, LocalJob>();
+		this.submitters = new LinkedHashMap<String, Submitter>();
+		this.processWaiters = Executors.newCachedThreadPool();
+
+		logger.info("Local job manager running up to {} threads and {} MB of memory", maxCores, maxMemory);
+	}
+
+	@Override
+	public String startJob(String javaVMExec,
+						   String jobId,
+						   List<String> command,
+						   String jobDirectory,
+						   int nrOfThreadsForSubmission) throws JobHandlerException
+	{
+		return startJob(javaVMExec, jobId, command, jobDirectory, nrOfThreadsForSubmission,
+				getAssignedMemory(command), null, DEFAULT_PRIORITY);
+	}
+
+	@Override
+	public synchronized String startJob(String javaVMExec,
+										String jobId,
+										List<String> command,
+										String jobDirectory,
+										int nrOfThreadsForSubmission,
+										int assignedMemory,
+										String submitterName,
+										int priority) throws JobHandlerException
+	{
+		if(finalized)
+		{
+			throw new JobHandlerException("Local job manager was shut down");
+		}
+
+		int cores = Math.max(1, nrOfThreadsForSubmission);
+		if(cores > maxCores || assignedMemory > maxMemory)
+		{
+			throw new JobHandlerException("Job " + jobId + " requires " + cores + " threads and " + assignedMemory +
+					" MB of memory, more than available to local jobs (" + maxCores + " threads and " + maxMemory + " MB)");
+		}
+
+		List<String> fullCommand = new ArrayList<String>();
+		fullCommand.add(javaVMExec);
+		fullCommand.addAll(command);
+
+		String name = submitterName == null ? "" : submitterName;
+		Submitter submitter = submitters.get(name);
+		if(submitter == null)
+		{
+			submitter = new Submitter(name);
+			submitters.put(name, submitter);
+		}
+
+		nrOfSubmissions++;
+		String submissionId = submissionIdPrefix + nrOfSubmissions;
+		LocalJob job = new LocalJob(jobId, submissionId, fullCommand, new File(jobDirectory),
+				cores, assignedMemory, submitter, priority, nrOfSubmissions);
+
+		jobs.put(submissionId, job);
+		submitter.queue.add(job);
+		nrOfQueuedJobs++;
+		maxQueueDepth = Math.max(maxQueueDepth, nrOfQueuedJobs);
+
+		startQueuedJobs();
+
+		return submissionId;
+	}
+
+	@Override
+	public synchronized StatusOfJob getStatusOfJob(String jobId, String submissionId)
+	{
+		LocalJob job = submissionId == null ? null : jobs.get(submissionId);
+
+		if(job == null)
+		{
+			return getStatusOfUnknownJob(jobId);
+		}
+
+		// the status of finished jobs is reported once, then derived from their directory
+		if(job.status != StatusOfJob.QUEUING && job.status != StatusOfJob.RUNNING)
+		{
+			jobs.remove(submissionId);
+		}
+
+		return job.status;
+	}
+
+	@Override
+	public synchronized Map<String, StatusOfJob> getStatusOfJobs(Map<String, String> submissionIds)
+	{
+		Map<String, StatusOfJob> statuses = new HashMap<String, StatusOfJob>();
+
+		for(Map.Entry<String, String> job : submissionIds.entrySet())
+		{
+			statuses.put(job.getKey(), getStatusOfJob(job.getKey(), job.getValue()));
+		}
+
+		return statuses;
+	}
+
+	@Override
+	public synchronized void stopJob(String submissionId) throws JobHandlerException
+	{
+		LocalJob job = submissionId == null ? null : jobs.get(submissionId);
+
+		if(job == null)
+		{
+			return;
+		}
+
+		if(job.status == StatusOfJob.QUEUING)
+		{
+			job.submitter.queue.remove(job);
+			nrOfQueuedJobs--;
+			job.status = StatusOfJob.STOPPED;
+			removeIfIdle(job.submitter);
+		}
+		else if(job.status == StatusOfJob.RUNNING)
+		{
+			job.stopped = true;
+			job.process.destroy();
+		}
+	}
+
+	/**
+	 * Retrieves the number of jobs waiting to be started.
+	 * @return number of queued jobs
+	 */
+	public synchronized int getNrOfQueuedJobs()
+	{
+		return nrOfQueuedJobs;
+	}
+
+	/**
+	 * Retrieves the number of jobs currently running.
+	 * @return number of running jobs
+	 */
+	public synchronized int getNrOfRunningJobs()
+	{
+		int nrOfRunningJobs = 0;
+		for(Submitter submitter : submitters.values())
+		{
+			nrOfRunningJobs += submitter.nrOfRunningJobs;
+		}
+		return nrOfRunningJobs;
+	}
+
+	/**
+	 * Retrieves the usage of resources and statistics of the queue: current and maximum queue depth,
+	 * number of started jobs and their average and maximum waiting time in the queue.
+	 * @return statistics of the local job manager
+	 */
+	public synchronized String getStatistics()
+	{
+		return String.format("Local jobs: %d running using %d of %d threads and %d of %d MB, %d queued (maximum %d), " +
+				"%d started after waiting %d ms on average, %d ms maximum",
+				getNrOfRunningJobs(), usedCores, maxCores, usedMemory, maxMemory, nrOfQueuedJobs, maxQueueDepth,
+				nrOfStartedJobs, nrOfStartedJobs == 0 ? 0 : totalWaitTime / nrOfStartedJobs, maxWaitTime);
+	}
+
+	/**
+	 * Starts the queued jobs in order while they fit in the available resources.
+	 * Jobs are started strictly in order, a job that doesn't fit blocks the following ones
+	 * so that large jobs are not starved by smaller ones.
+	 */
+	private void startQueuedJobs()
+	{
+		while(true)
+		{
+			Submitter next = null;
+			for(Submitter submitter : submitters.values())
+			{
+				if(!submitter.queue.isEmpty() && (next == null || isServedBefore(submitter, next)))
+				{
+					next = submitter;
+				}
+			}
+
+			if(next == null)
+			{
+				return;
+			}
+
+			LocalJob job = next.queue.peek();
+			if(job.cores > maxCores - usedCores || job.memory > maxMemory - usedMemory)
+			{
+				return;
+			}
+
+			next.queue.poll();
+			nrOfQueuedJobs--;
+			launch(job);
+		}
+	}
+
+	private static boolean isServedBefore(Submitter submitter, Submitter other)
+	{
+		LocalJob job = submitter.queue.peek();
+		LocalJob otherJob = other.queue.peek();
+		if(job.priority != otherJob.priority)
+		{
+			return job.priority > otherJob.priority;
+		}
+		if(submitter.nrOfRunningJobs != other.nrOfRunningJobs)
+		{
+			return submitter.nrOfRunningJobs < other.nrOfRunningJobs;
+		}
+		if(submitter.lastStart != other.lastStart)
+		{
+			return submitter.lastStart < other.lastStart;
+		}
+		return job.sequenceNumber < otherJob.sequenceNumber;
+	}
+
+	private void launch(final LocalJob job)
+	{
+		long waitTime = System.currentTimeMillis() - job.submissionTime;
+
+		ProcessBuilder processBuilder = new ProcessBuilder(job.command);
+		processBuilder.directory(job.jobDirectory);
+		processBuilder.redirectOutput(new File(job.jobDirectory, job.jobId + ".o" + job.submissionId));
+		File errorFile = new File(job.jobDirectory, job.jobId + ".e" + job.submissionId);
+		processBuilder.redirectError(errorFile);
+
+		try
+		{
+			job.process = processBuilder.start();
+		}
+		catch(IOException e)
+		{
+			logger.error("Job {} could not be started. Error: {}", job.jobId, e.getMessage());
+			writeError(errorFile, "Job could not be started: " + e.getMessage());
+			job.status = StatusOfJob.ERROR;
+			removeIfIdle(job.submitter);
+			return;
+		}
+
+		job.status = StatusOfJob.RUNNING;
+		usedCores += job.cores;
+		usedMemory += job.memory;
+		job.submitter.nrOfRunningJobs++;
+		job.submitter.lastStart = ++nrOfStarts;
+
+		nrOfStartedJobs++;
+		totalWaitTime += waitTime;
+		maxWaitTime = Math.max(maxWaitTime, waitTime);
+
+		logger.info("Started job {} ({}) after waiting {} ms in the queue, {} jobs still queued",
+				job.jobId, job.submissionId, waitTime, nrOfQueuedJobs);
+
+		processWaiters.execute(new Runnable() {
+			@Override
+			public void run() {
+				int exitValue;
+				try
+				{
+					exitValue = job.process.waitFor();
+				}
+				catch(InterruptedException e)
+				{
+					// only when finalizing: the process is destroyed
+					job.process.destroy();
+					exitValue = -1;
+				}
+				jobEnded(job, exitValue);
+			}
+		});
+	}
+
+	private synchronized void jobEnded(LocalJob job, int exitValue)
+	{
+		usedCores -= job.cores;
+		usedMemory -= job.memory;
+		job.submitter.nrOfRunningJobs--;
+
+		File jobDirectory = DirLocatorUtil.getJobDir(new File(jobsDirectory), job.jobId);
+		if(job.stopped || new File(jobDirectory, CrkWebServiceImpl.KILLED_FILE_NAME).exists())
+		{
+			job.status = StatusOfJob.STOPPED;
+		}
+		else if(exitValue == 0 && new File(jobDirectory, CrkWebServiceImpl.FINISHED_FILE_NAME).exists())
+		{
+			job.status = StatusOfJob.FINISHED;
+		}
+		else
+		{
+			job.status = StatusOfJob.ERROR;
+		}
+
+		logger.info("Job {} ({}) ended with exit value {}, status {}", job.jobId, job.submissionId, exitValue, job.status.getName());
+
+		removeIfIdle(job.submitter);
+
+		if(!finalized)
+		{
+			startQueuedJobs();
+		}
+	}
+
+	private void removeIfIdle(Submitter submitter)
+	{
+		if(submitter.isIdle())
+		{
+			submitters.remove(submitter.name);
+		}
+	}
+
+	/**
+	 * Retrieves the status of a job not submitted by this instance (e.g. before a restart) from its directory.
+	 * @param jobId identifier of the job
+	 * @return status of the job
+	 */
+	private StatusOfJob getStatusOfUnknownJob(String jobId)
+	{
+		File jobDirectory = DirLocatorUtil.getJobDir(new File(jobsDirectory), jobId);
+
+		if(new File(jobDirectory, CrkWebServiceImpl.FINISHED_FILE_NAME).exists())
+		{
+			return StatusOfJob.FINISHED;
+		}
+		else if(new File(jobDirectory, CrkWebServiceImpl.KILLED_FILE_NAME).exists())
+		{
+			return StatusOfJob.STOPPED;
+		}
+		else if(jobDirectory.exists())
+		{
+			return StatusOfJob.ERROR;
+		}
+
+		return StatusOfJob.NONEXISTING;
+	}
+
+	private static void writeError(File errorFile, String message)
+	{
+		try
+		{
+			FileWriter fw = new FileWriter(errorFile);
+			fw.write(message);
+			fw.close();
+		}
+		catch(IOException e)
+		{
+			logger.warn("Could not write error file {}: {}", errorFile, e.getMessage());
+		}
+	}
+
+	/**
+	 * Retrieves the memory assigned to a job from the maximum java heap of its command.
+	 * @param command command of the job
+	 * @return memory in megabytes, {@link #DEFAULT_JOB_MEMORY} if not specified
+	 */
+	static int getAssignedMemory(List<String> command)
+	{
+		for(String arg : command)
+		{
+			Matcher m = MAX_HEAP_REGEX.matcher(arg);
+			if(m.matches())
+			{
+				long value = Long.parseLong(m.group(1));
+				switch(m.group(2).toLowerCase())
+				{
+					case "":
+						return (int) (value / (1024 * 1024));
+					case "k":
+						return (int) (value / 1024);
+					case "g":
+						return (int) (value * 1024);
+					default:
+						return (int) value;
+				}
+			}
+		}
+		return DEFAULT_JOB_MEMORY;
+	}
+
+	@Override
+	public void finalize() throws JobHandlerException
+	{
+		synchronized(this)
+		{
+			if(finalized)
+			{
+				return;
+			}
+			finalized = true;
+
+			Iterator<LocalJob> it = jobs.values().iterator();
+			while(it.hasNext())
+			{
+				LocalJob job = it.next();
+				if(job.status == StatusOfJob.QUEUING)
+				{
+					it.remove();
+				}
+			}
+			for(Submitter submitter : submitters.values())
+			{
+				submitter.queue.clear();
+			}
+			nrOfQueuedJobs = 0;
+
+			logger.info(getStatistics());
+		}
+
+		// interrupting the waiters destroys the running processes
+		processWaiters.shutdownNow();
+	}
+}
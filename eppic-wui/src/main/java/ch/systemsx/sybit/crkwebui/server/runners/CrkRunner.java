@@ -43,12 +43,16 @@ public class CrkRunner
 
 	/**
 	 * Starts job.
+	 * @param submitter identifier of the submitter of the job (its IP address), used to share resources fairly
+	 * @param priority priority of the job, jobs with higher priority are started first
 	 * @return submission id
 	 * @throws Exception when can not start job
 	 */
 	public String run(RunJobData runJobData,
 					  String destinationDirectoryName,
-					  int inputType) throws Exception
+					  int inputType,
+					  String submitter,
+					  int priority) throws Exception
 	{
 		File logFile = new File(destinationDirectoryName, CrkWebServiceImpl.PROGRESS_LOG_FILE_NAME);
 		LogHandler.writeToLogFile(logFile, "Job submitted - please wait\n");
@@ -83,6 +87,9 @@ public class CrkRunner
 	    		                   runJobData.getJobId(), 
 	    						   crkCommand, 
 	    						   destinationDirectoryName,
-	    						   nrOfThreadsForSubmission);
+	    						   nrOfThreadsForSubmission,
+	    						   assignedMemory,
+	    						   submitter,
+	    						   priority);
 	}
 }
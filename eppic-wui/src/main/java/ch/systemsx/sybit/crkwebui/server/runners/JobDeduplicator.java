@@ -0,0 +1,227 @@
+package ch.systemsx.sybit.crkwebui.server.runners;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Locale;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ch.systemsx.sybit.crkwebui.server.commons.util.io.DirLocatorUtil;
+import ch.systemsx.sybit.crkwebui.server.db.dao.JobDAO;
+import ch.systemsx.sybit.crkwebui.shared.exceptions.DaoException;
+import ch.systemsx.sybit.crkwebui.shared.model.InputParameters;
+import ch.systemsx.sybit.shared.model.InputType;
+import ch.systemsx.sybit.shared.model.StatusOfJob;
+
+/**
+ * Detects submissions identical to a previous job, so that they reuse its results instead of running eppic again.
+ * <p>
+ * Submissions are identified by a key hashing the content of the uploaded file (or the PDB code), the input name,
+ * the normalised input parameters and the eppic jar in use. The index from keys to the job computing them is kept
+ * as one file per key in the index directory, outside of the job directories served to users. An entry is only
+ * used if its job is finished successfully or still in progress, its directory exists and the entry is not older
+ * than the maximum age; otherwise it is replaced by the new job.
+ * <p>
+ * A duplicate job is stored with a submission id made of {@link #DUPLICATE_SUBMISSION_ID_PREFIX} and the id of
+ * the original job: the job status updater gives it the status of the original job and, once that one is finished,
+ * links the result files of the original job into the directory of the duplicate (see {@link #linkResults(File, File)}).
+ */
+public class JobDeduplicator
+{
+	private static final Logger logger = LoggerFactory.getLogger(JobDeduplicator.class);
+
+	public static final String DUPLICATE_SUBMISSION_ID_PREFIX = "duplicate-of:";
+
+	private final File jobsDirectory;
+	private final File indexDirectory;
+	private final File crkApplication;
+	private final long maxAge;
+
+	/**
+	 * Creates a deduplicator of the jobs stored in the given directory.
+	 * @param jobsDirectory directory where results of jobs are stored
+	 * @param indexDirectory directory where the index of submissions is stored, created if needed
+	 * @param crkApplicationLocation location of EPPIC executable jar, results of a different jar are not reused
+	 * @param maxAge maximum age in milliseconds of the jobs whose results are reused
+	 * @throws IOException when the index directory can not be created
+	 */
+	public JobDeduplicator(File jobsDirectory, File indexDirectory, String crkApplicationLocation, long maxAge) throws IOException
+	{
+		this.jobsDirectory = jobsDirectory;
+		this.indexDirectory = indexDirectory;
+		this.crkApplication = new File(crkApplicationLocation);
+		this.maxAge = maxAge;
+
+		Files.createDirectories(indexDirectory.toPath());
+	}
+
+	/**
+	 * Computes the key identifying the results of a submission.
+	 * @param input input of the job: name of the uploaded file or PDB code
+	 * @param inputType type of the input
+	 * @param inputParameters input parameters
+	 * @param jobDirectory directory of the job, where the uploaded file is stored
+	 * @return hexadecimal key
+	 * @throws IOException when the uploaded file can not be read
+	 */
+	public String computeKey(String input,
+							 int inputType,
+							 InputParameters inputParameters,
+							 File jobDirectory) throws IOException
+	{
+		MessageDigest digest;
+		try
+		{
+			digest = MessageDigest.getInstance("SHA-256");
+		}
+		catch(NoSuchAlgorithmException e)
+		{
+			throw new IOException(e);
+		}
+
+		// parameters as passed to eppic by CrkCommandGenerator
+		String parameters = String.format(Locale.ROOT, "%s\t%d\t%s\t%s\t%s\t%s\t%d\t%d",
+				input,
+				inputType,
+				inputParameters.getMaxNrOfSequences(),
+				String.valueOf(inputParameters.getSoftIdentityCutoff()),
+				String.valueOf(inputParameters.getHardIdentityCutoff()),
+				inputParameters.getSearchMode().toLowerCase(),
+				crkApplication.length(),
+				crkApplication.lastModified());
+		digest.update(parameters.getBytes(StandardCharsets.UTF_8));
+
+		if(inputType == InputType.FILE.getIndex())
+		{
+			byte[] buffer = new byte[8192];
+			try (InputStream is = new FileInputStream(new File(jobDirectory, input)))
+			{
+				int read;
+				while((read = is.read(buffer)) != -1)
+				{
+					digest.update(buffer, 0, read);
+				}
+			}
+		}
+
+		StringBuilder key = new StringBuilder();
+		for(byte b : digest.digest())
+		{
+			key.append(String.format("%02x", b));
+		}
+		return key.toString();
+	}
+
+	/**
+	 * Retrieves the job whose results can be reused for the given key. If there is none,
+	 * the given job is registered as the one computing the key.
+	 * @param key key of the submission, see {@link #computeKey(String, int, InputParameters, File)}
+	 * @param jobId identifier of the new job
+	 * @param jobDAO used to check the status of the indexed job
+	 * @return identifier of the job whose results can be reused, null if the new job has to be run
+	 * @throws DaoException when the status of the indexed job can not be retrieved
+	 */
+	public synchronized String findOrRegister(String key, String jobId, JobDAO jobDAO) throws DaoException
+	{
+		File entry = new File(indexDirectory, key);
+
+		if(entry.exists() && System.currentTimeMillis() - entry.lastModified() <= maxAge)
+		{
+			try
+			{
+				String originalJobId = new String(Files.readAllBytes(entry.toPath()), StandardCharsets.UTF_8).trim();
+				StatusOfJob status = jobDAO.getStatusForJob(originalJobId);
+
+				if((status == StatusOfJob.FINISHED ||
+					status == StatusOfJob.QUEUING ||
+					status == StatusOfJob.RUNNING ||
+					status == StatusOfJob.WAITING) &&
+					DirLocatorUtil.getJobDir(jobsDirectory, originalJobId).isDirectory())
+				{
+					logger.info("Job {} is identical to job {} ({}), reusing its results", jobId, originalJobId, status.getName());
+					return originalJobId;
+				}
+			}
+			catch(IOException e)
+			{
+				logger.warn("Could not read job index entry {}: {}", entry, e.getMessage());
+			}
+		}
+
+		try
+		{
+			File tmpEntry = new File(indexDirectory, key + ".tmp");
+			Files.write(tmpEntry.toPath(), jobId.getBytes(StandardCharsets.UTF_8));
+			Files.move(tmpEntry.toPath(), entry.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+		catch(IOException e)
+		{
+			logger.warn("Could not write job index entry {}: {}", entry, e.getMessage());
+		}
+
+		return null;
+	}
+
+	/**
+	 * Checks whether the submission id is the one of a duplicate job.
+	 * @param submissionId submission identifier of the job
+	 * @return true if the job reuses the results of another job
+	 */
+	public static boolean isDuplicate(String submissionId)
+	{
+		return submissionId != null && submissionId.startsWith(DUPLICATE_SUBMISSION_ID_PREFIX);
+	}
+
+	/**
+	 * Retrieves the job whose results a duplicate job reuses.
+	 * @param submissionId submission identifier of the duplicate job
+	 * @return identifier of the original job
+	 */
+	public static String getOriginalJobId(String submissionId)
+	{
+		return submissionId.substring(DUPLICATE_SUBMISSION_ID_PREFIX.length());
+	}
+
+	/**
+	 * Links the files of the original job into the directory of the duplicate job, copying them if
+	 * the file system doesn't support hard links. Files already present in the duplicate job directory
+	 * (e.g. its progress log) are kept.
+	 * @param originalJobDirectory directory of the original job
+	 * @param jobDirectory directory of the duplicate job
+	 * @throws IOException when the files can not be linked nor copied
+	 */
+	public static void linkResults(File originalJobDirectory, File jobDirectory) throws IOException
+	{
+		File[] files = originalJobDirectory.listFiles();
+		if(files == null)
+		{
+			throw new IOException("Directory " + originalJobDirectory + " can not be read");
+		}
+
+		for(File file : files)
+		{
+			File target = new File(jobDirectory, file.getName());
+			if(!file.isFile() || target.exists())
+			{
+				continue;
+			}
+
+			try
+			{
+				Files.createLink(target.toPath(), file.toPath());
+			}
+			catch(IOException | UnsupportedOperationException e)
+			{
+				Files.copy(file.toPath(), target.toPath());
+			}
+		}
+	}
+}
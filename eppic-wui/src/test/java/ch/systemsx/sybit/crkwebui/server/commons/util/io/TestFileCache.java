@@ -4,8 +4,15 @@ import static org.junit.Assert.*;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.Test;
 import org.slf4j.Logger;
@@ -108,6 +115,102 @@ public class TestFileCache {
 
 	}
 
+	@Test
+	public void testSingleComputation() throws InterruptedException, ExecutionException, IOException {
+		FileCache cache = new FileCache();
+		cache.purge();
+
+		String path = tmp("single");
+		AtomicInteger computations = new AtomicInteger();
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		Callable<String> slow = () -> {
+			computations.incrementAndGet();
+			started.countDown();
+			release.await();
+			return "slow";
+		};
+
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		List<Future<String>> results = new ArrayList<>();
+		for (int i=0; i<4; i++) {
+			results.add(executor.submit(() -> cache.getString(path, slow)));
+		}
+		started.await();
+
+		// other paths are not blocked by the ongoing computation
+		String other = tmp("other");
+		assertEquals("other", cache.getString(other, new SimpleCallable("other")));
+
+		release.countDown();
+		for (Future<String> result : results) {
+			assertEquals("slow", result.get());
+		}
+		executor.shutdown();
+		assertEquals("Should have been calculated once", 1, computations.get());
+
+		FileCache.Stats stats = cache.getStats();
+		assertEquals(2, stats.getComputations());
+		assertEquals(5, stats.getHits() + stats.getMisses());
+		cache.purge();
+	}
+
+	@Test
+	public void testByteCapacity() throws InterruptedException, ExecutionException, IOException {
+		FileCache cache = new FileCache();
+		cache.purge();
+		cache.setCompress(true);
+
+		StringBuilder sb = new StringBuilder();
+		for (int i=0; i<10000; i++) {
+			sb.append("{\"id\":").append(i%10).append("},");
+		}
+		String big = sb.toString();
+
+		String one = tmp("one");
+		assertEquals(big, cache.getString(one, new SimpleCallable(big)));
+		cache.getFile(one);
+		long compressedSize = cache.getWeight();
+		assertTrue("Should have been compressed", compressedSize < big.length() / 10);
+
+		// room for one compressed entry only
+		cache.setMaxBytes(compressedSize + compressedSize / 2);
+		String two = tmp("two");
+		assertEquals(big, cache.getString(two, new SimpleCallable(big)));
+		cache.getFile(two);
+		cache.removeExpired();
+		assertEquals("Wrong cache size",1,cache.size());
+		assertTrue(cache.isCachedInMemory(two));
+		assertEquals(1, cache.getStats().getEvictions());
+
+		// still on disk
+		SimpleCallable computer = new SimpleCallable(big);
+		assertEquals(big, cache.getString(one, computer));
+		assertFalse("Should have been cached",computer.calculated);
+		cache.purge();
+	}
+
+	@Test
+	public void testFailedComputation() throws InterruptedException, ExecutionException, IOException {
+		FileCache cache = new FileCache();
+		cache.purge();
+
+		String path = tmp("failed");
+		try {
+			cache.getString(path, () -> { throw new IOException("expected"); });
+			fail("Should have thrown");
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof IOException);
+		}
+		assertFalse(cache.isCachedInMemory(path));
+
+		// computed again
+		SimpleCallable computer = new SimpleCallable("retry");
+		assertEquals("retry", cache.getString(path, computer));
+		assertTrue("Should have been calculated",computer.calculated);
+		cache.purge();
+	}
+
 	private String tmp(String s) throws IOException {
 		File tmp = File.createTempFile("TestFileCache-"+s, ".txt");
 		tmp.deleteOnExit();
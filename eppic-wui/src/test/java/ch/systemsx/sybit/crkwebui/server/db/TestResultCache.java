@@ -0,0 +1,103 @@
+package ch.systemsx.sybit.crkwebui.server.db;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class TestResultCache {
+
+	private static ResultCache<String> createCache(long maxWeight) {
+		return new ResultCache<String>("test", maxWeight, v -> v.length());
+	}
+
+	@Test
+	public void testGetPut() {
+		ResultCache<String> cache = createCache(100);
+
+		assertNull(cache.get("1abc", null, 1));
+		cache.put("1abc", null, 1, "result");
+		assertEquals("result", cache.get("1abc", null, 1));
+
+		// options are part of the key
+		assertNull(cache.get("1abc", "seqInfo=false", 1));
+		cache.put("1abc", "seqInfo=false", 1, "other");
+		assertEquals("other", cache.get("1abc", "seqInfo=false", 1));
+		assertEquals("result", cache.get("1abc", null, 1));
+
+		assertEquals(2, cache.size());
+		assertEquals(11, cache.getWeight());
+	}
+
+	@Test
+	public void testStamp() {
+		ResultCache<String> cache = createCache(100);
+
+		cache.put("1abc", null, 1, "result");
+		// entry reinserted in the database with a new uid
+		assertNull(cache.get("1abc", null, 2));
+		assertEquals(0, cache.size());
+		assertEquals(0, cache.getWeight());
+		assertNull(cache.get("1abc", null, 1));
+	}
+
+	@Test
+	public void testMaxAge() throws InterruptedException {
+		ResultCache<String> cache = createCache(100);
+		cache.setMaxAge(50);
+
+		cache.put("1abc", null, 1, "result");
+		assertNotNull(cache.get("1abc", null, 1));
+		Thread.sleep(100);
+		assertNull(cache.get("1abc", null, 1));
+		assertEquals(0, cache.size());
+	}
+
+	@Test
+	public void testEviction() {
+		ResultCache<String> cache = createCache(10);
+
+		cache.put("1abc", null, 1, "aaaa");
+		cache.put("2abc", null, 1, "bbbb");
+		// makes 1abc the most recently used
+		assertNotNull(cache.get("1abc", null, 1));
+		cache.put("3abc", null, 1, "cccc");
+
+		assertNull(cache.get("2abc", null, 1));
+		assertNotNull(cache.get("1abc", null, 1));
+		assertNotNull(cache.get("3abc", null, 1));
+		assertEquals(8, cache.getWeight());
+
+		// too heavy to be cached
+		cache.put("4abc", null, 1, "ddddddddddd");
+		assertNull(cache.get("4abc", null, 1));
+		assertEquals(2, cache.size());
+
+		cache.setMaxWeight(4);
+		assertEquals(1, cache.size());
+		assertNotNull(cache.get("3abc", null, 1));
+
+		cache.setMaxWeight(0);
+		assertEquals(0, cache.size());
+		cache.put("1abc", null, 1, "a");
+		assertNull(cache.get("1abc", null, 1));
+	}
+
+	@Test
+	public void testInvalidate() {
+		ResultCache<String> cache = createCache(100);
+
+		cache.put("1abc", null, 1, "a");
+		cache.put("1abc", "seqInfo=false", 1, "b");
+		cache.put("2abc", null, 1, "c");
+
+		cache.invalidate("1abc");
+		assertEquals(1, cache.size());
+		assertEquals(1, cache.getWeight());
+		assertNull(cache.get("1abc", null, 1));
+		assertNotNull(cache.get("2abc", null, 1));
+
+		cache.invalidateAll();
+		assertEquals(0, cache.size());
+		assertEquals(0, cache.getWeight());
+	}
+}
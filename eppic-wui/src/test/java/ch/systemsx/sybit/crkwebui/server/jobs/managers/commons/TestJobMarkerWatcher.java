@@ -0,0 +1,78 @@
+package ch.systemsx.sybit.crkwebui.server.jobs.managers.commons;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Set;
+
+import org.junit.Test;
+
+import ch.systemsx.sybit.crkwebui.server.CrkWebServiceImpl;
+
+public class TestJobMarkerWatcher {
+
+	// some watch service implementations poll the file system every few seconds
+	private static final long TIMEOUT = 30000;
+
+	@Test
+	public void testMarkerWritten() throws IOException, InterruptedException {
+		File jobsDir = Files.createTempDirectory("eppicjobs").toFile();
+		File jobDir = createJobDir(jobsDir, "job000000001");
+		createJobDir(jobsDir, "job000000002");
+
+		try (JobMarkerWatcher watcher = new JobMarkerWatcher(jobsDir)) {
+			// directory of the third job not created yet
+			watcher.watchJobs(Arrays.asList("job000000001", "job000000002", "job000000003"));
+			assertEquals(2, watcher.getNumberOfWatchedJobs());
+			assertTrue(watcher.awaitMarkers(0).isEmpty());
+
+			assertTrue(new File(jobDir, "progress.log").createNewFile());
+			assertTrue(new File(jobDir, CrkWebServiceImpl.FINISHED_FILE_NAME).createNewFile());
+
+			Set<String> jobIds = watcher.awaitMarkers(TIMEOUT);
+			assertEquals(Collections.singleton("job000000001"), jobIds);
+			assertTrue(watcher.awaitMarkers(0).isEmpty());
+		}
+	}
+
+	@Test
+	public void testMarkerWrittenBeforeWatching() throws IOException, InterruptedException {
+		File jobsDir = Files.createTempDirectory("eppicjobs").toFile();
+		File jobDir = createJobDir(jobsDir, "job000000001");
+		assertTrue(new File(jobDir, CrkWebServiceImpl.KILLED_FILE_NAME).createNewFile());
+
+		try (JobMarkerWatcher watcher = new JobMarkerWatcher(jobsDir)) {
+			watcher.watchJobs(Collections.singletonList("job000000001"));
+			assertEquals(Collections.singleton("job000000001"), watcher.awaitMarkers(TIMEOUT));
+			assertEquals(jobDir, JobMarkerWatcher.getMarkerFile(jobDir).getParentFile());
+		}
+	}
+
+	@Test
+	public void testUnwatch() throws IOException, InterruptedException {
+		File jobsDir = Files.createTempDirectory("eppicjobs").toFile();
+		File jobDir = createJobDir(jobsDir, "job000000001");
+
+		JobMarkerWatcher watcher = new JobMarkerWatcher(jobsDir);
+		watcher.watchJobs(Collections.singletonList("job000000001"));
+		watcher.watchJobs(Collections.<String>emptyList());
+		assertEquals(0, watcher.getNumberOfWatchedJobs());
+
+		assertTrue(new File(jobDir, CrkWebServiceImpl.FINISHED_FILE_NAME).createNewFile());
+		assertTrue(watcher.awaitMarkers(500).isEmpty());
+
+		watcher.close();
+		assertTrue(watcher.awaitMarkers(TIMEOUT).isEmpty());
+	}
+
+	private static File createJobDir(File jobsDir, String jobId) {
+		File jobDir = new File(jobsDir, jobId);
+		assertTrue(jobDir.mkdir());
+		jobDir.deleteOnExit();
+		return jobDir;
+	}
+}
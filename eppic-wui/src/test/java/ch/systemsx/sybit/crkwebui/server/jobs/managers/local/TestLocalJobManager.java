@@ -0,0 +1,152 @@
+package ch.systemsx.sybit.crkwebui.server.jobs.managers.local;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+import org.junit.Test;
+
+import ch.systemsx.sybit.crkwebui.server.CrkWebServiceImpl;
+import ch.systemsx.sybit.crkwebui.shared.exceptions.JobHandlerException;
+import ch.systemsx.sybit.crkwebui.shared.exceptions.JobManagerException;
+import ch.systemsx.sybit.shared.model.StatusOfJob;
+
+public class TestLocalJobManager {
+
+	private static final long TIMEOUT = 10000;
+
+	private File jobsDir;
+
+	@Test
+	public void testBudget() throws Exception {
+		LocalJobManager jobManager = createJobManager(2, 1000);
+
+		String sub1 = startJob(jobManager, "job000000001", "a", 0, 1, 400, "sleep 0.2; touch " + CrkWebServiceImpl.FINISHED_FILE_NAME);
+		String sub2 = startJob(jobManager, "job000000002", "a", 0, 1, 400, "sleep 0.2; exit 1");
+		// memory budget exceeded
+		String sub3 = startJob(jobManager, "job000000003", "a", 0, 1, 400, "touch " + CrkWebServiceImpl.FINISHED_FILE_NAME);
+
+		assertEquals(2, jobManager.getNrOfRunningJobs());
+		assertEquals(1, jobManager.getNrOfQueuedJobs());
+		assertEquals(StatusOfJob.QUEUING, jobManager.getStatusOfJob("job000000003", sub3));
+
+		waitUntilIdle(jobManager);
+
+		assertEquals(StatusOfJob.FINISHED, jobManager.getStatusOfJob("job000000001", sub1));
+		assertEquals(StatusOfJob.ERROR, jobManager.getStatusOfJob("job000000002", sub2));
+		assertEquals(StatusOfJob.FINISHED, jobManager.getStatusOfJob("job000000003", sub3));
+		// once reported, the status is derived from the job directory
+		assertEquals(StatusOfJob.FINISHED, jobManager.getStatusOfJob("job000000001", sub1));
+		assertEquals(StatusOfJob.NONEXISTING, jobManager.getStatusOfJob("job000000009", "unknown"));
+
+		assertTrue(jobManager.getStatistics().contains("3 started"));
+		jobManager.finalize();
+	}
+
+	@Test
+	public void testFairShare() throws Exception {
+		LocalJobManager jobManager = createJobManager(1, 1000);
+
+		String subA1 = startJob(jobManager, "job00000000a1", "a", 0, 1, 100, "sleep 0.3");
+		String subA2 = startJob(jobManager, "job00000000a2", "a", 0, 1, 100, "sleep 5");
+		String subB1 = startJob(jobManager, "job00000000b1", "b", 0, 1, 100, "sleep 5");
+
+		waitWhileRunning(jobManager, "job00000000a1", subA1);
+
+		// b was never served: it goes before the earlier submission of a
+		assertEquals(StatusOfJob.RUNNING, jobManager.getStatusOfJob("job00000000b1", subB1));
+		assertEquals(StatusOfJob.QUEUING, jobManager.getStatusOfJob("job00000000a2", subA2));
+
+		jobManager.finalize();
+	}
+
+	@Test
+	public void testPriority() throws Exception {
+		LocalJobManager jobManager = createJobManager(1, 1000);
+
+		String sub1 = startJob(jobManager, "job000000001", "a", 0, 1, 100, "sleep 0.3");
+		String sub2 = startJob(jobManager, "job000000002", "a", 0, 1, 100, "sleep 5");
+		String sub3 = startJob(jobManager, "job000000003", "b", 1, 1, 100, "sleep 5");
+		String sub4 = startJob(jobManager, "job000000004", "a", 2, 1, 100, "sleep 5");
+
+		waitWhileRunning(jobManager, "job000000001", sub1);
+
+		assertEquals(StatusOfJob.RUNNING, jobManager.getStatusOfJob("job000000004", sub4));
+		assertEquals(StatusOfJob.QUEUING, jobManager.getStatusOfJob("job000000002", sub2));
+		assertEquals(StatusOfJob.QUEUING, jobManager.getStatusOfJob("job000000003", sub3));
+
+		jobManager.finalize();
+	}
+
+	@Test
+	public void testStop() throws Exception {
+		LocalJobManager jobManager = createJobManager(1, 1000);
+
+		String sub1 = startJob(jobManager, "job000000001", "a", 0, 1, 100, "sleep 30");
+		String sub2 = startJob(jobManager, "job000000002", "a", 0, 1, 100, "sleep 30");
+
+		jobManager.stopJob(sub2);
+		assertEquals(StatusOfJob.STOPPED, jobManager.getStatusOfJob("job000000002", sub2));
+		assertEquals(0, jobManager.getNrOfQueuedJobs());
+
+		jobManager.stopJob(sub1);
+		waitUntilIdle(jobManager);
+		assertEquals(StatusOfJob.STOPPED, jobManager.getStatusOfJob("job000000001", sub1));
+
+		jobManager.finalize();
+	}
+
+	@Test(expected = JobHandlerException.class)
+	public void testJobTooLarge() throws Exception {
+		LocalJobManager jobManager = createJobManager(2, 1000);
+		try {
+			startJob(jobManager, "job000000001", "a", 0, 4, 100, "true");
+		} finally {
+			jobManager.finalize();
+		}
+	}
+
+	@Test
+	public void testGetAssignedMemory() {
+		assertEquals(512, LocalJobManager.getAssignedMemory(Arrays.asList("-Xmx512m", "-jar", "eppic.jar")));
+		assertEquals(2048, LocalJobManager.getAssignedMemory(Arrays.asList("-Xmx2G", "-jar", "eppic.jar")));
+		assertEquals(LocalJobManager.DEFAULT_JOB_MEMORY, LocalJobManager.getAssignedMemory(Arrays.asList("-jar", "eppic.jar")));
+	}
+
+	private LocalJobManager createJobManager(int maxCores, int maxMemory) throws IOException, JobManagerException {
+		jobsDir = Files.createTempDirectory("eppicjobs").toFile();
+		Properties props = new Properties();
+		props.setProperty(LocalJobManager.MAX_CORES_PROPERTY, String.valueOf(maxCores));
+		props.setProperty(LocalJobManager.MAX_MEMORY_PROPERTY, String.valueOf(maxMemory));
+		return new LocalJobManager(props, jobsDir.getAbsolutePath());
+	}
+
+	private String startJob(LocalJobManager jobManager, String jobId, String submitter, int priority,
+			int cores, int memory, String script) throws JobHandlerException {
+		File jobDir = new File(jobsDir, jobId);
+		assertTrue(jobDir.mkdir());
+		List<String> command = Arrays.asList("-c", script);
+		return jobManager.startJob("sh", jobId, command, jobDir.getAbsolutePath(), cores, memory, submitter, priority);
+	}
+
+	private static void waitUntilIdle(LocalJobManager jobManager) throws InterruptedException {
+		long start = System.currentTimeMillis();
+		while (jobManager.getNrOfRunningJobs() > 0 || jobManager.getNrOfQueuedJobs() > 0) {
+			assertTrue("Jobs did not end in time", System.currentTimeMillis() - start < TIMEOUT);
+			Thread.sleep(20);
+		}
+	}
+
+	private static void waitWhileRunning(LocalJobManager jobManager, String jobId, String submissionId) throws Exception {
+		long start = System.currentTimeMillis();
+		while (jobManager.getStatusOfJob(jobId, submissionId) == StatusOfJob.RUNNING) {
+			assertTrue("Job did not end in time", System.currentTimeMillis() - start < TIMEOUT);
+			Thread.sleep(20);
+		}
+	}
+}
@@ -0,0 +1,125 @@
+package ch.systemsx.sybit.crkwebui.server.runners;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import ch.systemsx.sybit.crkwebui.server.db.dao.JobDAO;
+import ch.systemsx.sybit.crkwebui.shared.model.InputParameters;
+import ch.systemsx.sybit.shared.model.InputType;
+import ch.systemsx.sybit.shared.model.StatusOfJob;
+
+public class TestJobDeduplicator {
+
+	private static final long MAX_AGE = 24*3600*1000;
+
+	private File jobsDir;
+	private JobDeduplicator deduplicator;
+	private final Map<String, StatusOfJob> statuses = new HashMap<String, StatusOfJob>();
+
+	@Test
+	public void testComputeKey() throws IOException {
+		init();
+		File jobDir1 = createJob("job000000001", "1abc.cif", "data_1abc");
+		File jobDir2 = createJob("job000000002", "1abc.cif", "data_1abc");
+		File jobDir3 = createJob("job000000003", "1abc.cif", "data_1abd");
+
+		String key = deduplicator.computeKey("1abc.cif", InputType.FILE.getIndex(), createParameters(60), jobDir1);
+		assertEquals(key, deduplicator.computeKey("1abc.cif", InputType.FILE.getIndex(), createParameters(60), jobDir2));
+		// different content
+		assertFalse(key.equals(deduplicator.computeKey("1abc.cif", InputType.FILE.getIndex(), createParameters(60), jobDir3)));
+		// different parameters
+		assertFalse(key.equals(deduplicator.computeKey("1abc.cif", InputType.FILE.getIndex(), createParameters(30), jobDir2)));
+
+		String pdbKey = deduplicator.computeKey("1abc", InputType.PDBCODE.getIndex(), createParameters(60), jobDir1);
+		assertEquals(pdbKey, deduplicator.computeKey("1abc", InputType.PDBCODE.getIndex(), createParameters(60), jobDir3));
+		assertFalse(pdbKey.equals(deduplicator.computeKey("2abc", InputType.PDBCODE.getIndex(), createParameters(60), jobDir3)));
+	}
+
+	@Test
+	public void testFindOrRegister() throws Exception {
+		init();
+		JobDAO jobDAO = createJobDAO();
+		createJob("job000000001", "1abc.cif", "data_1abc");
+		createJob("job000000002", "1abc.cif", "data_1abc");
+		createJob("job000000003", "1abc.cif", "data_1abc");
+
+		assertNull(deduplicator.findOrRegister("key", "job000000001", jobDAO));
+
+		statuses.put("job000000001", StatusOfJob.RUNNING);
+		assertEquals("job000000001", deduplicator.findOrRegister("key", "job000000002", jobDAO));
+		statuses.put("job000000001", StatusOfJob.FINISHED);
+		assertEquals("job000000001", deduplicator.findOrRegister("key", "job000000002", jobDAO));
+
+		// failed jobs are replaced
+		statuses.put("job000000001", StatusOfJob.ERROR);
+		assertNull(deduplicator.findOrRegister("key", "job000000003", jobDAO));
+		statuses.put("job000000003", StatusOfJob.FINISHED);
+		assertEquals("job000000003", deduplicator.findOrRegister("key", "job000000002", jobDAO));
+
+		// and so are jobs whose directory was removed
+		statuses.put("job000000004", StatusOfJob.FINISHED);
+		assertNull(deduplicator.findOrRegister("key2", "job000000004", jobDAO));
+		assertNull(deduplicator.findOrRegister("key2", "job000000002", jobDAO));
+	}
+
+	@Test
+	public void testLinkResults() throws IOException {
+		init();
+		File originalDir = createJob("job000000001", "1abc.cif", "data_1abc");
+		Files.write(new File(originalDir, "1abc.webui.dat").toPath(), "results".getBytes(StandardCharsets.UTF_8));
+		Files.write(new File(originalDir, "progress.log").toPath(), "original".getBytes(StandardCharsets.UTF_8));
+		File jobDir = createJob("job000000002", "1abc.cif", "data_1abc");
+		Files.write(new File(jobDir, "progress.log").toPath(), "duplicate".getBytes(StandardCharsets.UTF_8));
+
+		JobDeduplicator.linkResults(originalDir, jobDir);
+
+		assertEquals("results", new String(Files.readAllBytes(new File(jobDir, "1abc.webui.dat").toPath()), StandardCharsets.UTF_8));
+		assertEquals("duplicate", new String(Files.readAllBytes(new File(jobDir, "progress.log").toPath()), StandardCharsets.UTF_8));
+
+		assertTrue(JobDeduplicator.isDuplicate(JobDeduplicator.DUPLICATE_SUBMISSION_ID_PREFIX + "job000000001"));
+		assertFalse(JobDeduplicator.isDuplicate("12345"));
+		assertEquals("job000000001", JobDeduplicator.getOriginalJobId(JobDeduplicator.DUPLICATE_SUBMISSION_ID_PREFIX + "job000000001"));
+	}
+
+	private void init() throws IOException {
+		jobsDir = Files.createTempDirectory("eppicjobs").toFile();
+		File jar = new File(jobsDir, "eppic.jar");
+		Files.write(jar.toPath(), new byte[] {1});
+		deduplicator = new JobDeduplicator(jobsDir, new File(jobsDir, "index"), jar.getPath(), MAX_AGE);
+	}
+
+	private File createJob(String jobId, String fileName, String content) throws IOException {
+		File jobDir = new File(jobsDir, jobId);
+		assertTrue(jobDir.mkdir());
+		Files.write(new File(jobDir, fileName).toPath(), content.getBytes(StandardCharsets.UTF_8));
+		return jobDir;
+	}
+
+	private static InputParameters createParameters(int maxNrOfSequences) {
+		InputParameters inputParameters = new InputParameters();
+		inputParameters.setMaxNrOfSequences(maxNrOfSequences);
+		inputParameters.setSoftIdentityCutoff(0.5f);
+		inputParameters.setHardIdentityCutoff(0.6f);
+		inputParameters.setSearchMode("LOCAL");
+		return inputParameters;
+	}
+
+	private JobDAO createJobDAO() {
+		return (JobDAO) Proxy.newProxyInstance(JobDAO.class.getClassLoader(), new Class<?>[] {JobDAO.class},
+				(proxy, method, args) -> {
+					if (method.getName().equals("getStatusForJob")) {
+						return statuses.get(args[0]);
+					}
+					throw new UnsupportedOperationException(method.getName());
+				});
+	}
+}